@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Main;
+
+/**
+ * Stands in for the server. EnderAuth's classes find the plugin through {@link Main#getInstance()}, which is only set once Sponge
+ * has constructed the plugin; this constructs it directly instead, with a logger that discards everything so logging costs
+ * as little as it does with debug logging switched off.
+ * <br><br>Only code that doesn't touch a live server (the scheduler, the event manager, ...) can be benchmarked this way.
+ */
+public final class BenchmarkEnvironment {
+	
+	private BenchmarkEnvironment(){}
+	
+	/** Constructs the plugin, unless that already happened in this JVM. Call this before touching any of EnderAuth's classes.*/
+	public static synchronized void start(){
+		if(Main.getInstance() != null){
+			return;
+		}
+		
+		try {
+			new Main(NOPLogger.NOP_LOGGER, null, null, Files.createTempDirectory("enderauth-benchmarks"));
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
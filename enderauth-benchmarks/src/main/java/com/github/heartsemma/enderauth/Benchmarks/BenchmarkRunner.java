@@ -0,0 +1,70 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point of benchmarks.jar. Takes the same arguments as JMH's own launcher, but always adds the GC profiler,
+ * so every suite reports its allocation rate (gc.alloc.rate.norm is bytes per operation) next to throughput and latency.
+ * <br><br>Examples: {@code java -jar benchmarks.jar Bouncer}, {@code java -jar benchmarks.jar -l}, {@code java -jar benchmarks.jar -h}
+ */
+public class BenchmarkRunner {
+	
+	public static void main(String[] args) throws Exception {
+		CommandLineOptions commandLine = new CommandLineOptions(args);
+		
+		if(commandLine.shouldHelp()){
+			commandLine.showHelp();
+			return;
+		}
+		
+		Runner runner = new Runner(new OptionsBuilder()
+				.parent(commandLine)
+				.addProfiler(GCProfiler.class)
+				.build());
+		
+		if(commandLine.shouldList() || commandLine.shouldListWithParams()){
+			runner.list();
+			return;
+		}
+		
+		runner.run();
+	}
+	
+	private BenchmarkRunner(){}
+	
+	/** @return Options for running every suite from an IDE, with the same profiler the jar uses.*/
+	public static Options defaults(){
+		return new OptionsBuilder()
+				.include(BenchmarkRunner.class.getPackage().getName())
+				.addProfiler(GCProfiler.class)
+				.build();
+	}
+}
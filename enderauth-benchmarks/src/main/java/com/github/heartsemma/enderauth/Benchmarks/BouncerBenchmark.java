@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.entity.living.player.Player;
+
+import com.github.heartsemma.enderauth.Bouncer;
+
+/**
+ * {@link Bouncer#isOnList(UUID)}, which every move, break and place event of every player goes through.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class BouncerBenchmark {
+	
+	private static final int lookupMask = 1023; //The benchmark cycles through this many (plus one) players.
+	
+	@Param({"100", "10000"})
+	public int onlinePlayers;
+	
+	private Bouncer bouncer;
+	private UUID[] authenticated;
+	private UUID[] unauthenticated;
+	private Player[] authenticatedPlayers;
+	
+	@Setup
+	public void setup(){
+		BenchmarkEnvironment.start();
+		bouncer = Bouncer.getInstance();
+		
+		Random random = new Random(42);
+		UUID[] online = new UUID[onlinePlayers];
+		for(int i = 0; i < onlinePlayers; i++){
+			online[i] = new UUID(random.nextLong(), random.nextLong());
+			bouncer.addUser(online[i]);
+		}
+		
+		authenticated = new UUID[lookupMask + 1];
+		unauthenticated = new UUID[lookupMask + 1];
+		authenticatedPlayers = new Player[lookupMask + 1];
+		for(int i = 0; i <= lookupMask; i++){
+			authenticated[i] = online[random.nextInt(onlinePlayers)];
+			unauthenticated[i] = new UUID(random.nextLong(), random.nextLong());
+			authenticatedPlayers[i] = Stubs.player(authenticated[i], "Player" + i);
+		}
+	}
+	
+	@TearDown
+	public void tearDown(){
+		for(UUID uuid : authenticated){
+			bouncer.removeUser(uuid);
+		}
+	}
+	
+	/** Where a thread is in the arrays of players.*/
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		private int next(){
+			return next++ & lookupMask;
+		}
+	}
+	
+	@Benchmark
+	public boolean isOnListAuthenticated(Cursor cursor){
+		return bouncer.isOnList(authenticated[cursor.next()]);
+	}
+	
+	@Benchmark
+	public boolean isOnListUnauthenticated(Cursor cursor){
+		return bouncer.isOnList(unauthenticated[cursor.next()]);
+	}
+	
+	@Benchmark
+	public boolean isOnListPlayer(Cursor cursor){
+		return bouncer.isOnList(authenticatedPlayers[cursor.next()]);
+	}
+	
+	//Lookups are lock-free; this shows whether they stay that way once every core is asking at once.
+	@Benchmark
+	@Threads(Threads.MAX)
+	public boolean isOnListAuthenticatedAllThreads(Cursor cursor){
+		return bouncer.isOnList(authenticated[cursor.next()]);
+	}
+}
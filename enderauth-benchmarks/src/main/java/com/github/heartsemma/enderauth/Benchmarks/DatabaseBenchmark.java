@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Storage.ConnectionPool;
+
+/**
+ * {@link Database}'s queries, each run through its transaction path (borrowing a pooled connection, reusing its prepared statement, 
+ * committing and returning it), against an in-memory H2 database in MySQL mode.
+ * <br><br>This measures EnderAuth's own overhead rather than MySQL's; a network round trip to a real server comes on top.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class DatabaseBenchmark {
+	
+	private static final String url = "jdbc:h2:mem:enderauth-benchmarks;MODE=MySQL;DB_CLOSE_DELAY=-1";
+	private static final int poolSize = 4; //The same as the plugin's.
+	private static final int lookupMask = 1023; //The benchmark cycles through this many (plus one) players.
+	private static final int insertBatchSize = 1000;
+	
+	@Param({"10000"})
+	public int registeredPlayers;
+	
+	private Database database;
+	private UUID[] registered;
+	private UUID[] unregistered;
+	private final AtomicLong nextNewPlayer = new AtomicLong();
+	
+	@Setup
+	public void setup() throws SQLException, DatabaseException{
+		BenchmarkEnvironment.start();
+		
+		//Database.validate() migrates the schema with MySQL-only statements (named locks, triggers), so the current layout is created here instead. 
+		//H2 has no per-column character sets, which is the only difference.
+		try(Connection connection = DriverManager.getConnection(url, "sa", "");
+				Statement statement = connection.createStatement()){
+			statement.execute("DROP SCHEMA IF EXISTS `enderAuthDB` CASCADE");
+			statement.execute("CREATE SCHEMA `enderAuthDB`");
+			statement.execute("CREATE TABLE `enderAuthDB`.`ea_users` (`uuid` BINARY(16) NOT NULL PRIMARY KEY, `pre_shared_key` CHAR(32))");
+			statement.execute("CREATE TABLE `enderAuthDB`.`ea_changes` (`version` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+					+ "`uuid` BINARY(16) NOT NULL, `kind` TINYINT NOT NULL, `origin` BIGINT NOT NULL, `changed_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+		}
+		
+		database = new Database(new ConnectionPool(url, "sa", "", poolSize, 30 * 60 * 1000, 30 * 1000, 5 * 1000));
+		
+		Random random = new Random(42);
+		UUID[] all = new UUID[registeredPlayers];
+		Map<UUID, String> batch = new HashMap<UUID, String>();
+		for(int i = 0; i < registeredPlayers; i++){
+			all[i] = new UUID(random.nextLong(), random.nextLong());
+			batch.put(all[i], "JBSWY3DPEHPK3PXP");
+			if(batch.size() == insertBatchSize){
+				database.addUsers(batch);
+				batch.clear();
+			}
+		}
+		database.addUsers(batch);
+		
+		registered = new UUID[lookupMask + 1];
+		unregistered = new UUID[lookupMask + 1];
+		for(int i = 0; i <= lookupMask; i++){
+			registered[i] = all[random.nextInt(registeredPlayers)];
+			unregistered[i] = new UUID(random.nextLong(), random.nextLong());
+		}
+	}
+	
+	@TearDown
+	public void tearDown(){
+		database.close();
+	}
+	
+	/** Where a thread is in the arrays of players.*/
+	@State(Scope.Thread)
+	public static class Cursor {
+		private int next;
+		
+		private int next(){
+			return next++ & lookupMask;
+		}
+	}
+	
+	@Benchmark
+	public boolean isInDatabaseRegistered(Cursor cursor) throws SQLException, DatabaseException{
+		return database.isInDatabase(registered[cursor.next()]);
+	}
+	
+	@Benchmark
+	public boolean isInDatabaseUnregistered(Cursor cursor) throws SQLException, DatabaseException{
+		return database.isInDatabase(unregistered[cursor.next()]);
+	}
+	
+	@Benchmark
+	public String getTotpKey(Cursor cursor) throws SQLException, DatabaseException{
+		return database.getTotpKey(registered[cursor.next()]);
+	}
+	
+	//Every call registers a new player, so the table grows over the run.
+	@Benchmark
+	public UUID addUser() throws SQLException, DatabaseException{
+		UUID uuid = new UUID(Long.MIN_VALUE, nextNewPlayer.getAndIncrement());
+		database.addUser(uuid, "JBSWY3DPEHPK3PXP");
+		return uuid;
+	}
+	
+	//Twice as many threads as connections, to show what waiting for the pool costs.
+	@Benchmark
+	@Threads(poolSize * 2)
+	public boolean isInDatabaseContended(Cursor cursor) throws SQLException, DatabaseException{
+		return database.isInDatabase(registered[cursor.next()]);
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
+
+import com.github.heartsemma.enderauth.Commands.Messenger;
+
+/**
+ * {@link Messenger}, which builds the texts every joining player is sent.
+ * <br><br>Runs against the Sponge API's placeholder colors, since there is no server to register real ones; building a text doesn't look at them.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class MessengerBenchmark {
+	
+	private Messenger messenger;
+	private Player player;
+	private Text text;
+	
+	@Setup
+	public void setup(){
+		BenchmarkEnvironment.start();
+		messenger = Messenger.getInstance();
+		player = Stubs.player(new UUID(3, 3), "Player");
+		text = Text.of("EnderAuth");
+	}
+	
+	@Benchmark
+	public long sendIntroduction(){
+		messenger.sendIntroduction(player);
+		return Stubs.state(player).messages;
+	}
+	
+	@Benchmark
+	public long welcomeBack(){
+		messenger.welcomeBack(player);
+		return Stubs.state(player).messages;
+	}
+	
+	//What sending a text to the stub costs on its own.
+	@Benchmark
+	public long sendMessageBaseline(){
+		player.sendMessage(text);
+		return Stubs.state(player).messages;
+	}
+}
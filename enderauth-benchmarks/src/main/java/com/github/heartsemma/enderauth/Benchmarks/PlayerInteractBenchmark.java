@@ -0,0 +1,143 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.spongepowered.api.entity.Transform;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.block.ChangeBlockEvent;
+import org.spongepowered.api.event.entity.MoveEntityEvent;
+import org.spongepowered.api.world.World;
+
+import com.flowpowered.math.vector.Vector3d;
+import com.github.heartsemma.enderauth.Bouncer;
+import com.github.heartsemma.enderauth.Listeners.PlayerInteractEvents;
+
+/**
+ * The listeners in {@link PlayerInteractEvents}: vetAction (through the block break listener) and the move listener,
+ * for players that have authenticated and players that are being held.
+ * <br><br>Stubs allocate an argument array when they are cancelled or corrected; the baselines show how much of a result that is.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PlayerInteractBenchmark {
+	
+	private PlayerInteractEvents events;
+	private Bouncer bouncer;
+	
+	private Player authenticated;
+	private Player unauthenticated;
+	private ChangeBlockEvent.Break breakEvent;
+	private MoveEntityEvent authenticatedMove;
+	private MoveEntityEvent unauthenticatedStill; //Only looks around, so nothing needs correcting.
+	private MoveEntityEvent unauthenticatedMove; //Walks away, and is put back every time.
+	
+	@Setup
+	public void setup(){
+		BenchmarkEnvironment.start();
+		events = new PlayerInteractEvents();
+		bouncer = Bouncer.getInstance();
+		
+		authenticated = Stubs.player(new UUID(1, 1), "Authenticated");
+		unauthenticated = Stubs.player(new UUID(2, 2), "Unauthenticated");
+		bouncer.addUser(authenticated.getUniqueId());
+		
+		World world = Stubs.world();
+		Transform<World> here = new Transform<World>(world, new Vector3d(0, 64, 0));
+		Transform<World> there = new Transform<World>(world, new Vector3d(0.2, 64, 0));
+		
+		breakEvent = Stubs.breakEvent();
+		authenticatedMove = Stubs.moveEvent(authenticated, here, there);
+		unauthenticatedStill = Stubs.moveEvent(unauthenticated, here, here);
+		unauthenticatedMove = Stubs.moveEvent(unauthenticated, here, there);
+	}
+	
+	@TearDown
+	public void tearDown(){
+		bouncer.removeUser(authenticated.getUniqueId());
+		events.release(unauthenticated.getUniqueId());
+	}
+	
+	@Benchmark
+	public boolean vetActionAuthenticated(){
+		events.onBreakBlockEvent(breakEvent, authenticated);
+		return Stubs.state(breakEvent).cancelled;
+	}
+	
+	@Benchmark
+	public boolean vetActionUnauthenticated(){
+		events.onBreakBlockEvent(breakEvent, unauthenticated);
+		return Stubs.state(breakEvent).cancelled;
+	}
+	
+	//What cancelling the stub costs on its own.
+	@Benchmark
+	public boolean vetActionUnauthenticatedBaseline(){
+		breakEvent.setCancelled(true);
+		return Stubs.state(breakEvent).cancelled;
+	}
+	
+	@Benchmark
+	public Object moveAuthenticated(){
+		events.onMoveEvent(authenticatedMove, authenticated);
+		return Stubs.state(authenticatedMove).correctedTo;
+	}
+	
+	@Benchmark
+	public Object moveUnauthenticatedStill(){
+		events.onMoveEvent(unauthenticatedStill, unauthenticated);
+		return Stubs.state(unauthenticatedStill).correctedTo;
+	}
+	
+	@Benchmark
+	public Object moveUnauthenticatedCorrected(){
+		events.onMoveEvent(unauthenticatedMove, unauthenticated);
+		return Stubs.state(unauthenticatedMove).correctedTo;
+	}
+	
+	//What correcting the stub costs on its own.
+	@Benchmark
+	public Object moveUnauthenticatedCorrectedBaseline(){
+		unauthenticatedMove.setToTransform(unauthenticatedMove.getFromTransform());
+		return Stubs.state(unauthenticatedMove).correctedTo;
+	}
+}
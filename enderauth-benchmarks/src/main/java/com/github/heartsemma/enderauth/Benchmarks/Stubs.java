@@ -0,0 +1,148 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.UUID;
+
+import org.spongepowered.api.entity.Transform;
+import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.event.block.ChangeBlockEvent;
+import org.spongepowered.api.event.entity.MoveEntityEvent;
+import org.spongepowered.api.world.World;
+
+/**
+ * Lightweight stand-ins for the Sponge types EnderAuth's hot paths are handed. Each only answers the handful of methods
+ * EnderAuth calls and throws for everything else, so a benchmark can't silently depend on behaviour it doesn't provide.
+ * <br><br>They are dynamic proxies. Methods without arguments don't allocate; methods with arguments allocate their argument array,
+ * which shows up in the allocation rate. Benchmarks that pass arguments to a stub have a baseline that makes the same call on its own.
+ */
+public final class Stubs {
+	
+	private Stubs(){}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @param name (The player's name)
+	 * @return An online player that discards the messages it is sent, counting them in {@link StubState#messages}.
+	 */
+	public static Player player(UUID uuid, String name){
+		StubState state = new StubState();
+		state.uuid = uuid;
+		state.name = name;
+		return proxy(Player.class, state);
+	}
+	
+	/** @return A block break event that remembers whether it was cancelled, readable through {@link #state(Object)}.*/
+	public static ChangeBlockEvent.Break breakEvent(){
+		return proxy(ChangeBlockEvent.Break.class, new StubState());
+	}
+	
+	/**
+	 * @param target (The player that moves)
+	 * @param from (Where they move from)
+	 * @param to (Where they try to move to. Always returned by getToTransform(); corrections are kept in {@link StubState#correctedTo})
+	 * @return A move event that can be fired again and again without being reset.
+	 */
+	public static MoveEntityEvent moveEvent(Player target, Transform<World> from, Transform<World> to){
+		StubState state = new StubState();
+		state.target = target;
+		state.from = from;
+		state.to = to;
+		return proxy(MoveEntityEvent.class, state);
+	}
+	
+	/** @return A world that can be used as the extent of a {@link Transform}, and nothing else.*/
+	public static World world(){
+		return proxy(World.class, new StubState());
+	}
+	
+	/**
+	 * @param stub (Something made by this class)
+	 * @return What the stub remembers.
+	 */
+	public static StubState state(Object stub){
+		return (StubState) Proxy.getInvocationHandler(stub);
+	}
+	
+	private static <T> T proxy(Class<T> type, StubState state){
+		return type.cast(Proxy.newProxyInstance(Stubs.class.getClassLoader(), new Class<?>[]{type}, state));
+	}
+	
+	/**
+	 * What a stub remembers, and how it answers.
+	 */
+	public static final class StubState implements InvocationHandler {
+		
+		public UUID uuid;
+		public String name;
+		public boolean cancelled;
+		public Player target;
+		public Transform<World> from;
+		public Transform<World> to;
+		public Transform<World> correctedTo;
+		public long messages;
+		
+		@Override
+		@SuppressWarnings("unchecked")
+		public Object invoke(Object proxy, Method method, Object[] args){
+			switch(method.getName()){
+			case "getUniqueId":
+				return uuid;
+			case "getName":
+				return name;
+			case "isOnline":
+				return true;
+			case "sendMessage":
+				messages++;
+				return null;
+			case "isCancelled":
+				return cancelled;
+			case "setCancelled":
+				cancelled = (Boolean) args[0];
+				return null;
+			case "getTargetEntity":
+				return target;
+			case "getFromTransform":
+				return from;
+			case "getToTransform":
+				return to;
+			case "setToTransform":
+				correctedTo = (Transform<World>) args[0];
+				return null;
+			case "hashCode":
+				return System.identityHashCode(proxy);
+			case "equals":
+				return proxy == args[0];
+			case "toString":
+				return "Stub " + method.getDeclaringClass().getSimpleName() + (name == null ? "" : " " + name);
+			default:
+				throw new UnsupportedOperationException(method.getDeclaringClass().getSimpleName() + "." + method.getName() + " isn't stubbed.");
+			}
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+import com.warrenstrange.googleauth.GoogleAuthenticatorException;
+
+/**
+ * {@link TotpVerifier}, against googleauth's own check (which decodes the key and creates a Mac every time).
+ * <br><br>The single threaded results are verifications per second per core; the all-threads result shows how that scales.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class TotpBenchmark {
+	
+	private static final long time = 1500000000000L; //Fixed, so every iteration checks the same steps.
+	
+	private final GoogleAuthenticator authenticator = new GoogleAuthenticator();
+	private String preSharedKey;
+	private SecretKeySpec key;
+	private int validCode;
+	private int invalidCode;
+	
+	@Setup
+	public void setup(){
+		preSharedKey = authenticator.createCredentials().getKey();
+		key = TotpVerifier.decode(preSharedKey);
+		validCode = authenticator.getTotpPassword(preSharedKey, time);
+		invalidCode = (validCode + 1) % 1000000;
+		
+		//The window holds three codes; make sure the wrong one isn't accidentally one of the others.
+		while(TotpVerifier.verify(key, invalidCode, time)){
+			invalidCode = (invalidCode + 1) % 1000000;
+		}
+	}
+	
+	@Benchmark
+	public long matchValid(){
+		return TotpVerifier.match(key, validCode, time);
+	}
+	
+	@Benchmark
+	public long matchInvalid(){
+		return TotpVerifier.match(key, invalidCode, time);
+	}
+	
+	@Benchmark
+	@Threads(Threads.MAX)
+	public long matchValidAllThreads(){
+		return TotpVerifier.match(key, validCode, time);
+	}
+	
+	@Benchmark
+	public boolean googleauthAuthorize() throws GoogleAuthenticatorException{
+		return authenticator.authorize(preSharedKey, validCode, time);
+	}
+}
@@ -0,0 +1,91 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Benchmarks;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang3.ArrayUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+
+/**
+ * {@link UUIDUtils}, which encodes every UUID that is sent to or read from the database, against the encoding it replaced.
+ */
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class UUIDBenchmark {
+	
+	private UUID uuid;
+	private byte[] encoded;
+	private final byte[] buffer = new byte[UUIDUtils.BYTES];
+	
+	@Setup
+	public void setup(){
+		Random random = new Random(42);
+		uuid = new UUID(random.nextLong(), random.nextLong());
+		encoded = UUIDUtils.getBytes(uuid);
+	}
+	
+	//Two ByteBuffers, their arrays and a merged copy: four allocations for 16 bytes.
+	@Benchmark
+	public byte[] getBytesLegacy(){
+		byte[] frontOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(uuid.getMostSignificantBits()).array();
+		byte[] backOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(uuid.getLeastSignificantBits()).array();
+		return ArrayUtils.addAll(frontOfID, backOfID);
+	}
+	
+	@Benchmark
+	public byte[] getBytes(){
+		return UUIDUtils.getBytes(uuid);
+	}
+	
+	@Benchmark
+	public byte[] writeIntoBuffer(){
+		UUIDUtils.write(uuid, buffer, 0);
+		return buffer;
+	}
+	
+	@Benchmark
+	public UUID read(){
+		return UUIDUtils.read(encoded, 0);
+	}
+}
@@ -0,0 +1,164 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Main;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+
+/**
+ * Hands out fresh TOTP pre-shared keys for registration without making the registering player wait for {@link java.security.SecureRandom}.
+ * <br><br>Keys are generated ahead of time by a background thread, with the googleauth library like every other key, and kept in a bounded queue.
+ * Whenever a key taken out leaves fewer than {@value #lowWaterMark} behind, the thread fills the queue back up, so a burst of registrations 
+ * (e.g. when EnderAuth is first enabled on a populated server) is served from memory while the next keys are being made.
+ * <br><br>A key leaves the pool exactly once and is never put back. The pool only lives in memory: it is never written anywhere,
+ * and is emptied when the plugin shuts down. If it runs dry anyway, the key is generated on the spot.
+ */
+public class KeyPool {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	
+	//Some of these may be pulled from configuration in the future.
+	private static final int capacity = 256;
+	private static final int lowWaterMark = 64;
+	
+	private final ArrayBlockingQueue<String> keys = new ArrayBlockingQueue<String>(capacity);
+	private final GoogleAuthenticator generator = new GoogleAuthenticator(); //Guarded by itself.
+	private final ExecutorService refiller;
+	private final AtomicBoolean refilling = new AtomicBoolean();
+	
+	private final LongAdder takenFromPool = new LongAdder();
+	private final LongAdder generatedOnDemand = new LongAdder();
+	
+	private static KeyPool INSTANCE = null;
+	
+	public static synchronized KeyPool getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new KeyPool();
+		}
+		return INSTANCE;
+	}
+	
+	private KeyPool(){
+		refiller = Executors.newSingleThreadExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-Keys")
+				.setDaemon(true)
+				.setPriority(Thread.MIN_PRIORITY)
+				.build());
+	}
+	
+	/** Fills the pool in the background, so it is ready before the first player registers.*/
+	public void start(){
+		requestRefill();
+	}
+	
+	/**
+	 * @return A Base32 encoded pre-shared key that nobody else has been or will be given.
+	 * 
+	 * <br><br>Normally just takes a key out of the pool. Only if the pool is empty is a key generated on the calling thread,
+	 * so keep this off the main thread all the same. Safe to call from any thread.
+	 */
+	public String take(){
+		String key = keys.poll();
+		
+		if(keys.size() < lowWaterMark){
+			requestRefill();
+		}
+		
+		if(key != null){
+			takenFromPool.increment();
+			return key;
+		}
+		
+		generatedOnDemand.increment();
+		return generate();
+	}
+	
+	/** Stops refilling the pool and throws away the keys in it.*/
+	public void shutdown(){
+		refiller.shutdownNow();
+		keys.clear();
+	}
+	
+	/** @return The amount of keys ready to be handed out.*/
+	public int size(){ return keys.size(); }
+	
+	/** @return The amount of keys handed out straight from the pool.*/
+	public long getTakenFromPoolCount(){ return takenFromPool.sum(); }
+	
+	/** @return The amount of keys that had to be generated while a player waited, because the pool was empty.*/
+	public long getGeneratedOnDemandCount(){ return generatedOnDemand.sum(); }
+	
+	private void requestRefill(){
+		if(!refilling.compareAndSet(false, true)){
+			return;
+		}
+		
+		try {
+			refiller.execute(this::refill);
+		} catch (RejectedExecutionException e) {
+			refilling.set(false); //Shutting down.
+		}
+	}
+	
+	private void refill(){
+		boolean failed = false;
+		
+		try {
+			while(keys.remainingCapacity() > 0 && !Thread.currentThread().isInterrupted()){
+				//A key that doesn't fit any more is simply dropped; it was never handed out.
+				keys.offer(generate());
+			}
+		} catch (RuntimeException e) {
+			logger.error("EnderAuth was unable to generate keys ahead of time; registrations will generate their own.");
+			e.printStackTrace();
+			failed = true;
+		} finally {
+			refilling.set(false);
+		}
+		
+		//Keys may have been taken while the flag was still up.
+		if(!failed && keys.size() < lowWaterMark && !refiller.isShutdown()){
+			requestRefill();
+		}
+	}
+	
+	private String generate(){
+		synchronized(generator){
+			return generator.createCredentials().getKey();
+		}
+	}
+}
@@ -0,0 +1,275 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import java.net.InetAddress;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.DataStructures.StripedTokenBuckets;
+import com.github.heartsemma.enderauth.DataStructures.TimingWheel;
+import com.github.heartsemma.enderauth.Metrics.Operation;
+import com.github.heartsemma.enderauth.Tracing.Trace;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Guards {@link TotpVerifier} against codes being used twice and against guessing.
+ * <br><br>Every accepted code is remembered, keyed by the player's UUID and the code's time step, until it could no longer be accepted anyway.
+ * Login attempts are rate limited per player and per address with token buckets. Both are forgotten through timing wheels
+ * advanced by a single background thread, so nothing here needs a timer per entry or a global lock, and every check is O(1).
+ */
+public class LoginThrottle {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final TotpVerifier totpVerifier = TotpVerifier.getInstance();
+	
+	//Some of these may be pulled from configuration in the future.
+	private static final int playerAttemptBurst = 5; //A player may get their code wrong this many times in a row...
+	private static final double playerAttemptsPerSecond = 0.1; //...and then once every ten seconds.
+	private static final int addressAttemptBurst = 20; //The same, for everyone connecting from one address.
+	private static final double addressAttemptsPerSecond = 0.5;
+	private static final int stripes = 64;
+	private static final long tickMillis = 1000;
+	private static final int wheelSlots = 512; //About eight and a half minutes per turn, longer than anything is kept.
+	
+	/** What became of a login attempt.*/
+	public enum Outcome {
+		/** The code was valid and hadn't been used before.*/
+		ACCEPTED,
+		/** The code was wrong, or the player has no key.*/
+		REJECTED,
+		/** The code was valid, but it (or a later one) was already used.*/
+		REPLAYED,
+		/** Too many attempts were made; the code wasn't looked at.*/
+		THROTTLED
+	}
+	
+	private final TimingWheel<UsedCode> usedCodes;
+	private final StripedTokenBuckets<UUID> playerAttempts;
+	private final StripedTokenBuckets<InetAddress> addressAttempts;
+	private final TimingWheel<UUID> idlePlayers; //Drops buckets once they've had time to fill up again.
+	private final TimingWheel<InetAddress> idleAddresses;
+	private final ScheduledExecutorService ticker;
+	
+	private final LongAdder accepted = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	private final LongAdder replayed = new LongAdder();
+	private final LongAdder throttled = new LongAdder();
+	
+	private static LoginThrottle INSTANCE = null;
+	
+	public static synchronized LoginThrottle getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new LoginThrottle();
+		}
+		return INSTANCE;
+	}
+	
+	private LoginThrottle(){
+		long now = System.currentTimeMillis();
+		
+		playerAttempts = new StripedTokenBuckets<UUID>(playerAttemptBurst, playerAttemptsPerSecond, stripes);
+		addressAttempts = new StripedTokenBuckets<InetAddress>(addressAttemptBurst, addressAttemptsPerSecond, stripes);
+		usedCodes = new TimingWheel<UsedCode>(tickMillis, wheelSlots, null, now);
+		idlePlayers = new TimingWheel<UUID>(tickMillis, wheelSlots, playerAttempts::remove, now);
+		idleAddresses = new TimingWheel<InetAddress>(tickMillis, wheelSlots, addressAttempts::remove, now);
+		
+		ticker = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-Expiry")
+				.setDaemon(true)
+				.build());
+		ticker.scheduleAtFixedRate(this::tick, tickMillis, tickMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * @param uuid (The player logging in)
+	 * @param address (The address they connect from, may be null if unknown)
+	 * @param code (The code they entered, see {@link TotpVerifier#parseCode(String)})
+	 * @return What became of the attempt. Only {@link Outcome#ACCEPTED} means the player may be let in.
+	 * 
+	 * <br><br>Loads the player's key first if it wasn't preloaded, which may block on the database. Safe to call from any thread.
+	 * 
+	 * @throws SQLException If the key had to be loaded and the query failed.
+	 * @throws DatabaseException If the key had to be loaded and the player is not registered, or the database returned erroneous data.
+	 */
+	public Outcome attempt(UUID uuid, InetAddress address, int code) throws SQLException, DatabaseException{
+		return attempt(uuid, address, code, null);
+	}
+	
+	/**
+	 * @param uuid (The player logging in)
+	 * @param address (The address they connect from, may be null if unknown)
+	 * @param code (The code they entered, see {@link TotpVerifier#parseCode(String)})
+	 * @param key (The key to check the code against, e.g. one a registering player was just given. Null for the player's registered key)
+	 * @return What became of the attempt. Only {@link Outcome#ACCEPTED} means the code may be trusted.
+	 * 
+	 * <br><br>Same as {@link #attempt(UUID, InetAddress, int)}, with the same throttling and replay protection. Never blocks when a key is passed.
+	 * 
+	 * @throws SQLException If no key was passed, the key had to be loaded and the query failed.
+	 * @throws DatabaseException If no key was passed, the key had to be loaded and the player is not registered, or the database returned erroneous data.
+	 */
+	public Outcome attempt(UUID uuid, InetAddress address, int code, SecretKeySpec key) throws SQLException, DatabaseException{
+		long nowNanos = System.nanoTime();
+		Outcome outcome = null;
+		
+		try {
+			outcome = attempt(uuid, address, code, key, System.currentTimeMillis(), nowNanos);
+			return outcome;
+		} catch (SQLException | DatabaseException | RuntimeException e) {
+			Operation.LOGIN.recordError();
+			throw e;
+		} finally {
+			Operation.LOGIN.recordSince(nowNanos);
+			Trace.codeVerification(uuid, nowNanos, outcome);
+		}
+	}
+	
+	private Outcome attempt(UUID uuid, InetAddress address, int code, SecretKeySpec key, long nowMillis, long nowNanos) throws SQLException, DatabaseException{
+		if(!takeAttempt(uuid, address, nowMillis, nowNanos)){
+			throttled.increment();
+			return Outcome.THROTTLED;
+		}
+		
+		long step = key == null ? totpVerifier.match(uuid, code) : TotpVerifier.match(key, code, nowMillis);
+		if(step < 0){
+			rejected.increment();
+			return Outcome.REJECTED;
+		}
+		
+		if(!usedCodes.addIfAbsent(new UsedCode(uuid, step), TotpVerifier.getExpiryMillis(step) - nowMillis, nowMillis)){
+			replayed.increment();
+			return Outcome.REPLAYED;
+		}
+		
+		//Codes of earlier steps that are still within the window must not work after a later one did.
+		for(long earlier = step - 2 * TotpVerifier.getWindowSize(); earlier < step; earlier++){
+			long ttl = TotpVerifier.getExpiryMillis(earlier) - nowMillis;
+			if(ttl > 0){
+				usedCodes.touch(new UsedCode(uuid, earlier), ttl, nowMillis);
+			}
+		}
+		
+		//A player who got in gets their full allowance back; their address doesn't.
+		playerAttempts.remove(uuid);
+		idlePlayers.remove(uuid);
+		
+		accepted.increment();
+		return Outcome.ACCEPTED;
+	}
+	
+	/** Stops forgetting old entries. Does nothing if the throttle was never used, rather than starting it just to stop it.*/
+	public static synchronized void shutdown(){
+		if(INSTANCE != null){
+			INSTANCE.ticker.shutdownNow();
+		}
+	}
+	
+	private boolean takeAttempt(UUID uuid, InetAddress address, long nowMillis, long nowNanos){
+		idlePlayers.touch(uuid, playerAttempts.getRefillMillis(), nowMillis);
+		if(!playerAttempts.tryAcquire(uuid, nowNanos)){
+			return false;
+		}
+		
+		if(address != null){
+			idleAddresses.touch(address, addressAttempts.getRefillMillis(), nowMillis);
+			return addressAttempts.tryAcquire(address, nowNanos);
+		}
+		return true;
+	}
+	
+	private void tick(){
+		try {
+			long now = System.currentTimeMillis();
+			usedCodes.advance(now);
+			idlePlayers.advance(now);
+			idleAddresses.advance(now);
+		} catch (RuntimeException e) {
+			//An exception would cancel the schedule, and nothing would ever be forgotten again.
+			logger.error("EnderAuth ran into a problem while forgetting old login attempts.");
+			e.printStackTrace();
+		}
+	}
+	
+	/** @return The amount of login attempts that were let through.*/
+	public long getAcceptedCount(){ return accepted.sum(); }
+	
+	/** @return The amount of login attempts with a wrong code.*/
+	public long getRejectedCount(){ return rejected.sum(); }
+	
+	/** @return The amount of login attempts with a code that was already used.*/
+	public long getReplayedCount(){ return replayed.sum(); }
+	
+	/** @return The amount of login attempts refused for being too many.*/
+	public long getThrottledCount(){ return throttled.sum(); }
+	
+	/** @return The amount of used codes currently remembered.*/
+	public int getUsedCodeCount(){ return usedCodes.size(); }
+	
+	/*
+	 * A player's UUID and a time step, which together identify a code without keeping the code itself.
+	 */
+	private static final class UsedCode {
+		
+		private final long mostSignificantBits;
+		private final long leastSignificantBits;
+		private final long step;
+		
+		private UsedCode(UUID uuid, long step){
+			this.mostSignificantBits = uuid.getMostSignificantBits();
+			this.leastSignificantBits = uuid.getLeastSignificantBits();
+			this.step = step;
+		}
+		
+		@Override
+		public boolean equals(Object other){
+			if(!(other instanceof UsedCode)){
+				return false;
+			}
+			UsedCode that = (UsedCode) other;
+			return mostSignificantBits == that.mostSignificantBits 
+					&& leastSignificantBits == that.leastSignificantBits 
+					&& step == that.step;
+		}
+		
+		@Override
+		public int hashCode(){
+			long hash = mostSignificantBits * 31 + leastSignificantBits;
+			hash = hash * 31 + step;
+			return (int) (hash ^ (hash >>> 32));
+		}
+	}
+}
@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import java.io.IOException;
+import java.net.Inet4Address;
+import java.net.InetAddress;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.UUID;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Remembers players who were authenticated when they left, so that reconnecting soon afterwards from the same address lets them straight back in.
+ * <br><br>A session is bound to the player's UUID and address and expires a fixed time after it was issued. Resuming one costs a few reads
+ * of a memory-mapped file; neither the database nor {@link TotpVerifier} is involved, so a restart doesn't turn into a storm of both.
+ * <br><br>The file is a fixed-size hash table. A player's session lives in one of a few slots starting at the one their UUID hashes to;
+ * when all of those are taken, the session closest to expiring is overwritten. Every slot carries a checksum, so a slot torn by a crash 
+ * reads as empty. Writes are not forced to disk one by one: the mapping outlives the server process, and a session lost to a power cut 
+ * only costs the player a login.
+ * <br><br>Sessions are only as trustworthy as the config directory they are kept in, the same as the user store.
+ */
+public class SessionStore {
+	
+	private final Logger logger;
+	
+	//Header layout: magic, version, capacity, padding.
+	private static final int magic = 0x45415353; //"EASS"
+	private static final int version = 1;
+	private static final int headerSize = 16;
+	private static final int capacityOffset = 8;
+	
+	//Slot layout: [most significant bits][least significant bits][address, IPv6 or IPv4-mapped][expiry in epoch millis][crc32][padding].
+	private static final int addressSize = 16;
+	private static final int expiryOffset = 16 + addressSize;
+	private static final int checksumOffset = expiryOffset + 8;
+	private static final int slotSize = checksumOffset + 8;
+	private static final int capacity = 4096; //Must be a power of two. Far more than the players who reconnect within one lifetime.
+	private static final int probeLength = 8; //Slots a player's session may be in.
+	
+	private final long lifetimeMillis;
+	
+	//Guarded by this.
+	private FileChannel channel;
+	private MappedByteBuffer slots;
+	private final byte[] slotBytes = new byte[checksumOffset];
+	private final CRC32 crc = new CRC32();
+	
+	private final LongAdder issued = new LongAdder();
+	private final LongAdder resumed = new LongAdder();
+	
+	/**
+	 * @param directory (The directory to keep sessions.dat in. Created if it doesn't exist)
+	 * @param logger (Where problems with the file are reported)
+	 * @param lifetimeMillis (How long after being issued a session may be resumed)
+	 * 
+	 * <br><br>Maps the session file, starting a new one if there is none or it isn't usable.
+	 * 
+	 * @throws IOException If the file could not be created or mapped.
+	 */
+	public SessionStore(Path directory, Logger logger, long lifetimeMillis) throws IOException{
+		Preconditions.checkNotNull(directory);
+		Preconditions.checkArgument(lifetimeMillis > 0, "Sessions must last a while.");
+		this.logger = logger;
+		this.lifetimeMillis = lifetimeMillis;
+		
+		Files.createDirectories(directory);
+		Path path = directory.resolve("sessions.dat");
+		long length = headerSize + (long) capacity * slotSize;
+		
+		channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		try {
+			boolean usable = channel.size() == length;
+			slots = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+			
+			if(!usable || slots.getInt(0) != magic || slots.getInt(4) != version || slots.getInt(capacityOffset) != capacity){
+				logger.info("Starting a new session file; players who were logged in before will have to log in again.");
+				for(int i = 0; i < length; i += 8){
+					slots.putLong(i, 0);
+				}
+				slots.putInt(0, magic);
+				slots.putInt(4, version);
+				slots.putInt(capacityOffset, capacity);
+				slots.force();
+			}
+		} catch (IOException | RuntimeException e) {
+			channel.close();
+			throw e;
+		}
+	}
+	
+	/**
+	 * @param uuid (The player who is leaving while authenticated)
+	 * @param address (The address they were connected from)
+	 * 
+	 * <br><br>Lets the player resume their session from the same address within the store's lifetime, replacing any session they had.
+	 * Does nothing once the store is closed.
+	 */
+	public synchronized void issue(UUID uuid, InetAddress address){
+		if(slots == null || address == null){
+			return;
+		}
+		
+		long now = System.currentTimeMillis();
+		int target = -1;
+		long soonestExpiry = Long.MAX_VALUE;
+		
+		for(int i = 0; i < probeLength; i++){
+			int slot = slotOffset(uuid, i);
+			if(!isValid(slot)){
+				target = slot;
+				break;
+			}
+			if(belongsTo(slot, uuid)){
+				target = slot;
+				break;
+			}
+			long expiry = slots.getLong(slot + expiryOffset);
+			if(expiry < soonestExpiry){
+				soonestExpiry = expiry;
+				target = slot;
+			}
+		}
+		
+		//A player can only be in one slot, so any other copy of theirs further along is cleared.
+		clear(uuid, target);
+		
+		slots.putLong(target, uuid.getMostSignificantBits());
+		slots.putLong(target + 8, uuid.getLeastSignificantBits());
+		putAddress(target + 16, address);
+		slots.putLong(target + expiryOffset, now + lifetimeMillis);
+		slots.putInt(target + checksumOffset, checksum(target));
+		
+		issued.increment();
+	}
+	
+	/**
+	 * @param uuid (The player who is about to join)
+	 * @param address (The address they are connecting from)
+	 * @return True if the player has a session for this address that hasn't expired.
+	 * 
+	 * <br><br>Leaves the session in place; use {@link #resume(UUID, InetAddress)} once the player has joined.
+	 */
+	public synchronized boolean isResumable(UUID uuid, InetAddress address){
+		return find(uuid, address) >= 0;
+	}
+	
+	/**
+	 * @param uuid (The player who joined)
+	 * @param address (The address they connected from)
+	 * @return True if the player had a session for this address that hasn't expired, in which case they may be let in without a code.
+	 * 
+	 * <br><br>Uses the session up, so it can't be resumed twice. A new one is issued when the player leaves again.
+	 */
+	public synchronized boolean resume(UUID uuid, InetAddress address){
+		int slot = find(uuid, address);
+		if(slot < 0){
+			return false;
+		}
+		
+		clearSlot(slot);
+		resumed.increment();
+		return true;
+	}
+	
+	/**
+	 * @param uuid (The player whose session should end)
+	 * 
+	 * <br><br>Forgets the player's session, e.g. because they were unregistered or their key was reset.
+	 */
+	public synchronized void revoke(UUID uuid){
+		if(slots != null){
+			clear(uuid, -1);
+		}
+	}
+	
+	/** Forgets every session, e.g. because changes that should have revoked some of them may have been missed.*/
+	public synchronized void revokeAll(){
+		if(slots == null){
+			return;
+		}
+		for(int slot = headerSize; slot < headerSize + capacity * slotSize; slot += slotSize){
+			clearSlot(slot);
+		}
+	}
+	
+	/** Writes the sessions to disk and unmaps the file. Sessions issued afterwards are ignored.*/
+	public synchronized void close(){
+		if(slots == null){
+			return;
+		}
+		
+		try {
+			slots.force();
+			channel.close();
+		} catch (IOException e) {
+			logger.warn("EnderAuth was unable to save its sessions; players may have to log in again after the restart.");
+			e.printStackTrace();
+		}
+		slots = null;
+		channel = null;
+	}
+	
+	/** @return How long after being issued a session may be resumed, in milliseconds.*/
+	public long getLifetimeMillis(){ return lifetimeMillis; }
+	
+	/** @return The amount of sessions issued to players as they left.*/
+	public long getIssuedCount(){ return issued.sum(); }
+	
+	/** @return The amount of players let back in by resuming a session.*/
+	public long getResumedCount(){ return resumed.sum(); }
+	
+	//Must hold the lock. Returns the offset of the player's live session for this address, or -1.
+	private int find(UUID uuid, InetAddress address){
+		if(slots == null || address == null){
+			return -1;
+		}
+		
+		long now = System.currentTimeMillis();
+		for(int i = 0; i < probeLength; i++){
+			int slot = slotOffset(uuid, i);
+			if(isValid(slot) && belongsTo(slot, uuid)){
+				if(slots.getLong(slot + expiryOffset) > now && hasAddress(slot + 16, address)){
+					return slot;
+				}
+				return -1;
+			}
+		}
+		return -1;
+	}
+	
+	//Must hold the lock. Clears every slot of the player's other than the one passed.
+	private void clear(UUID uuid, int except){
+		for(int i = 0; i < probeLength; i++){
+			int slot = slotOffset(uuid, i);
+			if(slot != except && isValid(slot) && belongsTo(slot, uuid)){
+				clearSlot(slot);
+			}
+		}
+	}
+	
+	private void clearSlot(int slot){
+		for(int i = 0; i < slotSize; i += 8){
+			slots.putLong(slot + i, 0);
+		}
+	}
+	
+	private static int slotOffset(UUID uuid, int probe){
+		long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+		int index = (int) (hash ^ (hash >>> 32)) * 0x9E3779B9;
+		index ^= index >>> 16;
+		return headerSize + ((index + probe) & (capacity - 1)) * slotSize;
+	}
+	
+	private boolean belongsTo(int slot, UUID uuid){
+		return slots.getLong(slot) == uuid.getMostSignificantBits() && slots.getLong(slot + 8) == uuid.getLeastSignificantBits();
+	}
+	
+	//An all-zero slot is empty, and one whose checksum doesn't match was torn by a crash.
+	private boolean isValid(int slot){
+		return slots.getLong(slot + expiryOffset) != 0 && slots.getInt(slot + checksumOffset) == checksum(slot);
+	}
+	
+	private int checksum(int slot){
+		for(int i = 0; i < slotBytes.length; i++){
+			slotBytes[i] = slots.get(slot + i);
+		}
+		crc.reset();
+		crc.update(slotBytes, 0, slotBytes.length);
+		return (int) crc.getValue();
+	}
+	
+	private void putAddress(int offset, InetAddress address){
+		byte[] bytes = address.getAddress();
+		int start = addressSize - bytes.length;
+		for(int i = 0; i < addressSize; i++){
+			slots.put(offset + i, i < start ? 0 : bytes[i - start]);
+		}
+		if(address instanceof Inet4Address){
+			slots.put(offset + 10, (byte) 0xFF);
+			slots.put(offset + 11, (byte) 0xFF);
+		}
+	}
+	
+	private boolean hasAddress(int offset, InetAddress address){
+		byte[] bytes = address.getAddress();
+		int start = addressSize - bytes.length;
+		for(int i = start; i < addressSize; i++){
+			if(slots.get(offset + i) != bytes[i - start]){
+				return false;
+			}
+		}
+		if(address instanceof Inet4Address){
+			return slots.getLong(offset) == 0 && slots.getShort(offset + 8) == 0 && slots.getShort(offset + 10) == (short) 0xFFFF;
+		}
+		return true;
+	}
+}
@@ -0,0 +1,371 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import java.security.InvalidKeyException;
+import java.security.NoSuchAlgorithmException;
+import java.sql.SQLException;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.crypto.Mac;
+import javax.crypto.ShortBufferException;
+import javax.crypto.spec.SecretKeySpec;
+
+import org.apache.commons.codec.binary.Base32;
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+
+/**
+ * Checks TOTP codes (RFC 6238) against the pre-shared keys of online players.
+ * <br><br>Keys are decoded from Base32 once, when the player joins, and kept until they leave. Every thread that verifies codes
+ * keeps its own {@link Mac} and buffers, so checking a code never has to look up a JCE provider. The only allocation left is the
+ * small digest the JDK's HMAC creates internally on every step (about 40 bytes).
+ * All the time steps in the skew window are computed and compared on every check, in constant time, so how long a check takes
+ * says nothing about how close a guess was.
+ */
+public class TotpVerifier {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final UserCache userCache = UserCache.getInstance();
+	
+	//Some of these may be pulled from configuration in the future.
+	//These match the defaults of Google Authenticator and the googleauth library, which generates the keys.
+	private static final String algorithm = "HmacSHA1";
+	private static final int codeDigits = 6;
+	private static final long timeStepMillis = 30000;
+	private static final int windowSize = 1; //How many time steps before and after the current one are accepted as well.
+	
+	private static final int[] powersOfTen = {1, 10, 100, 1000, 10000, 100000, 1000000, 10000000, 100000000, 1000000000};
+	
+	//Decoded keys of online players, keyed by their UUID.
+	private final ConcurrentHashMap<UUID, SecretKeySpec> keys = new ConcurrentHashMap<UUID, SecretKeySpec>();
+	//Bumped whenever a key is forgotten, striped by UUID, so that a load that was already reading the old key doesn't put it back.
+	private static final int forgetStripes = 256; //Must be a power of two.
+	private final AtomicLongArray forgets = new AtomicLongArray(forgetStripes);
+	//Each thread's own Mac and buffers.
+	private static final ThreadLocal<Worker> workers = ThreadLocal.withInitial(Worker::new);
+	
+	private final LongAdder verifications = new LongAdder();
+	private final LongAdder failures = new LongAdder();
+	
+	private static TotpVerifier INSTANCE = null;
+	
+	public static synchronized TotpVerifier getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new TotpVerifier();
+		}
+		return INSTANCE;
+	}
+	
+	private TotpVerifier(){}
+	
+	/**
+	 * @param uuid (The UUID of a registered player that just joined)
+	 * @param executor (Where the key is loaded, as it may need a trip to the database)
+	 * @return A future that completes once the key is loaded, or exceptionally if it couldn't be.
+	 * 
+	 * <br><br>Loads the player's key ahead of time so their first login doesn't have to wait for it.
+	 */
+	public CompletableFuture<Void> preload(UUID uuid, Executor executor){
+		return CompletableFuture.runAsync(() -> {
+			try {
+				loadKey(uuid);
+			} catch (SQLException | DatabaseException e) {
+				logger.warn("EnderAuth was unable to load a player's key ahead of time; it will be loaded when they log in instead.");
+				throw new IllegalStateException(e);
+			}
+		}, executor);
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return True if the player has a key, false if they are registered without one.
+	 * 
+	 * <br><br>Loads and decodes the player's key, unless it already is. This may block on the database.
+	 * 
+	 * @throws SQLException If the database had to be asked and the query failed.
+	 * @throws DatabaseException If the player is not registered, or the database returned erroneous data.
+	 */
+	public boolean loadKey(UUID uuid) throws SQLException, DatabaseException{
+		return load(uuid) != null;
+	}
+	
+	/*
+	 * Returns the player's decoded key, loading it if needed, or null if they have none.
+	 * If the player's key is forgotten while it is being loaded, e.g. because it was just reset, what was loaded may be the old key;
+	 * it is taken back out and loaded again.
+	 */
+	private SecretKeySpec load(UUID uuid) throws SQLException, DatabaseException{
+		int stripe = stripe(uuid);
+		
+		while(true){
+			SecretKeySpec loaded = keys.get(uuid);
+			if(loaded != null){
+				return loaded;
+			}
+			
+			long generation = forgets.get(stripe);
+			String preSharedKey = userCache.getTotpKey(uuid);
+			if(preSharedKey == null){
+				return null;
+			}
+			
+			SecretKeySpec key = decode(preSharedKey);
+			SecretKeySpec previous = keys.putIfAbsent(uuid, key);
+			if(forgets.get(stripe) == generation){
+				return previous == null ? key : previous;
+			}
+			keys.remove(uuid, key);
+		}
+	}
+	
+	private static int stripe(UUID uuid){
+		long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+		return (int) (hash ^ (hash >>> 32)) & (forgetStripes - 1);
+	}
+	
+	/**
+	 * @param uuid (The UUID of the player that left)
+	 * 
+	 * <br><br>Forgets the player's decoded key.
+	 */
+	public void forget(UUID uuid){
+		forgets.incrementAndGet(stripe(uuid));
+		keys.remove(uuid);
+	}
+	
+	/** Forgets every decoded key, e.g. because changes that should have replaced some of them may have been missed.*/
+	public void forgetAll(){
+		for(int stripe = 0; stripe < forgetStripes; stripe++){
+			forgets.incrementAndGet(stripe);
+		}
+		keys.clear();
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return Whether the player's key is loaded. Stays false after {@link #preload(UUID, Executor)} for a player registered without a key.
+	 */
+	public boolean isLoaded(UUID uuid){
+		return keys.containsKey(uuid);
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @param code (The code the player entered, see {@link #parseCode(String)})
+	 * @return True if the code is valid for the current time, give or take the skew window.
+	 * 
+	 * <br><br>Loads the player's key first if it wasn't preloaded, which may block on the database. Safe to call from any thread.
+	 * This does not stop a code from being used twice; {@link LoginThrottle} does that.
+	 * 
+	 * @throws SQLException If the key had to be loaded and the query failed.
+	 * @throws DatabaseException If the key had to be loaded and the player is not registered, or the database returned erroneous data.
+	 */
+	public boolean verify(UUID uuid, int code) throws SQLException, DatabaseException{
+		return match(uuid, code) >= 0;
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @param code (The code the player entered, see {@link #parseCode(String)})
+	 * @return The time step the code belongs to, or -1 if it isn't valid for the current time, give or take the skew window.
+	 * 
+	 * <br><br>Same as {@link #verify(UUID, int)}, but tells which time step matched so the code can be marked as used.
+	 * 
+	 * @throws SQLException If the key had to be loaded and the query failed.
+	 * @throws DatabaseException If the key had to be loaded and the player is not registered, or the database returned erroneous data.
+	 */
+	public long match(UUID uuid, int code) throws SQLException, DatabaseException{
+		SecretKeySpec key = load(uuid);
+		if(key == null){
+			logger.debug("A player without a key tried to verify a code.");
+			return -1;
+		}
+		
+		long step = match(key, code, System.currentTimeMillis());
+		
+		verifications.increment();
+		if(step < 0){
+			failures.increment();
+		}
+		return step;
+	}
+	
+	/**
+	 * @param key (The decoded pre-shared key)
+	 * @param code (The code to check)
+	 * @param timeMillis (The time the code is checked against, in milliseconds since the epoch)
+	 * @return True if the code is valid at the passed time, give or take the skew window.
+	 * 
+	 * <br><br>Safe to call from any thread.
+	 */
+	public static boolean verify(SecretKeySpec key, int code, long timeMillis){
+		return match(key, code, timeMillis) >= 0;
+	}
+	
+	/**
+	 * @param key (The decoded pre-shared key)
+	 * @param code (The code to check)
+	 * @param timeMillis (The time the code is checked against, in milliseconds since the epoch)
+	 * @return The time step the code belongs to, or -1 if it isn't valid at the passed time, give or take the skew window.
+	 * If it happens to be valid for more than one step, the latest one is returned.
+	 * 
+	 * <br><br>Safe to call from any thread.
+	 */
+	public static long match(SecretKeySpec key, int code, long timeMillis){
+		Worker worker = workers.get();
+		long currentStep = timeMillis / timeStepMillis;
+		
+		//Every step in the window is always computed and compared, and neither the comparison nor picking the step branches on the result.
+		long matchedStep = -1;
+		for(long step = currentStep - windowSize; step <= currentStep + windowSize; step++){
+			int difference = worker.generate(key, step) ^ code;
+			long matched = -(long) (((difference | -difference) >>> 31) ^ 1); //All ones on a match, zero otherwise.
+			matchedStep = (step & matched) | (matchedStep & ~matched);
+		}
+		
+		return matchedStep;
+	}
+	
+	/**
+	 * @param step (A time step)
+	 * @return The time from which on codes of the passed step are no longer accepted, in milliseconds since the epoch.
+	 */
+	public static long getExpiryMillis(long step){
+		return (step + windowSize + 1) * timeStepMillis;
+	}
+	
+	/** @return How many time steps before and after the current one are accepted as well.*/
+	public static int getWindowSize(){ return windowSize; }
+	
+	/**
+	 * @param preSharedKey (A Base32 encoded pre-shared key, as stored in the database)
+	 * @return The key, ready to be passed to a Mac.
+	 */
+	public static SecretKeySpec decode(String preSharedKey){
+		Preconditions.checkNotNull(preSharedKey);
+		return new SecretKeySpec(new Base32().decode(preSharedKey), algorithm);
+	}
+	
+	/**
+	 * @param input (What the player typed)
+	 * @return The code as a number, or -1 if it isn't exactly {@value #codeDigits} digits.
+	 * 
+	 * <br><br>Whitespace is ignored, as authenticator apps often show codes split in two.
+	 */
+	public static int parseCode(String input){
+		if(input == null){
+			return -1;
+		}
+		
+		int code = 0;
+		int digits = 0;
+		for(int i = 0; i < input.length(); i++){
+			char c = input.charAt(i);
+			if(Character.isWhitespace(c)){
+				continue;
+			}
+			if(c < '0' || c > '9' || ++digits > codeDigits){
+				return -1;
+			}
+			code = code * 10 + (c - '0');
+		}
+		
+		return digits == codeDigits ? code : -1;
+	}
+	
+	/** @return The amount of codes checked for players since the server started.*/
+	public long getVerificationCount(){ return verifications.sum(); }
+	
+	/** @return The amount of codes that were rejected since the server started.*/
+	public long getFailureCount(){ return failures.sum(); }
+	
+	/** @return The amount of online players whose keys are loaded.*/
+	public int getLoadedKeyCount(){ return keys.size(); }
+	
+	/*
+	 * A thread's own Mac and scratch buffers. Never shared between threads, so none of this needs locking.
+	 */
+	private static class Worker {
+		
+		private final Mac mac;
+		private final byte[] counter = new byte[8];
+		private final byte[] hash;
+		private SecretKeySpec currentKey; //The key mac was last initialized with. Mac keeps its key between doFinal() calls.
+		
+		private Worker(){
+			try {
+				mac = Mac.getInstance(algorithm);
+			} catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException(algorithm + " is required by the Java platform but is missing.", e);
+			}
+			hash = new byte[mac.getMacLength()];
+		}
+		
+		/**
+		 * @param key (The decoded pre-shared key)
+		 * @param step (The time step)
+		 * @return The code for the time step, as defined by RFC 4226.
+		 */
+		private int generate(SecretKeySpec key, long step){
+			try {
+				if(key != currentKey){
+					mac.init(key);
+					currentKey = key;
+				}
+				
+				for(int i = 7; i >= 0; i--){
+					counter[i] = (byte) step;
+					step >>>= 8;
+				}
+				
+				mac.update(counter);
+				mac.doFinal(hash, 0);
+			} catch (InvalidKeyException | ShortBufferException e) {
+				currentKey = null;
+				throw new IllegalStateException("Unable to compute a TOTP code.", e);
+			}
+			
+			int offset = hash[hash.length - 1] & 0xF;
+			int truncated = (hash[offset] & 0x7F) << 24
+					| (hash[offset + 1] & 0xFF) << 16
+					| (hash[offset + 2] & 0xFF) << 8
+					| (hash[offset + 3] & 0xFF);
+			
+			return truncated % powersOfTen[codeDigits];
+		}
+	}
+}
@@ -1,29 +1,30 @@
 package com.github.heartsemma.enderauth;
 
-import java.util.HashSet;
+import java.util.UUID;
 
 import org.spongepowered.api.entity.living.player.Player;
 
-import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+import com.github.heartsemma.enderauth.DataStructures.ConcurrentUUIDSet;
 
 /**
   * Used to keep track of authenticated users. 
+  * <br><br>Safe to use from any thread; checks never lock or allocate.
  */
 public class Bouncer {
 	
 	private static Bouncer bouncer;
-	public static Bouncer getInstance(){ 
+	public static synchronized Bouncer getInstance(){ 
 		if(bouncer==null){
 			bouncer = new Bouncer();
 		}
 		return bouncer; 
 	}
 	
-	private HashSet<byte[]> list; //Made of byte[] UUIDs. 
+	private final ConcurrentUUIDSet list; //Made of the two halves of each authenticated player's UUID.
 	private Main main;
 	
 	public Bouncer(){
-		list = new HashSet<byte[]>();
+		list = new ConcurrentUUIDSet();
 		main = Main.getInstance();
 	}
 	
@@ -33,26 +34,37 @@ public class Bouncer {
 	 * <br><br>Adds a user to the authenticated whitelist and allows them to perform regular actions as a player.
 	 */
 	public void addUser(Player player){
-		list.add(UUIDUtils.getUUID(player));
+		addUser(player.getUniqueId());
+	}
+	
+	/**
+	 * @param uuid (UUID of the player to add to whitelist)
+	 * 
+	 * <br><br>Adds a user to the authenticated whitelist and allows them to perform regular actions as a player.
+	 */
+	public void addUser(UUID uuid){
+		list.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
 	}
 	
 	/**
 	 * @param player (The player to be searched for)
 	 * @return A boolean representing the player's presence in the list.
 	 * 
-	 * <br><br>Returns true if the passed player is in the ArrayList, false if not.
+	 * <br><br>Returns true if the passed player is in the list, false if not.
+	 * <br>This is called for every move event of every player, so it deliberately doesn't log.
 	 */
 	public boolean isOnList(Player player){
-		byte[] uuid = UUIDUtils.getUUID(player);
-		main.getLogger().debug("Checking if player " + new String(uuid) + " is in the list of authenticated users.");
-		
-		if(list.contains(uuid)){
-			main.getLogger().debug("Player " + new String(uuid) + " found.");
-			return true;
-		}
-
-		main.getLogger().debug("Player " + new String(uuid) + " not found.");
-		return false;
+		return isOnList(player.getUniqueId());
+	}
+	
+	/**
+	 * @param uuid (UUID of the player to be searched for)
+	 * @return A boolean representing the player's presence in the list.
+	 * 
+	 * <br><br>Returns true if the passed player is in the list, false if not.
+	 */
+	public boolean isOnList(UUID uuid){
+		return list.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
 	}
 	
 	/** @param player (The player to be removed from the list)
@@ -60,13 +72,24 @@ public class Bouncer {
 	 * <br><br> Removed the passed player from the list. If the passed player does not exist in the list, nothing happens.
 	 */
 	public void removeUser(Player player){
-		byte[] uuid = UUIDUtils.getUUID(player);
-		main.getLogger().debug("Removing player " + new String(uuid) + " from list of authenticated users.");
+		main.getLogger().debug("Removing player {} from list of authenticated users.", player.getName());
 		
-		if(list.remove(uuid)){
+		if(removeUser(player.getUniqueId())){
 			main.getLogger().debug("User successfully taken of the list.");
 		} else {
 			main.getLogger().error("EnderAuth was told to remove a specified player from the list but was unable to find them.");
 		}
 	}
+	
+	/** @param uuid (UUID of the player to be removed from the list)
+	 * @return True if the player was on the list.
+	 * 
+	 * <br><br> Removed the passed player from the list. If the passed player does not exist in the list, nothing happens.
+	 */
+	public boolean removeUser(UUID uuid){
+		return list.remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+	
+	/** @return The amount of players currently authenticated.*/
+	public int size(){ return list.size(); }
 }
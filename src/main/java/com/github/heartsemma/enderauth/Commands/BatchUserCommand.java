@@ -0,0 +1,227 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Bouncer;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.Authentication.SessionStore;
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+
+/**
+ * Base of the admin commands that change many players at once. Targets are names or UUIDs separated by spaces or commas;
+ * names are resolved in one profile lookup, and all targets are changed in one call to the user store (one transaction
+ * with MySQL). The work is done off the main thread and the outcome reported back once it is done.
+ */
+abstract class BatchUserCommand implements CommandExecutor{
+
+	protected final Main main = Main.getInstance();
+	protected final Logger logger = main.getLogger();
+	private final RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	
+	private static final int maxTargets = 256; //Per command; more can be passed in several commands.
+	
+	/** @return The command's usage, e.g. "/ea admin reset &lt;player...&gt;".*/
+	protected abstract String usage();
+	
+	/** @return What was done to the changed players, e.g. "Reset".*/
+	protected abstract String done();
+	
+	/**
+	 * @param uuids (The players to change)
+	 * @return The players that were changed. The others weren't registered, or were already in the requested state.
+	 * 
+	 * <br><br>Called on an IO thread.
+	 */
+	protected abstract List<UUID> apply(Collection<UUID> uuids) throws SQLException, DatabaseException;
+	
+	/** @return The message changed players that are online are kicked with.*/
+	protected abstract Text kickMessage();
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		Set<UUID> uuids = new LinkedHashSet<UUID>();
+		Set<String> names = new LinkedHashSet<String>();
+		for(String target : context.<String>getOne("players").orElse("").split("[\\s,]+")){
+			if(target.isEmpty()){
+				continue;
+			}
+			UUID uuid = UUIDUtils.parse(target);
+			if(uuid != null){
+				uuids.add(uuid);
+			} else {
+				names.add(target);
+			}
+		}
+		
+		if(uuids.isEmpty() && names.isEmpty()){
+			throw new CommandException(Text.of("Usage: " + usage()));
+		}
+		if(uuids.size() + names.size() > maxTargets){
+			throw new CommandException(Text.of("At most " + maxTargets + " players can be changed at once."));
+		}
+		
+		logger.info("{} entered {} for {} players.", src.getName(), usage(), uuids.size() + names.size());
+		
+		resolve(names)
+			.thenApplyAsync(resolved -> {
+				Map<UUID, String> targets = new LinkedHashMap<UUID, String>();
+				for(UUID uuid : uuids){
+					targets.put(uuid, uuid.toString());
+				}
+				targets.putAll(resolved);
+				
+				try {
+					return new Outcome(targets, unknown(names, resolved.values()), apply(targets.keySet()));
+				} catch (SQLException | DatabaseException e) {
+					throw new CompletionException(e);
+				}
+			}, registrationLookup.getIOExecutor())
+			.whenCompleteAsync((outcome, error) -> {
+				if(error != null && error.getCause() instanceof RejectedExecutionException){
+					src.sendMessage(Text.builder("EnderAuth is busy right now. Nothing was changed; please try again in a moment.").color(TextColors.RED).build());
+					return;
+				}
+				if(error != null){
+					logger.error("EnderAuth was unable to complete {} for {}.", usage(), src.getName());
+					error.printStackTrace();
+					src.sendMessage(Text.builder("EnderAuth couldn't change those players right now. Nothing was changed.").color(TextColors.RED).build());
+					return;
+				}
+				report(src, outcome);
+			}, registrationLookup.getMainThreadExecutor());
+		
+		return CommandResult.success();
+	}
+	
+	/** Forgets what is kept in memory about the changed players, kicks those online and tells the admin what happened.*/
+	private void report(CommandSource src, Outcome outcome){
+		TotpVerifier totpVerifier = TotpVerifier.getInstance();
+		Bouncer bouncer = Bouncer.getInstance();
+		SessionStore sessionStore = main.getSessionStore(); //Null if the session file couldn't be opened.
+		
+		List<String> changed = new ArrayList<String>();
+		for(UUID uuid : outcome.changed){
+			//Taken off the list first, or kicking them would issue them a new session on the way out.
+			bouncer.removeUser(uuid);
+			totpVerifier.forget(uuid);
+			if(sessionStore != null){
+				sessionStore.revoke(uuid);
+			}
+			Sponge.getServer().getPlayer(uuid).ifPresent(player -> player.kick(kickMessage()));
+			changed.add(outcome.targets.get(uuid));
+		}
+		
+		List<String> unchanged = new ArrayList<String>();
+		for(Map.Entry<UUID, String> target : outcome.targets.entrySet()){
+			if(!outcome.changed.contains(target.getKey())){
+				unchanged.add(target.getValue());
+			}
+		}
+		
+		logger.info("{} by {}: {}", done(), src.getName(), changed);
+		src.sendMessage(Text.builder(done() + " " + changed.size() + " of " + (outcome.targets.size() + outcome.unknown.size()) + " players"
+				+ (changed.isEmpty() ? "." : ": " + String.join(", ", changed))).color(TextColors.GOLD).build());
+		if(!unchanged.isEmpty()){
+			src.sendMessage(Text.builder("Not registered: " + String.join(", ", unchanged)).color(TextColors.GRAY).build());
+		}
+		if(!outcome.unknown.isEmpty()){
+			src.sendMessage(Text.builder("No such players: " + String.join(", ", outcome.unknown)).color(TextColors.GRAY).build());
+		}
+	}
+	
+	/** @return The UUIDs of the named players that exist, mapped to their names.*/
+	private static CompletableFuture<Map<UUID, String>> resolve(Collection<String> names){
+		if(names.isEmpty()){
+			return CompletableFuture.completedFuture(Collections.emptyMap());
+		}
+		
+		return Sponge.getServer().getGameProfileManager().getAllByName(names, true)
+			.thenApply(profiles -> {
+				Map<UUID, String> resolved = new LinkedHashMap<UUID, String>();
+				for(GameProfile profile : profiles){
+					resolved.put(profile.getUniqueId(), profile.getName().orElse(profile.getUniqueId().toString()));
+				}
+				return resolved;
+			});
+	}
+	
+	/** @return The passed names no profile was found for. Names are matched case-insensitively, like Minecraft does.*/
+	private static List<String> unknown(Collection<String> names, Collection<String> found){
+		Set<String> lowerFound = new LinkedHashSet<String>();
+		for(String name : found){
+			lowerFound.add(name.toLowerCase());
+		}
+		
+		List<String> unknown = new ArrayList<String>();
+		for(String name : names){
+			if(!lowerFound.contains(name.toLowerCase())){
+				unknown.add(name);
+			}
+		}
+		return unknown;
+	}
+	
+	private static final class Outcome {
+		private final Map<UUID, String> targets;
+		private final List<String> unknown;
+		private final Set<UUID> changed;
+		
+		private Outcome(Map<UUID, String> targets, List<String> unknown, List<UUID> changed){
+			this.targets = targets;
+			this.unknown = unknown;
+			this.changed = new LinkedHashSet<UUID>(changed);
+		}
+	}
+	
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColor;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Import.BulkImporter;
+import com.github.heartsemma.enderauth.Import.ImportOptions;
+import com.github.heartsemma.enderauth.Import.ImportProgress;
+import com.github.heartsemma.enderauth.Storage.RegistrationFilter;
+import com.github.heartsemma.enderauth.Storage.RegistrySnapshot;
+import com.github.heartsemma.enderauth.Storage.UserStore;
+import com.github.heartsemma.enderauth.Storage.WriteBehindUserStore;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * /ea admin import: imports players and their keys from a file in EnderAuth's imports directory, in the background.
+ * <br><br>{@code /ea admin import <file> [options]} starts an import (see {@link ImportOptions} for the options), {@code /ea admin import status}
+ * shows how far it has got and {@code /ea admin import cancel} stops it. A stopped or failed import continues from its last checkpoint
+ * when it is started again. Only one import runs at a time.
+ */
+public class ImportCommand implements CommandExecutor{
+
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	
+	private static final String importDirectory = "imports"; //Inside the config directory. Files are only imported from there.
+	
+	private volatile BulkImporter running = null;
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		String arguments = context.<String>getOne("arguments").orElse("status").trim();
+		BulkImporter importer = running;
+		
+		if(arguments.equals("status")){
+			if(importer == null){
+				tell(src, "No import is running. Usage: /ea admin import " + ImportOptions.usage, TextColors.YELLOW);
+			} else {
+				tell(src, "Importing " + importer.getFile().getFileName() + ": " + importer.getProgress().describe(), TextColors.YELLOW);
+			}
+			return CommandResult.success();
+		}
+		
+		if(arguments.equals("cancel")){
+			if(importer == null){
+				throw new CommandException(Text.of("No import is running."));
+			}
+			importer.cancel();
+			tell(src, "The import will stop after the current batch. Start it again to continue where it stopped.", TextColors.YELLOW);
+			return CommandResult.success();
+		}
+		
+		if(importer != null){
+			throw new CommandException(Text.of("An import of " + importer.getFile().getFileName() + " is already running."));
+		}
+		
+		ImportOptions options;
+		try {
+			options = ImportOptions.parse(Arrays.asList(arguments.split("\\s+")));
+		} catch (IllegalArgumentException e) {
+			throw new CommandException(Text.of(e.getMessage() + " Usage: /ea admin import " + ImportOptions.usage));
+		}
+		
+		Path directory = main.getConfigDir().resolve(importDirectory).toAbsolutePath().normalize();
+		Path file = directory.resolve(options.getFile()).normalize();
+		if(!file.startsWith(directory) || !Files.isRegularFile(file)){
+			throw new CommandException(Text.of("There is no file " + options.getFile() + " in " + directory + "."));
+		}
+		
+		start(src, new BulkImporter(file, file.resolveSibling(file.getFileName() + ".checkpoint"), options, this::write, logger, 
+				progress -> report(src, progress)));
+		logger.info("{} started importing {}.", src.getName(), options);
+		tell(src, "Importing " + file.getFileName() + " in the background. See /ea admin import status.", TextColors.GOLD);
+		return CommandResult.success();
+	}
+	
+	/** Stops a running import after its current batch. Called when the server stops; the import continues when it is started again.*/
+	public void cancel(){
+		BulkImporter importer = running;
+		if(importer != null){
+			importer.cancel();
+		}
+	}
+	
+	private synchronized void start(CommandSource src, BulkImporter importer) throws CommandException{
+		if(running != null){
+			throw new CommandException(Text.of("An import of " + running.getFile().getFileName() + " is already running."));
+		}
+		running = importer;
+		
+		new ThreadFactoryBuilder().setNameFormat("EnderAuth-Import").setDaemon(true).build().newThread(() -> {
+			try {
+				ImportProgress progress = importer.run();
+				if(progress.isFinished()){
+					logger.info("Imported {}: {}.", importer.getFile().getFileName(), progress.describe());
+				}
+			} catch (IOException | SQLException | DatabaseException | RuntimeException e) {
+				logger.error("Importing {} stopped; it will continue from its last checkpoint when started again.", importer.getFile().getFileName());
+				e.printStackTrace();
+				registrationLookup.getMainThreadExecutor().execute(() -> 
+						tell(src, "The import stopped: " + e.getMessage() + ". Start it again to continue where it stopped.", TextColors.RED));
+			} finally {
+				running = null;
+			}
+		}).start();
+	}
+	
+	/**
+	 * Runs on the import's thread. Writes a batch of players and makes sure nothing this server has cached about them says otherwise.
+	 * MySQL backed stores are written to in one transaction per batch; the local store, which has no batches, one player at a time.
+	 */
+	private void write(Map<UUID, String> users) throws SQLException, DatabaseException{
+		UserStore store = main.getUserStore();
+		UserCache userCache = UserCache.getInstance();
+		RegistrySnapshot snapshot = main.getRegistrySnapshot();
+		RegistrationFilter filter = main.getRegistrationFilter();
+		
+		if(store instanceof WriteBehindUserStore){
+			Database.getInstance().importUsers(users);
+		} else {
+			for(Map.Entry<UUID, String> user : users.entrySet()){
+				if(!store.isInDatabase(user.getKey())){
+					store.addUser(user.getKey(), user.getValue());
+				}
+			}
+		}
+		
+		for(UUID uuid : users.keySet()){
+			userCache.invalidate(uuid);
+			if(snapshot != null){
+				snapshot.markRegistered(uuid);
+			}
+			if(filter != null){
+				filter.add(uuid);
+			}
+		}
+	}
+	
+	private void report(CommandSource src, ImportProgress progress){
+		String message = (progress.isFinished() ? "Import finished: " : "Importing: ") + progress.describe();
+		logger.info(message);
+		registrationLookup.getMainThreadExecutor().execute(() -> tell(src, message, progress.isFinished() ? TextColors.GREEN : TextColors.YELLOW));
+	}
+	
+	private static void tell(CommandSource src, String message, TextColor color){
+		src.sendMessage(Text.builder(message).color(color).build());
+	}
+	
+}
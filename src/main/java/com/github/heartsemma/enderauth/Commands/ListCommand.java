@@ -0,0 +1,71 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.util.Optional;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+
+/**
+ * /ea admin list [next|&lt;uuid&gt;]: shows a page of registered players in UUID order, from the start, from a UUID,
+ * or after the last page shown (of this or of /ea admin search).
+ */
+public class ListCommand implements CommandExecutor{
+
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		Optional<String> argument = context.getOne("from");
+		logger.debug("List command was entered by {}.", src.getName());
+		
+		if(!argument.isPresent()){
+			UserPages.show(src, "Registered players", UserPages.lowest, UserPages.highest);
+		} else if(argument.get().equalsIgnoreCase("next")){
+			UserPages.showNext(src);
+		} else {
+			UUID from = UUIDUtils.parse(argument.get());
+			if(from == null){
+				throw new CommandException(Text.of("'" + argument.get() + "' is not a UUID. Usage: /ea admin list [next|<uuid>]"));
+			}
+			UserPages.show(src, "Registered players from " + from, from, UserPages.highest);
+		}
+		
+		return CommandResult.success();
+	}
+	
+}
@@ -54,8 +54,6 @@ public class Messenger {
 		
 		Preconditions.checkNotNull(player);
 		
-		logger.debug("Sending introduction message to player.");
-		
 		String messageString1 = "EnderAuth is a plugin that provides Two-Factor Authentication to minecraft players.";
 		Text message1 = Text.builder(messageString1).color(mainColor).build();
 		player.sendMessage(message1);
@@ -67,8 +65,6 @@ public class Messenger {
 		String messageString3 = "Type {INSERT_COMMAND_HERE} to learn more.";
 		Text message3 = Text.builder(messageString3).color(mainColor).build();
 		player.sendMessage(message3);
-		
-		logger.debug("Sent introduction message to player.");
 	}
 
 
@@ -81,13 +77,117 @@ public class Messenger {
 		
 		Preconditions.checkNotNull(player);
 		
-		logger.debug("Sending welcome back message to player");
-		
 		String messageString = "Welcome back " + player.getName() + ". Please login";
 		Text message = Text.builder(messageString).color(mainColor).build();
 		player.sendMessage(message);
+	}
+	
+	
+	/**
+	 * @param player (The registered player who has no key).
+	 * 
+	 * <br><br>This function tells the player that their key was reset and how to set up a new one.
+	 */
+	public void keyReset(Player player) {
 		
-		logger.debug("Sent welcome message to player.");
+		Preconditions.checkNotNull(player);
+		
+		String messageString = "Welcome back " + player.getName() + ". Your EnderAuth key was reset by an administrator. Type /ea register to set up a new one.";
+		Text message = Text.builder(messageString).color(mainColor).build();
+		player.sendMessage(message);
+	}
+	
+	
+	/**
+	 * @param player (The player whose session was resumed).
+	 * 
+	 * <br><br>This function tells the player they were logged in again without having to enter a code.
+	 */
+	public void sessionResumed(Player player) {
+		
+		Preconditions.checkNotNull(player);
+		
+		String messageString = "Welcome back " + player.getName() + ". You are still logged in from your last visit.";
+		Text message = Text.builder(messageString).color(mainColor).build();
+		player.sendMessage(message);
+	}
+	
+	
+	/**
+	 * @param player (The player whose lookup is waiting for the database).
+	 * 
+	 * <br><br>This function tells the player that a lot of players are joining and they will be greeted shortly.
+	 */
+	public void pleaseWait(Player player) {
+		
+		Preconditions.checkNotNull(player);
+		
+		String messageString = "A lot of players are joining right now. EnderAuth will be with you in a moment.";
+		Text message = Text.builder(messageString).color(tertiaryColor).build();
+		player.sendMessage(message);
+	}
+	
+	
+	/**
+	 * @param player (The player that is registering).
+	 * @param preSharedKey (The Base32 encoded key they are being given).
+	 * 
+	 * <br><br>This function shows the player their key, in groups of four so it is easy to type into an authenticator app,
+	 * and tells them how to finish registering.
+	 */
+	public void showKey(Player player, String preSharedKey) {
+		
+		Preconditions.checkNotNull(player);
+		Preconditions.checkNotNull(preSharedKey);
+		
+		StringBuilder groupedKey = new StringBuilder();
+		for(int i = 0; i < preSharedKey.length(); i += 4){
+			if(i > 0){
+				groupedKey.append(' ');
+			}
+			groupedKey.append(preSharedKey, i, Math.min(i + 4, preSharedKey.length()));
+		}
+		
+		String messageString1 = "Add this key to your authenticator app (Google Authenticator, Authy, ...) as a time based key:";
+		Text message1 = Text.builder(messageString1).color(mainColor).build();
+		player.sendMessage(message1);
+		
+		Text message2 = Text.builder(groupedKey.toString()).color(boldColor).build();
+		player.sendMessage(message2);
+		
+		String messageString3 = "Then type /ea register followed by the code the app shows you.";
+		Text message3 = Text.builder(messageString3).color(mainColor).build();
+		player.sendMessage(message3);
+	}
+	
+	
+	/**
+	 * @param player (The player that finished registering).
+	 * 
+	 * <br><br>This function tells the player they are registered and logged in.
+	 */
+	public void registered(Player player) {
+		
+		Preconditions.checkNotNull(player);
+		
+		String messageString = "You are now registered with EnderAuth and logged in. You will need a code from your app every time you join.";
+		Text message = Text.builder(messageString).color(mainColor).build();
+		player.sendMessage(message);
+	}
+	
+	
+	/**
+	 * @param player (The player that tried to register).
+	 * @param reason (Why it didn't work, fit to be shown to the player).
+	 * 
+	 * <br><br>This function tells the player that their registration didn't go through.
+	 */
+	public void registrationFailed(Player player, String reason) {
+		
+		Preconditions.checkNotNull(player);
+		
+		Text message = Text.builder(reason).color(errorColor).build();
+		player.sendMessage(message);
 	}
 	
 	
@@ -1,6 +1,17 @@
 package com.github.heartsemma.enderauth.Commands;
 
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.sql.SQLException;
+import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
 import org.slf4j.Logger;
 
 import org.spongepowered.api.command.CommandException;
@@ -9,23 +20,193 @@ import org.spongepowered.api.command.CommandSource;
 import org.spongepowered.api.command.args.CommandContext;
 import org.spongepowered.api.command.spec.CommandExecutor;
 import org.spongepowered.api.entity.living.player.Player;
+import org.spongepowered.api.text.Text;
 
 import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.Authentication.KeyPool;
+import com.github.heartsemma.enderauth.Authentication.LoginThrottle;
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseExceptions.UUIDNotFoundException;
+import com.github.heartsemma.enderauth.Listeners.InteractionGuard;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
+/**
+ * /ea register: gives the player a key, and /ea register &lt;code&gt;: registers them once they prove their app has it.
+ * <br><br>Everything but showing the result happens off the main thread: checking the database, taking a key from the {@link KeyPool}
+ * and, when confirming, writing the player to the database.
+ * <br>Sponge API 5 can't put pixels on a map item, so the key is shown as text rather than as a QR code.
+ */
 public class RegisterCommand implements CommandExecutor{
 
 	private final Main main = Main.getInstance();
 	private final Logger logger = main.getLogger();
+	private final Messenger messenger = Messenger.getInstance();
+	private final RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	private final UserCache userCache = UserCache.getInstance();
+	private final KeyPool keyPool = KeyPool.getInstance();
+	private final InteractionGuard interactionGuard = InteractionGuard.getInstance();
+	private final LoginThrottle loginThrottle = LoginThrottle.getInstance();
+	
+	//How long a player has to confirm the key they were given. May be pulled from configuration in the future.
+	private static final long pendingMinutes = 10;
+	
+	//Keys handed out but not confirmed yet. A player asking again gets the same key, so their app never holds a key that doesn't work.
+	private final Cache<UUID, String> pendingKeys = CacheBuilder.newBuilder()
+			.expireAfterWrite(pendingMinutes, TimeUnit.MINUTES)
+			.build();
 	
 	@Override
 	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
-		logger.debug("Register command was entered.");
-		
 		if(!(src instanceof Player)){
-			logger.debug("The command was entered by a non-player; that's not what this is for."); 
+			throw new CommandException(Text.of("Only players can register."));
+		}
+		
+		Player player = (Player) src;
+		Optional<String> code = context.getOne("code");
+		
+		try {
+			if(code.isPresent()){
+				confirm(player, code.get());
+			} else {
+				begin(player);
+			}
+		} catch (RejectedExecutionException e) {
+			throw new CommandException(Text.of("EnderAuth is busy right now. Please try again in a moment."));
+		}
+		
+		return CommandResult.success();
+	}
+	
+	private void begin(Player player){
+		UUID uuid = player.getUniqueId();
+		
+		CompletableFuture.supplyAsync(() -> {
+			if(hasKey(uuid)){
+				return null;
+			}
+			return takeKey(uuid);
+		}, registrationLookup.getIOExecutor())
+			.whenCompleteAsync((key, error) -> {
+				if(!player.isOnline()){
+					return;
+				}
+				
+				if(error != null){
+					logger.error("EnderAuth was unable to prepare a key for a registering player.");
+					error.printStackTrace();
+					messenger.registrationFailed(player, "EnderAuth couldn't prepare your key right now. Please try again in a moment.");
+				} else if(key == null){
+					messenger.registrationFailed(player, "You are already registered.");
+				} else {
+					messenger.showKey(player, key);
+				}
+			}, registrationLookup.getMainThreadExecutor());
+	}
+	
+	private void confirm(Player player, String input){
+		UUID uuid = player.getUniqueId();
+		String key = pendingKeys.getIfPresent(uuid);
+		
+		if(key == null){
+			messenger.registrationFailed(player, "Type /ea register first to get your key.");
+			return;
 		}
 		
-		return null;
+		int code = TotpVerifier.parseCode(input);
+		if(code < 0){
+			messenger.registrationFailed(player, "That code isn't right. Check that your app's clock is correct and try again.");
+			return;
+		}
+		
+		//Throttled and checked for replays like any login; with the key passed in, this never touches the database.
+		LoginThrottle.Outcome outcome;
+		try {
+			outcome = loginThrottle.attempt(uuid, addressOf(player), code, TotpVerifier.decode(key));
+		} catch (SQLException | DatabaseException e) {
+			logger.error("EnderAuth was unable to check a registering player's code.");
+			e.printStackTrace();
+			messenger.registrationFailed(player, "EnderAuth couldn't check your code right now. Please try again in a moment.");
+			return;
+		}
+		
+		switch(outcome){
+		case ACCEPTED:
+			break;
+		case THROTTLED:
+			messenger.registrationFailed(player, "Too many attempts. Please wait a little before trying again.");
+			return;
+		case REPLAYED:
+			messenger.registrationFailed(player, "That code was already used. Wait for your app to show a new one.");
+			return;
+		default:
+			messenger.registrationFailed(player, "That code isn't right. Check that your app's clock is correct and try again.");
+			return;
+		}
+		
+		CompletableFuture.supplyAsync(() -> {
+			try {
+				//A player whose key was reset is still registered, and only gets their new key.
+				if(userCache.isInDatabase(uuid)){
+					return userCache.setTotpKey(uuid, key);
+				}
+				userCache.addUser(uuid, key);
+				return true;
+			} catch (SQLException | DatabaseException e) {
+				throw new CompletionException(e);
+			}
+		}, registrationLookup.getIOExecutor())
+			.whenCompleteAsync((saved, error) -> {
+				if(error != null){
+					logger.error("EnderAuth was unable to save a player's registration.");
+					error.printStackTrace();
+					if(player.isOnline()){
+						messenger.registrationFailed(player, "EnderAuth couldn't save your registration. Please try again in a moment.");
+					}
+					return;
+				}
+				
+				pendingKeys.invalidate(uuid);
+				if(!saved){
+					if(player.isOnline()){
+						messenger.registrationFailed(player, "You are already registered.");
+					}
+					return;
+				}
+				if(player.isOnline()){
+					interactionGuard.authenticate(uuid);
+					messenger.registered(player);
+				}
+			}, registrationLookup.getMainThreadExecutor());
+	}
+	
+	//Null if the address was never resolved; the player is then only throttled by their UUID.
+	private static InetAddress addressOf(Player player){
+		InetSocketAddress address = player.getConnection().getAddress();
+		return address == null ? null : address.getAddress();
+	}
+	
+	//Runs on an I/O thread. Players registered without a key, such as those whose key was reset, may register again.
+	private boolean hasKey(UUID uuid){
+		try {
+			return userCache.isInDatabase(uuid) && userCache.getTotpKey(uuid) != null;
+		} catch (UUIDNotFoundException e) {
+			return false; //Unregistered in between.
+		} catch (SQLException | DatabaseException e) {
+			throw new CompletionException(e);
+		}
+	}
+	
+	//Runs on an I/O thread.
+	private String takeKey(UUID uuid){
+		try {
+			return pendingKeys.get(uuid, keyPool::take);
+		} catch (ExecutionException e) {
+			throw new CompletionException(e.getCause());
+		}
 	}
 	
 }
@@ -0,0 +1,63 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import org.spongepowered.api.text.Text;
+
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+
+/**
+ * /ea admin reset &lt;player...&gt;: clears the players' keys. They stay registered, so they are still held when they join,
+ * and are told to set up a new key with /ea register.
+ */
+public class ResetCommand extends BatchUserCommand{
+
+	@Override
+	protected String usage(){
+		return "/ea admin reset <player...>";
+	}
+	
+	@Override
+	protected String done(){
+		return "Reset";
+	}
+	
+	@Override
+	protected List<UUID> apply(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		return UserCache.getInstance().resetUsers(uuids);
+	}
+	
+	@Override
+	protected Text kickMessage(){
+		return Text.of("Your EnderAuth key was reset. Rejoin and type /ea register to set up a new one.");
+	}
+	
+}
@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.util.UUID;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+
+/**
+ * /ea admin search &lt;uuid prefix|name&gt;: shows the registered players whose UUID starts with the passed hexadecimal digits,
+ * or the player with the passed name. Text made only of hexadecimal digits and dashes is taken to be the start of a UUID.
+ */
+public class SearchCommand implements CommandExecutor{
+
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		String query = context.<String>getOne("query").orElse("").trim();
+		logger.debug("Search command was entered by {}.", src.getName());
+		
+		if(query.isEmpty()){
+			throw new CommandException(Text.of("Usage: /ea admin search <uuid prefix|name>"));
+		}
+		if(query.equalsIgnoreCase("next")){
+			UserPages.showNext(src);
+			return CommandResult.success();
+		}
+		
+		UUID[] range = UserPages.prefixRange(query);
+		if(range != null){
+			UserPages.show(src, "Registered players whose UUID starts with " + query, range[0], range[1]);
+			return CommandResult.success();
+		}
+		
+		//A name. Profiles are looked up asynchronously, and cached by the server.
+		Sponge.getServer().getGameProfileManager().get(query)
+			.whenCompleteAsync((profile, error) -> {
+				if(error != null || profile == null){
+					src.sendMessage(Text.builder("There is no player called " + query + ".").color(TextColors.RED).build());
+					return;
+				}
+				try {
+					UserPages.show(src, "Registered players called " + query, profile.getUniqueId(), profile.getUniqueId());
+				} catch (CommandException e) {
+					src.sendMessage(Text.builder(e.getMessage()).color(TextColors.RED).build());
+				}
+			}, registrationLookup.getMainThreadExecutor());
+		
+		return CommandResult.success();
+	}
+	
+}
@@ -0,0 +1,61 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.Metrics.Stats;
+
+/**
+ * /ea stats: shows latencies, failures, pool and queue gauges. The same numbers are available through JMX.
+ */
+public class StatsCommand implements CommandExecutor{
+
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final Stats stats = Stats.getInstance();
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		logger.debug("Stats command was entered by {}.", src.getName());
+		
+		src.sendMessage(Text.builder("EnderAuth statistics").color(TextColors.GOLD).build());
+		for(String line : stats.describe()){
+			src.sendMessage(Text.builder(line).color(TextColors.YELLOW).build());
+		}
+		
+		return CommandResult.success();
+	}
+	
+}
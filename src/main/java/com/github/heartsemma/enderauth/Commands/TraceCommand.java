@@ -0,0 +1,108 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandResult;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.command.args.CommandContext;
+import org.spongepowered.api.command.spec.CommandExecutor;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.Tracing.Trace;
+import com.github.heartsemma.enderauth.Tracing.TraceBuffer;
+
+/**
+ * /ea trace: writes the in-memory trace to a file in EnderAuth's config directory, and shows the most recent entries.
+ */
+public class TraceCommand implements CommandExecutor{
+
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	
+	private static final int linesShown = 10; //The rest is only in the file.
+	
+	@Override
+	public CommandResult execute(CommandSource src, CommandContext context) throws CommandException {
+		TraceBuffer buffer = Trace.getBuffer();
+		Path file = main.getConfigDir().resolve("traces")
+				.resolve("trace-" + new SimpleDateFormat("yyyyMMdd-HHmmss").format(new Date()) + ".txt");
+		
+		//The dump holds the whole buffer, so both it and the write happen off the main thread; only the summary comes back.
+		try {
+			CompletableFuture.supplyAsync(() -> {
+				List<String> lines = buffer.dump();
+				try {
+					Files.createDirectories(file.getParent());
+					Files.write(file, lines, StandardCharsets.UTF_8);
+				} catch (IOException e) {
+					throw new CompletionException(e);
+				}
+				
+				List<Text> summary = new ArrayList<Text>(linesShown + 1);
+				summary.add(Text.builder("EnderAuth trace: " + lines.size() + " entries (of " + buffer.getRecordedCount() + " recorded) written to " + file)
+						.color(TextColors.GOLD).build());
+				for(String line : lines.subList(Math.max(0, lines.size() - linesShown), lines.size())){
+					summary.add(Text.builder(line).color(TextColors.GRAY).build());
+				}
+				return summary;
+			}, registrationLookup.getIOExecutor())
+				.whenCompleteAsync((summary, error) -> {
+					if(error != null){
+						logger.error("EnderAuth was unable to write its trace to {}.", file);
+						error.printStackTrace();
+						src.sendMessage(Text.builder("Unable to write the trace to " + file + ".").color(TextColors.RED).build());
+						return;
+					}
+					for(Text line : summary){
+						src.sendMessage(line);
+					}
+				}, registrationLookup.getMainThreadExecutor());
+		} catch (RejectedExecutionException e) {
+			throw new CommandException(Text.of("EnderAuth is busy right now. Please try again in a moment."));
+		}
+		
+		return CommandResult.success();
+	}
+	
+}
@@ -0,0 +1,241 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Commands;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+
+import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.CommandException;
+import org.spongepowered.api.command.CommandSource;
+import org.spongepowered.api.profile.GameProfile;
+import org.spongepowered.api.text.Text;
+import org.spongepowered.api.text.format.TextColors;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Storage.WriteBehindUserStore;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Shows admins pages of registered players, for /ea admin list and /ea admin search.
+ * <br><br>Pages are read by key: a page is the first few players in a range of UUIDs, and the next page is the same range starting just
+ * after the last UUID shown. Each admin's place is remembered for a while, so {@code next} carries on where they left off. Every page
+ * costs one indexed query, however deep into the table it is. The query and the name lookups run off the main thread; the page is sent
+ * back on it once they are done.
+ */
+final class UserPages {
+	
+	private static final int pageSize = 10;
+	private static final long cursorMinutes = 10; //How long an admin's place is remembered.
+	
+	/** The lowest and highest UUIDs, in the byte order the user table sorts them in.*/
+	static final UUID lowest = new UUID(0, 0);
+	static final UUID highest = new UUID(-1, -1);
+	
+	private static final Cache<String, Cursor> cursors = CacheBuilder.newBuilder()
+			.expireAfterAccess(cursorMinutes, TimeUnit.MINUTES)
+			.build();
+	
+	private UserPages(){}
+	
+	/**
+	 * @param src (Who to show the page to)
+	 * @param title (What is being shown, for the header)
+	 * @param from (The lowest UUID to show)
+	 * @param to (The highest UUID to show)
+	 * 
+	 * @throws CommandException If players can't be listed from the user store in use, or EnderAuth is too busy to read them now.
+	 */
+	static void show(CommandSource src, String title, UUID from, UUID to) throws CommandException{
+		Database database = getDatabase();
+		Main main = Main.getInstance();
+		Logger logger = main.getLogger();
+		RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+		
+		CompletableFuture<Map<UUID, Boolean>> users;
+		try {
+			users = CompletableFuture.supplyAsync(() -> {
+				try {
+					return database.getUsers(from, to, pageSize);
+				} catch (SQLException | DatabaseException e) {
+					throw new CompletionException(e);
+				}
+			}, registrationLookup.getIOExecutor());
+		} catch (RejectedExecutionException e) {
+			throw new CommandException(Text.of("EnderAuth is busy right now. Please try again in a moment."));
+		}
+		
+		users
+			.thenCompose(page -> namesOf(page.keySet()).thenApply(names -> new Page(page, names)))
+			.whenCompleteAsync((page, error) -> {
+				if(error != null){
+					logger.error("EnderAuth was unable to list registered players.");
+					error.printStackTrace();
+					src.sendMessage(Text.builder("EnderAuth couldn't read its players right now. Please try again in a moment.").color(TextColors.RED).build());
+					return;
+				}
+				
+				src.sendMessage(Text.builder(title).color(TextColors.GOLD).build());
+				if(page.users.isEmpty()){
+					src.sendMessage(Text.builder("No more players.").color(TextColors.GRAY).build());
+				}
+				
+				UUID last = null;
+				for(Map.Entry<UUID, Boolean> user : page.users.entrySet()){
+					last = user.getKey();
+					String name = page.names.getOrDefault(last, "?");
+					src.sendMessage(Text.builder(name + "  " + last + (user.getValue() ? "" : "  (key reset)")).color(TextColors.YELLOW).build());
+				}
+				
+				UUID next = last == null ? null : successor(last);
+				if(page.users.size() == pageSize && next != null && compare(next, to) <= 0){
+					cursors.put(src.getName(), new Cursor(title, next, to));
+					src.sendMessage(Text.builder("Type /ea admin list next for more.").color(TextColors.GRAY).build());
+				} else {
+					cursors.invalidate(src.getName());
+				}
+			}, registrationLookup.getMainThreadExecutor());
+	}
+	
+	/**
+	 * @param src (Who to show the page to)
+	 * 
+	 * <br><br>Shows the page after the last one shown to the source, by either command.
+	 * 
+	 * @throws CommandException If there is no next page, or players can't be listed from the user store in use.
+	 */
+	static void showNext(CommandSource src) throws CommandException{
+		Cursor cursor = cursors.getIfPresent(src.getName());
+		if(cursor == null){
+			throw new CommandException(Text.of("There is no next page. Start with /ea admin list or /ea admin search."));
+		}
+		show(src, cursor.title, cursor.next, cursor.to);
+	}
+	
+	/**
+	 * @param hex (Hexadecimal digits, possibly with dashes, as a UUID starts)
+	 * @return The lowest and highest UUIDs starting with the digits, or null if the text isn't the start of a UUID.
+	 */
+	static UUID[] prefixRange(String hex){
+		String digits = hex.replace("-", "");
+		if(digits.isEmpty() || digits.length() > 32){
+			return null;
+		}
+		for(int i=0; i<digits.length(); i++){
+			char c = digits.charAt(i);
+			if(!((c >= '0' && c <= '9') || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F'))){
+				return null;
+			}
+		}
+		
+		StringBuilder from = new StringBuilder(digits);
+		StringBuilder to = new StringBuilder(digits);
+		while(from.length() < 32){
+			from.append('0');
+			to.append('f');
+		}
+		return new UUID[]{ UUIDUtils.parse(from), UUIDUtils.parse(to) };
+	}
+	
+	/** @return The database to page through. Only the MySQL backed store can be paged through by key.*/
+	private static Database getDatabase() throws CommandException{
+		if(!(Main.getInstance().getUserStore() instanceof WriteBehindUserStore)){
+			throw new CommandException(Text.of("Players can only be listed when EnderAuth keeps them in MySQL."));
+		}
+		return Database.getInstance();
+	}
+	
+	/** @return The names of the players, as far as they are known. Never fails; unknown names are simply missing.*/
+	private static CompletableFuture<Map<UUID, String>> namesOf(Collection<UUID> uuids){
+		if(uuids.isEmpty()){
+			return CompletableFuture.completedFuture(Collections.emptyMap());
+		}
+		
+		return Sponge.getServer().getGameProfileManager().getAllById(uuids, true)
+			.thenApply(profiles -> {
+				Map<UUID, String> names = new HashMap<UUID, String>();
+				for(GameProfile profile : profiles){
+					profile.getName().ifPresent(name -> names.put(profile.getUniqueId(), name));
+				}
+				return names;
+			})
+			.exceptionally(error -> Collections.emptyMap());
+	}
+	
+	/** @return The UUID right after the passed one in byte order, or null if it is the highest.*/
+	static UUID successor(UUID uuid){
+		if(uuid.getLeastSignificantBits() != -1){
+			return new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits() + 1);
+		}
+		if(uuid.getMostSignificantBits() != -1){
+			return new UUID(uuid.getMostSignificantBits() + 1, 0);
+		}
+		return null;
+	}
+	
+	/** Compares in the byte order of the user table, which is unsigned, unlike {@link UUID#compareTo(UUID)}.*/
+	private static int compare(UUID a, UUID b){
+		int most = Long.compareUnsigned(a.getMostSignificantBits(), b.getMostSignificantBits());
+		return most != 0 ? most : Long.compareUnsigned(a.getLeastSignificantBits(), b.getLeastSignificantBits());
+	}
+	
+	/** Where an admin's next page starts.*/
+	private static final class Cursor {
+		private final String title;
+		private final UUID next;
+		private final UUID to;
+		
+		private Cursor(String title, UUID next, UUID to){
+			this.title = title;
+			this.next = next;
+			this.to = to;
+		}
+	}
+	
+	private static final class Page {
+		private final Map<UUID, Boolean> users;
+		private final Map<UUID, String> names;
+		
+		private Page(Map<UUID, Boolean> users, Map<UUID, String> names){
+			this.users = users;
+			this.names = names;
+		}
+	}
+}
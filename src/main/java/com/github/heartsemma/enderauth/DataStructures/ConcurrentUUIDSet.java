@@ -0,0 +1,279 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import java.util.UUID;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A thread-safe set of UUIDs, stored as their two {@code long} halves in open-addressing hash tables.
+ * <br><br>The set is split into stripes that each have their own lock, so writers on different stripes don't contend.
+ * Lookups normally take no lock at all (they use the stripe's optimistic read stamp) and never allocate, 
+ * which makes {@link #contains(long, long)} cheap enough to call on every move event.
+ */
+public class ConcurrentUUIDSet {
+	
+	private static final int stripeCount = 16; //Must be a power of two.
+	private static final int initialStripeCapacity = 16; //Must be a power of two.
+	
+	private final Stripe[] stripes;
+	
+	public ConcurrentUUIDSet(){
+		stripes = new Stripe[stripeCount];
+		for(int i=0; i<stripeCount; i++){
+			stripes[i] = new Stripe();
+		}
+	}
+	
+	/** @return True if the UUID was not in the set yet.*/
+	public boolean add(UUID uuid){ return add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+	
+	/** @return True if the UUID is in the set.*/
+	public boolean contains(UUID uuid){ return contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+	
+	/** @return True if the UUID was in the set.*/
+	public boolean remove(UUID uuid){ return remove(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()); }
+	
+	/**
+	 * @param mostSignificantBits (The first half of the UUID)
+	 * @param leastSignificantBits (The second half of the UUID)
+	 * @return True if the UUID was not in the set yet.
+	 */
+	public boolean add(long mostSignificantBits, long leastSignificantBits){
+		int hash = hash(mostSignificantBits, leastSignificantBits);
+		return stripeFor(hash).add(mostSignificantBits, leastSignificantBits, hash);
+	}
+	
+	/**
+	 * @param mostSignificantBits (The first half of the UUID)
+	 * @param leastSignificantBits (The second half of the UUID)
+	 * @return True if the UUID is in the set. Does not allocate.
+	 */
+	public boolean contains(long mostSignificantBits, long leastSignificantBits){
+		int hash = hash(mostSignificantBits, leastSignificantBits);
+		return stripeFor(hash).contains(mostSignificantBits, leastSignificantBits, hash);
+	}
+	
+	/**
+	 * @param mostSignificantBits (The first half of the UUID)
+	 * @param leastSignificantBits (The second half of the UUID)
+	 * @return True if the UUID was in the set.
+	 */
+	public boolean remove(long mostSignificantBits, long leastSignificantBits){
+		int hash = hash(mostSignificantBits, leastSignificantBits);
+		return stripeFor(hash).remove(mostSignificantBits, leastSignificantBits, hash);
+	}
+	
+	/** @return The amount of UUIDs in the set. Only a snapshot if other threads are writing.*/
+	public int size(){
+		int size = 0;
+		for(Stripe stripe : stripes){
+			size += stripe.size();
+		}
+		return size;
+	}
+	
+	/** Removes every UUID from the set.*/
+	public void clear(){
+		for(Stripe stripe : stripes){
+			stripe.clear();
+		}
+	}
+	
+	private Stripe stripeFor(int hash){
+		//The low bits pick the slot within a stripe, so the high bits pick the stripe.
+		return stripes[hash >>> 28 & (stripeCount - 1)];
+	}
+	
+	//Package-private so that tests can find UUIDs that collide.
+	static int hash(long mostSignificantBits, long leastSignificantBits){
+		//Version 4 UUIDs are mostly random already, but offline-mode (version 3) UUIDs are not, so the halves are mixed properly.
+		long h = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	/*
+	 * One independently locked open-addressing table with linear probing.
+	 * Keys are interleaved in a single array: keys[2i] is the first half of slot i's UUID, keys[2i+1] the second half.
+	 */
+	private static final class Stripe {
+		
+		private static final byte empty = 0;
+		private static final byte full = 1;
+		private static final byte deleted = 2; //Tombstone, so probes for other keys keep going past a removed one.
+		
+		private final StampedLock lock = new StampedLock();
+		
+		private long[] keys = new long[initialStripeCapacity * 2];
+		private byte[] states = new byte[initialStripeCapacity];
+		private int size; //Full slots.
+		private int used; //Full and deleted slots.
+		
+		boolean contains(long mostSignificantBits, long leastSignificantBits, int hash){
+			long stamp = lock.tryOptimisticRead();
+			if(stamp != 0){
+				boolean found = find(keys, states, mostSignificantBits, leastSignificantBits, hash) >= 0;
+				if(lock.validate(stamp)){
+					return found;
+				}
+			}
+			
+			//A writer got in the way; read again under the lock.
+			stamp = lock.readLock();
+			try {
+				return find(keys, states, mostSignificantBits, leastSignificantBits, hash) >= 0;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		
+		boolean add(long mostSignificantBits, long leastSignificantBits, int hash){
+			long stamp = lock.writeLock();
+			try {
+				if(find(keys, states, mostSignificantBits, leastSignificantBits, hash) >= 0){
+					return false;
+				}
+				
+				if((used + 1) * 4 > states.length * 3){ //Keep the load factor, tombstones included, under 0.75.
+					rehash(size * 2 >= states.length ? states.length * 2 : states.length);
+				}
+				
+				int mask = states.length - 1;
+				int slot = hash & mask;
+				while(states[slot] == full){
+					slot = (slot + 1) & mask;
+				}
+				
+				if(states[slot] == empty){
+					used++;
+				}
+				keys[slot * 2] = mostSignificantBits;
+				keys[slot * 2 + 1] = leastSignificantBits;
+				states[slot] = full;
+				size++;
+				return true;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		boolean remove(long mostSignificantBits, long leastSignificantBits, int hash){
+			long stamp = lock.writeLock();
+			try {
+				int slot = find(keys, states, mostSignificantBits, leastSignificantBits, hash);
+				if(slot < 0){
+					return false;
+				}
+				
+				states[slot] = deleted;
+				size--;
+				return true;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		int size(){
+			long stamp = lock.readLock();
+			try {
+				return size;
+			} finally {
+				lock.unlockRead(stamp);
+			}
+		}
+		
+		void clear(){
+			long stamp = lock.writeLock();
+			try {
+				keys = new long[initialStripeCapacity * 2];
+				states = new byte[initialStripeCapacity];
+				size = 0;
+				used = 0;
+			} finally {
+				lock.unlockWrite(stamp);
+			}
+		}
+		
+		//Must hold the write lock.
+		private void rehash(int capacity){
+			long[] oldKeys = keys;
+			byte[] oldStates = states;
+			
+			long[] newKeys = new long[capacity * 2];
+			byte[] newStates = new byte[capacity];
+			int mask = capacity - 1;
+			
+			for(int i=0; i<oldStates.length; i++){
+				if(oldStates[i] == full){
+					long mostSignificantBits = oldKeys[i * 2];
+					long leastSignificantBits = oldKeys[i * 2 + 1];
+					
+					int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+					while(newStates[slot] != empty){
+						slot = (slot + 1) & mask;
+					}
+					newKeys[slot * 2] = mostSignificantBits;
+					newKeys[slot * 2 + 1] = leastSignificantBits;
+					newStates[slot] = full;
+				}
+			}
+			
+			keys = newKeys;
+			states = newStates;
+			used = size;
+		}
+		
+		/*
+		 * Returns the slot holding the UUID, or -1.
+		 * The arrays are passed in rather than read from the fields, so an optimistic reader always probes one consistent pair of arrays.
+		 * The probe is bounded by the table's length, so it terminates even if a writer modifies the arrays underneath it.
+		 */
+		private static int find(long[] keys, byte[] states, long mostSignificantBits, long leastSignificantBits, int hash){
+			int capacity = states.length;
+			if(keys.length < capacity * 2){ //Torn read of a resize; the caller's validation will fail.
+				return -1;
+			}
+			
+			int mask = capacity - 1;
+			int slot = hash & mask;
+			
+			for(int probes=0; probes<capacity; probes++){
+				byte state = states[slot];
+				if(state == empty){
+					return -1;
+				}
+				if(state == full && keys[slot * 2] == mostSignificantBits && keys[slot * 2 + 1] == leastSignificantBits){
+					return slot;
+				}
+				slot = (slot + 1) & mask;
+			}
+			
+			return -1;
+		}
+	}
+}
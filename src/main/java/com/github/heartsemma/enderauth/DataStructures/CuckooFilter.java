@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * A cuckoo filter over UUIDs (given as their two {@code long} halves): a compact set that may answer "maybe" for a UUID it was never given,
+ * but never answers "no" for one it was.
+ * <br><br>Each bucket holds four 16 bit fingerprints packed into one {@code long}, so the filter uses about 2.4 bytes per entry at its
+ * target load and has a false positive rate of about 0.01%. Unlike a Bloom filter, entries can be removed again.
+ * <br><br>Lookups take no lock and don't allocate. Inserts and removals are serialized. An insert that finds both buckets full kicks
+ * fingerprints along to their other buckets, and puts every one of them back where it was if that doesn't free a slot in time.
+ * While a fingerprint is being kicked along it is in no bucket at all, so a lookup that misses while an insert or removal was going on
+ * is repeated under the lock, and a relocation can never produce a false "no".
+ */
+public class CuckooFilter {
+	
+	private static final int slotsPerBucket = 4;
+	private static final int fingerprintBits = 16;
+	private static final long fingerprintMask = (1L << fingerprintBits) - 1;
+	private static final double targetLoad = 0.85;
+	private static final int maximumRelocations = 500;
+	
+	private final long[] buckets;
+	private final int bucketMask;
+	private final StampedLock lock = new StampedLock();
+	
+	private int size; //Guarded by lock.
+	private volatile boolean saturated; //Set if an insert ever fails; the filter can then no longer rule anything out.
+	
+	/**
+	 * @param expectedEntries (How many UUIDs the filter should hold comfortably)
+	 */
+	public CuckooFilter(int expectedEntries){
+		long wanted = (long) Math.ceil(Math.max(expectedEntries, 1) / (slotsPerBucket * targetLoad));
+		int bucketCount = Integer.highestOneBit((int) Math.min(Math.max(wanted, 2), 1 << 30) - 1) << 1;
+		buckets = new long[bucketCount];
+		bucketMask = bucketCount - 1;
+	}
+	
+	/**
+	 * @return False if the UUID is definitely not in the filter. True if it might be.
+	 */
+	public boolean mightContain(long mostSignificantBits, long leastSignificantBits){
+		if(saturated){
+			return true;
+		}
+		
+		long hash = hash(mostSignificantBits, leastSignificantBits);
+		int fingerprint = fingerprint(hash);
+		int first = (int) hash & bucketMask;
+		int second = alternate(first, fingerprint);
+		
+		long stamp = lock.tryOptimisticRead();
+		if(contains(buckets[first], fingerprint) || contains(buckets[second], fingerprint)){
+			return true;
+		}
+		if(stamp != 0 && lock.validate(stamp)){
+			return false;
+		}
+		
+		//An insert or removal was going on; look again without one.
+		stamp = lock.readLock();
+		try {
+			return contains(buckets[first], fingerprint) || contains(buckets[second], fingerprint);
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+	
+	/**
+	 * @return False if the filter is too full to take the UUID. It then answers "maybe" for everything until it is rebuilt.
+	 * 
+	 * <br><br>Adding a UUID twice stores it twice; it then has to be removed twice as well.
+	 */
+	public boolean add(long mostSignificantBits, long leastSignificantBits){
+		long hash = hash(mostSignificantBits, leastSignificantBits);
+		int fingerprint = fingerprint(hash);
+		int first = (int) hash & bucketMask;
+		int second = alternate(first, fingerprint);
+		
+		long stamp = lock.writeLock();
+		try {
+			if(insert(first, fingerprint) || insert(second, fingerprint)){
+				size++;
+				return true;
+			}
+			
+			if(relocate(ThreadLocalRandom.current().nextBoolean() ? first : second, fingerprint)){
+				size++;
+				return true;
+			}
+			
+			saturated = true;
+			return false;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+	
+	/**
+	 * @return True if a matching fingerprint was removed.
+	 * 
+	 * <br><br>Only remove UUIDs that were actually added; removing anything else may remove another UUID's fingerprint.
+	 */
+	public boolean remove(long mostSignificantBits, long leastSignificantBits){
+		long hash = hash(mostSignificantBits, leastSignificantBits);
+		int fingerprint = fingerprint(hash);
+		int first = (int) hash & bucketMask;
+		int second = alternate(first, fingerprint);
+		
+		long stamp = lock.writeLock();
+		try {
+			if(delete(first, fingerprint) || delete(second, fingerprint)){
+				size--;
+				return true;
+			}
+			return false;
+		} finally {
+			lock.unlockWrite(stamp);
+		}
+	}
+	
+	/** @return The amount of fingerprints stored.*/
+	public int size(){
+		long stamp = lock.readLock();
+		try {
+			return size;
+		} finally {
+			lock.unlockRead(stamp);
+		}
+	}
+	
+	/** @return True if an insert has failed, in which case the filter answers "maybe" for everything.*/
+	public boolean isSaturated(){ return saturated; }
+	
+	/** @return The amount of memory the filter's table takes, in bytes.*/
+	public long getMemoryBytes(){ return (long) buckets.length * Long.BYTES; }
+	
+	/** @return The fraction of slots in use.*/
+	public double getLoadFactor(){ return (double) size() / (buckets.length * slotsPerBucket); }
+	
+	/** @return The expected chance that a UUID that was never added is reported as "maybe", at the current load.*/
+	public double getExpectedFalsePositiveRate(){
+		if(saturated){
+			return 1;
+		}
+		//Two buckets of four slots are checked, and each occupied slot matches a random fingerprint with probability 1/(2^16 - 1).
+		double occupiedSlotsChecked = 2 * slotsPerBucket * getLoadFactor();
+		return 1 - Math.pow(1 - 1.0 / fingerprintMask, occupiedSlotsChecked);
+	}
+	
+	/*
+	 * Must hold the write lock. Puts the fingerprint into a random slot of the full bucket, and carries the fingerprint it evicted 
+	 * to that one's other bucket, and so on, until one of them finds a free slot. If none does within the allowed relocations, 
+	 * every swap is undone in reverse, leaving the table exactly as it was, and false is returned.
+	 */
+	private boolean relocate(int bucket, int fingerprint){
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+		int[] path = new int[maximumRelocations * 2]; //Bucket and slot of each swap, in order.
+		int carried = fingerprint;
+		
+		for(int relocation=0; relocation<maximumRelocations; relocation++){
+			int slot = random.nextInt(slotsPerBucket);
+			int evicted = get(buckets[bucket], slot);
+			buckets[bucket] = set(buckets[bucket], slot, carried);
+			path[relocation * 2] = bucket;
+			path[relocation * 2 + 1] = slot;
+			
+			carried = evicted;
+			bucket = alternate(bucket, carried);
+			if(insert(bucket, carried)){
+				return true;
+			}
+		}
+		
+		//Each slot on the path gets back the fingerprint that was evicted from it, which is the one carried out of the swap after it.
+		for(int relocation=maximumRelocations - 1; relocation>=0; relocation--){
+			int pathBucket = path[relocation * 2];
+			int pathSlot = path[relocation * 2 + 1];
+			int placed = get(buckets[pathBucket], pathSlot);
+			buckets[pathBucket] = set(buckets[pathBucket], pathSlot, carried);
+			carried = placed;
+		}
+		return false;
+	}
+	
+	private boolean insert(int bucket, int fingerprint){
+		long value = buckets[bucket];
+		for(int slot=0; slot<slotsPerBucket; slot++){
+			if(get(value, slot) == 0){
+				buckets[bucket] = set(value, slot, fingerprint);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private boolean delete(int bucket, int fingerprint){
+		long value = buckets[bucket];
+		for(int slot=0; slot<slotsPerBucket; slot++){
+			if(get(value, slot) == fingerprint){
+				buckets[bucket] = set(value, slot, 0);
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static boolean contains(long bucket, int fingerprint){
+		for(int slot=0; slot<slotsPerBucket; slot++){
+			if(get(bucket, slot) == fingerprint){
+				return true;
+			}
+		}
+		return false;
+	}
+	
+	private static int get(long bucket, int slot){
+		return (int) (bucket >>> (slot * fingerprintBits) & fingerprintMask);
+	}
+	
+	private static long set(long bucket, int slot, int fingerprint){
+		int shift = slot * fingerprintBits;
+		return bucket & ~(fingerprintMask << shift) | ((long) fingerprint << shift);
+	}
+	
+	private int alternate(int bucket, int fingerprint){
+		//Partial-key cuckoo hashing: the other bucket is derived from the fingerprint alone, so it can be found again without the UUID.
+		return (bucket ^ (int) (fingerprint * 0x5BD1E995L)) & bucketMask;
+	}
+	
+	private static int fingerprint(long hash){
+		int fingerprint = (int) (hash >>> 48);
+		return fingerprint == 0 ? 1 : fingerprint; //Zero marks an empty slot.
+	}
+	
+	private static long hash(long mostSignificantBits, long leastSignificantBits){
+		long h = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		h *= 0xC4CEB9FE1A85EC53L;
+		h ^= h >>> 33;
+		return h;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import java.util.HashMap;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * Token bucket rate limits for an open ended set of keys (players, addresses), split over lock stripes.
+ * <br><br>Each key gets a bucket of {@code capacity} tokens that refills at {@code tokensPerSecond}; every attempt takes one token.
+ * A key only contends with the keys that hash to the same stripe, so many keys can be checked at once without a global lock.
+ * A key that has no bucket is treated as having a full one, so buckets of keys that have been idle long enough to fill up again
+ * may be dropped with {@link #remove(Object)} without changing any outcome; see {@link #getRefillMillis()}.
+ */
+public class StripedTokenBuckets<K> {
+	
+	private final double capacity;
+	private final double tokensPerNano;
+	private final Stripe<K>[] stripes;
+	private final int stripeMask;
+	
+	/**
+	 * @param capacity (How many attempts may be made in a burst)
+	 * @param tokensPerSecond (How many attempts per second may be made in the long run)
+	 * @param stripeCount (How many locks the buckets are split over, rounded up to a power of two)
+	 */
+	public StripedTokenBuckets(int capacity, double tokensPerSecond, int stripeCount){
+		Preconditions.checkArgument(capacity > 0, "capacity must be positive");
+		Preconditions.checkArgument(tokensPerSecond > 0, "tokensPerSecond must be positive");
+		Preconditions.checkArgument(stripeCount > 0 && stripeCount <= 1 << 16, "stripeCount must be between 1 and 2^16");
+		
+		int roundedStripes = Integer.highestOneBit(stripeCount - 1 | 1) << 1;
+		this.capacity = capacity;
+		this.tokensPerNano = tokensPerSecond / 1e9;
+		@SuppressWarnings("unchecked")
+		Stripe<K>[] stripes = (Stripe<K>[]) new Stripe<?>[roundedStripes];
+		this.stripes = stripes;
+		for(int i = 0; i < roundedStripes; i++){
+			stripes[i] = new Stripe<K>();
+		}
+		this.stripeMask = roundedStripes - 1;
+	}
+	
+	/**
+	 * @param key (Who is making the attempt)
+	 * @param nowNanos (The current time, from {@link System#nanoTime()})
+	 * @return True if the key had a token left, which is now used up. False if the attempt should be refused.
+	 */
+	public boolean tryAcquire(K key, long nowNanos){
+		Stripe<K> stripe = stripeOf(key);
+		synchronized(stripe){
+			Bucket bucket = stripe.buckets.get(key);
+			if(bucket == null){
+				bucket = new Bucket(capacity, nowNanos);
+				stripe.buckets.put(key, bucket);
+			} else {
+				bucket.tokens = Math.min(capacity, bucket.tokens + (nowNanos - bucket.refilledAt) * tokensPerNano);
+				bucket.refilledAt = nowNanos;
+			}
+			
+			if(bucket.tokens < 1){
+				return false;
+			}
+			bucket.tokens -= 1;
+			return true;
+		}
+	}
+	
+	/** @param key (The key whose bucket is dropped, which is the same as filling it up again)*/
+	public void remove(K key){
+		Stripe<K> stripe = stripeOf(key);
+		synchronized(stripe){
+			stripe.buckets.remove(key);
+		}
+	}
+	
+	/** @return How long an empty bucket takes to fill up again, in milliseconds.*/
+	public long getRefillMillis(){
+		return (long) Math.ceil(capacity / tokensPerNano / 1e6);
+	}
+	
+	/** @return The amount of keys that currently have a bucket.*/
+	public int size(){
+		int size = 0;
+		for(Stripe<K> stripe : stripes){
+			synchronized(stripe){
+				size += stripe.buckets.size();
+			}
+		}
+		return size;
+	}
+	
+	private Stripe<K> stripeOf(K key){
+		int hash = key.hashCode();
+		return stripes[(hash ^ (hash >>> 16)) & stripeMask];
+	}
+	
+	private static class Stripe<K> {
+		private final HashMap<K, Bucket> buckets = new HashMap<K, Bucket>();
+	}
+	
+	private static class Bucket {
+		private double tokens;
+		private long refilledAt;
+		
+		private Bucket(double tokens, long refilledAt){
+			this.tokens = tokens;
+			this.refilledAt = refilledAt;
+		}
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A set of keys that each expire after their own time to live, with expiry driven by a hashed timing wheel instead of a timer per key.
+ * <br><br>The wheel is a ring of slots, one per tick. A key is dropped into the slot its deadline falls in, and whoever calls
+ * {@link #advance(long)} (usually a single scheduled thread) empties the slots the clock has passed. Keys whose deadline moved on in the meantime,
+ * or lies more than one turn of the wheel away, are simply put back. Adding, touching and checking a key are O(1) and take no lock
+ * other than the one {@link ConcurrentHashMap} takes on the key's own bin.
+ * <br><br>Keys expire at most one tick late, and {@link #contains(Object, long)} never reports a key whose deadline has passed.
+ * Time to lives should be at least one tick long; shorter ones still read correctly through {@link #contains(Object, long)},
+ * but may be swept a turn late.
+ */
+public class TimingWheel<K> {
+	
+	private final long tickMillis;
+	private final int slotMask;
+	private final AtomicReferenceArray<Queue<K>> slots;
+	private final ConcurrentHashMap<K, Long> deadlines = new ConcurrentHashMap<K, Long>();
+	private final Consumer<K> expiryListener;
+	
+	private long lastTick; //Only touched by advance(), which must not run on two threads at once.
+	
+	/**
+	 * @param tickMillis (How coarse expiry is)
+	 * @param slotCount (How many ticks make one turn of the wheel, rounded up to a power of two. 
+	 * Keys that live longer than one turn still work, but are looked at once per turn)
+	 * @param expiryListener (Called with every key that expires, on the thread calling {@link #advance(long)}. May be null)
+	 * @param nowMillis (The current time)
+	 */
+	public TimingWheel(long tickMillis, int slotCount, Consumer<K> expiryListener, long nowMillis){
+		Preconditions.checkArgument(tickMillis > 0, "tickMillis must be positive");
+		Preconditions.checkArgument(slotCount > 0 && slotCount <= 1 << 20, "slotCount must be between 1 and 2^20");
+		
+		int roundedSlots = Integer.highestOneBit(slotCount - 1 | 1) << 1;
+		this.tickMillis = tickMillis;
+		this.slotMask = roundedSlots - 1;
+		this.slots = new AtomicReferenceArray<Queue<K>>(roundedSlots);
+		for(int i = 0; i < roundedSlots; i++){
+			slots.set(i, new ConcurrentLinkedQueue<K>());
+		}
+		this.expiryListener = expiryListener;
+		this.lastTick = nowMillis / tickMillis;
+	}
+	
+	/**
+	 * @param key (The key to add)
+	 * @param ttlMillis (How long the key lives)
+	 * @param nowMillis (The current time)
+	 * @return True if the key was added, false if it was already there (its deadline is left alone).
+	 */
+	public boolean addIfAbsent(K key, long ttlMillis, long nowMillis){
+		long deadline = nowMillis + ttlMillis;
+		
+		//An entry that expired but hasn't been swept yet counts as absent.
+		Long previous = deadlines.putIfAbsent(key, deadline);
+		while(previous != null){
+			if(previous > nowMillis){
+				return false;
+			}
+			if(deadlines.replace(key, previous, deadline)){
+				break;
+			}
+			previous = deadlines.putIfAbsent(key, deadline);
+		}
+		
+		schedule(key, deadline);
+		return true;
+	}
+	
+	/**
+	 * @param key (The key to add or refresh)
+	 * @param ttlMillis (How long the key lives from now on)
+	 * @param nowMillis (The current time)
+	 * 
+	 * <br><br>Adds the key, or pushes its deadline back if it's already there.
+	 */
+	public void touch(K key, long ttlMillis, long nowMillis){
+		long deadline = nowMillis + ttlMillis;
+		Long previous = deadlines.put(key, deadline);
+		
+		//A key already waiting in the slot its new deadline falls in doesn't need to be queued twice.
+		if(previous == null || slotOf(previous) != slotOf(deadline) || previous > deadline){
+			schedule(key, deadline);
+		}
+	}
+	
+	/**
+	 * @return True if the key is in the set and hasn't expired.
+	 */
+	public boolean contains(K key, long nowMillis){
+		Long deadline = deadlines.get(key);
+		return deadline != null && deadline > nowMillis;
+	}
+	
+	/** @param key (The key to drop. It is not passed to the expiry listener)*/
+	public void remove(K key){
+		deadlines.remove(key);
+	}
+	
+	/**
+	 * @param nowMillis (The current time)
+	 * @return The amount of keys that expired.
+	 * 
+	 * <br><br>Empties every slot the clock has passed since the last call, expiring the keys that are due. Must not be called from two threads at once.
+	 */
+	public int advance(long nowMillis){
+		long currentTick = nowMillis / tickMillis;
+		
+		//After a long pause every slot is due once, never more.
+		long firstTick = Math.max(lastTick + 1, currentTick - slotMask);
+		int expired = 0;
+		
+		for(long tick = firstTick; tick <= currentTick; tick++){
+			Queue<K> due = slots.getAndSet((int) tick & slotMask, new ConcurrentLinkedQueue<K>());
+			
+			K key;
+			while((key = due.poll()) != null){
+				Long deadline = deadlines.get(key);
+				if(deadline == null){
+					continue; //Removed, or already expired through a duplicate entry.
+				}
+				
+				if(deadline <= nowMillis){
+					if(deadlines.remove(key, deadline)){
+						expired++;
+						if(expiryListener != null){
+							expiryListener.accept(key);
+						}
+					} else if((deadline = deadlines.get(key)) != null){
+						//Touched while we were looking at it; make sure it's waiting somewhere.
+						schedule(key, deadline);
+					}
+				} else if(slotOf(deadline) == ((int) tick & slotMask)){
+					//Due on a later turn of the wheel; it goes back into the slot that was just emptied.
+					schedule(key, deadline);
+				}
+				//Otherwise the key was touched and already waits in its new slot.
+			}
+		}
+		
+		lastTick = Math.max(lastTick, currentTick);
+		return expired;
+	}
+	
+	/** @return The amount of keys in the set, including expired ones that haven't been swept yet.*/
+	public int size(){
+		return deadlines.size();
+	}
+	
+	private void schedule(K key, long deadline){
+		slots.get(slotOf(deadline)).add(key);
+	}
+	
+	private int slotOf(long deadline){
+		//Rounded up, so a key is never looked at before its deadline has passed.
+		return (int) ((deadline + tickMillis - 1) / tickMillis) & slotMask;
+	}
+}
@@ -32,15 +32,37 @@ package com.github.heartsemma.enderauth;
  */
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ThreadLocalRandom;
 
-import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 
 import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
 import com.github.heartsemma.enderauth.DataStructures.DatabaseExceptions.UUIDNotFoundException;
+import com.github.heartsemma.enderauth.Metrics.Operation;
+import com.github.heartsemma.enderauth.Storage.Change;
+import com.github.heartsemma.enderauth.Storage.ConnectionPool;
+import com.github.heartsemma.enderauth.Storage.Migration;
+import com.github.heartsemma.enderauth.Storage.OnlineTableRebuild;
+import com.github.heartsemma.enderauth.Storage.PooledConnection;
+import com.github.heartsemma.enderauth.Storage.Query;
+import com.github.heartsemma.enderauth.Storage.SchemaMigrator;
+import com.github.heartsemma.enderauth.Storage.Transaction;
+import com.github.heartsemma.enderauth.Storage.UserStore;
+import com.github.heartsemma.enderauth.Tracing.Trace;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
 import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 
-public class Database {
+/**
+ * The MySQL backed {@link UserStore}.
+ */
+public class Database implements UserStore {
 	
 	//Final variables for interacting with other parts of the plugin
 	private final Main main = Main.getInstance(); 
@@ -48,8 +70,9 @@ public class Database {
     
     
     //Class-Wide SQL Variables for entering commands
-	private Connection connection;
-	private boolean databaseInitialized; //
+	private ConnectionPool connectionPool;
+	private volatile boolean databaseInitialized; //
+	private volatile boolean managesSchema; //Whether validate() set up the schema, and so whether there may be migrations left for the background.
 	
 	//Constants about the database. Some of these may be pulled from configuration in the future. For now they are set here and unconfigurable.
     private static final String dbName = "enderAuthDB"; //Name of the database.
@@ -57,22 +80,97 @@ public class Database {
     private static final String dbUsername = "root";
     private static final String dbPassword = "yourPassword";
     private static final int port = 3306;
-    private static final String dbUrl = "jdbc:mysql://"+dbLocation+":"+String.valueOf(port)+"/mysql?zeroDateTimeBehavior=convertToNull";
+    private static final String dbUrl = "jdbc:mysql://"+dbLocation+":"+String.valueOf(port)+"/mysql?zeroDateTimeBehavior=convertToNull"
+    		+ "&useServerPrepStmts=true" //Lets the server keep the plan of our pooled prepared statements.
+    		+ "&rewriteBatchedStatements=true"; //Sends a batch of inserts as one multi-row INSERT.
+    
+    //For the connection pool.
+    private static final int poolSize = 4; //Maximum amount of connections open to the database at once.
+    private static final long poolMaxLifetimeMillis = 30 * 60 * 1000; //Connections are reopened after this long, well before MySQL's wait_timeout.
+    private static final long poolIdleValidationMillis = 30 * 1000; //Connections idle longer than this are checked before being reused.
+    private static final long poolAcquireTimeoutMillis = 5 * 1000; //How long a query waits for a free connection before failing.
     
     //For the User Table.
-    private static final String userTableName = "ea_users"; //The table where we store the data for players, so we can generate their codes and authenticate them, etc.
+    private static final String userTableShortName = "ea_users";
+    private static final String userTableName = dbName + "." + userTableShortName; //The table where we store the data for players, so we can generate their codes and authenticate them, etc.
     private static final String userTableIDColumn = "uuid"; //Name of the ID column in the user table (Also what it contains)
     private static final int userTableIDColumnIndex = 1; //Index of the PSK column in the user table 
-    private static final String userTableIDColumnType = "TINYBLOB NOT NULL UNIQUE"; //Variable type/parameters of ID Column
+    private static final String userTableIDColumnType = "BINARY(16) NOT NULL PRIMARY KEY"; //Variable type/parameters of ID Column
     private static final String userTableTotpPSKColumn = "pre_shared_key"; //Name of the PSK column in the totp user table
     private static final int userTableTotpPSKColumnIndex = 2; //Index of the PSK column in the totp user table 
-    private static final String userTableTotpPSKColumnType = "TEXT"; //Variable type/parameters of the stored PSK for TOTP authentication
+    private static final String userTableTotpPSKColumnType = "CHAR(32) CHARACTER SET ascii"; //Variable type/parameters of the stored PSK for TOTP authentication
+    
+    //For the Change Log. Every change to the user table gets a row here too, so other servers sharing the database can invalidate what they cached.
+    private static final String changeTableName = dbName + ".ea_changes";
+    private static final String changeTableVersionColumn = "version"; //Increases with every change; servers read the log from the last version they saw.
+    private static final String changeTableVersionColumnType = "BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY";
+    private static final String changeTableIDColumn = "uuid"; //The player that changed.
+    private static final String changeTableIDColumnType = "BINARY(16) NOT NULL";
+    private static final String changeTableKindColumn = "kind"; //See Change.Kind.
+    private static final String changeTableKindColumnType = "TINYINT NOT NULL";
+    private static final String changeTableOriginColumn = "origin"; //Node id of the server that made the change, so it can skip its own.
+    private static final String changeTableOriginColumnType = "BIGINT NOT NULL";
+    private static final String changeTableTimeColumn = "changed_at"; //Only used to prune old changes.
+    private static final String changeTableTimeColumnType = "TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP";
+    
+    //For schema updates. See SchemaMigrator and the migrations below.
+    private static final String schemaTableName = dbName + ".ea_schema"; //Which migrations were applied already.
+    private static final int rebuildChunkSize = 1000; //Rows copied per transaction when a table is rebuilt.
+    private static final long rebuildPauseMillis = 50; //Pause between those transactions, so that the servers using the table aren't crowded out.
     
     //Sorry about the long variable names, but its better to be long than obscure.
+    
+    //Queries. Identifiers are resolved once, here; only values are bound when they run.
+    private static final Query makeDatabaseQuery = Query.compile("CREATE DATABASE IF NOT EXISTS {0}", dbName);
+    private static final Query makeUserTableQuery = Query.compile("CREATE TABLE IF NOT EXISTS {0} ( "
+    		+ "{1} " + userTableIDColumnType + ", " //UUID of the player; Used as the ID
+    		+ "{2} " + userTableTotpPSKColumnType + ")", //Pre-shared key we generate at registration for TOTP Authentication
+    		userTableName, userTableIDColumn, userTableTotpPSKColumn);
+    private static final Query makeChangeTableQuery = Query.compile("CREATE TABLE IF NOT EXISTS {0} ( "
+    		+ "{1} " + changeTableVersionColumnType + ", "
+    		+ "{2} " + changeTableIDColumnType + ", "
+    		+ "{3} " + changeTableKindColumnType + ", "
+    		+ "{4} " + changeTableOriginColumnType + ", "
+    		+ "{5} " + changeTableTimeColumnType + ", "
+    		+ "INDEX ({5}))",
+    		changeTableName, changeTableVersionColumn, changeTableIDColumn, changeTableKindColumn, changeTableOriginColumn, changeTableTimeColumn);
+    private static final Query addUserQuery = Query.compile("INSERT INTO {0} ({1}, {2}) VALUES (?, ?)", 
+    		userTableName, userTableIDColumn, userTableTotpPSKColumn);
+    //Players who are already registered keep their key; an import must never lock anybody out of their account.
+    private static final Query importUserQuery = Query.compile("INSERT INTO {0} ({1}, {2}) VALUES (?, ?) ON DUPLICATE KEY UPDATE {1} = {1}", 
+    		userTableName, userTableIDColumn, userTableTotpPSKColumn);
+    private static final Query getTotpKeyQuery = Query.compile("SELECT {0} FROM {1} WHERE {2} = ? LIMIT 2", //Two rows is enough to tell a duplicate apart.
+    		userTableTotpPSKColumn, userTableName, userTableIDColumn);
+    private static final Query removeUserQuery = Query.compile("DELETE FROM {0} WHERE {1} = ?", 
+    		userTableName, userTableIDColumn);
+    private static final Query isInDatabaseQuery = Query.compile("SELECT 1 FROM {0} WHERE {1} = ? LIMIT 1", 
+    		userTableName, userTableIDColumn);
+    private static final Query addChangeQuery = Query.compile("INSERT INTO {0} ({1}, {2}, {3}) VALUES (?, ?, ?)", 
+    		changeTableName, changeTableIDColumn, changeTableKindColumn, changeTableOriginColumn);
+    private static final Query getChangesQuery = Query.compile("SELECT {0}, {1}, {2}, {3} FROM {4} WHERE {0} > ? ORDER BY {0} LIMIT ?", 
+    		changeTableVersionColumn, changeTableIDColumn, changeTableKindColumn, changeTableOriginColumn, changeTableName);
+    private static final Query latestChangeVersionQuery = Query.compile("SELECT COALESCE(MAX({0}), 0) FROM {1}", 
+    		changeTableVersionColumn, changeTableName);
+    private static final Query pruneChangesQuery = Query.compile("DELETE FROM {0} WHERE {1} < TIMESTAMPADD(HOUR, ?, CURRENT_TIMESTAMP) LIMIT ?", 
+    		changeTableName, changeTableTimeColumn);
+    private static final Query resetUserQuery = Query.compile("UPDATE {0} SET {1} = NULL WHERE {2} = ?", 
+    		userTableName, userTableTotpPSKColumn, userTableIDColumn);
+    private static final Query setTotpKeyQuery = Query.compile("UPDATE {0} SET {1} = ? WHERE {2} = ? AND {1} IS NULL", 
+    		userTableName, userTableTotpPSKColumn, userTableIDColumn);
+    //Keyset pagination: every page starts after the last UUID of the previous one, so deep pages cost as little as the first.
+    private static final Query firstUUIDsQuery = Query.compile("SELECT {0} FROM {1} ORDER BY {0} LIMIT ?", 
+    		userTableIDColumn, userTableName);
+    private static final Query nextUUIDsQuery = Query.compile("SELECT {0} FROM {1} WHERE {0} > ? ORDER BY {0} LIMIT ?", 
+    		userTableIDColumn, userTableName);
+    private static final Query userRangeQuery = Query.compile("SELECT {0}, {1} IS NOT NULL FROM {2} WHERE {0} >= ? AND {0} <= ? ORDER BY {0} LIMIT ?", 
+    		userTableIDColumn, userTableTotpPSKColumn, userTableName);
+	
+	//Identifies this server in the change log. A new one is picked every time the plugin loads.
+	private final long nodeId = ThreadLocalRandom.current().nextLong();
 	
 	private static Database INSTANCE = null;
 	
-	public static Database getInstance(){
+	public static synchronized Database getInstance(){
 		if(INSTANCE==null){
 			INSTANCE = new Database();
 		}
@@ -81,97 +179,215 @@ public class Database {
 	
 	private Database(){}
 	
+	/**
+	 * @param connectionPool (A pool of connections to a database whose user table is already set up)
+	 * 
+	 * <br><br>Uses the passed pool instead of connecting to the configured MySQL server, and skips setting up the schema.
+	 * Meant for embedded databases, such as the H2 one the benchmarks run against. The plugin itself uses {@link #getInstance()}.
+	 */
+	public Database(ConnectionPool connectionPool){
+		Preconditions.checkNotNull(connectionPool);
+		this.connectionPool = connectionPool;
+		this.databaseInitialized = true;
+	}
+	
+	
+	/**
+	 * @return Every migration of the schema there is, oldest first.
+	 * 
+	 * <br><br>Version 1 is the layout of a fresh install. Version 2 moves user tables made by older versions of EnderAuth, which keyed
+	 * players by a TINYBLOB with a UNIQUE prefix index and kept keys as TEXT, to a BINARY(16) primary key, so that lookups and the
+	 * keyset-paginated scans go through the clustered index. On a fresh install there is nothing for it to do.
+	 */
+	private List<Migration> getMigrations(){
+		List<Migration> migrations = new ArrayList<Migration>();
+		
+		migrations.add(Migration.of(1, "Create the user and change tables", connection -> {
+			try(Statement statement = connection.getConnection().createStatement()){
+				//Full command should look something like: CREATE TABLE IF NOT EXISTS `enderAuthDB`.`ea_users` (`uuid` BINARY(16) NOT NULL PRIMARY KEY, `pre_shared_key` CHAR(32) CHARACTER SET ascii)
+				logger.debug("Running command: {}", makeUserTableQuery.getSql());
+				statement.execute(makeUserTableQuery.getSql());
+				statement.execute(makeChangeTableQuery.getSql());
+			}
+			return null;
+		}));
+		
+		migrations.add(new OnlineTableRebuild(2, "Key the user table by a BINARY(16) primary key", logger, 
+				dbName, userTableShortName, userTableIDColumn, userTableTotpPSKColumn, 
+				Query.compile("{0} " + userTableIDColumnType + ", {1} " + userTableTotpPSKColumnType, userTableIDColumn, userTableTotpPSKColumn).getSql(), 
+				rebuildChunkSize, rebuildPauseMillis));
+		
+		return migrations;
+	}
 	
 	//Loads an already existing database or creates and structures one if it doesnt already exist.
-	public void validate() throws SQLException{
+	//Synchronized so that concurrent first queries don't both try to set up the database.
+	public synchronized void validate() throws SQLException, DatabaseException{
 		//This should only be called once, and we want to make sure it doesn't happen again.
 		if(databaseInitialized){
 			logger.debug("The Database was already initialized.");
 			logger.debug("This initialization process will be skipped to prevent it from happening a second time...");
 		} else {
-			connection = DriverManager.getConnection(dbUrl, dbUsername, dbPassword);
+			if(connectionPool == null){ //Kept when an earlier attempt failed part way, e.g. in a migration.
+				connectionPool = new ConnectionPool(dbUrl, dbUsername, dbPassword, 
+						poolSize, poolMaxLifetimeMillis, poolIdleValidationMillis, poolAcquireTimeoutMillis);
+			}
 			
 			logger.debug("Attempting to create a database, if one does not exist yet.");
-		       
-		    String makeDatabaseCommand = "CREATE DATABASE IF NOT EXISTS ?";
-		    
-		    ArrayList<Object> makeDatabaseVariables = new ArrayList<Object>();
-		    makeDatabaseVariables.add(dbName);
-		    
-		    transact(makeDatabaseCommand, makeDatabaseVariables);
-		    
-		    logger.debug("Previous command ran successfully and we will begin structuring the database (if necessary).");
-			logger.debug("Attempting to structure database in case it does not have the required tables yet.");
-				
-			String tableCreationCommand = "CREATE TABLE IF NOT EXISTS ? ( "
-						   + "? ?," //UUID of the player; Used as the ID
-						   + "? ?)"; //Pre-shared key we generate at registration for TOTP Authentication
 			
-			ArrayList<Object> tableCreationVariables = new ArrayList<Object>();
-			tableCreationVariables.add(userTableName);
-			tableCreationVariables.add(userTableIDColumn);
-			tableCreationVariables.add(userTableIDColumnType);
-			tableCreationVariables.add(userTableTotpPSKColumn);
-			tableCreationVariables.add(userTableTotpPSKColumnType);
-			
-			transact(tableCreationCommand,tableCreationVariables);
-			
-			//Full command should look something like: CREATE TABLE IF NOT EXISTS EA_TOTP_TABLE (USERNAME TEXT, PSK TEXT)
-			
-			logger.debug("Running command: " + tableCreationCommand.toString());
+			try(PooledConnection pooledConnection = connectionPool.acquire()){
+				Connection connection = pooledConnection.getConnection();
+				
+				try(Statement statement = connection.createStatement()){
+					statement.execute(makeDatabaseQuery.getSql());
+				}
+				connection.commit();
+				
+				logger.debug("Previous command ran successfully and we will begin structuring the database (if necessary).");
+				logger.debug("Attempting to structure database in case it does not have the required tables yet.");
+				
+				//Slow migrations, such as rebuilding the user table, are left for applyDeferredMigrations() so that nobody waits on them here.
+				int applied = new SchemaMigrator(schemaTableName, logger, getMigrations()).migrate(pooledConnection, false);
+				if(applied > 0){
+					logger.info("EnderAuth's database schema is set up ({} updates applied).", applied);
+				}
+			}
 			
+			managesSchema=true;
 			databaseInitialized=true;
 		}
 	}
 	
 	/**
-	 * @param sql (SQL Statement to be executed)
-	 * @param variables (Variables within the SQL statement that will be securely injected into the sql statement. May be empty.)
-	 * @return A ResultSet containing the result of the MySQL query entered. Returns null if the MySQL is not a select query.
+	 * Applies the migrations {@link #validate()} leaves for later, such as rebuilding the user table. Runs on the calling thread, and may take a while.
+	 * <br><br>The database stays usable meanwhile. A migration that fails is logged rather than thrown, and EnderAuth keeps using the old layout;
+	 * it is tried again the next time this is called, which is at the latest when the server starts again.
+	 * Does nothing for databases passed in as a {@link ConnectionPool}, whose schema is set up by whoever made them.
+	 */
+	public void applyDeferredMigrations(){
+		try {
+			if(!databaseInitialized){
+				validate();
+			}
+			if(!managesSchema){
+				return;
+			}
+			
+			try(PooledConnection pooledConnection = connectionPool.acquire()){
+				int applied = new SchemaMigrator(schemaTableName, logger, getMigrations()).migrate(pooledConnection, true);
+				if(applied > 0){
+					logger.info("EnderAuth's database schema is up to date ({} updates applied).", applied);
+				}
+			}
+		} catch (SQLException | DatabaseException e) {
+			logger.warn("EnderAuth was unable to update its database schema; it keeps using the current one and will try again the next time it starts.");
+			e.printStackTrace();
+		}
+	}
+	
+	/** Starts {@link #applyDeferredMigrations()} on a thread of its own, so that nothing else waits for it. Called when the plugin starts.*/
+	public void startDeferredMigrations(){
+		new ThreadFactoryBuilder().setNameFormat("EnderAuth-Migrations").setDaemon(true).build().newThread(this::applyDeferredMigrations).start();
+	}
+	
+	/** @return The id this server writes into the change log, to recognize its own changes when reading it back.*/
+	public long getNodeId(){ return nodeId; }
+	
+	/** @return The pool of connections to the database, or null if the database has not been initialized yet.*/
+	public ConnectionPool getConnectionPool(){ return connectionPool; }
+	
+	/** Closes every connection to the database. Called when the plugin shuts down.*/
+	@Override
+	public synchronized void close(){
+		if(connectionPool != null){
+			connectionPool.close();
+		}
+	}
+	
+	/**
+	 * @param transaction (The work to do on the database)
+	 * @return Whatever the transaction returned.
 	 * 
-	 * <br><br> This command runs the entered MySQL query 'sql', and substitutes the question marks with the variables in the array.
-	 * It then returns an arraylist that represents the results of that MySQL query.
+	 * <br><br>Runs the transaction on a connection borrowed from the pool and commits it. If it fails, the work is rolled back.
+	 * <br>If the connection turns out to have been dropped by the database, it is thrown away and the transaction is retried once on a fresh one.
 	 */
-	private ResultSet transact(String sql, ArrayList<Object> variables) throws SQLException{
+	private <T> T transact(Transaction<T> transaction) throws SQLException, DatabaseException{
+		long start = System.nanoTime();
 		
-		if(!databaseInitialized){
-			validate();
+		try {
+			if(!databaseInitialized){
+				validate();
+			}
+			
+			try {
+				return transactOnce(transaction);
+			} catch (SQLTransientConnectionException | SQLNonTransientConnectionException e) {
+				logger.warn("EnderAuth lost its connection to the database and will retry the query on a new one.");
+				return transactOnce(transaction);
+			}
+		} catch (UUIDNotFoundException e) {
+			throw e; //An answer rather than a failure.
+		} catch (SQLException | DatabaseException | RuntimeException e) {
+			Operation.TRANSACTION.recordError();
+			throw e;
+		} finally {
+			Operation.TRANSACTION.recordSince(start);
 		}
+	}
+	
+	/**
+	 * @param operation (What the transaction does, for the statistics)
+	 * @param uuid (The player the transaction is about, for tracing)
+	 * @param transaction (The work to do on the database)
+	 * @return Whatever the transaction returned.
+	 * 
+	 * <br><br>Same as {@link #transact(Transaction)}, but also records the latency and failures of the transaction under the passed operation,
+	 * and traces it.
+	 */
+	private <T> T transact(Operation operation, UUID uuid, Transaction<T> transaction) throws SQLException, DatabaseException{
+		long start = System.nanoTime();
+		boolean failed = false;
 		
-		logger.debug("transact() sql statement execution method called.");
-		logger.debug("Checking for null parameters...");
-		Preconditions.checkNotNull(sql);
-		
-		ResultSet returnedResultSet = null;
+		try {
+			return transact(transaction);
+		} catch (UUIDNotFoundException e) {
+			throw e;
+		} catch (SQLException | DatabaseException | RuntimeException e) {
+			failed = true;
+			operation.recordError();
+			throw e;
+		} finally {
+			operation.recordSince(start);
+			Trace.databaseQuery(uuid, operation, start, failed);
+		}
+	}
+	
+	private <T> T transactOnce(Transaction<T> transaction) throws SQLException, DatabaseException{
 		
-		if(variables==null || variables.size()==0){
-			logger.debug("Executing command " + sql + ".");
-			
-			try(Statement statement = connection.createStatement()){
-				statement.execute(sql);
-				returnedResultSet = statement.getResultSet();
-				statement.close();
-			}
-			
-		} else {
-			logger.debug("Checking if amount of variables equals");
-			Preconditions.checkArgument(variables.size()==StringUtils.countMatches(sql, "?"));
+		try(PooledConnection pooledConnection = connectionPool.acquire()){
+			Connection connection = pooledConnection.getConnection();
 			
-			try(PreparedStatement preparedStatement = connection.prepareStatement(sql)){
-				for(int i=1; i<=variables.size(); i++){
-					preparedStatement.setObject(i, variables.get(i));
+			try {
+				T result = transaction.run(pooledConnection);
+				connection.commit();
+				return result;
+				
+			} catch (SQLTransientConnectionException | SQLNonTransientConnectionException e) {
+				pooledConnection.invalidate();
+				throw e;
+			} catch (SQLException e) {
+				//The connection may have been dropped without the driver saying so explicitly.
+				if(!connection.isValid(1)){
+					pooledConnection.invalidate();
+					throw new SQLTransientConnectionException("The database connection was lost.", e);
 				}
-				logger.debug("Executing command " + preparedStatement.toString() + ".");
-				preparedStatement.execute();
-				returnedResultSet = preparedStatement.getResultSet();
-				preparedStatement.close();
+				connection.rollback();
+				throw e;
+			} catch (DatabaseException | RuntimeException e) {
+				connection.rollback();
+				throw e;
 			}
 		}
-		
-		connection.commit();
-		
-		return returnedResultSet;
-		
 	}
 	
 
@@ -181,16 +397,10 @@ public class Database {
 	 * <br><br>This function adds a user into the database with the following parameters as parts of its entry.
 	 * 
 	 * @throws SQLException This function accesses the database via an "INSERT INTO" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an insert.
 	 * */
-	public void addUser(byte[] uuid) throws SQLException{
-		logger.debug("Attempting to create database entry for user " + new String(uuid));
-		
-		String addUserCommand = "INSERT INTO ? (?, NULL)";
-		ArrayList<Object> addUserVariables = new ArrayList<Object>();
-		addUserVariables.add(userTableName);
-		addUserVariables.add(uuid);
-		
-		transact(addUserCommand,addUserVariables);
+	public void addUser(UUID uuid) throws SQLException, DatabaseException{
+		addUser(uuid, null);
 	}
 	
 	/**
@@ -200,78 +410,282 @@ public class Database {
 	 * <br><br>This function adds a user into the database with the following parameters as parts of its entry.s 
 	 * 
 	 * @throws SQLException This function accesses the database via an "INSERT INTO" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an insert.
 	 * */
-	public void addUser(byte[] uuid, String PSK) throws SQLException{
-		logger.debug("Attempting to create database entry for user "+uuid);
+	@Override
+	public void addUser(UUID uuid, String PSK) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(uuid);
 		
-		String addUserCommand = "INSERT INTO ? (?, ?)";
-		ArrayList<Object> addUserVariables = new ArrayList<Object>();
-		addUserVariables.add(userTableName);
-		addUserVariables.add(uuid);
-		addUserVariables.add(PSK);
+		transact(Operation.ADD_USER, uuid, connection -> {
+			PreparedStatement statement = connection.prepare(addUserQuery);
+			UUIDUtils.bind(statement, userTableIDColumnIndex, uuid);
+			statement.setString(userTableTotpPSKColumnIndex, PSK);
+			statement.executeUpdate();
+			
+			recordChange(connection, uuid, Change.Kind.ADDED);
+			return null;
+		});
+	}
 	
-		transact(addUserCommand,addUserVariables);
+	/**
+	 * @param users (UUIDs of the users to add, each mapped to their Pre-Shared Key, which may be null)
+	 * 
+	 * <br><br>This function adds every passed user in one batch and one transaction. Either all of them are added or none are.
+	 * 
+	 * @throws SQLException This function accesses the database via a batch of "INSERT INTO" queries.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an insert.
+	 * */
+	public void addUsers(Map<UUID, String> users) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(users);
+		if(users.isEmpty()){
+			return;
+		}
+		logger.debug("Attempting to create database entries for {} users.", users.size());
 		
+		transact(connection -> {
+			PreparedStatement statement = connection.prepare(addUserQuery);
+			for(Map.Entry<UUID, String> user : users.entrySet()){
+				UUIDUtils.bind(statement, userTableIDColumnIndex, user.getKey());
+				statement.setString(userTableTotpPSKColumnIndex, user.getValue());
+				statement.addBatch();
+			}
+			
+			try {
+				statement.executeBatch();
+			} finally {
+				statement.clearBatch();
+			}
+			
+			PreparedStatement changes = connection.prepare(addChangeQuery);
+			for(UUID uuid : users.keySet()){
+				bindChange(changes, uuid, Change.Kind.ADDED);
+				changes.addBatch();
+			}
+			
+			try {
+				changes.executeBatch();
+			} finally {
+				changes.clearBatch();
+			}
+			return null;
+		});
 	}
 	
 	/**
-	 * @param uuid (Universally Unique Identifier)
-	 * @return The Pre-Shared Key of the user for their TOTP authentication.
+	 * @param users (UUIDs of the users to import, each mapped to their Pre-Shared Key)
 	 * 
-	 * <br><br>Returns the TOTP Pre-Shared Key connected with the specified UUID.
-	 * <br>Returns null if unable to retrieve the key (if not found or  
+	 * <br><br>Same as {@link #addUsers(Map)}, except that users who are already in the database are left as they are instead of failing the batch.
+	 * That makes importing the same users twice harmless, which is what lets an interrupted import simply pick up from its last checkpoint.
 	 * 
-	 * @throws SQLException This function accesses the database via a "SELECT" query.
-	 * @throws DatabaseException Thrown if the returned ResultSet contains missing or what should be erroneous data.
-	 */
-	public String getTotpKey(byte[] uuid) throws SQLException, DatabaseException{
-		logger.debug("Attempting to retrieve TOTP PSK for user " + new String(uuid) + ".");
-		
-		String getKeyCommand = "SELECT ? FROM ? WHERE ? == ?";
-		
-		ArrayList<Object> getKeyVariables = new ArrayList<Object>();
-		getKeyVariables.add(userTableTotpPSKColumn);
-		getKeyVariables.add(userTableName);
-		getKeyVariables.add(userTableIDColumn);
-		getKeyVariables.add(uuid);
-		
-		ResultSet selection = transact(getKeyCommand,getKeyVariables); 	
-		
-		logger.debug("Database inquiry returned the ResultSet: " + selection.toString() + ".");
+	 * @throws SQLException This function accesses the database via a batch of "INSERT INTO ... ON DUPLICATE KEY UPDATE" queries.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an insert.
+	 * */
+	public void importUsers(Map<UUID, String> users) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(users);
+		if(users.isEmpty()){
+			return;
+		}
 		
-		//There should be one String in this resultset, but we will check it good because EnderAuth is stronk, EnderAuth is reliable.
-		logger.debug("Error checking...");
-		Preconditions.checkNotNull(selection);
+		transact(connection -> {
+			PreparedStatement statement = connection.prepare(importUserQuery);
+			for(Map.Entry<UUID, String> user : users.entrySet()){
+				UUIDUtils.bind(statement, userTableIDColumnIndex, user.getKey());
+				statement.setString(userTableTotpPSKColumnIndex, user.getValue());
+				statement.addBatch();
+			}
+			
+			try {
+				statement.executeBatch();
+			} finally {
+				statement.clearBatch();
+			}
+			
+			//Players who were already registered are recorded too; other servers just drop what they cached about them.
+			PreparedStatement changes = connection.prepare(addChangeQuery);
+			for(UUID uuid : users.keySet()){
+				bindChange(changes, uuid, Change.Kind.ADDED);
+				changes.addBatch();
+			}
+			
+			try {
+				changes.executeBatch();
+			} finally {
+				changes.clearBatch();
+			}
+			return null;
+		});
+	}
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @return True if the user was in the database.
+	 * 
+	 * <br><br>This function removes the user's entry from the database, unregistering them.
+	 * 
+	 * @throws SQLException This function accesses the database via a "DELETE" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for a delete.
+	 * */
+	@Override
+	public boolean removeUser(UUID uuid) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(uuid);
 		
-		if(!selection.isBeforeFirst()){ //Triggers when there are no rows in the ResultSet.
-			logger.error("EnderAuth attempted to retrieve " + new String(uuid) + "'s PSK from the database but was unable to find it.");
-			logger.error("There were no rows in the returned table of data after running the MySql 'PreparedStatement' .");
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(removeUserQuery);
+			UUIDUtils.bind(statement, 1, uuid);
 			
-			throw new DatabaseException("getTotpKey()'s PreparedStatement returned a ResultSet that had no data.");
+			if(statement.executeUpdate() == 0){
+				return false;
+			}
+			recordChange(connection, uuid, Change.Kind.REMOVED);
+			return true;
+		});
+	}
+	
+	/**
+	 * @param uuids (The users to remove)
+	 * @return The users that were in the database, and now aren't.
+	 * 
+	 * <br><br>Removes every passed user in one batch and one transaction. Either all of them are removed or none are.
+	 * 
+	 * @throws SQLException This function accesses the database via a batch of "DELETE" queries.
+	 * @throws DatabaseException Declared by the transaction; never thrown for a delete.
+	 * */
+	@Override
+	public List<UUID> removeUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		return updateUsers(removeUserQuery, uuids, Change.Kind.REMOVED);
+	}
+	
+	/**
+	 * @param uuids (The users whose keys to reset)
+	 * @return The users that were in the database, whose keys are now gone.
+	 * 
+	 * <br><br>Sets the Pre-Shared Key of every passed user to NULL, in one batch and one transaction.
+	 * 
+	 * @throws SQLException This function accesses the database via a batch of "UPDATE" queries.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an update.
+	 * */
+	@Override
+	public List<UUID> resetUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		return updateUsers(resetUserQuery, uuids, Change.Kind.KEY_CHANGED);
+	}
+	
+	/**
+	 * @param query (A query changing the row of the user whose UUID is its only parameter)
+	 * @param uuids (The users to run it for)
+	 * @param kind (What to record in the change log for the users it changed)
+	 * @return The users whose rows were found.
+	 */
+	private List<UUID> updateUsers(Query query, Collection<UUID> uuids, Change.Kind kind) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(uuids);
+		List<UUID> targets = new ArrayList<UUID>(new LinkedHashSet<UUID>(uuids)); //A repeated UUID would only find its row once.
+		if(targets.isEmpty()){
+			return targets;
 		}
 		
-		selection.last();
-		
-		if(selection.getRow() == 1){ //There was no entry for this user.
-			logger.error("EnderAuth attempted to retrieve " + new String(uuid) + "'s PSK from the database but was unable to find it.");
-			logger.error("Does " + new String(uuid) + " have an entry in the " + userTableName + " table?");
-		
-			//Returns null because we were unable to get the required data.
-			throw new UUIDNotFoundException("getTotpKey() was unable to find the entry in the database with the specified UUID.");
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(query);
+			for(UUID uuid : targets){
+				UUIDUtils.bind(statement, 1, uuid);
+				statement.addBatch();
+			}
 			
-		} else if(selection.getRow()==2){ //There was one entry for this user
-			//If we get to this point, everything looks tight.	
-			logger.debug("Successfully retrieved PSK from user " + new String(uuid) + ".");
+			int[] counts;
+			try {
+				counts = statement.executeBatch();
+			} finally {
+				statement.clearBatch();
+			}
+			
+			List<UUID> changed = new ArrayList<UUID>(targets.size());
+			for(int i=0; i<targets.size(); i++){
+				if(counts[i] > 0 || counts[i] == Statement.SUCCESS_NO_INFO){
+					changed.add(targets.get(i));
+				}
+			}
 			
-			String PSK = selection.getString(userTableTotpPSKColumnIndex);
-			return PSK; 	
+			if(!changed.isEmpty()){
+				PreparedStatement changes = connection.prepare(addChangeQuery);
+				for(UUID uuid : changed){
+					bindChange(changes, uuid, kind);
+					changes.addBatch();
+				}
+				
+				try {
+					changes.executeBatch();
+				} finally {
+					changes.clearBatch();
+				}
+			}
+			return changed;
+		});
+	}
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @param PSK (The user's new Pre-Shared Key)
+	 * @return True if the key was set; false if the user isn't in the database, or already has a key.
+	 * 
+	 * @throws SQLException This function accesses the database via an "UPDATE" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for an update.
+	 * */
+	@Override
+	public boolean setTotpKey(UUID uuid, String PSK) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		Preconditions.checkNotNull(PSK);
+		
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(setTotpKeyQuery);
+			statement.setString(1, PSK);
+			UUIDUtils.bind(statement, 2, uuid);
 			
-		} else { //There was more than one entry for this user.
-			logger.error("EnderAuth searched for " + new String(uuid) + "'s PSK and found multiple entries for that user in the database.");
-			logger.error("This should not have happened and indicates either plugin glitches or malcious database tampering.");
+			if(statement.executeUpdate() == 0){
+				return false;
+			}
+			recordChange(connection, uuid, Change.Kind.KEY_CHANGED);
+			return true;
+		});
+	}
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @return The Pre-Shared Key of the user for their TOTP authentication.
+	 * 
+	 * <br><br>Returns the TOTP Pre-Shared Key connected with the specified UUID.
+	 * 
+	 * @throws SQLException This function accesses the database via a "SELECT" query.
+	 * @throws UUIDNotFoundException Thrown if there is no entry for the specified UUID.
+	 * @throws DatabaseException Thrown if the returned ResultSet contains missing or what should be erroneous data.
+	 */
+	@Override
+	public String getTotpKey(UUID uuid) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		
+		return transact(Operation.GET_TOTP_KEY, uuid, connection -> {
+			PreparedStatement statement = connection.prepare(getTotpKeyQuery);
+			UUIDUtils.bind(statement, 1, uuid);
 			
-			throw new DatabaseException("Multiple entries matching the specified UUID were found in the database.");
-		}
+			try(ResultSet selection = statement.executeQuery()){
+				
+				if(!selection.next()){ //There was no entry for this user.
+					logger.error("EnderAuth attempted to retrieve a user's PSK from the database but was unable to find it.");
+					logger.error("Does that user have an entry in the " + userTableName + " table?");
+					
+					throw new UUIDNotFoundException("getTotpKey() was unable to find the entry in the database with the specified UUID.");
+				}
+				
+				String PSK = selection.getString(1);
+				
+				if(selection.next()){ //There was more than one entry for this user.
+					logger.error("EnderAuth searched for a user's PSK and found multiple entries for that user in the database.");
+					logger.error("This should not have happened and indicates either plugin glitches or malcious database tampering.");
+					
+					throw new DatabaseException("Multiple entries matching the specified UUID were found in the database.");
+				}
+				
+				//If we get to this point, everything looks tight.	
+				return PSK;
+			}
+		});
 	}
 	
 	/**@param uuid (Universally Unique Identifier)
@@ -281,45 +695,167 @@ public class Database {
 	 * <br>Returns false if there is not.
 	 * 
 	 * @throws SQLException The function uses PreparedStatements to ask about the presence of the UUID in the User Table.
-	 * @throws DatabaseException If the returned ResultSet from the SELECT command is completely empty (that is, lacking even the names of the columns in the table), the function throws a DatabaseException.*/
-	public boolean isInDatabase(byte[] uuid) throws SQLException, DatabaseException {
-		logger.debug("Attempting to determine presence of user " + new String(uuid) + " in the database.");
-			
-		String isInDatabaseCommand = "SELECT * FROM ? WHERE ? = ?";
+	 * @throws DatabaseException Declared by the transaction; never thrown for this lookup.*/
+	@Override
+	public boolean isInDatabase(UUID uuid) throws SQLException, DatabaseException {
+		Preconditions.checkNotNull(uuid);
 		
-		ArrayList<Object> isInDatabaseVariables = new ArrayList<Object>();
+		//Command should look something like: SELECT 1 FROM `enderAuthDB`.`ea_users` WHERE `uuid` = ? LIMIT 1
 		
-		isInDatabaseVariables.add(1, userTableName);
-		isInDatabaseVariables.add(2, userTableIDColumn);
-		isInDatabaseVariables.add(3, uuid);
-
-		//Command should look something like: SELECT * FROM ea_users WHERE id == uuid
-		
-		ResultSet selection = transact(isInDatabaseCommand, isInDatabaseVariables);
-		
-		logger.debug("Database inquiry returned the ResultSet: " + selection.toString() + ".");
-		
-		logger.debug("Error Checking...");
-		Preconditions.checkNotNull(selection);
+		return transact(Operation.IS_IN_DATABASE, uuid, connection -> {
+			PreparedStatement statement = connection.prepare(isInDatabaseQuery);
+			UUIDUtils.bind(statement, 1, uuid);
+			
+			try(ResultSet selection = statement.executeQuery()){
+				return selection.next();
+			}
+		});
+	}
+	
+	/**
+	 * @param after (The last UUID of the previous page, or null for the first page)
+	 * @param limit (The maximum amount of UUIDs to return)
+	 * @return Registered UUIDs that sort after the passed one, in ascending byte order.
+	 * 
+	 * <br><br>Pages through the user table by key, for background scans of every registered player.
+	 * 
+	 * @throws SQLException This function accesses the database via a "SELECT" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for this query.
+	 */
+	public List<UUID> getRegisteredUUIDs(UUID after, int limit) throws SQLException, DatabaseException{
+		Preconditions.checkArgument(limit > 0);
 		
-		//ResultSet Analysis + Error Checking
-		if(selection.isBeforeFirst()){ //Triggers when there are no rows in the ResultSet.
-			logger.error("EnderAuth attempted to find if there was a uuid matching " +
-									new String(uuid) + " in the database but was unable to run the necessary SQL queries.");
-			logger.error("There were no rows in the returned table of data after running the MySql 'PreparedStatement'.");
-			throw new DatabaseException("Returned ResultSet in isPresent(String uuid) contained no rows.");
-		}
+		return transact(connection -> {
+			PreparedStatement statement;
+			if(after == null){
+				statement = connection.prepare(firstUUIDsQuery);
+				statement.setInt(1, limit);
+			} else {
+				statement = connection.prepare(nextUUIDsQuery);
+				UUIDUtils.bind(statement, 1, after);
+				statement.setInt(2, limit);
+			}
+			
+			List<UUID> page = new ArrayList<UUID>(limit);
+			try(ResultSet selection = statement.executeQuery()){
+				while(selection.next()){
+					page.add(UUIDUtils.read(selection, 1));
+				}
+			}
+			return page;
+		});
+	}
+	
+	/**
+	 * @param from (The lowest UUID to return)
+	 * @param to (The highest UUID to return)
+	 * @param limit (The maximum amount of users to return)
+	 * @return Registered users between the two UUIDs, inclusive, in ascending byte order, each mapped to whether they have a key.
+	 * 
+	 * <br><br>Reads one page of the user table by key, for admins browsing or searching it. The next page starts just after the last UUID
+	 * of this one, so every page costs the same however deep it is, and the range can narrow it to the UUIDs sharing a prefix.
+	 * 
+	 * @throws SQLException This function accesses the database via a "SELECT" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for this query.
+	 */
+	public Map<UUID, Boolean> getUsers(UUID from, UUID to, int limit) throws SQLException, DatabaseException{
+		Preconditions.checkNotNull(from);
+		Preconditions.checkNotNull(to);
+		Preconditions.checkArgument(limit > 0);
 		
-		selection.last();
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(userRangeQuery);
+			UUIDUtils.bind(statement, 1, from);
+			UUIDUtils.bind(statement, 2, to);
+			statement.setInt(3, limit);
+			
+			Map<UUID, Boolean> page = new LinkedHashMap<UUID, Boolean>(limit * 4 / 3 + 1);
+			try(ResultSet selection = statement.executeQuery()){
+				while(selection.next()){
+					page.put(UUIDUtils.read(selection, 1), selection.getBoolean(2));
+				}
+			}
+			return page;
+		});
+	}
+	
+	/**
+	 * @return The version of the newest change in the change log, or 0 if it is empty.
+	 * 
+	 * <br><br>Where a server that just started begins reading the log; everything older is already reflected in what it loads at startup.
+	 * 
+	 * @throws SQLException This function accesses the database via a "SELECT" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for this query.
+	 */
+	public long getLatestChangeVersion() throws SQLException, DatabaseException{
+		return transact(connection -> {
+			try(ResultSet selection = connection.prepare(latestChangeVersionQuery).executeQuery()){
+				selection.next();
+				return selection.getLong(1);
+			}
+		});
+	}
+	
+	/**
+	 * @param after (The version to read from, exclusive)
+	 * @param limit (The maximum amount of changes to return)
+	 * @return Changes newer than the passed version, oldest first, including this server's own.
+	 * 
+	 * <br><br>Pages through the change log by version, the same way {@link #getRegisteredUUIDs(UUID, int)} pages through the user table.
+	 * 
+	 * @throws SQLException This function accesses the database via a "SELECT" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for this query.
+	 */
+	public List<Change> getChangesSince(long after, int limit) throws SQLException, DatabaseException{
+		Preconditions.checkArgument(limit > 0);
 		
-		if(selection.getRow() == 1){ //There are no entries in the ResultSet.
-			logger.debug("No entries for user " + new String(uuid) + " were found in the ResultSet.");
-			return false;
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(getChangesQuery);
+			statement.setLong(1, after);
+			statement.setInt(2, limit);
 			
-		} else { //There is one or more entries with the matching uuid.
-			logger.debug("User " + new String(uuid) + " was found in the database.");
-			return true;
-		} 
+			List<Change> page = new ArrayList<Change>();
+			try(ResultSet selection = statement.executeQuery()){
+				while(selection.next()){
+					page.add(new Change(selection.getLong(1), UUIDUtils.read(selection, 2), 
+							Change.Kind.fromCode(selection.getInt(3)), selection.getLong(4)));
+				}
+			}
+			return page;
+		});
+	}
+	
+	/**
+	 * @param retentionHours (How old a change has to be to be deleted, by the database's clock)
+	 * @param limit (The most changes to delete at once, so the table isn't locked for long)
+	 * @return The amount of changes deleted.
+	 * 
+	 * <br><br>Deletes old changes from the change log. A server that was unable to read the log for longer than this has to forget everything it cached.
+	 * 
+	 * @throws SQLException This function accesses the database via a "DELETE" query.
+	 * @throws DatabaseException Declared by the transaction; never thrown for a delete.
+	 */
+	public int pruneChanges(int retentionHours, int limit) throws SQLException, DatabaseException{
+		Preconditions.checkArgument(retentionHours > 0 && limit > 0);
 		
+		return transact(connection -> {
+			PreparedStatement statement = connection.prepare(pruneChangesQuery);
+			statement.setInt(1, -retentionHours);
+			statement.setInt(2, limit);
+			return statement.executeUpdate();
+		});
+	}
+	
+	//Writes a change to the log as part of the transaction that made it, so it is committed (or rolled back) together with it.
+	private void recordChange(PooledConnection connection, UUID uuid, Change.Kind kind) throws SQLException{
+		PreparedStatement statement = connection.prepare(addChangeQuery);
+		bindChange(statement, uuid, kind);
+		statement.executeUpdate();
+	}
+	
+	private void bindChange(PreparedStatement statement, UUID uuid, Change.Kind kind) throws SQLException{
+		UUIDUtils.bind(statement, 1, uuid);
+		statement.setInt(2, kind.getCode());
+		statement.setLong(3, nodeId);
 	}
 }
@@ -0,0 +1,359 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Imports players and their pre-shared keys from a CSV file or an SQL dump, such as the user table of another authentication plugin.
+ * <br><br>The import is a pipeline of three stages, connected by bounded queues so that memory use stays the same however large the file:
+ * <br>1. A reader thread parses the file into batches of rows ({@link ImportSource}).
+ * <br>2. A few validator threads check and convert the batches in parallel: UUIDs through {@link UUIDUtils#parse(CharSequence)}, keys by
+ * normalizing them to unpadded, upper case Base32.
+ * <br>3. The thread that called {@link #run()} writes the batches to the sink in file order, one transaction per batch, and takes a
+ * {@link ImportCheckpoint} after each, so an interrupted import can be resumed.
+ * <br><br>Only rows with a valid UUID and key are imported; the rest are counted and the first few logged. Keys are never logged.
+ * Some of these may be pulled from configuration in the future.
+ */
+public class BulkImporter {
+	
+	/** Where imported players go.*/
+	@FunctionalInterface
+	public interface Sink {
+		
+		/**
+		 * @param users (Players to add, each mapped to their pre-shared key. Players who are already registered must be left as they are)
+		 * 
+		 * @throws SQLException If the players could not be written.
+		 * @throws DatabaseException If the players could not be written.
+		 */
+		void write(Map<UUID, String> users) throws SQLException, DatabaseException;
+	}
+	
+	private static final int batchSize = 1000; //Rows per transaction and per checkpoint.
+	private static final int batchesAhead = 8; //How many batches may be read and validated ahead of the one being written.
+	private static final int maximumValidators = 4;
+	private static final int minimumKeyLength = 16; //80 bits, what EnderAuth itself generates.
+	private static final int maximumKeyLength = 32; //What the user table holds.
+	private static final int rejectionsLogged = 20; //The rest are only counted.
+	private static final long reportIntervalMillis = 5000;
+	
+	private final Path file;
+	private final Path checkpointFile;
+	private final ImportOptions options;
+	private final Sink sink;
+	private final Logger logger;
+	private final Consumer<ImportProgress> reporter;
+	
+	private final AtomicInteger rejectionsShown = new AtomicInteger();
+	private volatile boolean cancelled = false;
+	private volatile ImportProgress progress;
+	
+	/**
+	 * @param file (The file to import)
+	 * @param checkpointFile (Where to keep the import's checkpoint)
+	 * @param options (How the file is laid out)
+	 * @param sink (Where to write the players)
+	 * @param logger (Where rejected rows and problems are reported)
+	 * @param reporter (Told the progress every few seconds and once the import ends, on the thread running it)
+	 */
+	public BulkImporter(Path file, Path checkpointFile, ImportOptions options, Sink sink, Logger logger, Consumer<ImportProgress> reporter){
+		this.file = file;
+		this.checkpointFile = checkpointFile;
+		this.options = options;
+		this.sink = sink;
+		this.logger = logger;
+		this.reporter = reporter;
+		this.progress = new ImportProgress(0, 0, 0, 0, 0, 0, 0, false); //Until the checkpoint has been read.
+	}
+	
+	/**
+	 * @return The progress when the import ended.
+	 * 
+	 * <br><br>Runs the import to the end of the file, or until it is cancelled, blocking the calling thread, which does the writing.
+	 * The checkpoint is removed once the whole file has been imported.
+	 * 
+	 * @throws IOException If the file or the checkpoint could not be read or written. The import can be resumed.
+	 * @throws SQLException If a batch could not be written. The import can be resumed.
+	 * @throws DatabaseException If a batch could not be written. The import can be resumed.
+	 */
+	public ImportProgress run() throws IOException, SQLException, DatabaseException{
+		ImportCheckpoint checkpoint = options.isRestart() ? null : ImportCheckpoint.load(checkpointFile, file, options);
+		long fileSize = Files.size(file);
+		long fileModified = Files.getLastModifiedTime(file).toMillis();
+		long rowsAtStart = checkpoint == null ? 0 : checkpoint.getRows();
+		long imported = checkpoint == null ? 0 : checkpoint.getImported();
+		long rejected = checkpoint == null ? 0 : checkpoint.getRejected();
+		long start = System.nanoTime();
+		
+		progress = new ImportProgress(rowsAtStart, imported, rejected, checkpoint == null ? 0 : checkpoint.getPosition(), fileSize, 0, 0, false);
+		if(checkpoint != null){
+			logger.info("Resuming the import of {} after row {}.", file.getFileName(), rowsAtStart);
+		}
+		
+		int validatorCount = Math.max(1, Math.min(maximumValidators, Runtime.getRuntime().availableProcessors() - 1));
+		ExecutorService validators = Executors.newFixedThreadPool(validatorCount, 
+				new ThreadFactoryBuilder().setNameFormat("EnderAuth-Import-Validate-%d").setDaemon(true).build());
+		BlockingQueue<CompletableFuture<Batch>> batches = new ArrayBlockingQueue<CompletableFuture<Batch>>(batchesAhead);
+		
+		try(ImportSource source = ImportSource.open(file, options, checkpoint)){
+			Thread reader = new ThreadFactoryBuilder().setNameFormat("EnderAuth-Import-Read").setDaemon(true).build()
+					.newThread(() -> read(source, validators, batches));
+			reader.start();
+			
+			long position = source.getPosition();
+			long rows = rowsAtStart;
+			long lastReport = System.nanoTime();
+			
+			try {
+				while(!cancelled){
+					Batch batch;
+					try {
+						batch = batches.take().join();
+					} catch (CompletionException e) {
+						throw rethrow(e.getCause());
+					}
+					if(batch == null){
+						break; //The end of the file.
+					}
+					
+					if(!batch.users.isEmpty()){
+						sink.write(batch.users);
+					}
+					imported += batch.users.size();
+					rejected += batch.rejected;
+					rows = batch.lastRow;
+					position = batch.position;
+					
+					new ImportCheckpoint(options.toString(), fileSize, fileModified, position, batch.state, rows, imported, rejected).save(checkpointFile);
+					progress = new ImportProgress(rows, imported, rejected, position, fileSize, rows - rowsAtStart, System.nanoTime() - start, false);
+					
+					if(System.nanoTime() - lastReport > TimeUnit.MILLISECONDS.toNanos(reportIntervalMillis)){
+						lastReport = System.nanoTime();
+						reporter.accept(progress);
+					}
+				}
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancelled = true;
+			} finally {
+				stopReading(reader, batches);
+			}
+			
+			boolean finished = !cancelled;
+			if(finished){
+				Files.deleteIfExists(checkpointFile);
+				position = fileSize;
+			}
+			progress = new ImportProgress(rows, imported, rejected, position, fileSize, rows - rowsAtStart, System.nanoTime() - start, finished);
+			reporter.accept(progress);
+			return progress;
+		} finally {
+			validators.shutdownNow();
+		}
+	}
+	
+	/** Stops the import after the batch being written. It can be resumed from there later.*/
+	public void cancel(){
+		cancelled = true;
+	}
+	
+	/** @return Whether the import was cancelled.*/
+	public boolean isCancelled(){ return cancelled; }
+	
+	/** @return How far the import has got.*/
+	public ImportProgress getProgress(){ return progress; }
+	
+	/** @return The file being imported.*/
+	public Path getFile(){ return file; }
+	
+	/**
+	 * Runs on the reader thread: parses the file into batches, hands them to the validators, and queues the results in file order.
+	 * The end of the file is marked by a null batch, a failure by a batch that completed exceptionally.
+	 */
+	private void read(ImportSource source, ExecutorService validators, BlockingQueue<CompletableFuture<Batch>> batches){
+		try {
+			while(true){
+				List<ImportSource.Row> rows = new ArrayList<ImportSource.Row>(batchSize);
+				ImportSource.Row row;
+				while(rows.size() < batchSize && (row = source.next()) != null){
+					rows.add(row);
+				}
+				if(rows.isEmpty()){
+					break;
+				}
+				
+				long position = source.getPosition();
+				int state = source.getState();
+				long lastRow = source.getRows();
+				if(!queue(batches, CompletableFuture.supplyAsync(() -> validate(rows, position, state, lastRow), validators))){
+					return;
+				}
+			}
+			queue(batches, CompletableFuture.completedFuture(null));
+		} catch (IOException | RuntimeException e) {
+			CompletableFuture<Batch> failure = new CompletableFuture<Batch>();
+			failure.completeExceptionally(e);
+			queue(batches, failure);
+		}
+	}
+	
+	/** @return False if the import stopped, and nobody will take the batch.*/
+	private boolean queue(BlockingQueue<CompletableFuture<Batch>> batches, CompletableFuture<Batch> batch){
+		try {
+			while(!cancelled && !Thread.currentThread().isInterrupted()){
+				if(batches.offer(batch, 100, TimeUnit.MILLISECONDS)){
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	private void stopReading(Thread reader, BlockingQueue<CompletableFuture<Batch>> batches){
+		reader.interrupt();
+		batches.clear();
+		try {
+			reader.join(TimeUnit.SECONDS.toMillis(5));
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	/** Runs on a validator thread: turns the rows into players, dropping the ones that aren't valid.*/
+	private Batch validate(List<ImportSource.Row> rows, long position, int state, long lastRow){
+		Map<UUID, String> users = new LinkedHashMap<UUID, String>(rows.size() * 4 / 3 + 1);
+		int rejected = 0;
+		
+		for(ImportSource.Row row : rows){
+			UUID uuid = toUUID(row.getUUID());
+			String key = toKey(row.getKey());
+			
+			if(uuid == null || key == null){
+				rejected++;
+				if(rejectionsShown.getAndIncrement() < rejectionsLogged){
+					logger.warn("Row {} of {} was not imported: {}.", row.getNumber(), file.getFileName(), 
+							uuid == null ? "column " + options.getUUIDColumn() + " does not hold a UUID" 
+									: "column " + options.getKeyColumn() + " does not hold a Base32 key of " + minimumKeyLength + " to " + maximumKeyLength + " characters");
+				}
+				continue;
+			}
+			users.put(uuid, key); //Should a player be in the file twice, the later row wins.
+		}
+		return new Batch(users, rejected, position, state, lastRow);
+	}
+	
+	/** @return The UUID in the field, written as text, a hex literal or its 16 raw bytes, or null if there is none.*/
+	private static UUID toUUID(String field){
+		if(field == null){
+			return null;
+		}
+		if(field.length() == UUIDUtils.BYTES){ //Binary, as a BINARY(16) column is dumped. Too short to be text.
+			return UUIDUtils.fromBytes(field.getBytes(StandardCharsets.ISO_8859_1));
+		}
+		return UUIDUtils.parse(field);
+	}
+	
+	/** @return The key in the field as upper case Base32 without padding, spaces or dashes, or null if the field holds none.*/
+	private static String toKey(String field){
+		if(field == null){
+			return null;
+		}
+		
+		StringBuilder key = new StringBuilder(maximumKeyLength);
+		for(int i=0; i<field.length(); i++){
+			char c = field.charAt(i);
+			if(c == ' ' || c == '-' || c == '='){
+				continue; //How apps show keys, and Base32 padding.
+			}
+			c = Character.toUpperCase(c);
+			if(!((c >= 'A' && c <= 'Z') || (c >= '2' && c <= '7')) || key.length() == maximumKeyLength){
+				return null;
+			}
+			key.append(c);
+		}
+		return key.length() >= minimumKeyLength ? key.toString() : null;
+	}
+	
+	/** @return The cause as a DatabaseException, for the caller to throw, unless it could be thrown as it is.*/
+	private static DatabaseException rethrow(Throwable cause) throws IOException, SQLException{
+		if(cause instanceof IOException){
+			throw (IOException) cause;
+		}
+		if(cause instanceof SQLException){
+			throw (SQLException) cause;
+		}
+		if(cause instanceof RuntimeException){
+			throw (RuntimeException) cause;
+		}
+		if(cause instanceof DatabaseException){
+			return (DatabaseException) cause;
+		}
+		return new DatabaseException("The import failed.", new RuntimeException(cause));
+	}
+	
+	/** A validated batch of players, and where in the file it ended.*/
+	private static final class Batch {
+		private final Map<UUID, String> users;
+		private final int rejected;
+		private final long position;
+		private final int state;
+		private final long lastRow;
+		
+		private Batch(Map<UUID, String> users, int rejected, long position, int state, long lastRow){
+			this.users = users;
+			this.rejected = rejected;
+			this.position = position;
+			this.state = state;
+			this.lastRow = lastRow;
+		}
+	}
+}
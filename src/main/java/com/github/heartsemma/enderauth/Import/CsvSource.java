@@ -0,0 +1,131 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+
+/**
+ * Reads rows from a delimiter separated file, one per line. Fields may be quoted with double quotes, which lets them hold delimiters
+ * and line breaks; a doubled quote inside quotes is a quote. Lines may end with \n or \r\n, and blank lines are skipped.
+ * <br><br>If the first line of the file has no UUID where one should be, it is taken to be a header and skipped.
+ */
+class CsvSource extends ImportSource {
+	
+	private final char delimiter;
+	private final int uuidColumn;
+	private final int keyColumn;
+	private boolean atStart;
+	
+	CsvSource(Path file, ImportOptions options, long position, long rows) throws IOException{
+		super(file, position, rows);
+		this.delimiter = options.getDelimiter();
+		this.uuidColumn = options.getUUIDColumn();
+		this.keyColumn = options.getKeyColumn();
+		this.atStart = position == 0;
+	}
+	
+	@Override
+	public Row next() throws IOException{
+		while(peek() >= 0){
+			String uuid = null;
+			String key = null;
+			boolean blank = true;
+			int column = 1;
+			
+			while(true){
+				boolean wanted = column == uuidColumn || column == keyColumn;
+				if(readField(wanted)){
+					blank = false;
+				}
+				if(column == uuidColumn){
+					uuid = field.toString();
+				} else if(column == keyColumn){
+					key = field.toString();
+				}
+				
+				int c = read();
+				if(c == delimiter){
+					blank = false;
+					column++;
+					continue;
+				}
+				if(c == '\r' && peek() == '\n'){
+					read();
+				}
+				break; //End of the line or of the file.
+			}
+			
+			boolean header = atStart && !blank && (uuid == null || UUIDUtils.parse(uuid) == null);
+			atStart = atStart && blank;
+			if(blank || header){
+				continue;
+			}
+			return row(uuid, key);
+		}
+		return null;
+	}
+	
+	/**
+	 * @param wanted (Whether to keep the field's content in {@link #field})
+	 * @return Whether the field had any content. It is consumed up to, but not including, the delimiter or line break after it.
+	 */
+	private boolean readField(boolean wanted) throws IOException{
+		field.setLength(0);
+		boolean content = false;
+		int c = peek();
+		
+		if(c == '"'){
+			read();
+			content = true;
+			while((c = read()) >= 0){
+				if(c == '"'){
+					if(peek() != '"'){
+						break;
+					}
+					read();
+				}
+				if(wanted){
+					capture(c);
+				}
+			}
+		}
+		
+		//Unquoted fields, and whatever follows the closing quote of a quoted one.
+		while((c = peek()) >= 0 && c != delimiter && c != '\n' && c != '\r'){
+			read();
+			content = true;
+			if(wanted){
+				capture(c);
+			}
+		}
+		return content;
+	}
+	
+	@Override
+	public int getState(){ return 0; }
+}
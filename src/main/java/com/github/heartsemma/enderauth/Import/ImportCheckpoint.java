@@ -0,0 +1,145 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * How far an import got: where in the file the last batch written to the database ended, and the counts up to there.
+ * <br><br>A checkpoint is written after every batch, and only after the batch was committed, so an import that is interrupted at any
+ * point can pick up from the last one and at most re-import one batch, which importing leaves as it is. It is kept in a small properties
+ * file next to the source; the file is replaced atomically, so it is never seen half written.
+ * <br><br>A checkpoint only applies to the file and options it was taken with. If the file has been changed since, or is imported with
+ * different options, the import starts over instead.
+ */
+public final class ImportCheckpoint {
+	
+	private final String options;
+	private final long fileSize;
+	private final long fileModified;
+	private final long position;
+	private final int state;
+	private final long rows;
+	private final long imported;
+	private final long rejected;
+	
+	/**
+	 * @param options (The options the file is imported with, as {@link ImportOptions#toString()} writes them)
+	 * @param fileSize (The size of the file when the import started)
+	 * @param fileModified (When the file was last modified before the import started, in milliseconds)
+	 * @param position (The offset in the file after the last row written to the database)
+	 * @param state (The source's state at that position)
+	 * @param rows (How many rows come before the position)
+	 * @param imported (How many of them were written to the database)
+	 * @param rejected (How many of them were rejected)
+	 */
+	public ImportCheckpoint(String options, long fileSize, long fileModified, long position, int state, long rows, long imported, long rejected){
+		this.options = options;
+		this.fileSize = fileSize;
+		this.fileModified = fileModified;
+		this.position = position;
+		this.state = state;
+		this.rows = rows;
+		this.imported = imported;
+		this.rejected = rejected;
+	}
+	
+	/**
+	 * @param checkpointFile (Where the checkpoint is kept)
+	 * @param source (The file being imported)
+	 * @param options (The options it is imported with)
+	 * @return The checkpoint of an earlier import of the same file with the same options, or null if there is none that applies.
+	 */
+	public static ImportCheckpoint load(Path checkpointFile, Path source, ImportOptions options) throws IOException{
+		if(!Files.exists(checkpointFile)){
+			return null;
+		}
+		
+		Properties properties = new Properties();
+		try(InputStream in = Files.newInputStream(checkpointFile)){
+			properties.load(in);
+		}
+		
+		try {
+			ImportCheckpoint checkpoint = new ImportCheckpoint(properties.getProperty("options"), 
+					Long.parseLong(properties.getProperty("fileSize")), Long.parseLong(properties.getProperty("fileModified")), 
+					Long.parseLong(properties.getProperty("position")), Integer.parseInt(properties.getProperty("state")), 
+					Long.parseLong(properties.getProperty("rows")), Long.parseLong(properties.getProperty("imported")), 
+					Long.parseLong(properties.getProperty("rejected")));
+			
+			boolean applies = options.toString().equals(checkpoint.options) 
+					&& Files.size(source) == checkpoint.fileSize 
+					&& Files.getLastModifiedTime(source).toMillis() == checkpoint.fileModified
+					&& checkpoint.position <= checkpoint.fileSize;
+			return applies ? checkpoint : null;
+		} catch (NumberFormatException | NullPointerException e) {
+			return null; //Not a checkpoint we wrote.
+		}
+	}
+	
+	/**
+	 * @param checkpointFile (Where to keep the checkpoint)
+	 * 
+	 * <br><br>Writes the checkpoint, replacing the previous one in one step.
+	 */
+	public void save(Path checkpointFile) throws IOException{
+		Properties properties = new Properties();
+		properties.setProperty("options", options);
+		properties.setProperty("fileSize", Long.toString(fileSize));
+		properties.setProperty("fileModified", Long.toString(fileModified));
+		properties.setProperty("position", Long.toString(position));
+		properties.setProperty("state", Integer.toString(state));
+		properties.setProperty("rows", Long.toString(rows));
+		properties.setProperty("imported", Long.toString(imported));
+		properties.setProperty("rejected", Long.toString(rejected));
+		
+		Path temporary = checkpointFile.resolveSibling(checkpointFile.getFileName() + ".tmp");
+		try(OutputStream out = Files.newOutputStream(temporary)){
+			properties.store(out, "EnderAuth import checkpoint. Delete this file to import the whole file again.");
+		}
+		Files.move(temporary, checkpointFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+	}
+	
+	/** @return The offset in the file after the last row written to the database.*/
+	public long getPosition(){ return position; }
+	
+	/** @return The source's state at that position.*/
+	public int getState(){ return state; }
+	
+	/** @return How many rows come before the position.*/
+	public long getRows(){ return rows; }
+	
+	/** @return How many rows before the position were written to the database.*/
+	public long getImported(){ return imported; }
+	
+	/** @return How many rows before the position were rejected.*/
+	public long getRejected(){ return rejected; }
+}
@@ -0,0 +1,173 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * What to import and how to read it, parsed from the arguments of /ea admin import and of {@link ImportTool}, which take the same ones:
+ * <br><br>{@code <file> [--format csv|sql] [--table <name>] [--uuid-column <n>] [--key-column <n>] [--delimiter <c>] [--restart]}
+ * <br><br>Columns are counted from 1. The format is guessed from the file's extension when it isn't given; SQL dumps need the table
+ * whose rows to import, since a dump usually holds several.
+ */
+public final class ImportOptions {
+	
+	/** The kinds of files EnderAuth can import.*/
+	public enum Format { CSV, SQL }
+	
+	public static final String usage = "<file> [--format csv|sql] [--table <name>] [--uuid-column <n>] [--key-column <n>] [--delimiter <c>] [--restart]";
+	
+	private String file;
+	private Format format;
+	private String table;
+	private int uuidColumn = 1;
+	private int keyColumn = 2;
+	private char delimiter = ',';
+	private boolean restart = false;
+	
+	private ImportOptions(){}
+	
+	/**
+	 * @param arguments (The arguments, split at whitespace)
+	 * @return The options.
+	 * 
+	 * @throws IllegalArgumentException If the arguments don't make sense, with a message saying why.
+	 */
+	public static ImportOptions parse(List<String> arguments){
+		ImportOptions options = new ImportOptions();
+		
+		for(int i=0; i<arguments.size(); i++){
+			String argument = arguments.get(i);
+			if(argument.isEmpty()){
+				continue;
+			}
+			
+			switch(argument){
+			case "--format":
+				String format = value(arguments, ++i, argument).toUpperCase(Locale.ROOT);
+				try {
+					options.format = Format.valueOf(format);
+				} catch (IllegalArgumentException e) {
+					throw new IllegalArgumentException("Unknown format '" + format.toLowerCase(Locale.ROOT) + "'; use csv or sql.");
+				}
+				break;
+			case "--table":
+				options.table = value(arguments, ++i, argument);
+				break;
+			case "--uuid-column":
+				options.uuidColumn = column(arguments, ++i, argument);
+				break;
+			case "--key-column":
+				options.keyColumn = column(arguments, ++i, argument);
+				break;
+			case "--delimiter":
+				String delimiter = value(arguments, ++i, argument);
+				if(delimiter.equals("tab") || delimiter.equals("\\t")){
+					delimiter = "\t";
+				}
+				if(delimiter.length() != 1 || delimiter.charAt(0) == '"' || delimiter.charAt(0) == '\n' || delimiter.charAt(0) == '\r'){
+					throw new IllegalArgumentException("The delimiter must be a single character, such as , or ; or tab.");
+				}
+				options.delimiter = delimiter.charAt(0);
+				break;
+			case "--restart":
+				options.restart = true;
+				break;
+			default:
+				if(argument.startsWith("--")){
+					throw new IllegalArgumentException("Unknown option " + argument + ".");
+				}
+				if(options.file != null){
+					throw new IllegalArgumentException("Only one file can be imported at a time.");
+				}
+				options.file = argument;
+			}
+		}
+		
+		if(options.file == null){
+			throw new IllegalArgumentException("Which file should be imported?");
+		}
+		if(options.format == null){
+			options.format = options.file.toLowerCase(Locale.ROOT).endsWith(".sql") ? Format.SQL : Format.CSV;
+		}
+		if(options.format == Format.SQL && options.table == null){
+			throw new IllegalArgumentException("SQL dumps need --table, the table whose rows should be imported.");
+		}
+		if(options.uuidColumn == options.keyColumn){
+			throw new IllegalArgumentException("The UUID and the key can't be in the same column.");
+		}
+		return options;
+	}
+	
+	private static String value(List<String> arguments, int index, String option){
+		if(index >= arguments.size() || arguments.get(index).startsWith("--")){
+			throw new IllegalArgumentException(option + " needs a value.");
+		}
+		return arguments.get(index);
+	}
+	
+	private static int column(List<String> arguments, int index, String option){
+		String value = value(arguments, index, option);
+		try {
+			int column = Integer.parseInt(value);
+			if(column > 0){
+				return column;
+			}
+		} catch (NumberFormatException e) {
+			//Reported below.
+		}
+		throw new IllegalArgumentException(option + " must be a column number, counting from 1.");
+	}
+	
+	/** @return The file to import, as given.*/
+	public String getFile(){ return file; }
+	
+	/** @return How the file is laid out.*/
+	public Format getFormat(){ return format; }
+	
+	/** @return The table whose rows to import from an SQL dump, or null for CSV files.*/
+	public String getTable(){ return table; }
+	
+	/** @return The column holding players' UUIDs, counting from 1.*/
+	public int getUUIDColumn(){ return uuidColumn; }
+	
+	/** @return The column holding players' pre-shared keys, counting from 1.*/
+	public int getKeyColumn(){ return keyColumn; }
+	
+	/** @return What separates the columns of a CSV file.*/
+	public char getDelimiter(){ return delimiter; }
+	
+	/** @return Whether to ignore the checkpoint of an earlier, unfinished import of the file and start from its beginning.*/
+	public boolean isRestart(){ return restart; }
+	
+	/** @return The options as they would be typed, for the log and the checkpoint.*/
+	@Override
+	public String toString(){
+		return file + " --format " + format.name().toLowerCase(Locale.ROOT) + (table == null ? "" : " --table " + table) 
+				+ " --uuid-column " + uuidColumn + " --key-column " + keyColumn 
+				+ (format == Format.CSV ? " --delimiter " + (delimiter == '\t' ? "tab" : String.valueOf(delimiter)) : "");
+	}
+}
@@ -0,0 +1,88 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * How far an import has got, at one point in time.
+ */
+public final class ImportProgress {
+	
+	private final long rows;
+	private final long imported;
+	private final long rejected;
+	private final long position;
+	private final long size;
+	private final long rowsThisRun;
+	private final long elapsedNanos;
+	private final boolean finished;
+	
+	ImportProgress(long rows, long imported, long rejected, long position, long size, long rowsThisRun, long elapsedNanos, boolean finished){
+		this.rows = rows;
+		this.imported = imported;
+		this.rejected = rejected;
+		this.position = position;
+		this.size = size;
+		this.rowsThisRun = rowsThisRun;
+		this.elapsedNanos = elapsedNanos;
+		this.finished = finished;
+	}
+	
+	/** @return The amount of rows written to the database or rejected so far, including those of earlier, interrupted runs.*/
+	public long getRows(){ return rows; }
+	
+	/** @return The amount of players written to the database.*/
+	public long getImported(){ return imported; }
+	
+	/** @return The amount of rows that didn't hold a valid UUID and key.*/
+	public long getRejected(){ return rejected; }
+	
+	/** @return How much of the file has been imported, from 0 to 100.*/
+	public int getPercent(){
+		if(finished){
+			return 100;
+		}
+		return size <= 0 ? 0 : (int) (100 * position / size);
+	}
+	
+	/** @return The rows per second this run has managed.*/
+	public long getRowsPerSecond(){
+		long millis = TimeUnit.NANOSECONDS.toMillis(elapsedNanos);
+		return millis == 0 ? 0 : rowsThisRun * 1000 / millis;
+	}
+	
+	/** @return Whether the whole file has been imported.*/
+	public boolean isFinished(){ return finished; }
+	
+	/** @return The progress in one line, for the log and the console.*/
+	public String describe(){
+		return String.format("%d%% of the file: %,d rows, %,d imported, %,d rejected (%,d rows/s)", 
+				getPercent(), rows, imported, rejected, getRowsPerSecond());
+	}
+	
+	@Override
+	public String toString(){ return describe(); }
+}
@@ -0,0 +1,192 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Streams the rows of a file that is being imported, keeping only the two columns EnderAuth wants from each.
+ * <br><br>Files are read through a fixed buffer and every row is dropped once it has been handed out, so memory use doesn't depend on
+ * the size of the file, nor on the length of its lines (SQL dumps often put thousands of rows on one).
+ * <br><br>Bytes are read as ISO-8859-1, one char per byte. UUIDs and keys are plain ASCII, so they come out right whatever the file's
+ * real encoding, binary UUIDs keep their exact bytes, and a char count is a byte offset, which is what {@link #getPosition()} returns
+ * and what a checkpoint seeks back to.
+ */
+public abstract class ImportSource implements AutoCloseable {
+	
+	private static final int bufferSize = 64 * 1024;
+	protected static final int maximumFieldLength = 64; //Longer than any valid UUID or key. Anything past it is dropped, which still leaves the field invalid.
+	
+	/** One row of the file: the fields holding the UUID and the key, as written and not yet checked. Either may be null if the row had no such column.*/
+	public static final class Row {
+		private final long number;
+		private final String uuid;
+		private final String key;
+		
+		Row(long number, String uuid, String key){
+			this.number = number;
+			this.uuid = uuid;
+			this.key = key;
+		}
+		
+		/** @return Which row of the file this is, counting from 1.*/
+		public long getNumber(){ return number; }
+		
+		/** @return The UUID field.*/
+		public String getUUID(){ return uuid; }
+		
+		/** @return The key field.*/
+		public String getKey(){ return key; }
+	}
+	
+	private final FileChannel channel;
+	private final ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+	private final long size;
+	private long position;
+	private long rows;
+	private boolean endOfFile = false;
+	
+	protected final StringBuilder field = new StringBuilder(maximumFieldLength + 1);
+	
+	/**
+	 * @param file (The file to read)
+	 * @param position (Where to start reading, as returned by {@link #getPosition()} when a checkpoint was taken, or 0)
+	 * @param rows (How many rows come before that position)
+	 */
+	protected ImportSource(Path file, long position, long rows) throws IOException{
+		this.channel = FileChannel.open(file, StandardOpenOption.READ);
+		this.size = channel.size();
+		this.position = position;
+		this.rows = rows;
+		channel.position(position);
+		buffer.limit(0);
+	}
+	
+	/**
+	 * @param file (The file to read)
+	 * @param options (How the file is laid out)
+	 * @param checkpoint (Where an earlier import of the file stopped, or null to start from the beginning)
+	 * @return A source of the file's rows.
+	 */
+	public static ImportSource open(Path file, ImportOptions options, ImportCheckpoint checkpoint) throws IOException{
+		long position = checkpoint == null ? 0 : checkpoint.getPosition();
+		int state = checkpoint == null ? 0 : checkpoint.getState();
+		long rows = checkpoint == null ? 0 : checkpoint.getRows();
+		
+		switch(options.getFormat()){
+		case SQL:
+			return new SqlDumpSource(file, options, position, state, rows);
+		case CSV:
+		default:
+			return new CsvSource(file, options, position, rows);
+		}
+	}
+	
+	/**
+	 * @return The next row, or null once the file has been read to its end.
+	 * 
+	 * <br><br>When this returns, the source has read exactly up to the end of the row, so {@link #getPosition()} and {@link #getState()}
+	 * describe where the next row starts.
+	 */
+	public abstract Row next() throws IOException;
+	
+	/** @return What the parser needs to know, besides the position, to continue from the end of the last row. 0 if nothing.*/
+	public abstract int getState();
+	
+	/** @return The offset of the first byte not read yet.*/
+	public long getPosition(){ return position; }
+	
+	/** @return The amount of rows handed out, including those before the position reading started at.*/
+	public long getRows(){ return rows; }
+	
+	/** @return The size of the file in bytes.*/
+	public long getSize(){ return size; }
+	
+	@Override
+	public void close() throws IOException{
+		channel.close();
+	}
+	
+	/**
+	 * @param uuid (The UUID field)
+	 * @param key (The key field)
+	 * @return The next row, numbered.
+	 */
+	protected Row row(String uuid, String key){
+		return new Row(++rows, uuid, key);
+	}
+	
+	/** @return The next char without consuming it, or -1 at the end of the file.*/
+	protected int peek() throws IOException{
+		return peek(0);
+	}
+	
+	/**
+	 * @param ahead (How many chars past the next one to look)
+	 * @return That char without consuming anything, or -1 if the file ends before it. Looking further than a few chars ahead is not supported.
+	 */
+	protected int peek(int ahead) throws IOException{
+		if(buffer.remaining() <= ahead && !fill(ahead + 1)){
+			return -1;
+		}
+		return buffer.get(buffer.position() + ahead) & 0xFF;
+	}
+	
+	/** @return The next char, or -1 at the end of the file.*/
+	protected int read() throws IOException{
+		int c = peek(0);
+		if(c >= 0){
+			buffer.position(buffer.position() + 1);
+			position++;
+		}
+		return c;
+	}
+	
+	/** Appends the char to {@link #field}, unless the field is already too long to be valid.*/
+	protected void capture(int c){
+		if(field.length() <= maximumFieldLength){
+			field.append((char) c);
+		}
+	}
+	
+	private boolean fill(int needed) throws IOException{
+		while(buffer.remaining() < needed){
+			if(endOfFile){
+				return false;
+			}
+			buffer.compact();
+			int read = channel.read(buffer);
+			buffer.flip();
+			if(read < 0){
+				endOfFile = true;
+			}
+		}
+		return true;
+	}
+}
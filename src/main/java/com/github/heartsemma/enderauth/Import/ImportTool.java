@@ -0,0 +1,101 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+
+/**
+ * Imports players into EnderAuth's MySQL database from the command line, without a running server. Meant for moving a network onto
+ * EnderAuth before its servers are started with it. Run it from the server's directory, with the server's libraries on the classpath:
+ * <br><br>{@code java -cp mods/EnderAuth.jar:<server jar> com.github.heartsemma.enderauth.Import.ImportTool [--config <dir>] <file> [options]}
+ * <br><br>The options are those of /ea admin import (see {@link ImportOptions}). The checkpoint is kept next to the file, so an import
+ * that was interrupted, e.g. with Ctrl-C, continues where it stopped when the same command is run again.
+ */
+public class ImportTool {
+	
+	private static final String defaultConfigDir = "config/enderauth"; //Where Sponge puts EnderAuth's configuration.
+	
+	public static void main(String[] args){
+		List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+		Path configDir = Paths.get(defaultConfigDir);
+		int config = arguments.indexOf("--config");
+		if(config >= 0 && config + 1 < arguments.size()){
+			configDir = Paths.get(arguments.get(config + 1));
+			arguments.subList(config, config + 2).clear();
+		}
+		
+		ImportOptions options;
+		try {
+			options = ImportOptions.parse(arguments);
+		} catch (IllegalArgumentException e) {
+			System.err.println(e.getMessage());
+			System.err.println("Usage: ImportTool [--config <dir>] " + ImportOptions.usage);
+			System.exit(2);
+			return;
+		}
+		
+		Path file = Paths.get(options.getFile());
+		if(!Files.isRegularFile(file)){
+			System.err.println("There is no file " + file.toAbsolutePath() + ".");
+			System.exit(2);
+			return;
+		}
+		
+		Logger logger = LoggerFactory.getLogger("EnderAuth");
+		new Main(logger, null, null, configDir); //Database takes its logger from the plugin.
+		Database database = Database.getInstance();
+		
+		BulkImporter importer = new BulkImporter(file, file.resolveSibling(file.getFileName() + ".checkpoint"), options, 
+				database::importUsers, logger, progress -> System.out.println(progress.describe()));
+		
+		int status = 0;
+		try {
+			System.out.println("Importing " + options + ".");
+			importer.run();
+			System.out.println("Done.");
+		} catch (IOException | SQLException | DatabaseException | RuntimeException e) {
+			System.err.println("The import stopped: " + e + ". Run the same command again to continue from the last checkpoint.");
+			e.printStackTrace();
+			status = 1;
+		} finally {
+			database.close();
+		}
+		System.exit(status);
+	}
+}
@@ -0,0 +1,311 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * Reads rows from the INSERT statements of a MySQL dump, such as the ones mysqldump writes, for one table.
+ * <br><br>Every other statement is skipped, as are comments. Values may be quoted strings (with MySQL's backslash escapes), hex literals
+ * such as {@code X'0a1b'} or {@code 0x0a1b}, strings with a character set introducer such as {@code _binary '...'}, NULL or bare numbers.
+ * Hex literals come out as 0x followed by their digits; binary strings keep their bytes, one char per byte.
+ * <br><br>Rows are handed out one at a time even when a statement inserts thousands of them, and a checkpoint can be taken between
+ * any two rows: the only thing the parser then needs to remember besides the position is whether it is inside an INSERT's values.
+ */
+class SqlDumpSource extends ImportSource {
+	
+	/** Between statements, or inside one that isn't an INSERT into the table.*/
+	private static final int betweenStatements = 0;
+	/** Inside the VALUES of an INSERT into the table, before a row or the separator after one.*/
+	private static final int inValues = 1;
+	
+	private final String table;
+	private final int uuidColumn;
+	private final int keyColumn;
+	private int state;
+	
+	SqlDumpSource(Path file, ImportOptions options, long position, int state, long rows) throws IOException{
+		super(file, position, rows);
+		String table = options.getTable();
+		this.table = table.substring(table.lastIndexOf('.') + 1).replace("`", "");
+		this.uuidColumn = options.getUUIDColumn();
+		this.keyColumn = options.getKeyColumn();
+		this.state = state;
+	}
+	
+	@Override
+	public Row next() throws IOException{
+		while(true){
+			skipWhitespaceAndComments();
+			int c = peek();
+			if(c < 0){
+				return null;
+			}
+			
+			if(state == inValues){
+				read();
+				if(c == '('){
+					Row row = readRow();
+					//Consume the separator too, so that the state is right for whoever continues from here.
+					skipWhitespaceAndComments();
+					c = peek();
+					if(c == ','){
+						read();
+					} else {
+						state = betweenStatements;
+						if(c == ';'){
+							read();
+						}
+					}
+					return row;
+				} else if(c != ','){
+					state = betweenStatements;
+					if(c != ';'){
+						skipStatement(); //Not what a dump writes; give up on the rest of the statement.
+					}
+				}
+			} else if(c == ';'){
+				read();
+			} else {
+				String keyword = readWord();
+				if((keyword.equalsIgnoreCase("INSERT") || keyword.equalsIgnoreCase("REPLACE")) && readInsertHeader()){
+					state = inValues;
+				} else {
+					skipStatement();
+				}
+			}
+		}
+	}
+	
+	/**
+	 * @return Whether the statement inserts into the table. If it does, everything up to and including VALUES has been read.
+	 * If not, the statement has been read up to some point in it.
+	 */
+	private boolean readInsertHeader() throws IOException{
+		String word;
+		do {
+			skipWhitespaceAndComments();
+			word = readWord();
+		} while(word.equalsIgnoreCase("LOW_PRIORITY") || word.equalsIgnoreCase("DELAYED") || word.equalsIgnoreCase("HIGH_PRIORITY") 
+				|| word.equalsIgnoreCase("IGNORE") || word.equalsIgnoreCase("INTO"));
+		
+		//The table, possibly qualified with its database; only the last part counts.
+		String name = word;
+		while(true){
+			if(name.isEmpty() && peek() == '`'){
+				name = readQuoted();
+			}
+			if(peek() != '.'){
+				break;
+			}
+			read();
+			name = readWord();
+		}
+		if(!name.equalsIgnoreCase(table)){
+			return false;
+		}
+		
+		skipWhitespaceAndComments();
+		if(peek() == '('){ //A column list. Columns are picked by position, so it is only skipped.
+			int c;
+			while((c = read()) >= 0 && c != ')'){
+				if(c == '`'){
+					readQuoted('`');
+				}
+			}
+			skipWhitespaceAndComments();
+		}
+		
+		word = readWord();
+		return word.equalsIgnoreCase("VALUES") || word.equalsIgnoreCase("VALUE");
+	}
+	
+	/** @return The row whose opening parenthesis was just read, consumed up to and including its closing one.*/
+	private Row readRow() throws IOException{
+		String uuid = null;
+		String key = null;
+		int column = 1;
+		
+		while(true){
+			skipWhitespaceAndComments();
+			boolean wanted = column == uuidColumn || column == keyColumn;
+			String value = readValue(wanted);
+			if(column == uuidColumn){
+				uuid = value;
+			} else if(column == keyColumn){
+				key = value;
+			}
+			
+			skipWhitespaceAndComments();
+			int c = read();
+			if(c == ','){
+				column++;
+			} else if(c == ')' || c < 0){
+				break;
+			} else {
+				//Not what a dump writes. Skip to the end of the row, so at least the rows after it can be read.
+				while((c = read()) >= 0 && c != ')'){
+					if(c == '\'' || c == '"'){
+						readQuoted(c);
+					}
+				}
+				break;
+			}
+		}
+		return row(uuid, key);
+	}
+	
+	/**
+	 * @param wanted (Whether the value will be used. If not, it is read but not kept)
+	 * @return The value, or null if it was NULL or isn't wanted.
+	 */
+	private String readValue(boolean wanted) throws IOException{
+		field.setLength(0);
+		int c = peek();
+		
+		if(c == '\'' || c == '"'){
+			read();
+			readQuoted(c);
+			return wanted ? field.toString() : null;
+		}
+		
+		//A bare value, or the start of a hex literal or introduced string.
+		while((c = peek()) >= 0 && c != ',' && c != ')' && c != '\'' && c != '"' && !Character.isWhitespace(c)){
+			capture(read());
+		}
+		String token = field.toString();
+		
+		if(peek() == '\'' && (token.equalsIgnoreCase("X"))){
+			read();
+			field.setLength(0);
+			field.append("0x");
+			readQuoted('\'');
+			return wanted ? field.toString() : null;
+		}
+		if(token.startsWith("_")){
+			skipWhitespaceAndComments();
+			c = peek();
+			if(c == '\'' || c == '"'){
+				read();
+				field.setLength(0);
+				readQuoted(c);
+				return wanted ? field.toString() : null;
+			}
+		}
+		return !wanted || token.equalsIgnoreCase("NULL") ? null : token;
+	}
+	
+	/** @return The quoted identifier or string whose opening quote is next, without its quotes.*/
+	private String readQuoted() throws IOException{
+		int quote = read();
+		field.setLength(0);
+		readQuoted(quote);
+		return field.toString();
+	}
+	
+	/**
+	 * @param quote (The quote the string was opened with, which has been read already)
+	 * 
+	 * <br><br>Reads the rest of the quoted string into {@link #field}, resolving escapes, up to and including its closing quote.
+	 */
+	private void readQuoted(int quote) throws IOException{
+		int c;
+		while((c = read()) >= 0){
+			if(c == quote){
+				if(peek() != quote){
+					return;
+				}
+				read(); //A doubled quote.
+			} else if(c == '\\' && quote != '`'){
+				c = read();
+				switch(c){
+				case '0': c = 0; break;
+				case 'b': c = '\b'; break;
+				case 'n': c = '\n'; break;
+				case 'r': c = '\r'; break;
+				case 't': c = '\t'; break;
+				case 'Z': c = 26; break;
+				case -1: return;
+				default: break; //\\, \', \" and anything else stand for themselves.
+				}
+			}
+			capture(c);
+		}
+	}
+	
+	/** @return The letters, digits and underscores that come next, which may be none.*/
+	private String readWord() throws IOException{
+		StringBuilder word = new StringBuilder();
+		int c;
+		while((c = peek()) >= 0 && (Character.isLetterOrDigit(c) || c == '_' || c == '$')){
+			read();
+			if(word.length() <= maximumFieldLength){
+				word.append((char) c);
+			}
+		}
+		return word.toString();
+	}
+	
+	/** Reads up to and including the semicolon that ends the current statement, skipping over strings and comments.*/
+	private void skipStatement() throws IOException{
+		int c;
+		while(true){
+			skipWhitespaceAndComments();
+			if((c = read()) < 0 || c == ';'){
+				return;
+			}
+			if(c == '\'' || c == '"' || c == '`'){
+				field.setLength(0);
+				readQuoted(c);
+			}
+		}
+	}
+	
+	private void skipWhitespaceAndComments() throws IOException{
+		while(true){
+			int c = peek();
+			if(c >= 0 && Character.isWhitespace(c)){
+				read();
+			} else if(c == '#' || (c == '-' && peek(1) == '-' && (peek(2) == ' ' || peek(2) == '\t' || peek(2) == '\n' || peek(2) == '\r' || peek(2) < 0))){
+				while((c = read()) >= 0 && c != '\n'){
+					//Comments run to the end of the line.
+				}
+			} else if(c == '/' && peek(1) == '*'){
+				read();
+				read();
+				while((c = read()) >= 0 && !(c == '*' && peek() == '/')){
+					//Versioned comments such as /*!40101 ... */ are skipped like any other.
+				}
+				read();
+			} else {
+				return;
+			}
+		}
+	}
+	
+	@Override
+	public int getState(){ return state; }
+}
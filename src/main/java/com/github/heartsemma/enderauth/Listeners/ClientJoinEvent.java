@@ -24,12 +24,16 @@
 
 package com.github.heartsemma.enderauth.Listeners;
 
-import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Bouncer;
 //Main
 import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.Authentication.SessionStore;
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
 import com.github.heartsemma.enderauth.Commands.Messenger;
 import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
-import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+import com.github.heartsemma.enderauth.Metrics.Operation;
+import com.github.heartsemma.enderauth.Tracing.Trace;
 
 //Sponge Listener Packages
 import org.spongepowered.api.event.Listener;
@@ -39,9 +43,14 @@ import org.slf4j.Logger;
 //Sponge Player
 import org.spongepowered.api.entity.living.player.Player;
 
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.sql.SQLException;
 //Optional
 import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 
 public class ClientJoinEvent {
@@ -49,8 +58,12 @@ public class ClientJoinEvent {
 	//Final variables for interacting with other parts of the plugin
 	private final Main main = Main.getInstance(); 
 	private final Logger logger = main.getLogger();
-	private Database database = Database.getInstance();
 	private Messenger messenger = Messenger.getInstance();
+	private RegistrationLookup registrationLookup = RegistrationLookup.getInstance();
+	private InteractionGuard interactionGuard = InteractionGuard.getInstance();
+	private Bouncer bouncer = Bouncer.getInstance();
+	private TotpVerifier totpVerifier = TotpVerifier.getInstance();
+	private final SessionStore sessionStore = main.getSessionStore(); //Null if the session file couldn't be opened.
 	
 	//Returns true if the associated player is registered, false if not.
 	public boolean isRegistered(Player player){
@@ -58,10 +71,28 @@ public class ClientJoinEvent {
 		return true;
 	}
 	
+	/*
+	 * This is called off the main thread while the client is still logging in.
+	 * We use it to start the database lookup early, so the result is usually ready by the time the player has joined.
+	 * Players who are about to resume their session won't need it.
+	 */
+	@Listener
+	public void onClientAuthEvent(ClientConnectionEvent.Auth event){
+		UUID uuid = event.getProfile().getUniqueId();
+		
+		if(sessionStore != null && sessionStore.isResumable(uuid, addressOf(event.getConnection().getAddress()))){
+			return;
+		}
+		
+		registrationLookup.prefetch(uuid);
+	}
+	
 	/*
 	 * This is called after a player has successfully connected to a server.
 	 * The goal is to prevent this player from doing anything until they have successfully authenticated themselves via our plugin.
 	 * If the player has not registered yet they will be forced to now.
+	 * 
+	 * The database lookup runs on EnderAuth's I/O threads; the greeting (or kick) is applied back on the main thread once it finishes.
 	 */
 	@Listener
 	public void onClientJoinEvent(ClientConnectionEvent.Join event){
@@ -77,34 +108,123 @@ public class ClientJoinEvent {
 			logger.warn("We were unable to authenticate this player because Sponge was unable to tell us who or what joined.");
 			return;
 		} else {
-			logger.debug("Attempting to identify and authenticate the given user");
 			player = arrivingPlayer.get();
 		}
 		
-		boolean isInDatabase;
-		try {
-			byte[] uuid = UUIDUtils.getUUID(player);
-			isInDatabase = database.isInDatabase(uuid);
-		} catch (SQLException e) {
+		long joinedAt = System.nanoTime();
+		
+		//A player who left while logged in and came back soon enough is let straight in.
+		if(sessionStore != null && sessionStore.resume(player.getUniqueId(), addressOf(player.getConnection().getAddress()))){
+			registrationLookup.discard(player.getUniqueId());
+			bouncer.addUser(player);
+			messenger.sessionResumed(player);
+			Operation.JOIN.recordSince(joinedAt);
+			return;
+		}
+		
+		//The player must be held before they get the chance to do anything, so this happens right away rather than after the lookup.
+		interactionGuard.hold(player.getUniqueId());
+		
+		CompletableFuture<Boolean> lookup = registrationLookup.claim(player.getUniqueId());
+		
+		//The database is saturated; the player stays held until their turn comes rather than being kicked.
+		if(registrationLookup.isWaiting(player.getUniqueId())){
+			messenger.pleaseWait(player);
+		}
+		
+		lookup
+			.whenCompleteAsync((isInDatabase, error) -> {
+				try {
+					greet(player, isInDatabase, error);
+				} finally {
+					Operation.JOIN.recordSince(joinedAt);
+				}
+			}, registrationLookup.getMainThreadExecutor());
+	}
+	
+	/*
+	 * Throws away lookups for clients that authenticated but never made it to the Join event,
+	 * and makes sure a player who leaves has to authenticate again next time, unless they come back within their session's lifetime.
+	 */
+	@Listener
+	public void onClientDisconnectEvent(ClientConnectionEvent.Disconnect event){
+		Player player = event.getTargetEntity();
+		UUID uuid = player.getUniqueId();
+		
+		if(sessionStore != null && bouncer.isOnList(uuid)){
+			sessionStore.issue(uuid, addressOf(player.getConnection().getAddress()));
+		}
+		
+		registrationLookup.discard(uuid);
+		interactionGuard.leave(uuid);
+		bouncer.removeUser(uuid);
+		totpVerifier.forget(uuid);
+	}
+	
+	//Null if the address was never resolved, in which case there is no session to issue or resume.
+	private static InetAddress addressOf(InetSocketAddress socketAddress){
+		return socketAddress == null ? null : socketAddress.getAddress();
+	}
+	
+	/**
+	 * @param player (The player that joined)
+	 * @param isInDatabase (The result of the registration lookup, null if it failed)
+	 * @param error (The exception thrown by the lookup, null if it succeeded)
+	 * 
+	 * <br><br>Applies the result of a registration lookup. Must be called on the main thread.
+	 */
+	private void greet(Player player, Boolean isInDatabase, Throwable error){
+		//The player may have left while we were talking to the database.
+		if(!player.isOnline()){
+			return;
+		}
+		
+		if(error instanceof CompletionException && error.getCause() != null){
+			error = error.getCause();
+		}
+		
+		if(error instanceof SQLException){
 			logger.error("EnderAuth encountered an exception while trying to communicate with its database.");
 			logger.error("Since EnderAuth must deterine the presence of the user in the database as a part of authentication, we will kick the player.");
-			e.printStackTrace();
+			error.printStackTrace();
+			Operation.JOIN.recordError();
+			Trace.kick(player.getUniqueId(), "database unreachable");
 			player.kick();
 			return;
-		} catch (DatabaseException e) {
+		} else if(error instanceof DatabaseException){
 			logger.error("There was a problem with the database that prevented EnderAuth from determining the presence of a player.");
 			logger.error("Since EnderAuth must deterine the presence of the user in the database as a part of authentication, we will kick the player.");
-			e.printStackTrace();
+			error.printStackTrace();
+			Operation.JOIN.recordError();
+			Trace.kick(player.getUniqueId(), "database inconsistent");
+			player.kick();
+			return;
+		} else if(error != null){
+			logger.error("EnderAuth was unable to determine the presence of a player in its database.");
+			logger.error("Since EnderAuth must deterine the presence of the user in the database as a part of authentication, we will kick the player.");
+			error.printStackTrace();
+			Operation.JOIN.recordError();
+			Trace.kick(player.getUniqueId(), "lookup failed");
 			player.kick();
 			return;
 		}
 		
 		if(isInDatabase){
-			messenger.welcomeBack(player);
+			//Their key will be needed as soon as they log in. A player whose key was reset has none, and is sent to register instead.
+			totpVerifier.preload(player.getUniqueId(), registrationLookup.getJoinExecutor())
+				.whenCompleteAsync((loaded, preloadError) -> {
+					if(!player.isOnline()){
+						return;
+					}
+					if(preloadError == null && !totpVerifier.isLoaded(player.getUniqueId())){
+						messenger.keyReset(player);
+					} else {
+						messenger.welcomeBack(player);
+					}
+				}, registrationLookup.getMainThreadExecutor());
 		} else {
 			messenger.sendIntroduction(player);
 		}
-		
 	}
 	
 }
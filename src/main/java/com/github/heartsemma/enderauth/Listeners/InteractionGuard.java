@@ -0,0 +1,126 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Listeners;
+
+import java.util.HashSet;
+import java.util.UUID;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
+
+import com.github.heartsemma.enderauth.Bouncer;
+import com.github.heartsemma.enderauth.Main;
+
+/**
+ * Keeps {@link PlayerInteractEvents} registered only while at least one unauthenticated player is online.
+ * <br><br>Once everybody has authenticated, the blocking listeners are unregistered so that block and move events on the server
+ * don't pay for EnderAuth at all. The first player who joins unauthenticated registers them again.
+ * <br>Every transition happens under one lock, and a player is put on the {@link Bouncer}'s list before they stop being held,
+ * so no player is ever unguarded, whichever thread they authenticate on.
+ */
+public class InteractionGuard {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final Bouncer bouncer = Bouncer.getInstance();
+	
+	private final PlayerInteractEvents interactEvents = new PlayerInteractEvents();
+	
+	//Guarded by this. Online players that still have to authenticate.
+	private final HashSet<UUID> unauthenticated = new HashSet<UUID>();
+	private boolean registered;
+	
+	private static InteractionGuard INSTANCE = null;
+	
+	public static synchronized InteractionGuard getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new InteractionGuard();
+		}
+		return INSTANCE;
+	}
+	
+	private InteractionGuard(){}
+	
+	/**
+	 * @param uuid (The player that has to authenticate)
+	 * 
+	 * <br><br>Starts holding the player until they authenticate, registering the blocking listeners if nobody else was being held.
+	 * Call this before the player gets a chance to act, i.e. from the Join listener.
+	 */
+	public synchronized void hold(UUID uuid){
+		if(bouncer.isOnList(uuid)){
+			return;
+		}
+		
+		if(unauthenticated.add(uuid) && !registered){
+			logger.debug("An unauthenticated player is online; registering EnderAuth's interaction listeners.");
+			Sponge.getEventManager().registerListeners(main, interactEvents);
+			registered = true;
+		}
+	}
+	
+	/**
+	 * @param uuid (The player that authenticated)
+	 * @return False if the player was not being held, e.g. because they left while their code was being checked.
+	 * 
+	 * <br><br>Adds the player to the Bouncer's list and stops holding them. Safe to call from any thread.
+	 */
+	public synchronized boolean authenticate(UUID uuid){
+		if(!unauthenticated.contains(uuid)){
+			return false;
+		}
+		
+		bouncer.addUser(uuid);
+		interactEvents.release(uuid);
+		forget(uuid);
+		return true;
+	}
+	
+	/**
+	 * @param uuid (The player that left)
+	 * 
+	 * <br><br>Stops holding a player that disconnected, whether or not they authenticated.
+	 */
+	public synchronized void leave(UUID uuid){
+		interactEvents.release(uuid);
+		forget(uuid);
+	}
+	
+	/** @return The amount of online players that still have to authenticate.*/
+	public synchronized int getUnauthenticatedCount(){ return unauthenticated.size(); }
+	
+	/** @return True if the blocking listeners are currently registered.*/
+	public synchronized boolean isRegistered(){ return registered; }
+	
+	//Must hold the lock.
+	private void forget(UUID uuid){
+		if(unauthenticated.remove(uuid) && unauthenticated.isEmpty() && registered){
+			logger.debug("Every online player has authenticated; unregistering EnderAuth's interaction listeners.");
+			Sponge.getEventManager().unregisterListeners(interactEvents);
+			registered = false;
+		}
+	}
+}
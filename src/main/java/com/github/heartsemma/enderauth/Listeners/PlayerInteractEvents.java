@@ -1,16 +1,21 @@
 package com.github.heartsemma.enderauth.Listeners;
 
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+
 import org.slf4j.Logger;
+import org.spongepowered.api.entity.Transform;
 import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Cancellable;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.block.ChangeBlockEvent;
 import org.spongepowered.api.event.entity.MoveEntityEvent;
+import org.spongepowered.api.event.filter.Getter;
 import org.spongepowered.api.event.filter.cause.First;
+import org.spongepowered.api.world.World;
 
 import com.github.heartsemma.enderauth.Bouncer;
 import com.github.heartsemma.enderauth.Main;
-import com.google.common.base.Preconditions;
 
 /*
  * Prevents unauthenticated players from:
@@ -18,6 +23,8 @@ import com.google.common.base.Preconditions;
  * - Placing Blocks
  * - Moving
  * - Entering non-enderauth commands
+ *
+ * These listeners are only registered while somebody needs them; see InteractionGuard.
  */
 public class PlayerInteractEvents {
 	
@@ -25,6 +32,9 @@ public class PlayerInteractEvents {
 	private final Logger logger = main.getLogger();
 	private final Bouncer bouncer = Bouncer.getInstance();
 	
+	//Where each unauthenticated player is held in place. Built once per player, on their first blocked move, and reused afterwards.
+	private final ConcurrentHashMap<UUID, Transform<World>> frozenTransforms = new ConcurrentHashMap<UUID, Transform<World>>();
+	
 	/**
 	 * @param event (The event that occured)
 	 * @param player (The player that triggered the event)
@@ -34,39 +44,63 @@ public class PlayerInteractEvents {
 	 * it cancels the event.
 	 */
 	private boolean vetAction(Cancellable event, Player player){
-		logger.debug("Vetting player " + player.getName() + " to perform an action unknown action.");
-		logger.debug("Checking for null parameters 'player' and 'event'.");
-		Preconditions.checkNotNull(player);
-		Preconditions.checkNotNull(event);
-		
-		boolean authenticated = false;
-		
-		if(!bouncer.isOnList(player)){
-			event.setCancelled(true);
-			authenticated = true;
+		if(bouncer.isOnList(player.getUniqueId())){
+			return true;
 		}
 		
-		return authenticated;
+		event.setCancelled(true);
+		return false;
 	}
 	
 	@Listener
 	public void onBreakBlockEvent(ChangeBlockEvent.Break event, @First Player player){
-		if(!vetAction(event, player)){;
-			logger.debug("The Player " + player.getName() + " attempted to break blocks but needs to authenticate with EnderAuth first.");
+		if(!vetAction(event, player)){
+			logger.debug("The Player {} attempted to break blocks but needs to authenticate with EnderAuth first.", player.getName());
 		}
 	}
 	
 	@Listener 
 	public void onPlaceBlockEvent(ChangeBlockEvent.Place event, @First Player player){
-		if(!vetAction(event, player)){;
-			logger.debug("The Player " + player.getName() + " attempted to place blocks but needs to authenticate with EnderAuth first.");
+		if(!vetAction(event, player)){
+			logger.debug("The Player {} attempted to place blocks but needs to authenticate with EnderAuth first.", player.getName());
 		}
 	}
 	
+	/*
+	 * This fires many times per tick for every player, so the authenticated path is a single lock-free lookup and nothing else.
+	 * Unauthenticated players may look around, but any change in position is replaced with the place they were frozen at, keeping the
+	 * rotation they moved to. Rewriting the destination (rather than cancelling) keeps every correction at the same spot, so the client
+	 * settles instead of rubber-banding.
+	 */
 	@Listener
-	public void onMoveEvent(MoveEntityEvent event, @First Player player){
-		if(!vetAction(event, player)){;
-			logger.debug("The Player " + player.getName() + " attempted to move but needs to authenticate with EnderAuth first.");
+	public void onMoveEvent(MoveEntityEvent event, @Getter("getTargetEntity") Player player){
+		UUID uuid = player.getUniqueId();
+		if(bouncer.isOnList(uuid)){
+			return;
+		}
+		
+		Transform<World> frozen = frozenTransforms.get(uuid);
+		if(frozen == null){
+			frozen = event.getFromTransform();
+			Transform<World> previous = frozenTransforms.putIfAbsent(uuid, frozen);
+			if(previous != null){
+				frozen = previous;
+			}
 		}
+		
+		Transform<World> to = event.getToTransform();
+		if(!to.getPosition().equals(frozen.getPosition())){
+			event.setToTransform(frozen.setRotation(to.getRotation())); //Only the position is held; where they look is left alone.
+		}
+	}
+	
+	/**
+	 * @param uuid (The player that no longer needs to be held in place)
+	 * 
+	 * <br><br>Forgets where the player was frozen. Called by the {@link InteractionGuard} once the player has authenticated or left,
+	 * so a later login freezes them wherever they are then.
+	 */
+	public void release(UUID uuid){
+		frozenTransforms.remove(uuid);
 	}
 }
@@ -24,19 +24,45 @@
 
 package com.github.heartsemma.enderauth;
 
+import com.github.heartsemma.enderauth.Authentication.KeyPool;
+import com.github.heartsemma.enderauth.Authentication.LoginThrottle;
+import com.github.heartsemma.enderauth.Authentication.SessionStore;
+import com.github.heartsemma.enderauth.Commands.ImportCommand;
+import com.github.heartsemma.enderauth.Commands.ListCommand;
 import com.github.heartsemma.enderauth.Commands.RegisterCommand;
+import com.github.heartsemma.enderauth.Commands.ResetCommand;
+import com.github.heartsemma.enderauth.Commands.SearchCommand;
+import com.github.heartsemma.enderauth.Commands.StatsCommand;
+import com.github.heartsemma.enderauth.Commands.TraceCommand;
+import com.github.heartsemma.enderauth.Commands.UnregisterCommand;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
 import com.github.heartsemma.enderauth.Listeners.ClientJoinEvent;
+import com.github.heartsemma.enderauth.Metrics.Stats;
+import com.github.heartsemma.enderauth.Storage.ChangeLogPoller;
+import com.github.heartsemma.enderauth.Storage.LocalUserStore;
+import com.github.heartsemma.enderauth.Storage.RegistrationFilter;
+import com.github.heartsemma.enderauth.Storage.RegistrySnapshot;
+import com.github.heartsemma.enderauth.Storage.UserStore;
+import com.github.heartsemma.enderauth.Storage.WriteBehindUserStore;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
 
 import org.spongepowered.api.plugin.Plugin;
 import org.spongepowered.api.plugin.PluginContainer;
 import org.spongepowered.api.text.Text;
 import org.spongepowered.api.Game;
 import org.spongepowered.api.Sponge;
+import org.spongepowered.api.command.args.GenericArguments;
 import org.spongepowered.api.command.spec.CommandSpec;
+import org.spongepowered.api.config.ConfigDir;
+import org.spongepowered.api.entity.living.player.Player;
 import org.spongepowered.api.event.Listener;
 import org.spongepowered.api.event.game.state.GamePreInitializationEvent;
 import org.spongepowered.api.event.game.state.GameInitializationEvent;
 import org.spongepowered.api.event.game.state.GamePostInitializationEvent;
+import org.spongepowered.api.event.game.state.GameStoppingServerEvent;
 
 import org.slf4j.Logger;
 import com.google.inject.Inject;
@@ -51,16 +77,39 @@ public class Main {
 	
 	//Global, plugin wide variables related to the Sponge API
 	private final Logger logger;
-	private final Game game = Sponge.getGame();
+	private final Game game;
 	private final PluginContainer pluginContainer;
+	private final Path configDir;
+	
+	//Where registered players are kept. May be pulled from configuration in the future.
+	//True keeps them in files in the config directory (no MySQL needed), false keeps them in MySQL through Database.
+	private static final boolean useLocalStorage = false;
+	private static final int registrationBatchSize = 100; //Queued registrations are written to MySQL once this many are waiting...
+	private static final long registrationFlushIntervalMillis = 1000; //...or this often, whichever comes first.
+	private static final int registrationQueueLimit = 10000; //Registrations are refused past this many waiting, e.g. while MySQL is down.
+	private static final long registrySnapshotRefreshMinutes = 10; //How often the on-disk list of registered players is rebuilt from MySQL.
+	private static final long registrationFilterRebuildMinutes = 30; //How often the filter of registered players is rebuilt from MySQL.
+	private static final long changeLogPollMillis = 1000; //How often other servers' changes to the shared user table are picked up.
+	private UserStore userStore;
+	private RegistrySnapshot registrySnapshot;
+	private RegistrationFilter registrationFilter;
+	private ChangeLogPoller changeLogPoller;
+	
+	//How long a player who left while logged in may reconnect from the same address without a code. May be pulled from configuration in the future.
+	private static final long sessionLifetimeMinutes = 10;
+	private SessionStore sessionStore;
+	
+	private ImportCommand importCommand; //Kept so that a running import can be stopped with the server.
 	
 	private boolean killSwitchPulled = false;
 	
 	@Inject
-	public Main(Logger logger, Game game, PluginContainer pluginContainer){
+	public Main(Logger logger, Game game, PluginContainer pluginContainer, @ConfigDir(sharedRoot = false) Path configDir){
 		this.logger = logger;
 		this.game = game;
 		this.pluginContainer = pluginContainer;
+		this.configDir = configDir;
+		instance = this;
 	}
 	
 	@Listener
@@ -70,6 +119,41 @@ public class Main {
 		
 		//Initializing Global Variables
 		logger.debug("Initializing important variables.");
+		
+		if(useLocalStorage){
+			try {
+				userStore = new LocalUserStore(configDir.resolve("storage"), logger);
+			} catch (DatabaseException e) {
+				logger.error("EnderAuth was unable to open its local user store, and cannot authenticate anybody without it.");
+				e.printStackTrace();
+				killPlugin();
+			}
+		} else {
+			userStore = new WriteBehindUserStore(Database.getInstance(), logger, registrationBatchSize, registrationFlushIntervalMillis, 
+					registrationQueueLimit);
+			
+			//Lets the first joins after a restart be answered before MySQL has been connected to.
+			registrySnapshot = new RegistrySnapshot(configDir.resolve("storage"), logger);
+			registrySnapshot.startRefreshing(Database.getInstance(), registrySnapshotRefreshMinutes);
+			
+			//Lets first-time players skip the database entirely.
+			registrationFilter = new RegistrationFilter(logger);
+			registrationFilter.startBuilding(Database.getInstance(), registrySnapshot.size(), registrationFilterRebuildMinutes);
+			
+			//Keeps what we cache about players correct while other servers sharing the database change them.
+			changeLogPoller = new ChangeLogPoller(Database.getInstance(), logger);
+			changeLogPoller.start(changeLogPollMillis);
+			
+			//Slow schema updates, such as rebuilding the user table, while the server is already answering joins.
+			Database.getInstance().startDeferredMigrations();
+		}
+		
+		try {
+			sessionStore = new SessionStore(configDir.resolve("storage"), logger, TimeUnit.MINUTES.toMillis(sessionLifetimeMinutes));
+		} catch (IOException e) {
+			logger.warn("EnderAuth was unable to open its session file; every player will have to log in again after reconnecting.");
+			e.printStackTrace();
+		}
     }
 	
 	//After initialization, if nothing went wrong, install listeners.
@@ -84,16 +168,96 @@ public class Main {
 		CommandSpec register = CommandSpec.builder()
 			.description(Text.of("User Registration Command"))
 		    .permission(pluginContainer.getId() + ".user.command.help")
+		    .arguments(GenericArguments.optional(GenericArguments.remainingJoinedStrings(Text.of("code")))) //Apps often show codes split in two.
 		    .executor(new RegisterCommand())
 		    .build();
 		
+		CommandSpec stats = CommandSpec.builder()
+			.description(Text.of("Shows EnderAuth's latencies, failures and queues"))
+			.permission(pluginContainer.getId() + ".admin.command.stats")
+			.executor(new StatsCommand())
+			.build();
+		
+		CommandSpec trace = CommandSpec.builder()
+			.description(Text.of("Writes EnderAuth's recent trace to a file"))
+			.permission(pluginContainer.getId() + ".admin.command.trace")
+			.executor(new TraceCommand())
+			.build();
+		
+		importCommand = new ImportCommand();
+		CommandSpec importPlayers = CommandSpec.builder()
+			.description(Text.of("Imports players and their keys from a CSV file or SQL dump"))
+			.permission(pluginContainer.getId() + ".admin.command.import")
+			.arguments(GenericArguments.optional(GenericArguments.remainingJoinedStrings(Text.of("arguments"))))
+			.executor(importCommand)
+			.build();
+		
+		CommandSpec list = CommandSpec.builder()
+			.description(Text.of("Lists registered players, a page at a time"))
+			.permission(pluginContainer.getId() + ".admin.command.list")
+			.arguments(GenericArguments.optional(GenericArguments.string(Text.of("from"))))
+			.executor(new ListCommand())
+			.build();
+		
+		CommandSpec search = CommandSpec.builder()
+			.description(Text.of("Finds registered players by name or the start of their UUID"))
+			.permission(pluginContainer.getId() + ".admin.command.search")
+			.arguments(GenericArguments.optional(GenericArguments.string(Text.of("query"))))
+			.executor(new SearchCommand())
+			.build();
+		
+		CommandSpec reset = CommandSpec.builder()
+			.description(Text.of("Clears players' keys so that they register again"))
+			.permission(pluginContainer.getId() + ".admin.command.reset")
+			.arguments(GenericArguments.optional(GenericArguments.remainingJoinedStrings(Text.of("players"))))
+			.executor(new ResetCommand())
+			.build();
+		
+		CommandSpec unregister = CommandSpec.builder()
+			.description(Text.of("Removes players from EnderAuth"))
+			.permission(pluginContainer.getId() + ".admin.command.unregister")
+			.arguments(GenericArguments.optional(GenericArguments.remainingJoinedStrings(Text.of("players"))))
+			.executor(new UnregisterCommand())
+			.build();
+		
+		CommandSpec admin = CommandSpec.builder()
+			.description(Text.of("Commands for managing EnderAuth's players"))
+			.child(importPlayers, "import")
+			.child(list, "list")
+			.child(search, "search")
+			.child(reset, "reset")
+			.child(unregister, "unregister")
+			.build();
+		
 		CommandSpec ea = CommandSpec.builder()
 			.description(Text.of("Base command for interacting with EnderAuth"))
 			.child(register, "register")
+			.child(stats, "stats")
+			.child(trace, "trace")
+			.child(admin, "admin")
 			.build();
 		
 		Sponge.getCommandManager().register(this, ea);
 		
+		Stats.getInstance().registerMBeans();
+		
+		//Keys for the first registrations are generated while the server finishes starting.
+		KeyPool.getInstance().start();
+		
+	}
+	
+	//Lets outstanding database work finish before the server goes down.
+	@Listener
+	public void onServerStopping(GameStoppingServerEvent stoppingEvent){
+		issueSessionsToOnlinePlayers();
+		if(importCommand != null){
+			importCommand.cancel();
+		}
+		RegistrationLookup.getInstance().shutdown();
+		LoginThrottle.shutdown();
+		KeyPool.getInstance().shutdown();
+		Stats.getInstance().unregisterMBeans();
+		closeUserStore();
 	}
 	
 	/** @return The final Logger 'logger' from Main. <br><br>This should be the only object used to log events by policy.*/
@@ -105,12 +269,67 @@ public class Main {
 	/** @return The final PluginContainer 'pluginContainer' from Main.*/
 	public PluginContainer getPluginContainer(){ return pluginContainer; }
 	
+	/** @return The final Path 'configDir' from Main; EnderAuth's own configuration directory.*/
+	public Path getConfigDir(){ return configDir; }
+	
+	/** @return The store registered players are kept in. Set up during pre-initialization.*/
+	public UserStore getUserStore(){ return userStore; }
+	
+	/** @return The on-disk list of registered players, or null if the user store doesn't need one.*/
+	public RegistrySnapshot getRegistrySnapshot(){ return registrySnapshot; }
+	
+	/** @return The filter of registered players, or null if the user store doesn't need one.*/
+	public RegistrationFilter getRegistrationFilter(){ return registrationFilter; }
+	
+	/** @return The reader of other servers' changes, or null if the user store isn't shared.*/
+	public ChangeLogPoller getChangeLogPoller(){ return changeLogPoller; }
+	
+	/** @return The sessions of players who left while logged in, or null if the session file couldn't be opened.*/
+	public SessionStore getSessionStore(){ return sessionStore; }
+	
+	//Players still online when the server stops are kicked after we've shut down, so their sessions are issued now.
+	private void issueSessionsToOnlinePlayers(){
+		if(sessionStore == null){
+			return;
+		}
+		
+		Bouncer bouncer = Bouncer.getInstance();
+		for(Player player : Sponge.getServer().getOnlinePlayers()){
+			if(bouncer.isOnList(player)){
+				sessionStore.issue(player.getUniqueId(), player.getConnection().getAddress().getAddress());
+			}
+		}
+	}
+	
+	private void closeUserStore(){
+		if(changeLogPoller != null){
+			changeLogPoller.close();
+		}
+		if(sessionStore != null){
+			sessionStore.close();
+		}
+		if(registrationFilter != null){
+			registrationFilter.close();
+		}
+		if(registrySnapshot != null){
+			registrySnapshot.close();
+		}
+		if(userStore != null){
+			userStore.close();
+		}
+	}
+	
 	/** Shuts down the program in case of major unrecoverable failure, security incident, etc. 
 	 * <br><br>Specifically, this unregisters all listeners. If the plugin is configured to shut down the server when encountering major error,
 	 * it does that as well.*/
 	public void killPlugin(){ 
 		Sponge.getEventManager().unregisterListeners(this);
 		killSwitchPulled = true;
+		RegistrationLookup.getInstance().shutdown();
+		LoginThrottle.shutdown();
+		KeyPool.getInstance().shutdown();
+		Stats.getInstance().unregisterMBeans();
+		closeUserStore();
 	}
 	
 	
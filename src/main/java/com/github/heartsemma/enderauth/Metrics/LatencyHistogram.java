@@ -0,0 +1,128 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of durations in the style of HdrHistogram: buckets are linear within each power of two, 
+ * so every recorded value is kept to within about 3% of itself, from a nanosecond up to about 18 minutes.
+ * <br><br>Recording is a handful of atomic increments; it takes no lock and doesn't allocate, so histograms can stay on in production.
+ * Reading is not atomic with respect to recording, so a read taken while values are being recorded may be off by those values.
+ */
+public class LatencyHistogram {
+	
+	private static final int subBucketBits = 5;
+	private static final int subBucketCount = 1 << subBucketBits; //32 linear steps per power of two; the 3% above.
+	private static final long highestTrackableNanos = (1L << 40) - 1; //Longer durations are counted as this.
+	private static final int bucketCount = index(highestTrackableNanos) + 1;
+	
+	private final AtomicLongArray counts = new AtomicLongArray(bucketCount);
+	private final LongAdder totalCount = new LongAdder();
+	private final LongAdder totalNanos = new LongAdder();
+	private final AtomicLong maxNanos = new AtomicLong();
+	
+	/** @param nanos (A duration; negative durations are counted as zero)*/
+	public void record(long nanos){
+		long value = Math.min(Math.max(nanos, 0), highestTrackableNanos);
+		
+		counts.incrementAndGet(index(value));
+		totalCount.increment();
+		totalNanos.add(value);
+		
+		long max = maxNanos.get();
+		while(value > max && !maxNanos.compareAndSet(max, value)){
+			max = maxNanos.get();
+		}
+	}
+	
+	/**
+	 * @param startNanos (When the operation started, from {@link System#nanoTime()})
+	 * 
+	 * <br><br>Records the time since startNanos.
+	 */
+	public void recordSince(long startNanos){
+		record(System.nanoTime() - startNanos);
+	}
+	
+	/**
+	 * @param quantile (Between 0 and 1, e.g. 0.99 for the 99th percentile)
+	 * @return The duration below which that share of the recorded durations fall, in nanoseconds. Zero if nothing was recorded.
+	 */
+	public long getValueAtQuantile(double quantile){
+		long total = 0;
+		for(int i = 0; i < bucketCount; i++){
+			total += counts.get(i);
+		}
+		if(total == 0){
+			return 0;
+		}
+		
+		long wanted = Math.max(1, (long) Math.ceil(Math.min(Math.max(quantile, 0), 1) * total));
+		long seen = 0;
+		for(int i = 0; i < bucketCount; i++){
+			seen += counts.get(i);
+			if(seen >= wanted){
+				return Math.min(highestValueIn(i), maxNanos.get());
+			}
+		}
+		return maxNanos.get();
+	}
+	
+	/** @return The amount of durations recorded.*/
+	public long getCount(){ return totalCount.sum(); }
+	
+	/** @return The mean of the recorded durations, in nanoseconds.*/
+	public double getMeanNanos(){
+		long count = totalCount.sum();
+		return count == 0 ? 0 : (double) totalNanos.sum() / count;
+	}
+	
+	/** @return The longest recorded duration, in nanoseconds.*/
+	public long getMaxNanos(){ return maxNanos.get(); }
+	
+	/*
+	 * Values below 2^(subBucketBits + 1) get a bucket each. Above that, every power of two is split into subBucketCount buckets,
+	 * indexed by the value's top subBucketBits + 1 bits (whose highest bit is always set) and how far they were shifted.
+	 */
+	private static int index(long value){
+		if(value < subBucketCount * 2){
+			return (int) value;
+		}
+		int shift = 63 - Long.numberOfLeadingZeros(value) - subBucketBits;
+		return shift * subBucketCount + (int) (value >>> shift);
+	}
+	
+	private static long highestValueIn(int index){
+		if(index < subBucketCount * 2){
+			return index;
+		}
+		int shift = index / subBucketCount - 1;
+		long topBits = index % subBucketCount + subBucketCount;
+		return ((topBits + 1) << shift) - 1;
+	}
+}
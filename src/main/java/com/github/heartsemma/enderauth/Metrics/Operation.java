@@ -0,0 +1,85 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The operations EnderAuth keeps latency histograms and error counts for.
+ * <br><br>Recording is lock-free and doesn't allocate. The usual pattern is:
+ * <pre>
+ * long start = System.nanoTime();
+ * try {
+ *     ...
+ * } catch (SQLException e) {
+ *     Operation.IS_IN_DATABASE.recordError();
+ *     throw e;
+ * } finally {
+ *     Operation.IS_IN_DATABASE.recordSince(start);
+ * }
+ * </pre>
+ */
+public enum Operation {
+	
+	/** A database transaction, from borrowing a connection to committing (retries included).*/
+	TRANSACTION("Transaction"),
+	/** Registering a player in the database.*/
+	ADD_USER("Add user"),
+	/** Asking the database whether a player is registered.*/
+	IS_IN_DATABASE("Is in database"),
+	/** Loading a player's pre-shared key from the database.*/
+	GET_TOTP_KEY("Get TOTP key"),
+	/** A join, from the player appearing to them being greeted (or kicked).*/
+	JOIN("Join"),
+	/** A login attempt, from the code being entered to the outcome.*/
+	LOGIN("Login");
+	
+	private final String displayName;
+	private final LatencyHistogram latency = new LatencyHistogram();
+	private final LongAdder errors = new LongAdder();
+	
+	private Operation(String displayName){
+		this.displayName = displayName;
+	}
+	
+	/** @param startNanos (When the operation started, from {@link System#nanoTime()})*/
+	public void recordSince(long startNanos){
+		latency.recordSince(startNanos);
+	}
+	
+	/** Counts a failed run of the operation. Its duration is recorded as usual.*/
+	public void recordError(){
+		errors.increment();
+	}
+	
+	/** @return A name for the operation fit for people.*/
+	public String getDisplayName(){ return displayName; }
+	
+	/** @return How long runs of the operation took.*/
+	public LatencyHistogram getLatency(){ return latency; }
+	
+	/** @return The amount of runs of the operation that failed.*/
+	public long getErrorCount(){ return errors.sum(); }
+}
@@ -0,0 +1,60 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Metrics;
+
+/**
+ * Exposes an {@link Operation} through JMX.
+ */
+public class OperationStats implements OperationStatsMXBean {
+	
+	private static final double nanosPerMilli = 1e6;
+	
+	private final Operation operation;
+	
+	public OperationStats(Operation operation){
+		this.operation = operation;
+	}
+	
+	@Override
+	public long getCount(){ return operation.getLatency().getCount(); }
+	
+	@Override
+	public long getErrorCount(){ return operation.getErrorCount(); }
+	
+	@Override
+	public double getMeanMillis(){ return operation.getLatency().getMeanNanos() / nanosPerMilli; }
+	
+	@Override
+	public double getMedianMillis(){ return operation.getLatency().getValueAtQuantile(0.5) / nanosPerMilli; }
+	
+	@Override
+	public double get99thPercentileMillis(){ return operation.getLatency().getValueAtQuantile(0.99) / nanosPerMilli; }
+	
+	@Override
+	public double get999thPercentileMillis(){ return operation.getLatency().getValueAtQuantile(0.999) / nanosPerMilli; }
+	
+	@Override
+	public double getMaxMillis(){ return operation.getLatency().getMaxNanos() / nanosPerMilli; }
+}
@@ -0,0 +1,286 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Metrics;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Bouncer;
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.RegistrationLookup;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.Authentication.KeyPool;
+import com.github.heartsemma.enderauth.Authentication.LoginThrottle;
+import com.github.heartsemma.enderauth.Authentication.SessionStore;
+import com.github.heartsemma.enderauth.Listeners.InteractionGuard;
+import com.github.heartsemma.enderauth.Storage.ChangeLogPoller;
+import com.github.heartsemma.enderauth.Storage.ConnectionPool;
+import com.github.heartsemma.enderauth.Storage.RegistrationFilter;
+import com.github.heartsemma.enderauth.Storage.WriteBehindUserStore;
+
+/**
+ * Gathers EnderAuth's statistics in one place, for {@code /ea stats} and JMX.
+ * <br><br>Latencies come from the {@link Operation} histograms. Gauges are read from the parts of the plugin they describe
+ * whenever somebody asks, so keeping them costs nothing in between.
+ */
+public class Stats implements StatsMXBean {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	
+	private static final String domain = "com.github.heartsemma.enderauth";
+	private static final double nanosPerMilli = 1e6;
+	
+	private final List<ObjectName> registeredNames = new ArrayList<ObjectName>();
+	
+	private static Stats INSTANCE = null;
+	
+	public static synchronized Stats getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new Stats();
+		}
+		return INSTANCE;
+	}
+	
+	private Stats(){}
+	
+	/** Makes the statistics visible through JMX, under {@value #domain}.*/
+	public synchronized void registerMBeans(){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		try {
+			register(server, this, new ObjectName(domain + ":type=Stats"));
+			for(Operation operation : Operation.values()){
+				register(server, new OperationStats(operation), new ObjectName(domain + ":type=Operation,name=" + operation.name()));
+			}
+		} catch (JMException e) {
+			logger.warn("EnderAuth was unable to make its statistics available through JMX. They can still be seen with /ea stats.");
+			e.printStackTrace();
+		}
+	}
+	
+	/** Removes the statistics from JMX again, so a reloaded plugin can register its own.*/
+	public synchronized void unregisterMBeans(){
+		MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+		
+		for(ObjectName name : registeredNames){
+			try {
+				server.unregisterMBean(name);
+			} catch (JMException e) {
+				logger.debug("Unable to unregister {} from JMX.", name);
+			}
+		}
+		registeredNames.clear();
+	}
+	
+	/** @return The statistics as lines of text fit for people, for {@code /ea stats}.*/
+	public List<String> describe(){
+		List<String> lines = new ArrayList<String>();
+		
+		for(Operation operation : Operation.values()){
+			LatencyHistogram latency = operation.getLatency();
+			lines.add(String.format("%s: %d (%d failed), median %.2fms, p99 %.2fms, max %.2fms", 
+					operation.getDisplayName(), latency.getCount(), operation.getErrorCount(),
+					latency.getValueAtQuantile(0.5) / nanosPerMilli, latency.getValueAtQuantile(0.99) / nanosPerMilli, 
+					latency.getMaxNanos() / nanosPerMilli));
+		}
+		
+		lines.add(String.format("Connections: %d active, %d idle, %d waiting, %d timed out", 
+				getActiveConnections(), getIdleConnections(), getThreadsWaitingForConnection(), getConnectionTimeoutCount()));
+		lines.add(String.format("Queues: %d registrations pending, %d lookups pending, %d lookups in flight", 
+				getPendingRegistrations(), getPendingLookups(), getInFlightLookups()));
+		lines.add(String.format("Admission: %d waiting (at most %d, limit %d), %d refused, %d lookups coalesced", 
+				getWaitingTasks(), getPeakWaitingTasks(), getMaxWaitingTasks(), getRejectedTasks(), getCoalescedLookups()));
+		lines.add(String.format("Cache: %d players, %.1f%% hits", getCacheSize(), getCacheHitRate() * 100));
+		lines.add(String.format("Filter: %d lookups ruled out, %.3f%% false positives (%.3f%% expected), %d KiB", 
+				getFilterRuledOut(), getFilterObservedFalsePositiveRate() * 100, getFilterExpectedFalsePositiveRate() * 100, getFilterMemoryBytes() / 1024));
+		lines.add(String.format("Players: %d authenticated, %d waiting to authenticate", getAuthenticatedPlayers(), getUnauthenticatedPlayers()));
+		lines.add(String.format("Logins: %d accepted, %d rejected, %d replayed, %d throttled", 
+				getAcceptedLogins(), getRejectedLogins(), getReplayedLogins(), getThrottledLogins()));
+		lines.add(String.format("Sessions: %d issued, %d resumed", getIssuedSessions(), getResumedSessions()));
+		lines.add(String.format("Keys: %d ready, %d generated while a player waited", getPooledKeys(), getKeysGeneratedOnDemand()));
+		lines.add(String.format("Change log: at version %d, %d changes from other servers applied", getChangeLogVersion(), getAppliedChanges()));
+		
+		return lines;
+	}
+	
+	@Override
+	public int getActiveConnections(){
+		ConnectionPool pool = getConnectionPool();
+		return pool == null ? 0 : pool.getActiveCount();
+	}
+	
+	@Override
+	public int getIdleConnections(){
+		ConnectionPool pool = getConnectionPool();
+		return pool == null ? 0 : pool.getIdleCount();
+	}
+	
+	@Override
+	public int getThreadsWaitingForConnection(){
+		ConnectionPool pool = getConnectionPool();
+		return pool == null ? 0 : pool.getWaitingCount();
+	}
+	
+	@Override
+	public long getConnectionTimeoutCount(){
+		ConnectionPool pool = getConnectionPool();
+		return pool == null ? 0 : pool.getAcquisitionTimeoutCount();
+	}
+	
+	@Override
+	public int getPendingRegistrations(){
+		if(main.getUserStore() instanceof WriteBehindUserStore){
+			return ((WriteBehindUserStore) main.getUserStore()).getPendingCount();
+		}
+		return 0;
+	}
+	
+	@Override
+	public int getPendingLookups(){ return RegistrationLookup.getInstance().getPendingCount(); }
+	
+	@Override
+	public int getInFlightLookups(){ return RegistrationLookup.getInstance().getInFlightCount(); }
+	
+	@Override
+	public int getWaitingTasks(){ return RegistrationLookup.getInstance().getWaitingCount(); }
+	
+	@Override
+	public int getPeakWaitingTasks(){ return RegistrationLookup.getInstance().getPeakWaitingCount(); }
+	
+	@Override
+	public int getMaxWaitingTasks(){ return RegistrationLookup.getInstance().getMaxWaitingCount(); }
+	
+	@Override
+	public long getRejectedTasks(){ return RegistrationLookup.getInstance().getRejectedCount(); }
+	
+	@Override
+	public long getCoalescedLookups(){ return RegistrationLookup.getInstance().getCoalescedCount(); }
+	
+	@Override
+	public long getCacheSize(){ return UserCache.getInstance().getSize(); }
+	
+	@Override
+	public double getCacheHitRate(){
+		UserCache userCache = UserCache.getInstance();
+		long hits = userCache.getHitCount();
+		long lookups = hits + userCache.getMissCount();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+	
+	@Override
+	public long getFilterRuledOut(){
+		RegistrationFilter filter = main.getRegistrationFilter();
+		return filter == null ? 0 : filter.getDefiniteNegativeCount();
+	}
+	
+	@Override
+	public double getFilterObservedFalsePositiveRate(){
+		RegistrationFilter filter = main.getRegistrationFilter();
+		return filter == null ? 0 : filter.getObservedFalsePositiveRate();
+	}
+	
+	@Override
+	public double getFilterExpectedFalsePositiveRate(){
+		RegistrationFilter filter = main.getRegistrationFilter();
+		return filter == null ? 0 : filter.getExpectedFalsePositiveRate();
+	}
+	
+	@Override
+	public long getFilterMemoryBytes(){
+		RegistrationFilter filter = main.getRegistrationFilter();
+		return filter == null ? 0 : filter.getMemoryBytes();
+	}
+	
+	@Override
+	public int getAuthenticatedPlayers(){ return Bouncer.getInstance().size(); }
+	
+	@Override
+	public int getUnauthenticatedPlayers(){ return InteractionGuard.getInstance().getUnauthenticatedCount(); }
+	
+	@Override
+	public long getAcceptedLogins(){ return LoginThrottle.getInstance().getAcceptedCount(); }
+	
+	@Override
+	public long getRejectedLogins(){ return LoginThrottle.getInstance().getRejectedCount(); }
+	
+	@Override
+	public long getReplayedLogins(){ return LoginThrottle.getInstance().getReplayedCount(); }
+	
+	@Override
+	public long getThrottledLogins(){ return LoginThrottle.getInstance().getThrottledCount(); }
+	
+	@Override
+	public long getIssuedSessions(){
+		SessionStore sessionStore = main.getSessionStore();
+		return sessionStore == null ? 0 : sessionStore.getIssuedCount();
+	}
+	
+	@Override
+	public long getResumedSessions(){
+		SessionStore sessionStore = main.getSessionStore();
+		return sessionStore == null ? 0 : sessionStore.getResumedCount();
+	}
+	
+	@Override
+	public int getPooledKeys(){ return KeyPool.getInstance().size(); }
+	
+	@Override
+	public long getKeysGeneratedOnDemand(){ return KeyPool.getInstance().getGeneratedOnDemandCount(); }
+	
+	@Override
+	public long getChangeLogVersion(){
+		ChangeLogPoller poller = main.getChangeLogPoller();
+		return poller == null ? -1 : poller.getVersion();
+	}
+	
+	@Override
+	public long getAppliedChanges(){
+		ChangeLogPoller poller = main.getChangeLogPoller();
+		return poller == null ? 0 : poller.getAppliedCount();
+	}
+	
+	//Null while players are kept locally, or before the first query.
+	private ConnectionPool getConnectionPool(){
+		return main.getUserStore() instanceof WriteBehindUserStore ? Database.getInstance().getConnectionPool() : null;
+	}
+	
+	private void register(MBeanServer server, Object bean, ObjectName name) throws JMException{
+		if(server.isRegistered(name)){
+			server.unregisterMBean(name); //Left behind by an earlier load of the plugin.
+		}
+		server.registerMBean(bean, name);
+		registeredNames.add(name);
+	}
+}
@@ -0,0 +1,92 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Metrics;
+
+/**
+ * EnderAuth's gauges and counters, as seen through JMX. Gauges of parts that aren't in use (e.g. the connection pool
+ * when players are kept in local storage) read as zero.
+ */
+public interface StatsMXBean {
+	
+	int getActiveConnections();
+	
+	int getIdleConnections();
+	
+	int getThreadsWaitingForConnection();
+	
+	long getConnectionTimeoutCount();
+	
+	int getPendingRegistrations();
+	
+	int getPendingLookups();
+	
+	int getInFlightLookups();
+	
+	int getWaitingTasks();
+	
+	int getPeakWaitingTasks();
+	
+	int getMaxWaitingTasks();
+	
+	long getRejectedTasks();
+	
+	long getCoalescedLookups();
+	
+	long getCacheSize();
+	
+	double getCacheHitRate();
+	
+	long getFilterRuledOut();
+	
+	double getFilterObservedFalsePositiveRate();
+	
+	double getFilterExpectedFalsePositiveRate();
+	
+	long getFilterMemoryBytes();
+	
+	int getAuthenticatedPlayers();
+	
+	int getUnauthenticatedPlayers();
+	
+	long getAcceptedLogins();
+	
+	long getRejectedLogins();
+	
+	long getReplayedLogins();
+	
+	long getThrottledLogins();
+	
+	long getIssuedSessions();
+	
+	long getResumedSessions();
+	
+	int getPooledKeys();
+	
+	long getKeysGeneratedOnDemand();
+	
+	long getChangeLogVersion();
+	
+	long getAppliedChanges();
+}
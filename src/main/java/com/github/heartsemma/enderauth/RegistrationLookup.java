@@ -0,0 +1,318 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth;
+
+import java.util.ArrayDeque;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.spongepowered.api.Sponge;
+
+import com.github.heartsemma.enderauth.Tracing.Trace;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Runs the "is this player registered?" database lookup on a dedicated I/O executor so the server thread never waits on JDBC.
+ * <br><br>Lookups are started as early as possible (during {@code ClientConnectionEvent.Auth}) and claimed once the player has joined.
+ * The result is then applied back on the main thread through {@link #getMainThreadExecutor()}.
+ * <br><br>Joins arrive in storms after a restart or a proxy failover, so work reaches the database through an admission stage:
+ * <br>- Lookups for the same UUID share one in-flight future, however many times the player reconnects while it runs.
+ * <br>- At most {@value #maxOutstandingTasks} tasks are running or queued on the I/O threads. Anything past that waits in limbo,
+ * in arrival order, and is handed over as earlier tasks finish. Players whose lookup is in limbo stay held by the InteractionGuard
+ * rather than being kicked, so a briefly saturated database only makes them wait.
+ * <br>- Other work, such as commands, only waits in limbo while fewer than {@value #maxWaitingTasks} tasks are there, and is refused beyond that.
+ * Work for joining players is never refused; there is at most one lookup per joining player, so it can't grow without bound.
+ */
+public class RegistrationLookup {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final UserCache userCache = UserCache.getInstance();
+	
+	//Amount of threads that are allowed to talk to the database at once for join lookups.
+	private static final int ioThreads = 4;
+	//Tasks allowed to be running or queued on the I/O threads at once. Some of these may be pulled from configuration in the future.
+	private static final int maxOutstandingTasks = 64;
+	//Tasks allowed to wait in limbo before further work other than joins is refused.
+	private static final int maxWaitingTasks = 256;
+	//How long we wait for outstanding lookups to finish when the plugin is shutting down.
+	private static final long shutdownTimeoutSeconds = 5;
+	
+	private final ThreadPoolExecutor ioExecutor;
+	private final Executor admittedExecutor = task -> admit(task, true);
+	private final Executor joinExecutor = task -> admit(task, false);
+	private final Executor mainThreadExecutor;
+	
+	//Lookups that were started before the player finished joining, keyed by the player's UUID.
+	private final ConcurrentHashMap<UUID, CompletableFuture<Boolean>> pendingLookups;
+	//Every lookup that hasn't finished yet, prefetched or not, so the same UUID is never looked up twice at once.
+	private final ConcurrentHashMap<UUID, CompletableFuture<Boolean>> inFlight;
+	//Players whose lookup is waiting in limbo.
+	private final Set<UUID> waitingLookups = ConcurrentHashMap.newKeySet();
+	
+	//Guarded by limbo.
+	private final ArrayDeque<Runnable> limbo = new ArrayDeque<Runnable>();
+	private int outstandingTasks;
+	private int peakWaitingTasks;
+	
+	private final LongAdder coalesced = new LongAdder();
+	private final LongAdder rejected = new LongAdder();
+	
+	private static RegistrationLookup INSTANCE = null;
+	
+	public static synchronized RegistrationLookup getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new RegistrationLookup();
+		}
+		return INSTANCE;
+	}
+	
+	private RegistrationLookup(){
+		//The queue can't overflow: admit() never lets more than maxOutstandingTasks in.
+		ioExecutor = new ThreadPoolExecutor(ioThreads, ioThreads, 0, TimeUnit.MILLISECONDS, 
+				new ArrayBlockingQueue<Runnable>(maxOutstandingTasks), 
+				new ThreadFactoryBuilder()
+					.setNameFormat("EnderAuth-IO-%d")
+					.setDaemon(true)
+					.build());
+		mainThreadExecutor = Sponge.getScheduler().createSyncExecutor(main);
+		pendingLookups = new ConcurrentHashMap<UUID, CompletableFuture<Boolean>>();
+		inFlight = new ConcurrentHashMap<UUID, CompletableFuture<Boolean>>();
+	}
+	
+	/**
+	 * @param uuid (The UUID of the player that is about to join)
+	 * 
+	 * <br><br>Starts the registration lookup for the passed UUID on the I/O executor, unless one is already running.
+	 * This is safe to call from any thread.
+	 */
+	public void prefetch(UUID uuid){
+		pendingLookups.computeIfAbsent(uuid, this::submit);
+	}
+	
+	/**
+	 * @param uuid (The UUID of the player that joined)
+	 * @return A future that completes with true if the player is in the database, false if not.
+	 * 
+	 * <br><br>Hands out the lookup started by {@link #prefetch(UUID)}, joins one that is already running, or starts a new one.
+	 * The returned future never completes on the calling thread's behalf; nothing here blocks.
+	 */
+	public CompletableFuture<Boolean> claim(UUID uuid){
+		CompletableFuture<Boolean> lookup = pendingLookups.remove(uuid);
+		
+		if(lookup==null){
+			lookup = submit(uuid);
+		}
+		
+		return lookup;
+	}
+	
+	/**
+	 * @param uuid (The UUID of the player that left)
+	 * 
+	 * <br><br>Forgets a lookup that was prefetched for a player who never finished joining.
+	 * A lookup that is already running is left to finish, in case the player comes straight back.
+	 */
+	public void discard(UUID uuid){
+		pendingLookups.remove(uuid);
+	}
+	
+	/**
+	 * @param uuid (The UUID of a player that joined)
+	 * @return True if the player's lookup is waiting in limbo for the database to catch up.
+	 */
+	public boolean isWaiting(UUID uuid){ return waitingLookups.contains(uuid); }
+	
+	/** @return The amount of lookups that were started for players who haven't finished joining yet.*/
+	public int getPendingCount(){ return pendingLookups.size(); }
+	
+	/** @return The amount of lookups that haven't finished yet.*/
+	public int getInFlightCount(){ return inFlight.size(); }
+	
+	/** @return The amount of tasks waiting in limbo for room on the I/O threads.*/
+	public int getWaitingCount(){
+		synchronized(limbo){
+			return limbo.size();
+		}
+	}
+	
+	/** @return The most tasks that were ever waiting in limbo at once.*/
+	public int getPeakWaitingCount(){
+		synchronized(limbo){
+			return peakWaitingTasks;
+		}
+	}
+	
+	/** @return The most tasks other than joins that may wait in limbo at once.*/
+	public int getMaxWaitingCount(){ return maxWaitingTasks; }
+	
+	/** @return The amount of tasks refused because limbo was full.*/
+	public long getRejectedCount(){ return rejected.sum(); }
+	
+	/** @return The amount of lookups that joined one already in flight instead of querying the database again.*/
+	public long getCoalescedCount(){ return coalesced.sum(); }
+	
+	/** 
+	 * @return The executor for database work that isn't part of a join, such as commands.
+	 * <br><br>Goes through the same admission stage as lookups, so tasks may wait in limbo before they run. 
+	 * Once {@value #maxWaitingTasks} tasks are waiting, it refuses more with a {@link RejectedExecutionException}.
+	 */
+	public Executor getIOExecutor(){ return admittedExecutor; }
+	
+	/** 
+	 * @return The executor for short database reads tied to a joining player, such as preloading their key.
+	 * <br><br>Like {@link #getIOExecutor()}, but never refuses work: the player is held until it has run.
+	 */
+	public Executor getJoinExecutor(){ return joinExecutor; }
+	
+	/** @return An executor that runs tasks on the server's main thread. Results of lookups should be applied through this.*/
+	public Executor getMainThreadExecutor(){ return mainThreadExecutor; }
+	
+	/** Stops accepting new lookups and waits a short while for the running ones to finish. Tasks still in limbo are dropped.*/
+	public void shutdown(){
+		synchronized(limbo){
+			limbo.clear();
+		}
+		waitingLookups.clear();
+		ioExecutor.shutdown();
+		pendingLookups.clear();
+		
+		try {
+			if(!ioExecutor.awaitTermination(shutdownTimeoutSeconds, TimeUnit.SECONDS)){
+				logger.warn("EnderAuth's database lookups did not finish in time and will be abandoned.");
+				ioExecutor.shutdownNow();
+			}
+		} catch (InterruptedException e) {
+			ioExecutor.shutdownNow();
+			Thread.currentThread().interrupt();
+		}
+	}
+	
+	private CompletableFuture<Boolean> submit(UUID uuid){
+		long start = System.nanoTime();
+		
+		//Players we've seen recently don't need a trip to the I/O threads at all.
+		Boolean cached = userCache.isInDatabaseIfCached(uuid);
+		if(cached != null){
+			Trace.joinLookup(uuid, start, cached, true, false);
+			return CompletableFuture.completedFuture(cached);
+		}
+		
+		CompletableFuture<Boolean> lookup = new CompletableFuture<Boolean>();
+		CompletableFuture<Boolean> running = inFlight.putIfAbsent(uuid, lookup);
+		if(running != null){
+			coalesced.increment();
+			return running;
+		}
+		
+		//Removed before dependents run, so a lookup that finished is never joined.
+		Runnable task = () -> {
+			waitingLookups.remove(uuid);
+			boolean registered = false;
+			boolean failed = true;
+			try {
+				registered = userCache.isInDatabase(uuid);
+				failed = false;
+			} catch (Throwable e) {
+				inFlight.remove(uuid, lookup);
+				lookup.completeExceptionally(new CompletionException(e));
+				return;
+			} finally {
+				Trace.joinLookup(uuid, start, registered, false, failed);
+			}
+			inFlight.remove(uuid, lookup);
+			lookup.complete(registered);
+		};
+		
+		//Marked first, since the task unmarks it and may start as soon as it is admitted.
+		waitingLookups.add(uuid);
+		if(admit(task, false)){
+			waitingLookups.remove(uuid);
+		}
+		return lookup;
+	}
+	
+	/*
+	 * Runs the task on the I/O threads if there's room, or leaves it in limbo until there is.
+	 * Returns false if the task was left in limbo. A capped task is refused instead if limbo is full.
+	 */
+	private boolean admit(Runnable task, boolean capped){
+		synchronized(limbo){
+			if(outstandingTasks >= maxOutstandingTasks){
+				if(capped && limbo.size() >= maxWaitingTasks){
+					rejected.increment();
+					throw new RejectedExecutionException("EnderAuth's database work is backed up; " + limbo.size() + " tasks are already waiting.");
+				}
+				limbo.add(task);
+				peakWaitingTasks = Math.max(peakWaitingTasks, limbo.size());
+				return false;
+			}
+			outstandingTasks++;
+		}
+		
+		dispatch(task);
+		return true;
+	}
+	
+	//Must only be called for a task that was counted as outstanding.
+	private void dispatch(Runnable task){
+		try {
+			ioExecutor.execute(() -> {
+				try {
+					task.run();
+				} finally {
+					finished();
+				}
+			});
+		} catch (RejectedExecutionException e) {
+			//Only happens once we're shutting down.
+			finished();
+		}
+	}
+	
+	//Hands the slot of a task that finished to the oldest one in limbo.
+	private void finished(){
+		Runnable next;
+		synchronized(limbo){
+			next = limbo.poll();
+			if(next == null){
+				outstandingTasks--;
+				return;
+			}
+		}
+		dispatch(next);
+	}
+}
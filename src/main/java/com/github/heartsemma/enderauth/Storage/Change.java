@@ -0,0 +1,100 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.util.UUID;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * One row of the change log: something happened to a player's registration on some server.
+ * <br><br>Versions are handed out by the database in increasing order, so every server can read the log from where it left off
+ * and forget exactly the players that changed. Immutable.
+ */
+public final class Change {
+	
+	/** What happened to the player. The codes are what is stored in the database and must never change.*/
+	public enum Kind {
+		/** The player registered.*/
+		ADDED(1),
+		/** The player was unregistered.*/
+		REMOVED(2),
+		/** The player's pre-shared key was replaced.*/
+		KEY_CHANGED(3);
+		
+		private final int code;
+		
+		private Kind(int code){
+			this.code = code;
+		}
+		
+		/** @return The code stored in the database for this kind of change.*/
+		public int getCode(){ return code; }
+		
+		/**
+		 * @param code (A code read from the database)
+		 * @return The kind of change it stands for, or null if it was written by a newer version of EnderAuth.
+		 */
+		public static Kind fromCode(int code){
+			for(Kind kind : values()){
+				if(kind.code == code){
+					return kind;
+				}
+			}
+			return null;
+		}
+	}
+	
+	private final long version;
+	private final UUID uuid;
+	private final Kind kind;
+	private final long origin;
+	
+	/**
+	 * @param version (The change's place in the log)
+	 * @param uuid (The player that changed)
+	 * @param kind (What happened to them, null if unknown to this version of EnderAuth)
+	 * @param origin (The node id of the server that made the change, see {@link com.github.heartsemma.enderauth.Database#getNodeId()})
+	 */
+	public Change(long version, UUID uuid, Kind kind, long origin){
+		Preconditions.checkNotNull(uuid);
+		this.version = version;
+		this.uuid = uuid;
+		this.kind = kind;
+		this.origin = origin;
+	}
+	
+	/** @return The change's place in the log.*/
+	public long getVersion(){ return version; }
+	
+	/** @return The player that changed.*/
+	public UUID getUUID(){ return uuid; }
+	
+	/** @return What happened to the player, or null if this version of EnderAuth doesn't know. Such a change should still invalidate the player.*/
+	public Kind getKind(){ return kind; }
+	
+	/** @return The node id of the server that made the change.*/
+	public long getOrigin(){ return origin; }
+}
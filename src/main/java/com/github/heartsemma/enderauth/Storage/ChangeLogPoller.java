@@ -0,0 +1,243 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.Authentication.SessionStore;
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Keeps this server's view of the user table correct while other servers change it, by reading the change log the {@link Database} writes.
+ * <br><br>The log is read incrementally by version, and only the players named in it are forgotten: their {@link UserCache} entry,
+ * their cached TOTP key and their session, while the {@link RegistrySnapshot} is updated in place and registrations are added to the {@link RegistrationFilter}.
+ * Changes made by this server are skipped, since they were applied when they were made.
+ * <br><br>Versions come from AUTO_INCREMENT, and a transaction that took a lower version may commit after one that took a higher one.
+ * A version that is skipped over is therefore remembered as a gap and read again on later polls until it shows up, or until it is old 
+ * enough that it must have been rolled back. Re-reading a change is harmless: forgetting a player twice does nothing, and removals are
+ * never applied to the filter, since removing a fingerprint that isn't there would remove another player's.
+ * <br><br>A server that couldn't read the log for longer than it is kept may have missed changes. It forgets everything it knows about
+ * players instead: cached registrations, decoded keys and sessions, and it rebuilds the snapshot and the filter.
+ */
+public class ChangeLogPoller {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	
+	//Some of these may be pulled from configuration in the future.
+	private static final int pageSize = 500; //Changes read per query.
+	private static final long gapTimeoutMillis = 60 * 1000; //How long a transaction may plausibly take to commit after taking its version.
+	private static final int maximumGaps = 1000; //The oldest gaps are given up on past this many.
+	private static final int retentionHours = 24; //Changes older than this are pruned...
+	private static final long pruneIntervalMillis = 60 * 60 * 1000; //...this often...
+	private static final int pruneLimit = 10000; //...at most this many at a time.
+	private static final long maximumStalenessMillis = TimeUnit.HOURS.toMillis(retentionHours) / 2; //Safely less than the retention.
+	
+	private final Database database;
+	private final Logger logger;
+	private final ScheduledExecutorService poller;
+	
+	//Only touched by the poller thread.
+	private long lastVersion = -1; //The newest version applied, -1 before the first successful poll.
+	private final TreeMap<Long, Long> gaps = new TreeMap<Long, Long>(); //Versions skipped over, mapped to when they were noticed.
+	private long lastPollMillis;
+	private long lastPruneMillis;
+	
+	private volatile long version = -1;
+	private final LongAdder applied = new LongAdder();
+	private final LongAdder expiredGaps = new LongAdder();
+	
+	/**
+	 * @param database (The database whose change log to read)
+	 * @param logger (Where problems reading the log are reported)
+	 */
+	public ChangeLogPoller(Database database, Logger logger){
+		Preconditions.checkNotNull(database);
+		this.database = database;
+		this.logger = logger;
+		this.poller = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-Changes")
+				.setDaemon(true)
+				.build());
+	}
+	
+	/**
+	 * @param intervalMillis (How often to read the change log)
+	 * 
+	 * <br><br>Starts reading the change log in the background. The first read only finds out where the log currently ends.
+	 */
+	public void start(long intervalMillis){
+		poller.scheduleWithFixedDelay(() -> poll(System.currentTimeMillis()), intervalMillis, intervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/** Stops reading the change log.*/
+	public void close(){
+		poller.shutdownNow();
+	}
+	
+	/** @return The newest change this server has applied, or -1 if it hasn't been able to read the log yet.*/
+	public long getVersion(){ return version; }
+	
+	/** @return The amount of other servers' changes applied.*/
+	public long getAppliedCount(){ return applied.sum(); }
+	
+	/** @return The amount of skipped versions that never showed up, presumably because their transaction was rolled back.*/
+	public long getExpiredGapCount(){ return expiredGaps.sum(); }
+	
+	/**
+	 * @param now (The current time, in milliseconds since the epoch)
+	 * 
+	 * <br><br>Reads the change log once. Runs on the poller thread; package-private so that tests can poll at a time of their choosing.
+	 */
+	void poll(long now){
+		try {
+			if(lastVersion < 0){
+				lastVersion = database.getLatestChangeVersion();
+			} else if(now - lastPollMillis > maximumStalenessMillis){
+				logger.warn("EnderAuth couldn't read the change log for too long and will forget everything it knows about players instead.");
+				forgetEverything();
+				gaps.clear();
+				lastVersion = database.getLatestChangeVersion();
+			} else {
+				readChanges(now);
+			}
+			
+			lastPollMillis = now;
+			version = lastVersion;
+			
+			if(now - lastPruneMillis > pruneIntervalMillis){
+				lastPruneMillis = now;
+				int pruned = database.pruneChanges(retentionHours, pruneLimit);
+				logger.debug("Pruned {} old changes from the change log.", pruned);
+			}
+		} catch (SQLException | DatabaseException e) {
+			logger.warn("EnderAuth was unable to read the change log; other servers' changes will be picked up once it can.");
+		} catch (RuntimeException e) {
+			//An exception would cancel the schedule, and we'd never hear of other servers' changes again.
+			logger.error("EnderAuth ran into a problem while applying other servers' changes.");
+			e.printStackTrace();
+		}
+	}
+	
+	private void readChanges(long now) throws SQLException, DatabaseException{
+		//Start at the oldest gap, since that change may have been committed since the last poll.
+		long after = gaps.isEmpty() ? lastVersion : gaps.firstKey() - 1;
+		List<Change> page;
+		
+		do {
+			page = database.getChangesSince(after, pageSize);
+			
+			for(Change change : page){
+				after = change.getVersion();
+				
+				if(change.getVersion() > lastVersion){
+					for(long skipped = Math.max(lastVersion + 1, change.getVersion() - maximumGaps); skipped < change.getVersion(); skipped++){
+						gaps.put(skipped, now);
+					}
+					lastVersion = change.getVersion();
+				} else if(gaps.remove(change.getVersion()) == null){
+					continue; //Applied on an earlier poll.
+				}
+				
+				if(change.getOrigin() != database.getNodeId()){
+					apply(change);
+				}
+			}
+		} while(page.size() == pageSize);
+		
+		for(Iterator<Map.Entry<Long, Long>> iterator = gaps.entrySet().iterator(); iterator.hasNext();){
+			Map.Entry<Long, Long> gap = iterator.next();
+			if(now - gap.getValue() > gapTimeoutMillis || gaps.size() > maximumGaps){
+				iterator.remove();
+				expiredGaps.increment();
+			}
+		}
+	}
+	
+	private void forgetEverything(){
+		RegistrySnapshot snapshot = main.getRegistrySnapshot();
+		RegistrationFilter filter = main.getRegistrationFilter();
+		SessionStore sessionStore = main.getSessionStore();
+		
+		//The filter and snapshot first, so that nothing they answer from before is cached again.
+		if(filter != null){
+			filter.invalidate(database);
+		}
+		if(snapshot != null){
+			snapshot.invalidate(database);
+		}
+		UserCache.getInstance().invalidateAll();
+		TotpVerifier.getInstance().forgetAll();
+		if(sessionStore != null){
+			sessionStore.revokeAll();
+		}
+	}
+	
+	private void apply(Change change){
+		RegistrySnapshot snapshot = main.getRegistrySnapshot();
+		RegistrationFilter filter = main.getRegistrationFilter();
+		SessionStore sessionStore = main.getSessionStore();
+		
+		UserCache.getInstance().invalidate(change.getUUID());
+		
+		if(change.getKind() == Change.Kind.ADDED){
+			if(snapshot != null){
+				snapshot.markRegistered(change.getUUID());
+			}
+			if(filter != null){
+				filter.add(change.getUUID());
+			}
+		} else {
+			//Removed players stay in the filter until its next rebuild; see RegistrationFilter.
+			if(change.getKind() == Change.Kind.REMOVED && snapshot != null){
+				snapshot.markRemoved(change.getUUID());
+			}
+			
+			//The player's old key, and any session they got with it, must not work here any more.
+			TotpVerifier.getInstance().forget(change.getUUID());
+			if(sessionStore != null){
+				sessionStore.revoke(change.getUUID());
+			}
+		}
+		
+		applied.increment();
+	}
+}
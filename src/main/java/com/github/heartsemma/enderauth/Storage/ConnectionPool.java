@@ -0,0 +1,251 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTimeoutException;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A small, bounded pool of JDBC connections.
+ * <br><br>At most {@code maxSize} connections are handed out at once; callers beyond that wait up to the acquisition timeout.
+ * Idle connections are validated before reuse once they have sat unused for a while, connections are retired after their maximum lifetime,
+ * and connections that were marked broken are replaced with fresh ones on the next acquisition.
+ */
+public class ConnectionPool implements AutoCloseable {
+	
+	private final String url;
+	private final String username;
+	private final String password;
+	
+	private final int maxSize;
+	private final long maxLifetimeNanos;
+	private final long idleValidationNanos;
+	private final long acquireTimeoutMillis;
+	private final int validationTimeoutSeconds;
+	
+	private final Semaphore permits; //One permit per connection that may be handed out.
+	private final ConcurrentLinkedDeque<PooledConnection> idle; //Used as a stack, so the most recently used connection is reused first.
+	
+	private volatile boolean closed;
+	
+	//Metrics
+	private final LongAdder acquisitions = new LongAdder();
+	private final LongAdder acquisitionTimeouts = new LongAdder();
+	private final LongAdder acquisitionWaitNanos = new LongAdder();
+	private final AtomicLong maxAcquisitionWaitNanos = new AtomicLong();
+	private final LongAdder connectionsOpened = new LongAdder();
+	private final LongAdder connectionsRetired = new LongAdder();
+	
+	/**
+	 * @param url (JDBC url of the database)
+	 * @param username (Username to log into the database with)
+	 * @param password (Password to log into the database with)
+	 * @param maxSize (Maximum amount of connections open at once)
+	 * @param maxLifetimeMillis (Connections older than this are closed instead of being reused)
+	 * @param idleValidationMillis (Connections that sat idle longer than this are checked with {@link Connection#isValid(int)} before reuse)
+	 * @param acquireTimeoutMillis (How long {@link #acquire()} waits for a free connection before giving up)
+	 */
+	public ConnectionPool(String url, String username, String password, int maxSize, long maxLifetimeMillis, long idleValidationMillis, long acquireTimeoutMillis){
+		Preconditions.checkNotNull(url);
+		Preconditions.checkArgument(maxSize > 0, "The connection pool needs room for at least one connection.");
+		Preconditions.checkArgument(maxLifetimeMillis > 0);
+		Preconditions.checkArgument(idleValidationMillis >= 0);
+		Preconditions.checkArgument(acquireTimeoutMillis >= 0);
+		
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.maxSize = maxSize;
+		this.maxLifetimeNanos = TimeUnit.MILLISECONDS.toNanos(maxLifetimeMillis);
+		this.idleValidationNanos = TimeUnit.MILLISECONDS.toNanos(idleValidationMillis);
+		this.acquireTimeoutMillis = acquireTimeoutMillis;
+		this.validationTimeoutSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(acquireTimeoutMillis));
+		
+		permits = new Semaphore(maxSize, true);
+		idle = new ConcurrentLinkedDeque<PooledConnection>();
+	}
+	
+	/**
+	 * @return A connection that is exclusively yours until it is closed.
+	 * 
+	 * <br><br>Reuses an idle connection if a healthy one is available, opening a new one otherwise.
+	 * 
+	 * @throws SQLTimeoutException If no connection became free within the acquisition timeout.
+	 * @throws SQLException If a new connection had to be opened and the database refused it.
+	 */
+	public PooledConnection acquire() throws SQLException{
+		if(closed){
+			throw new SQLNonTransientConnectionException("The connection pool has been closed.");
+		}
+		
+		long start = System.nanoTime();
+		
+		try {
+			if(!permits.tryAcquire(acquireTimeoutMillis, TimeUnit.MILLISECONDS)){
+				acquisitionTimeouts.increment();
+				throw new SQLTimeoutException("Timed out after " + acquireTimeoutMillis + "ms waiting for a free database connection.");
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new SQLException("Interrupted while waiting for a free database connection.", e);
+		}
+		
+		recordWait(System.nanoTime() - start);
+		
+		try {
+			PooledConnection connection;
+			while((connection = idle.pollFirst()) != null){
+				if(isHealthy(connection)){
+					connection.setBorrowed();
+					return connection;
+				}
+				retire(connection);
+			}
+			connection = open();
+			connection.setBorrowed();
+			return connection;
+		} catch (SQLException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+	
+	/** Hands a connection back to the pool. Called by {@link PooledConnection#close()}.*/
+	void release(PooledConnection connection){
+		long now = System.nanoTime();
+		
+		if(closed || connection.isBroken() || now - connection.getCreatedAt() >= maxLifetimeNanos){
+			retire(connection);
+		} else {
+			connection.setLastReleasedAt(now);
+			idle.offerFirst(connection);
+		}
+		
+		permits.release();
+	}
+	
+	/** Closes every idle connection and refuses further acquisitions. Connections still borrowed are closed when they are handed back.*/
+	@Override
+	public void close(){
+		closed = true;
+		
+		PooledConnection connection;
+		while((connection = idle.pollFirst()) != null){
+			retire(connection);
+		}
+	}
+	
+	private boolean isHealthy(PooledConnection connection){
+		long now = System.nanoTime();
+		
+		if(now - connection.getCreatedAt() >= maxLifetimeNanos){
+			return false;
+		}
+		
+		if(now - connection.getLastReleasedAt() < idleValidationNanos){
+			return true;
+		}
+		
+		try {
+			return connection.getConnection().isValid(validationTimeoutSeconds);
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+	
+	private PooledConnection open() throws SQLException{
+		Connection connection = DriverManager.getConnection(url, username, password);
+		
+		try {
+			connection.setAutoCommit(false);
+		} catch (SQLException e) {
+			connection.close();
+			throw e;
+		}
+		
+		connectionsOpened.increment();
+		return new PooledConnection(this, connection);
+	}
+	
+	private void retire(PooledConnection connection){
+		connectionsRetired.increment();
+		connection.closePhysical();
+	}
+	
+	private void recordWait(long waitNanos){
+		acquisitions.increment();
+		acquisitionWaitNanos.add(waitNanos);
+		
+		long max;
+		while(waitNanos > (max = maxAcquisitionWaitNanos.get())){
+			if(maxAcquisitionWaitNanos.compareAndSet(max, waitNanos)){
+				break;
+			}
+		}
+	}
+	
+	/** @return The maximum amount of connections this pool will open at once.*/
+	public int getMaxSize(){ return maxSize; }
+	
+	/** @return The amount of connections currently borrowed.*/
+	public int getActiveCount(){ return maxSize - permits.availablePermits(); }
+	
+	/** @return The amount of open connections waiting to be borrowed.*/
+	public int getIdleCount(){ return idle.size(); }
+	
+	/** @return The amount of threads currently waiting for a connection.*/
+	public int getWaitingCount(){ return permits.getQueueLength(); }
+	
+	/** @return The amount of successful acquisitions since the pool was created.*/
+	public long getAcquisitionCount(){ return acquisitions.sum(); }
+	
+	/** @return The amount of acquisitions that gave up because no connection became free in time.*/
+	public long getAcquisitionTimeoutCount(){ return acquisitionTimeouts.sum(); }
+	
+	/** @return The average time, in nanoseconds, successful acquisitions spent waiting for a free connection.*/
+	public long getAverageAcquisitionWaitNanos(){
+		long count = acquisitions.sum();
+		return count == 0 ? 0 : acquisitionWaitNanos.sum() / count;
+	}
+	
+	/** @return The longest time, in nanoseconds, a successful acquisition spent waiting for a free connection.*/
+	public long getMaxAcquisitionWaitNanos(){ return maxAcquisitionWaitNanos.get(); }
+	
+	/** @return The amount of physical connections opened since the pool was created.*/
+	public long getConnectionsOpened(){ return connectionsOpened.sum(); }
+	
+	/** @return The amount of physical connections closed because they were broken, too old, or failed validation.*/
+	public long getConnectionsRetired(){ return connectionsRetired.sum(); }
+}
@@ -0,0 +1,777 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseExceptions.UUIDNotFoundException;
+import com.google.common.base.Preconditions;
+
+/**
+ * An embedded {@link UserStore} that keeps players in two files and needs no external process.
+ * <br><br>
+ * <b>users.log</b> is an append-only log of records, each checksummed. It is the source of truth: every change is appended and forced to disk
+ * before it is acknowledged.
+ * <br><b>users.idx</b> is a memory-mapped, open-addressing hash table from UUID to the offset of that player's record in the log. 
+ * Lookups only touch this mapping (and, for keys, one positional read of the log), so they take microseconds.
+ * <br><br>The index is marked dirty while the store is open and clean when it is closed. After a clean shutdown startup just maps it;
+ * after a crash it is rebuilt from the log, and a torn record at the end of the log is cut off.
+ * Compaction writes the live records to a new log and atomically renames it over the old one, so a crash at any point leaves one complete log behind.
+ */
+public class LocalUserStore implements UserStore {
+	
+	private final Logger logger;
+	
+	//Log layout: a header, then records of [type][uuid][key length][key][crc32 of everything before it].
+	private static final int logMagic = 0x45414C47; //"EALG"
+	private static final int logVersion = 1;
+	private static final int logHeaderSize = 8;
+	private static final byte addRecord = 1;
+	private static final byte removeRecord = 2;
+	private static final int recordHeaderSize = 1 + 16 + 4;
+	private static final int recordChecksumSize = 4;
+	private static final int maximumKeyLength = 1024; //Anything longer can only be corruption.
+	
+	//Index layout: a header, then slots of [most significant bits][least significant bits][log offset + 1, 0 if empty, -1 if removed].
+	private static final int indexMagic = 0x45414958; //"EAIX"
+	private static final int indexVersion = 1;
+	private static final int indexHeaderSize = 32;
+	private static final int indexCapacityOffset = 8;
+	private static final int indexSizeOffset = 12;
+	private static final int indexRecordCountOffset = 16;
+	private static final int indexDirtyOffset = 20;
+	private static final int indexLogLengthOffset = 24;
+	private static final int slotSize = 24;
+	private static final long emptySlot = 0;
+	private static final long removedSlot = -1;
+	private static final int initialCapacity = 1024; //Must be a power of two.
+	
+	//Compaction runs once there are at least this many dead records, and more dead records than live ones.
+	private static final int compactionThreshold = 1024;
+	
+	private final Path logPath;
+	private final Path indexPath;
+	private final Path compactPath;
+	
+	private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+	
+	//Guarded by lock.
+	private FileChannel log;
+	private long logLength;
+	private FileChannel indexChannel;
+	private MappedByteBuffer index;
+	private int capacity; //Slots in the index. Always a power of two.
+	private int size; //Live slots.
+	private int used; //Live and removed slots.
+	private int recordCount; //Records in the log, dead ones included.
+	private boolean closed;
+	
+	/**
+	 * @param directory (The directory to keep the store's files in. Created if it doesn't exist)
+	 * @param logger (Where to report recovery and compaction)
+	 * 
+	 * <br><br>Opens the store, recovering or rebuilding the index from the log if the last shutdown wasn't clean.
+	 * 
+	 * @throws DatabaseException If the files could not be opened or the log is not an EnderAuth log.
+	 */
+	public LocalUserStore(Path directory, Logger logger) throws DatabaseException{
+		Preconditions.checkNotNull(directory);
+		this.logger = logger;
+		this.logPath = directory.resolve("users.log");
+		this.indexPath = directory.resolve("users.idx");
+		this.compactPath = directory.resolve("users.log.compact");
+		
+		try {
+			Files.createDirectories(directory);
+			//An unfinished compaction; the old log is still complete, so the partial copy is simply thrown away.
+			Files.deleteIfExists(compactPath);
+			
+			openLog();
+			openIndex();
+		} catch (IOException e) {
+			closeQuietly();
+			throw new DatabaseException("Unable to open EnderAuth's local user store in " + directory + ".", e);
+		}
+	}
+	
+	@Override
+	public void addUser(UUID uuid, String PSK) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		lock.writeLock().lock();
+		try {
+			ensureOpen();
+			
+			if(findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0){
+				throw new DatabaseException("The specified UUID is already registered.");
+			}
+			
+			long offset = append(addRecord, uuid, PSK);
+			put(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits(), offset);
+			writeHeader();
+		} catch (IOException e) {
+			throw new DatabaseException("Unable to add a user to the local user store.", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public boolean removeUser(UUID uuid) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		lock.writeLock().lock();
+		try {
+			ensureOpen();
+			
+			int slot = findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			if(slot < 0){
+				return false;
+			}
+			
+			append(removeRecord, uuid, null);
+			index.putLong(slotPosition(slot) + 16, removedSlot);
+			size--;
+			writeHeader();
+			
+			if(recordCount - size >= compactionThreshold && recordCount - size > size){
+				try {
+					compact();
+				} catch (IOException e) {
+					//The removal itself is already on disk; compaction is tried again on the next removal.
+					logger.warn("EnderAuth was unable to compact its local user store: {}", e.getMessage());
+				}
+			}
+			return true;
+		} catch (IOException e) {
+			throw new DatabaseException("Unable to remove a user from the local user store.", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/** Removes the users one by one under one lock, so nobody sees only some of them removed. A crash part way keeps the ones already removed.*/
+	@Override
+	public List<UUID> removeUsers(Collection<UUID> uuids) throws DatabaseException{
+		Preconditions.checkNotNull(uuids);
+		lock.writeLock().lock();
+		try {
+			List<UUID> removed = new ArrayList<UUID>(uuids.size());
+			for(UUID uuid : new LinkedHashSet<UUID>(uuids)){
+				if(removeUser(uuid)){
+					removed.add(uuid);
+				}
+			}
+			return removed;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Resets the keys one by one under one lock. The store has no record for changing a key, so each user is removed and added again
+	 * without one; a crash between the two leaves that user unregistered, which, like a reset, makes them set up a new key.
+	 */
+	@Override
+	public List<UUID> resetUsers(Collection<UUID> uuids) throws DatabaseException{
+		Preconditions.checkNotNull(uuids);
+		lock.writeLock().lock();
+		try {
+			List<UUID> reset = new ArrayList<UUID>(uuids.size());
+			for(UUID uuid : new LinkedHashSet<UUID>(uuids)){
+				if(removeUser(uuid)){
+					addUser(uuid, null);
+					reset.add(uuid);
+				}
+			}
+			return reset;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/** Replaces the user's record with one holding the key, like {@link #resetUsers(Collection)}.*/
+	@Override
+	public boolean setTotpKey(UUID uuid, String PSK) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		Preconditions.checkNotNull(PSK);
+		lock.writeLock().lock();
+		try {
+			if(!isInDatabase(uuid) || getTotpKey(uuid) != null){
+				return false;
+			}
+			removeUser(uuid);
+			addUser(uuid, PSK);
+			return true;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	@Override
+	public boolean isInDatabase(UUID uuid) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			return findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()) >= 0;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	@Override
+	public String getTotpKey(UUID uuid) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		lock.readLock().lock();
+		try {
+			ensureOpen();
+			
+			int slot = findSlot(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			if(slot < 0){
+				throw new UUIDNotFoundException();
+			}
+			
+			Record record = readRecord(index.getLong(slotPosition(slot) + 16) - 1);
+			if(record == null || record.type != addRecord 
+					|| record.mostSignificantBits != uuid.getMostSignificantBits() || record.leastSignificantBits != uuid.getLeastSignificantBits()){
+				throw new DatabaseException("The local user store's index points at a record that does not belong to the specified UUID.");
+			}
+			
+			return record.key;
+		} catch (IOException e) {
+			throw new DatabaseException("Unable to read a user from the local user store.", e);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/** @return The amount of registered players in the store.*/
+	public int size(){
+		lock.readLock().lock();
+		try {
+			return size;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Rewrites the log with only the live records, dropping removed players. Runs on its own once enough records are dead, 
+	 * but may also be called directly.
+	 * 
+	 * @throws DatabaseException If the new log could not be written. The old log is left untouched in that case.
+	 */
+	public void compactNow() throws DatabaseException{
+		lock.writeLock().lock();
+		try {
+			ensureOpen();
+			compact();
+		} catch (IOException e) {
+			throw new DatabaseException("Unable to compact the local user store.", e);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+	
+	/** Marks the index clean and closes both files.*/
+	@Override
+	public void close(){
+		lock.writeLock().lock();
+		try {
+			if(closed){
+				return;
+			}
+			
+			if(index != null){
+				writeHeader();
+				index.putInt(indexDirtyOffset, 0);
+				index.force();
+			}
+			closeQuietly();
+		} finally {
+			closed = true;
+			lock.writeLock().unlock();
+		}
+	}
+	
+	private void ensureOpen() throws DatabaseException{
+		if(closed){
+			throw new DatabaseException("The local user store has been closed.");
+		}
+	}
+	
+	//Log
+	
+	private void openLog() throws IOException, DatabaseException{
+		log = FileChannel.open(logPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		if(log.size() < logHeaderSize){
+			ByteBuffer header = ByteBuffer.allocate(logHeaderSize);
+			header.putInt(logMagic).putInt(logVersion).flip();
+			log.truncate(0);
+			writeFully(log, header, 0);
+			log.force(true);
+		} else {
+			ByteBuffer header = ByteBuffer.allocate(logHeaderSize);
+			readFully(log, header, 0);
+			header.flip();
+			if(header.getInt() != logMagic || header.getInt() != logVersion){
+				throw new DatabaseException(logPath + " is not an EnderAuth user log, or was written by an incompatible version.");
+			}
+		}
+		
+		logLength = log.size();
+	}
+	
+	/*
+	 * Appends a record and forces it to disk. Returns the offset it was written at.
+	 */
+	private long append(byte type, UUID uuid, String key) throws IOException{
+		byte[] keyBytes = key == null ? null : key.getBytes(StandardCharsets.UTF_8);
+		int keyLength = keyBytes == null ? -1 : keyBytes.length;
+		
+		ByteBuffer record = ByteBuffer.allocate(recordHeaderSize + Math.max(keyLength, 0) + recordChecksumSize);
+		record.put(type).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).putInt(keyLength);
+		if(keyBytes != null){
+			record.put(keyBytes);
+		}
+		
+		CRC32 crc = new CRC32();
+		crc.update(record.array(), 0, record.position());
+		record.putInt((int) crc.getValue());
+		record.flip();
+		
+		long offset = logLength;
+		writeFully(log, record, offset);
+		log.force(false);
+		
+		logLength = offset + record.limit();
+		recordCount++;
+		return offset;
+	}
+	
+	/*
+	 * Reads the record at the offset, or returns null if it is torn or corrupt.
+	 */
+	private Record readRecord(long offset) throws IOException{
+		ByteBuffer header = ByteBuffer.allocate(recordHeaderSize);
+		if(offset + recordHeaderSize > logLength || !readFully(log, header, offset)){
+			return null;
+		}
+		header.flip();
+		
+		byte type = header.get();
+		long mostSignificantBits = header.getLong();
+		long leastSignificantBits = header.getLong();
+		int keyLength = header.getInt();
+		if(keyLength < -1 || keyLength > maximumKeyLength){
+			return null;
+		}
+		
+		ByteBuffer rest = ByteBuffer.allocate(Math.max(keyLength, 0) + recordChecksumSize);
+		if(offset + recordHeaderSize + rest.capacity() > logLength || !readFully(log, rest, offset + recordHeaderSize)){
+			return null;
+		}
+		rest.flip();
+		
+		CRC32 crc = new CRC32();
+		crc.update(header.array(), 0, recordHeaderSize);
+		crc.update(rest.array(), 0, rest.limit() - recordChecksumSize);
+		if((int) crc.getValue() != rest.getInt(rest.limit() - recordChecksumSize)){
+			return null;
+		}
+		
+		String key = keyLength < 0 ? null : new String(rest.array(), 0, keyLength, StandardCharsets.UTF_8);
+		return new Record(type, mostSignificantBits, leastSignificantBits, key, recordHeaderSize + rest.limit());
+	}
+	
+	/*
+	 * Applies every record from the offset onwards to the index, cutting the log off at the first torn or corrupt record.
+	 * Records are streamed through one buffered reader, so a full rebuild reads the log sequentially once.
+	 */
+	private void replay(long from) throws IOException{
+		long position = from;
+		long end = log.size();
+		int replayed = 0;
+		
+		log.position(from);
+		DataInputStream input = new DataInputStream(new BufferedInputStream(Channels.newInputStream(log), 1 << 16));
+		byte[] header = new byte[recordHeaderSize];
+		byte[] key = new byte[64];
+		CRC32 crc = new CRC32();
+		
+		while(position < end){
+			try {
+				input.readFully(header);
+				ByteBuffer fields = ByteBuffer.wrap(header);
+				byte type = fields.get();
+				long mostSignificantBits = fields.getLong();
+				long leastSignificantBits = fields.getLong();
+				int keyLength = fields.getInt();
+				
+				if((type != addRecord && type != removeRecord) || keyLength < -1 || keyLength > maximumKeyLength){
+					break;
+				}
+				if(keyLength > key.length){
+					key = new byte[keyLength];
+				}
+				input.readFully(key, 0, Math.max(keyLength, 0));
+				int checksum = input.readInt();
+				
+				crc.reset();
+				crc.update(header, 0, recordHeaderSize);
+				crc.update(key, 0, Math.max(keyLength, 0));
+				if((int) crc.getValue() != checksum){
+					break;
+				}
+				
+				if(type == addRecord){
+					put(mostSignificantBits, leastSignificantBits, position);
+				} else {
+					int slot = findSlot(mostSignificantBits, leastSignificantBits);
+					if(slot >= 0){
+						index.putLong(slotPosition(slot) + 16, removedSlot);
+						size--;
+					}
+				}
+				
+				recordCount++;
+				replayed++;
+				position += recordHeaderSize + Math.max(keyLength, 0) + recordChecksumSize;
+			} catch (EOFException e) {
+				break;
+			}
+		}
+		
+		if(position < end){
+			logger.warn("EnderAuth's local user store ended in a torn or corrupt record, probably from a crash. Cutting off the last {} bytes.", end - position);
+			log.truncate(position);
+			log.force(true);
+		}
+		
+		logLength = position;
+		if(replayed > 0){
+			logger.debug("Replayed {} records from EnderAuth's local user store.", replayed);
+		}
+	}
+	
+	/*
+	 * Must hold the write lock. Writes the live records to a new file, forces it, and renames it over the log. 
+	 * The index is then rebuilt against the new offsets.
+	 */
+	private void compact() throws IOException, DatabaseException{
+		int before = recordCount;
+		
+		try(FileChannel compacted = FileChannel.open(compactPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)){
+			ByteBuffer header = ByteBuffer.allocate(logHeaderSize);
+			header.putInt(logMagic).putInt(logVersion).flip();
+			long position = writeFully(compacted, header, 0);
+			
+			for(int slot=0; slot<capacity; slot++){
+				long value = index.getLong(slotPosition(slot) + 16);
+				if(value == emptySlot || value == removedSlot){
+					continue;
+				}
+				
+				long offset = value - 1;
+				Record record = readRecord(offset);
+				if(record == null){
+					throw new IOException("The local user store's index points at a corrupt record; refusing to compact.");
+				}
+				
+				ByteBuffer bytes = ByteBuffer.allocate(record.length);
+				readFully(log, bytes, offset);
+				bytes.flip();
+				position += writeFully(compacted, bytes, position);
+			}
+			
+			compacted.force(true);
+		}
+		
+		//Closed first, because some platforms (Windows) refuse to replace a file that is open.
+		log.close();
+		try {
+			Files.move(compactPath, logPath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		} catch (IOException e) {
+			//The old log is still complete and the index still points into it, so the store carries on with it.
+			openLog();
+			Files.deleteIfExists(compactPath);
+			throw e;
+		}
+		openLog();
+		
+		clearIndex(capacity);
+		replay(logHeaderSize);
+		writeHeader();
+		
+		logger.info("Compacted EnderAuth's local user store from {} to {} records.", before, recordCount);
+	}
+	
+	//Index
+	
+	private void openIndex() throws IOException{
+		indexChannel = FileChannel.open(indexPath, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+		
+		if(isIndexUsable()){
+			//Clean shutdown; the index already describes the whole log.
+			index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, indexHeaderSize + (long) capacity * slotSize);
+			size = index.getInt(indexSizeOffset);
+			recordCount = index.getInt(indexRecordCountOffset);
+			countUsedSlots();
+		} else {
+			logger.info("Rebuilding EnderAuth's local user index from its log.");
+			clearIndex(initialCapacity);
+			replay(logHeaderSize);
+		}
+		
+		//Until close() marks it clean again, a crash means the index can't be trusted.
+		writeHeader();
+		index.putInt(indexDirtyOffset, 1);
+		index.force();
+	}
+	
+	private boolean isIndexUsable() throws IOException{
+		if(indexChannel.size() < indexHeaderSize){
+			return false;
+		}
+		
+		ByteBuffer header = ByteBuffer.allocate(indexHeaderSize);
+		readFully(indexChannel, header, 0);
+		header.flip();
+		
+		int storedCapacity = header.getInt(indexCapacityOffset);
+		boolean usable = header.getInt(0) == indexMagic 
+				&& header.getInt(4) == indexVersion
+				&& storedCapacity >= initialCapacity && Integer.bitCount(storedCapacity) == 1
+				&& indexChannel.size() >= indexHeaderSize + (long) storedCapacity * slotSize
+				&& header.getInt(indexDirtyOffset) == 0
+				&& header.getLong(indexLogLengthOffset) == logLength;
+		
+		if(usable){
+			capacity = storedCapacity;
+		}
+		return usable;
+	}
+	
+	/*
+	 * Maps a zeroed index with the given capacity and forgets every entry.
+	 * The file is never truncated, only grown by mapping more of it: some platforms (Windows) refuse to truncate a file while
+	 * an earlier mapping of it is still alive, and a mapping is only released once it is garbage collected. 
+	 * A file left longer than the index needs is harmless.
+	 */
+	private void clearIndex(int newCapacity) throws IOException{
+		int length = indexHeaderSize + newCapacity * slotSize;
+		index = indexChannel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+		for(int position=0; position<length; position+=8){
+			index.putLong(position, 0);
+		}
+		
+		capacity = newCapacity;
+		size = 0;
+		used = 0;
+		recordCount = 0;
+		
+		index.putInt(0, indexMagic);
+		index.putInt(4, indexVersion);
+		index.putInt(indexDirtyOffset, 1);
+	}
+	
+	private void writeHeader(){
+		index.putInt(indexCapacityOffset, capacity);
+		index.putInt(indexSizeOffset, size);
+		index.putInt(indexRecordCountOffset, recordCount);
+		index.putLong(indexLogLengthOffset, logLength);
+	}
+	
+	private void countUsedSlots(){
+		used = 0;
+		for(int slot=0; slot<capacity; slot++){
+			if(index.getLong(slotPosition(slot) + 16) != emptySlot){
+				used++;
+			}
+		}
+	}
+	
+	private void put(long mostSignificantBits, long leastSignificantBits, long offset) throws IOException{
+		int existing = findSlot(mostSignificantBits, leastSignificantBits);
+		if(existing >= 0){
+			index.putLong(slotPosition(existing) + 16, offset + 1);
+			return;
+		}
+		
+		if((used + 1) * 2 > capacity){ //Keep the load factor, removed slots included, under 0.5.
+			resize(size * 4 > capacity ? capacity * 2 : capacity);
+		}
+		
+		int mask = capacity - 1;
+		int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+		long value;
+		while((value = index.getLong(slotPosition(slot) + 16)) != emptySlot && value != removedSlot){
+			slot = (slot + 1) & mask;
+		}
+		
+		if(value == emptySlot){
+			used++;
+		}
+		int position = slotPosition(slot);
+		index.putLong(position, mostSignificantBits);
+		index.putLong(position + 8, leastSignificantBits);
+		index.putLong(position + 16, offset + 1);
+		size++;
+	}
+	
+	private void resize(int newCapacity) throws IOException{
+		long[] entries = new long[size * 3];
+		int count = 0;
+		for(int slot=0; slot<capacity; slot++){
+			int position = slotPosition(slot);
+			long value = index.getLong(position + 16);
+			if(value != emptySlot && value != removedSlot){
+				entries[count++] = index.getLong(position);
+				entries[count++] = index.getLong(position + 8);
+				entries[count++] = value - 1;
+			}
+		}
+		
+		int records = recordCount;
+		clearIndex(newCapacity);
+		recordCount = records;
+		
+		for(int i=0; i<count; i+=3){
+			put(entries[i], entries[i + 1], entries[i + 2]);
+		}
+	}
+	
+	/*
+	 * Returns the slot holding the UUID, or -1. Never allocates.
+	 */
+	private int findSlot(long mostSignificantBits, long leastSignificantBits){
+		int mask = capacity - 1;
+		int slot = hash(mostSignificantBits, leastSignificantBits) & mask;
+		
+		for(int probes=0; probes<capacity; probes++){
+			int position = slotPosition(slot);
+			long value = index.getLong(position + 16);
+			if(value == emptySlot){
+				return -1;
+			}
+			if(value != removedSlot && index.getLong(position) == mostSignificantBits && index.getLong(position + 8) == leastSignificantBits){
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		
+		return -1;
+	}
+	
+	private static int slotPosition(int slot){
+		return indexHeaderSize + slot * slotSize;
+	}
+	
+	private static int hash(long mostSignificantBits, long leastSignificantBits){
+		long h = mostSignificantBits * 0x9E3779B97F4A7C15L ^ leastSignificantBits;
+		h ^= h >>> 33;
+		h *= 0xFF51AFD7ED558CCDL;
+		h ^= h >>> 33;
+		return (int) h;
+	}
+	
+	//Helpers
+	
+	private static long writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		long written = 0;
+		while(buffer.hasRemaining()){
+			written += channel.write(buffer, position + written);
+		}
+		return written;
+	}
+	
+	private static boolean readFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		long read = 0;
+		while(buffer.hasRemaining()){
+			int n = channel.read(buffer, position + read);
+			if(n < 0){
+				return false;
+			}
+			read += n;
+		}
+		return true;
+	}
+	
+	private void closeQuietly(){
+		try {
+			if(log != null){
+				log.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to close EnderAuth's user log cleanly.");
+		}
+		try {
+			if(indexChannel != null){
+				indexChannel.close();
+			}
+		} catch (IOException e) {
+			logger.warn("Unable to close EnderAuth's user index cleanly.");
+		}
+	}
+	
+	private static final class Record {
+		
+		private final byte type;
+		private final long mostSignificantBits;
+		private final long leastSignificantBits;
+		private final String key;
+		private final int length; //Length of the whole record in the log, checksum included.
+		
+		Record(byte type, long mostSignificantBits, long leastSignificantBits, String key, int length){
+			this.type = type;
+			this.mostSignificantBits = mostSignificantBits;
+			this.leastSignificantBits = leastSignificantBits;
+			this.key = key;
+			this.length = length;
+		}
+	}
+}
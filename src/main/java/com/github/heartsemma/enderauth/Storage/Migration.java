@@ -0,0 +1,83 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.SQLException;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+
+/**
+ * One step in the evolution of EnderAuth's schema, applied at most once per database by the {@link SchemaMigrator}.
+ * <br><br>Versions are applied in increasing order. Once released, a migration must never change; a fix is a new migration.
+ */
+public interface Migration {
+	
+	/** @return The schema version this migration brings the database to.*/
+	int getVersion();
+	
+	/** @return What the migration does, for the log and the schema version table.*/
+	String getDescription();
+	
+	/**
+	 * @param connection (A connection of its own. The migration commits whenever it sees fit; whatever is left uncommitted is committed after it returns)
+	 * 
+	 * <br><br>Applies the migration. It may be run again after failing part way, so it must cope with its own leftovers.
+	 */
+	void apply(PooledConnection connection) throws SQLException, DatabaseException;
+	
+	/**
+	 * @return Whether EnderAuth works without this migration, so that it may be applied later, in the background, and may fail.
+	 * 
+	 * <br><br>A deferrable migration that fails is logged and tried again the next time migrations run, rather than stopping EnderAuth.
+	 * Migrations after it wait for it either way.
+	 */
+	default boolean isDeferrable(){ return false; }
+	
+	/**
+	 * @param version (The schema version the migration brings the database to)
+	 * @param description (What the migration does)
+	 * @param body (The work, run on the migration's connection)
+	 * @return A migration that just runs the passed work.
+	 */
+	static Migration of(int version, String description, Transaction<?> body){
+		Preconditions.checkArgument(version > 0);
+		Preconditions.checkNotNull(description);
+		Preconditions.checkNotNull(body);
+		
+		return new Migration(){
+			@Override
+			public int getVersion(){ return version; }
+			
+			@Override
+			public String getDescription(){ return description; }
+			
+			@Override
+			public void apply(PooledConnection connection) throws SQLException, DatabaseException{
+				body.run(connection);
+			}
+		};
+	}
+}
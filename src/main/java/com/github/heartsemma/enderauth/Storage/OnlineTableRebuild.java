@@ -0,0 +1,287 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+
+/**
+ * Moves a two column (id, value) table to a new definition without locking it for the duration of the copy.
+ * <br><br>A new table is created next to the old one and kept up to date with triggers on the old one while the existing rows are copied
+ * over in small chunks, each in its own transaction, with a pause in between. Once the copy has caught up, both tables are swapped by one
+ * atomic RENAME, which is the only moment writers have to wait. Other servers sharing the database keep reading and writing the old table
+ * throughout, since the column names don't change.
+ * <br><br>The old table is kept under a backup name rather than dropped, so that nothing is lost if the new layout turns out to be wrong.
+ * A rebuild that failed or was interrupted cleans up after itself and starts from scratch the next time it runs.
+ * <br><br>Only the layout changes, so the rebuild is {@linkplain #isDeferrable() deferrable}: it may take as long as it needs, and failing,
+ * e.g. because creating triggers needs a privilege the database user doesn't have, leaves the old table working.
+ */
+public class OnlineTableRebuild implements Migration {
+	
+	private final int version;
+	private final String description;
+	private final Logger logger;
+	
+	private final String database;
+	private final String table;
+	private final String idColumn;
+	private final int chunkSize;
+	private final long pauseMillis;
+	
+	private final Query makeNewTableQuery;
+	private final Query dropNewTableQuery;
+	private final Query backupExistsQuery;
+	private final List<Query> dropTriggerQueries = new ArrayList<Query>();
+	private final List<Query> makeTriggerQueries = new ArrayList<Query>();
+	private final Query firstChunkQuery;
+	private final Query nextChunkQuery;
+	private final Query copyRowQuery;
+	private final Query swapQuery;
+	
+	/**
+	 * @param version (The schema version the rebuild brings the database to)
+	 * @param description (What the rebuild does)
+	 * @param logger (Where progress is reported)
+	 * @param database (The database the table is in)
+	 * @param table (The table to rebuild)
+	 * @param idColumn (The column identifying a row. It must have the same name in the new definition, and the new definition must make it unique)
+	 * @param valueColumn (The other column. Same name in the new definition)
+	 * @param newColumnDefinitions (The column definitions of the new table, as they go between the parentheses of CREATE TABLE)
+	 * @param chunkSize (How many rows are copied per transaction)
+	 * @param pauseMillis (How long to wait between chunks, so that the copy doesn't crowd out the servers using the table)
+	 */
+	public OnlineTableRebuild(int version, String description, Logger logger, String database, String table, 
+			String idColumn, String valueColumn, String newColumnDefinitions, int chunkSize, long pauseMillis){
+		Preconditions.checkArgument(version > 0);
+		Preconditions.checkArgument(chunkSize > 0);
+		Preconditions.checkArgument(pauseMillis >= 0);
+		Preconditions.checkNotNull(newColumnDefinitions);
+		
+		this.version = version;
+		this.description = description;
+		this.logger = logger;
+		this.database = database;
+		this.table = table;
+		this.idColumn = idColumn;
+		this.chunkSize = chunkSize;
+		this.pauseMillis = pauseMillis;
+		
+		String oldTable = database + "." + table;
+		String newTable = database + "." + table + "_rebuild";
+		String backupTable = database + "." + table + "_before_v" + version;
+		String insertTrigger = database + "." + table + "_rebuild_insert";
+		String updateTrigger = database + "." + table + "_rebuild_update";
+		String deleteTrigger = database + "." + table + "_rebuild_delete";
+		
+		makeNewTableQuery = Query.compile("CREATE TABLE {0} (" + newColumnDefinitions + ")", newTable);
+		dropNewTableQuery = Query.compile("DROP TABLE IF EXISTS {0}", newTable);
+		backupExistsQuery = Query.compile("SELECT 1 FROM information_schema.tables WHERE table_schema = ? AND table_name = ?");
+		
+		for(String trigger : new String[]{insertTrigger, updateTrigger, deleteTrigger}){
+			dropTriggerQueries.add(Query.compile("DROP TRIGGER IF EXISTS {0}", trigger));
+		}
+		makeTriggerQueries.add(Query.compile("CREATE TRIGGER {0} AFTER INSERT ON {1} FOR EACH ROW "
+				+ "REPLACE INTO {2} ({3}, {4}) VALUES (NEW.{3}, NEW.{4})", 
+				insertTrigger, oldTable, newTable, idColumn, valueColumn));
+		makeTriggerQueries.add(Query.compile("CREATE TRIGGER {0} AFTER UPDATE ON {1} FOR EACH ROW BEGIN "
+				+ "DELETE FROM {2} WHERE {3} = OLD.{3}; "
+				+ "REPLACE INTO {2} ({3}, {4}) VALUES (NEW.{3}, NEW.{4}); END", 
+				updateTrigger, oldTable, newTable, idColumn, valueColumn));
+		makeTriggerQueries.add(Query.compile("CREATE TRIGGER {0} AFTER DELETE ON {1} FOR EACH ROW "
+				+ "DELETE FROM {2} WHERE {3} = OLD.{3}", 
+				deleteTrigger, oldTable, newTable, idColumn));
+		
+		//The shared lock keeps a chunk's rows from changing between being read and being copied; the triggers take care of them afterwards.
+		firstChunkQuery = Query.compile("SELECT {0}, {1} FROM {2} ORDER BY {0} LIMIT ? LOCK IN SHARE MODE", 
+				idColumn, valueColumn, oldTable);
+		nextChunkQuery = Query.compile("SELECT {0}, {1} FROM {2} WHERE {0} > ? ORDER BY {0} LIMIT ? LOCK IN SHARE MODE", 
+				idColumn, valueColumn, oldTable);
+		//A row the triggers already copied is newer than the one being read here, so it wins.
+		copyRowQuery = Query.compile("INSERT INTO {0} ({1}, {2}) VALUES (?, ?) ON DUPLICATE KEY UPDATE {1} = {1}", 
+				newTable, idColumn, valueColumn);
+		swapQuery = Query.compile("RENAME TABLE {0} TO {1}, {2} TO {0}", oldTable, backupTable, newTable);
+	}
+	
+	@Override
+	public int getVersion(){ return version; }
+	
+	@Override
+	public String getDescription(){ return description; }
+	
+	@Override
+	public boolean isDeferrable(){ return true; }
+	
+	@Override
+	public void apply(PooledConnection connection) throws SQLException, DatabaseException{
+		Connection jdbc = connection.getConnection();
+		
+		if(isPrimaryKey(jdbc)){
+			logger.info("{} is already keyed by {}; there is nothing to rebuild.", table, idColumn);
+			return;
+		}
+		
+		PreparedStatement backupExists = connection.prepare(backupExistsQuery);
+		backupExists.setString(1, database);
+		backupExists.setString(2, table + "_before_v" + version);
+		try(ResultSet result = backupExists.executeQuery()){
+			if(result.next()){
+				throw new DatabaseException("The backup table " + table + "_before_v" + version + " is in the way of rebuilding " + table 
+						+ ". Drop or rename it and restart the server.");
+			}
+		}
+		
+		try(Statement statement = jdbc.createStatement()){
+			try {
+				cleanUp(statement); //Leftovers of an interrupted attempt.
+				statement.execute(makeNewTableQuery.getSql());
+				for(Query makeTrigger : makeTriggerQueries){
+					statement.execute(makeTrigger.getSql());
+				}
+				jdbc.commit();
+				
+				long copied = copy(connection);
+				
+				statement.execute(swapQuery.getSql());
+				for(Query dropTrigger : dropTriggerQueries){
+					statement.execute(dropTrigger.getSql());
+				}
+				jdbc.commit();
+				
+				logger.info("Rebuilt {} ({} rows). The old table was kept as {}_before_v{} and can be dropped once everything works.", 
+						table, copied, table, version);
+			} catch (SQLException | DatabaseException | RuntimeException e) {
+				jdbc.rollback();
+				logger.error("Rebuilding {} failed; the old table is left as it was.", table);
+				try {
+					cleanUp(statement);
+				} catch (SQLException cleanUpFailure) {
+					e.addSuppressed(cleanUpFailure);
+				}
+				throw e;
+			}
+		}
+	}
+	
+	/**
+	 * @return The amount of rows copied.
+	 * 
+	 * <br><br>Copies every row of the old table into the new one, one chunk per transaction, in the order of the id column.
+	 * Rows written meanwhile are copied by the triggers, so the copy only has to make one pass.
+	 */
+	private long copy(PooledConnection connection) throws SQLException, DatabaseException{
+		Connection jdbc = connection.getConnection();
+		byte[] last = null;
+		long copied = 0;
+		long skipped = 0;
+		long lastReport = System.nanoTime();
+		
+		while(true){
+			PreparedStatement select;
+			if(last == null){
+				select = connection.prepare(firstChunkQuery);
+				select.setInt(1, chunkSize);
+			} else {
+				select = connection.prepare(nextChunkQuery);
+				select.setBytes(1, last);
+				select.setInt(2, chunkSize);
+			}
+			
+			PreparedStatement insert = connection.prepare(copyRowQuery);
+			int read = 0;
+			int batched = 0;
+			try(ResultSet chunk = select.executeQuery()){
+				while(chunk.next()){
+					read++;
+					last = chunk.getBytes(1);
+					if(last == null || last.length != 16){
+						skipped++; //Not a UUID, so not a row EnderAuth wrote; the new id column can't hold it.
+						continue;
+					}
+					insert.setBytes(1, last);
+					insert.setString(2, chunk.getString(2));
+					insert.addBatch();
+					batched++;
+				}
+			}
+			if(batched > 0){
+				insert.executeBatch();
+			}
+			jdbc.commit();
+			copied += batched;
+			
+			if(read < chunkSize){
+				break;
+			}
+			
+			if(System.nanoTime() - lastReport > 10_000_000_000L){
+				logger.info("Rebuilding {}: {} rows copied so far.", table, copied);
+				lastReport = System.nanoTime();
+			}
+			
+			if(pauseMillis > 0){
+				try {
+					Thread.sleep(pauseMillis);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new DatabaseException("Rebuilding " + table + " was interrupted.", e);
+				}
+			}
+		}
+		
+		if(skipped > 0){
+			logger.warn("{} rows of {} did not hold a valid UUID and were left out; they are still in the backup table.", skipped, table);
+		}
+		return copied;
+	}
+	
+	/** @return Whether the id column alone is already the primary key of the table.*/
+	private boolean isPrimaryKey(Connection jdbc) throws SQLException{
+		List<String> columns = new ArrayList<String>();
+		try(ResultSet keys = jdbc.getMetaData().getPrimaryKeys(database, null, table)){
+			while(keys.next()){
+				columns.add(keys.getString("COLUMN_NAME"));
+			}
+		}
+		return columns.size() == 1 && columns.get(0).equalsIgnoreCase(idColumn);
+	}
+	
+	/** Drops the triggers and the new table, if they exist.*/
+	private void cleanUp(Statement statement) throws SQLException{
+		for(Query dropTrigger : dropTriggerQueries){
+			statement.execute(dropTrigger.getSql());
+		}
+		statement.execute(dropNewTableQuery.getSql());
+	}
+}
@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.IdentityHashMap;
+
+/**
+ * A physical JDBC connection borrowed from a {@link ConnectionPool}.
+ * <br><br>Closing this hands the connection back to the pool instead of closing the socket.
+ * Call {@link #invalidate()} first if the connection turned out to be broken, so that it is replaced instead of reused.
+ * <br>Statements prepared through {@link #prepare(Query)} stay open for as long as the physical connection does, and are reused by later borrowers.
+ */
+public class PooledConnection implements AutoCloseable {
+	
+	private final ConnectionPool pool;
+	private final Connection connection;
+	private final long createdAt; //System.nanoTime() at which the physical connection was opened.
+	private final IdentityHashMap<Query, PreparedStatement> statements; //Only touched by the current borrower.
+	
+	private long lastReleasedAt; //System.nanoTime() at which the connection was last handed back to the pool.
+	private boolean broken;
+	private boolean borrowed; //Guards against handing the same connection back twice.
+	
+	PooledConnection(ConnectionPool pool, Connection connection){
+		this.pool = pool;
+		this.connection = connection;
+		this.createdAt = System.nanoTime();
+		this.lastReleasedAt = createdAt;
+		this.statements = new IdentityHashMap<Query, PreparedStatement>();
+	}
+	
+	/** @return The underlying JDBC connection. Do not close it directly; close this object instead.*/
+	public Connection getConnection(){ return connection; }
+	
+	/**
+	 * @param query (The query to prepare)
+	 * @return A forward-only, read-only statement for the query with its parameters cleared.
+	 * 
+	 * <br><br>The statement is prepared the first time this connection sees the query and reused afterwards. 
+	 * Do not close it; it belongs to the connection.
+	 */
+	public PreparedStatement prepare(Query query) throws SQLException{
+		PreparedStatement statement = statements.get(query);
+		
+		if(statement==null || statement.isClosed()){
+			statement = connection.prepareStatement(query.getSql(), ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			statements.put(query, statement);
+		} else {
+			statement.clearParameters();
+		}
+		
+		return statement;
+	}
+	
+	/** Marks the connection as broken. It will be closed rather than reused when it is handed back.*/
+	public void invalidate(){ broken = true; }
+	
+	/** Hands the connection back to the pool it was borrowed from.*/
+	@Override
+	public void close(){
+		if(borrowed){
+			borrowed = false;
+			pool.release(this);
+		}
+	}
+	
+	boolean isBroken(){ return broken; }
+	
+	void setBorrowed(){ borrowed = true; }
+	
+	long getCreatedAt(){ return createdAt; }
+	
+	long getLastReleasedAt(){ return lastReleasedAt; }
+	
+	void setLastReleasedAt(long lastReleasedAt){ this.lastReleasedAt = lastReleasedAt; }
+	
+	void closePhysical(){
+		for(PreparedStatement statement : statements.values()){
+			try {
+				statement.close();
+			} catch (SQLException e) {
+				//Closing the connection below releases it regardless.
+			}
+		}
+		statements.clear();
+		
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			//The connection is being thrown away anyway; there is nothing left to do with it.
+		}
+	}
+}
@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A SQL statement whose table and column names were resolved when it was built.
+ * <br><br>JDBC can only bind values, not identifiers, so identifiers are substituted into the template once, here, after being checked
+ * against a strict whitelist and quoted. Values are still bound through {@code ?} parameters at execution time.
+ * <br>Queries are compared by identity, which lets every {@link PooledConnection} keep one prepared statement per query.
+ */
+public final class Query {
+	
+	private static final Pattern identifierPattern = Pattern.compile("[A-Za-z_][A-Za-z0-9_]*");
+	private static final Pattern placeholderPattern = Pattern.compile("\\{(\\d+)\\}");
+	
+	private final String sql;
+	
+	private Query(String sql){
+		this.sql = sql;
+	}
+	
+	/**
+	 * @param template (SQL with {0}, {1}, ... where identifiers go and ? where values go)
+	 * @param identifiers (Table and column names, optionally qualified as database.table)
+	 * @return The compiled query.
+	 * 
+	 * <br><br>Builds a query, substituting each {n} in the template with the quoted n-th identifier.
+	 * 
+	 * @throws IllegalArgumentException If an identifier is not a plain SQL name, or a placeholder has no identifier.
+	 */
+	public static Query compile(String template, String... identifiers){
+		Preconditions.checkNotNull(template);
+		
+		Matcher matcher = placeholderPattern.matcher(template);
+		StringBuffer sql = new StringBuffer(template.length() + 16 * identifiers.length);
+		
+		while(matcher.find()){
+			int index = Integer.parseInt(matcher.group(1));
+			Preconditions.checkArgument(index < identifiers.length, "The query template refers to identifier {%s} but only %s were given.", index, identifiers.length);
+			matcher.appendReplacement(sql, Matcher.quoteReplacement(quote(identifiers[index])));
+		}
+		matcher.appendTail(sql);
+		
+		return new Query(sql.toString());
+	}
+	
+	/**
+	 * @param identifier (A table or column name, optionally qualified as database.table)
+	 * @return The identifier quoted with backticks.
+	 */
+	private static String quote(String identifier){
+		Preconditions.checkNotNull(identifier);
+		StringBuilder quoted = new StringBuilder(identifier.length() + 4);
+		
+		for(String part : identifier.split("\\.", -1)){
+			Preconditions.checkArgument(identifierPattern.matcher(part).matches(), "'%s' is not a valid SQL identifier.", identifier);
+			if(quoted.length() > 0){
+				quoted.append('.');
+			}
+			quoted.append('`').append(part).append('`');
+		}
+		
+		return quoted.toString();
+	}
+	
+	/** @return The SQL of this query, with identifiers resolved.*/
+	public String getSql(){ return sql; }
+	
+	@Override
+	public String toString(){ return sql; }
+}
@@ -0,0 +1,214 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.SQLException;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.DataStructures.CuckooFilter;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Answers "this player has definitely never registered" without asking the database, using a {@link CuckooFilter} of every registered UUID.
+ * <br><br>The filter is built by paging through the user table in the background at startup, and rebuilt periodically so that
+ * registrations made on other servers sharing the database are picked up. Until the first build finishes it rules nothing out.
+ * Registrations are added to it straight away.
+ * <br><br>Removals are not: the filter can't tell whether it really holds a UUID, and removing one it doesn't would remove another
+ * player's matching fingerprint, ruling a registered player out. A removed player stays in the filter until the next rebuild, which
+ * only costs a trip to the database for them.
+ */
+public class RegistrationFilter {
+	
+	private static final int pageSize = 1000; //UUIDs fetched per query while building.
+	private static final int minimumCapacity = 1 << 14;
+	
+	private final Logger logger;
+	private final ScheduledExecutorService builder;
+	
+	private final Object changeLock = new Object(); //Keeps changes from slipping between a rebuild and its swap.
+	private volatile CuckooFilter filter; //Null until the first build finishes.
+	private CuckooFilter building; //Guarded by changeLock. The filter being built, which changes have to be applied to as well.
+	
+	private final LongAdder definiteNegatives = new LongAdder();
+	private final LongAdder falsePositives = new LongAdder();
+	
+	public RegistrationFilter(Logger logger){
+		this.logger = logger;
+		this.builder = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-Filter")
+				.setDaemon(true)
+				.build());
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return True if the player has definitely never registered. False means "ask the database".
+	 */
+	public boolean isDefinitelyUnregistered(UUID uuid){
+		CuckooFilter current = filter;
+		if(current == null || current.mightContain(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())){
+			return false;
+		}
+		
+		definiteNegatives.increment();
+		return true;
+	}
+	
+	/** @param uuid (A player the filter said "maybe" for, but who turned out not to be registered)*/
+	public void recordFalsePositive(UUID uuid){
+		if(filter != null){
+			falsePositives.increment();
+		}
+	}
+	
+	/** @param uuid (A player that just registered)*/
+	public void add(UUID uuid){
+		synchronized(changeLock){
+			if(filter != null){
+				filter.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			}
+			if(building != null){
+				building.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+			}
+		}
+	}
+	
+	/**
+	 * @param database (Where the filter is built from)
+	 * @param expectedPlayers (A guess at how many players are registered, e.g. from the registry snapshot)
+	 * @param intervalMinutes (How often to rebuild the filter)
+	 * 
+	 * <br><br>Builds the filter right away in the background, and then periodically.
+	 */
+	public void startBuilding(Database database, int expectedPlayers, long intervalMinutes){
+		builder.scheduleWithFixedDelay(() -> {
+			CuckooFilter current = filter;
+			buildInBackground(database, current == null ? expectedPlayers : current.size());
+		}, 0, intervalMinutes, TimeUnit.MINUTES);
+	}
+	
+	/**
+	 * @param database (Where the filter is rebuilt from)
+	 * 
+	 * <br><br>Stops ruling players out until the filter has been rebuilt, which starts right away in the background. 
+	 * For when registrations made on other servers may have been missed, since the filter would rule those players out.
+	 */
+	public void invalidate(Database database){
+		int expectedPlayers;
+		synchronized(changeLock){
+			expectedPlayers = filter == null ? 0 : filter.size();
+			filter = null;
+		}
+		builder.execute(() -> buildInBackground(database, expectedPlayers));
+	}
+	
+	/** Stops rebuilding the filter.*/
+	public void close(){
+		builder.shutdownNow();
+	}
+	
+	private void buildInBackground(Database database, int expectedPlayers){
+		try {
+			build(database, expectedPlayers);
+		} catch (SQLException | DatabaseException e) {
+			logger.warn("EnderAuth was unable to build its registration filter; it will try again later.");
+			e.printStackTrace();
+		}
+	}
+	
+	private void build(Database database, int expectedPlayers) throws SQLException, DatabaseException{
+		long start = System.nanoTime();
+		
+		//Twice the expected size, so registrations until the next rebuild don't fill it up.
+		CuckooFilter next = new CuckooFilter(Math.max(minimumCapacity, expectedPlayers * 2));
+		synchronized(changeLock){
+			building = next;
+		}
+		
+		try {
+			UUID last = null;
+			List<UUID> page;
+			do {
+				page = database.getRegisteredUUIDs(last, pageSize);
+				synchronized(changeLock){
+					for(UUID uuid : page){
+						next.add(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+					}
+				}
+				if(!page.isEmpty()){
+					last = page.get(page.size() - 1);
+				}
+			} while(page.size() == pageSize);
+			
+			synchronized(changeLock){
+				filter = next;
+			}
+		} finally {
+			synchronized(changeLock){
+				building = null;
+			}
+		}
+		
+		logger.debug("Built the registration filter with {} players in {}ms ({} bytes).", 
+				next.size(), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start), next.getMemoryBytes());
+	}
+	
+	/** @return True once the filter has been built and can rule players out.*/
+	public boolean isReady(){ return filter != null; }
+	
+	/** @return The amount of lookups the filter answered without the database.*/
+	public long getDefiniteNegativeCount(){ return definiteNegatives.sum(); }
+	
+	/** @return The amount of lookups the filter said "maybe" for that the database then answered with "not registered".*/
+	public long getFalsePositiveCount(){ return falsePositives.sum(); }
+	
+	/** @return The fraction of unregistered players the filter failed to rule out, as observed so far.*/
+	public double getObservedFalsePositiveRate(){
+		long negatives = definiteNegatives.sum();
+		long positives = falsePositives.sum();
+		return negatives + positives == 0 ? 0 : (double) positives / (negatives + positives);
+	}
+	
+	/** @return The false positive rate the filter is expected to have at its current load.*/
+	public double getExpectedFalsePositiveRate(){
+		CuckooFilter current = filter;
+		return current == null ? 1 : current.getExpectedFalsePositiveRate();
+	}
+	
+	/** @return The amount of memory the filter takes, in bytes.*/
+	public long getMemoryBytes(){
+		CuckooFilter current = filter;
+		return current == null ? 0 : current.getMemoryBytes();
+	}
+}
@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.SQLException;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * A sorted list of every registered UUID, kept in a file so that it is available the moment the server starts.
+ * <br><br>The file is memory-mapped and searched with a binary search, so joins right after a restart can be answered before the database 
+ * connection has even been set up. It is rebuilt in the background by paging through the user table, and players registered or removed 
+ * since the last rebuild are tracked in memory on top of it.
+ * <br><br>Only a positive answer is authoritative: a player missing from the snapshot may have registered on another server since it was taken,
+ * so {@link #isRegistered(UUID)} returning false means "ask the database".
+ * <br><br>Snapshots alternate between two files, each with a generation number and a checksum. A new snapshot is always written to the file
+ * that isn't mapped, so a crash while writing leaves the previous snapshot intact.
+ */
+public class RegistrySnapshot {
+	
+	private static final int magic = 0x45415253; //"EARS"
+	private static final int version = 1;
+	private static final int headerSize = 32; //magic, version, count, crc32 of the entries, generation (long), padding.
+	private static final int entrySize = UUIDUtils.BYTES;
+	private static final int pageSize = 1000; //UUIDs fetched per query while rebuilding.
+	
+	private final Logger logger;
+	private final Path[] files;
+	private final ScheduledExecutorService refresher;
+	
+	//Replaced as a whole when a new snapshot is taken.
+	private volatile Mapping mapping = Mapping.empty;
+	
+	//Changes made since the snapshot was taken.
+	private final Set<UUID> added = ConcurrentHashMap.newKeySet();
+	private final Set<UUID> removed = ConcurrentHashMap.newKeySet();
+	
+	/**
+	 * @param directory (The directory to keep the snapshot files in)
+	 * @param logger (Where refreshes are reported)
+	 * 
+	 * <br><br>Maps the newest valid snapshot, if there is one. Starts out empty otherwise.
+	 */
+	public RegistrySnapshot(Path directory, Logger logger){
+		Preconditions.checkNotNull(directory);
+		this.logger = logger;
+		this.files = new Path[]{ directory.resolve("registry.0.snapshot"), directory.resolve("registry.1.snapshot") };
+		this.refresher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-Snapshot")
+				.setDaemon(true)
+				.build());
+		
+		try {
+			Files.createDirectories(directory);
+			load();
+		} catch (IOException e) {
+			logger.warn("EnderAuth was unable to read its registry snapshot; the first joins will be answered by the database.");
+		}
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return True if the player is known to be registered. False means the snapshot doesn't know.
+	 * 
+	 * <br><br>Does not allocate or touch the database.
+	 */
+	public boolean isRegistered(UUID uuid){
+		if(removed.contains(uuid)){
+			return false;
+		}
+		return added.contains(uuid) || mapping.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits());
+	}
+	
+	/** @param uuid (A player that just registered)*/
+	public void markRegistered(UUID uuid){
+		removed.remove(uuid);
+		added.add(uuid);
+	}
+	
+	/** @param uuid (A player that was just unregistered)*/
+	public void markRemoved(UUID uuid){
+		added.remove(uuid);
+		removed.add(uuid);
+	}
+	
+	/** @return The amount of UUIDs in the mapped snapshot, not counting changes since it was taken.*/
+	public int size(){ return mapping.count; }
+	
+	/**
+	 * @param database (Where the snapshot is rebuilt from)
+	 * @param intervalMinutes (How often to rebuild it)
+	 * 
+	 * <br><br>Rebuilds the snapshot right away in the background, and then periodically. 
+	 * The first rebuild also sets up the database connection, so it is warm by the time the first join needs it.
+	 */
+	public void startRefreshing(Database database, long intervalMinutes){
+		refresher.scheduleWithFixedDelay(() -> refreshInBackground(database), 0, intervalMinutes, TimeUnit.MINUTES);
+	}
+	
+	/**
+	 * @param database (Where the snapshot is rebuilt from)
+	 * 
+	 * <br><br>Forgets the changes tracked since the snapshot was taken and rebuilds it in the background, e.g. because changes made 
+	 * on other servers may have been missed. Meanwhile the snapshot as it was taken answers on its own.
+	 */
+	public void invalidate(Database database){
+		added.clear();
+		removed.clear();
+		refresher.execute(() -> refreshInBackground(database));
+	}
+	
+	/** Stops refreshing the snapshot.*/
+	public void close(){
+		refresher.shutdownNow();
+	}
+	
+	/**
+	 * Pages through every registered UUID in the database, writes them to the unmapped snapshot file, and switches over to it.
+	 */
+	public void refresh(Database database) throws SQLException, DatabaseException, IOException{
+		long start = System.nanoTime();
+		Mapping current = mapping;
+		int target = current.file == 0 ? 1 : 0;
+		long generation = current.generation + 1;
+		
+		int count = 0;
+		CRC32 crc = new CRC32();
+		ByteBuffer entries = ByteBuffer.allocate(pageSize * entrySize);
+		
+		try(FileChannel channel = FileChannel.open(files[target], StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)){
+			long position = headerSize;
+			UUID last = null;
+			List<UUID> page;
+			
+			//The database returns UUIDs in byte order, which is the order the binary search expects.
+			do {
+				page = database.getRegisteredUUIDs(last, pageSize);
+				entries.clear();
+				for(UUID uuid : page){
+					UUIDUtils.write(uuid, entries);
+				}
+				entries.flip();
+				crc.update(entries.array(), 0, entries.limit());
+				position += write(channel, entries, position);
+				
+				count += page.size();
+				if(!page.isEmpty()){
+					last = page.get(page.size() - 1);
+				}
+			} while(page.size() == pageSize);
+			
+			//The header goes last, so a snapshot is only valid once all of its entries are on disk.
+			ByteBuffer header = ByteBuffer.allocate(headerSize);
+			header.putInt(magic).putInt(version).putInt(count).putInt((int) crc.getValue()).putLong(generation).flip();
+			channel.force(false);
+			write(channel, header, 0);
+			channel.force(true);
+			
+			mapping = new Mapping(channel.map(FileChannel.MapMode.READ_ONLY, 0, headerSize + (long) count * entrySize), count, generation, target);
+		}
+		
+		//Anything the new snapshot agrees with no longer needs tracking.
+		added.removeIf(uuid -> mapping.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+		removed.removeIf(uuid -> !mapping.contains(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits()));
+		
+		logger.debug("Refreshed the registry snapshot with {} players in {}ms.", count, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+	
+	private void refreshInBackground(Database database){
+		try {
+			refresh(database);
+		} catch (SQLException | DatabaseException | IOException e) {
+			logger.warn("EnderAuth was unable to refresh its registry snapshot; it will try again later.");
+			e.printStackTrace();
+		}
+	}
+	
+	private void load() throws IOException{
+		Mapping newest = Mapping.empty;
+		
+		for(int file=0; file<files.length; file++){
+			if(!Files.exists(files[file])){
+				continue;
+			}
+			
+			try(FileChannel channel = FileChannel.open(files[file], StandardOpenOption.READ)){
+				if(channel.size() < headerSize){
+					continue;
+				}
+				
+				MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+				int count = buffer.getInt(8);
+				long generation = buffer.getLong(16);
+				
+				if(buffer.getInt(0) != magic || buffer.getInt(4) != version || count < 0 
+						|| headerSize + (long) count * entrySize > channel.size() || generation <= newest.generation){
+					continue;
+				}
+				
+				CRC32 crc = new CRC32();
+				ByteBuffer entries = buffer.duplicate();
+				entries.position(headerSize).limit(headerSize + count * entrySize);
+				crc.update(entries);
+				if((int) crc.getValue() != buffer.getInt(12)){
+					logger.warn("Ignoring {}, which was not completely written.", files[file].getFileName());
+					continue;
+				}
+				
+				newest = new Mapping(buffer, count, generation, file);
+			}
+		}
+		
+		mapping = newest;
+		logger.debug("Loaded a registry snapshot of {} players.", newest.count);
+	}
+	
+	private static long write(FileChannel channel, ByteBuffer buffer, long position) throws IOException{
+		long written = 0;
+		while(buffer.hasRemaining()){
+			written += channel.write(buffer, position + written);
+		}
+		return written;
+	}
+	
+	/*
+	 * One mapped snapshot file. Immutable once built.
+	 */
+	private static final class Mapping {
+		
+		static final Mapping empty = new Mapping(null, 0, 0, 1);
+		
+		private final ByteBuffer buffer;
+		private final int count;
+		private final long generation;
+		private final int file;
+		
+		Mapping(ByteBuffer buffer, int count, long generation, int file){
+			this.buffer = buffer;
+			this.count = count;
+			this.generation = generation;
+			this.file = file;
+		}
+		
+		/*
+		 * Binary search over the entries, compared the way the database sorts them: unsigned, most significant half first.
+		 */
+		boolean contains(long mostSignificantBits, long leastSignificantBits){
+			int low = 0;
+			int high = count - 1;
+			
+			while(low <= high){
+				int middle = (low + high) >>> 1;
+				int position = headerSize + middle * entrySize;
+				
+				int comparison = Long.compareUnsigned(buffer.getLong(position), mostSignificantBits);
+				if(comparison == 0){
+					comparison = Long.compareUnsigned(buffer.getLong(position + 8), leastSignificantBits);
+				}
+				
+				if(comparison < 0){
+					low = middle + 1;
+				} else if(comparison > 0){
+					high = middle - 1;
+				} else {
+					return true;
+				}
+			}
+			
+			return false;
+		}
+	}
+}
@@ -0,0 +1,196 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+
+/**
+ * Brings a database's schema up to date by applying the {@link Migration}s it hasn't seen yet, in order.
+ * <br><br>Applied versions are recorded in a schema version table, one row per migration, in the same commit that finishes the migration.
+ * Several servers sharing the database may start at once, so migrating happens under a MySQL named lock: a server that can't get it
+ * within {@value #lockWaitSeconds} seconds leaves the migrating to whoever holds it and carries on. EnderAuth's queries don't depend on
+ * the layout migrations change, so the old layout keeps working until the new one is in place.
+ * <br><br>{@linkplain Migration#isDeferrable() Deferrable} migrations can be left for a later run, so that a slow one doesn't hold up
+ * whoever is waiting on the database. One that fails is logged and left unrecorded, to be tried again the next time.
+ */
+public class SchemaMigrator {
+	
+	private static final int lockWaitSeconds = 10;
+	
+	private static final Query getLockQuery = Query.compile("SELECT GET_LOCK(?, ?)");
+	private static final Query releaseLockQuery = Query.compile("SELECT RELEASE_LOCK(?)");
+	
+	private final Logger logger;
+	private final String lockName;
+	private final List<Migration> migrations;
+	private final Query makeVersionTableQuery;
+	private final Query appliedVersionsQuery;
+	private final Query recordVersionQuery;
+	
+	/**
+	 * @param versionTableName (The table applied versions are recorded in, qualified as database.table. Created if it doesn't exist)
+	 * @param logger (Where progress is reported)
+	 * @param migrations (Every migration there is, in any order. Versions must be unique)
+	 */
+	public SchemaMigrator(String versionTableName, Logger logger, List<Migration> migrations){
+		Preconditions.checkNotNull(versionTableName);
+		this.logger = logger;
+		this.lockName = versionTableName;
+		
+		this.migrations = new ArrayList<Migration>(migrations);
+		this.migrations.sort(Comparator.comparingInt(Migration::getVersion));
+		for(int i = 1; i < this.migrations.size(); i++){
+			Preconditions.checkArgument(this.migrations.get(i - 1).getVersion() != this.migrations.get(i).getVersion(), 
+					"Two migrations share version %s.", this.migrations.get(i).getVersion());
+		}
+		
+		makeVersionTableQuery = Query.compile("CREATE TABLE IF NOT EXISTS {0} ( "
+				+ "{1} INT NOT NULL PRIMARY KEY, "
+				+ "{2} VARCHAR(255) NOT NULL, "
+				+ "{3} TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)", 
+				versionTableName, "version", "description", "applied_at");
+		appliedVersionsQuery = Query.compile("SELECT {0} FROM {1}", "version", versionTableName);
+		recordVersionQuery = Query.compile("INSERT INTO {0} ({1}, {2}) VALUES (?, ?)", versionTableName, "version", "description");
+	}
+	
+	/**
+	 * @param connection (A connection to do the migrating on. Migrations may take a while, so it shouldn't be needed for anything else meanwhile)
+	 * @param applyDeferrable (False to stop at the first deferrable migration that hasn't been applied yet)
+	 * @return The amount of migrations applied; 0 if the schema was up to date or another server is migrating it.
+	 * 
+	 * @throws SQLException If a migration that isn't deferrable failed. Migrations applied before it stay applied.
+	 * @throws DatabaseException If a migration that isn't deferrable found data it couldn't migrate.
+	 */
+	public int migrate(PooledConnection connection, boolean applyDeferrable) throws SQLException, DatabaseException{
+		Connection jdbc = connection.getConnection();
+		
+		try(Statement statement = jdbc.createStatement()){
+			statement.execute(makeVersionTableQuery.getSql());
+		}
+		jdbc.commit();
+		
+		if(!lock(connection)){
+			logger.info("Another server is updating EnderAuth's database schema; this one will use the schema as it is.");
+			return 0;
+		}
+		
+		try {
+			Set<Integer> applied = getAppliedVersions(connection);
+			int count = 0;
+			
+			for(Migration migration : migrations){
+				if(applied.contains(migration.getVersion())){
+					continue;
+				}
+				if(migration.isDeferrable() && !applyDeferrable){
+					logger.debug("Leaving schema version {} and later for the background.", migration.getVersion());
+					break;
+				}
+				
+				logger.info("Updating EnderAuth's database schema to version {}: {}.", migration.getVersion(), migration.getDescription());
+				if(migration.isDeferrable()){
+					try {
+						migration.apply(connection);
+					} catch (SQLException | DatabaseException e) {
+						jdbc.rollback();
+						logger.warn("EnderAuth was unable to update its database schema to version {} and will keep using the current layout for now. "
+								+ "It will try again the next time it starts.", migration.getVersion());
+						e.printStackTrace();
+						break;
+					}
+				} else {
+					migration.apply(connection);
+				}
+				
+				PreparedStatement record = connection.prepare(recordVersionQuery);
+				record.setInt(1, migration.getVersion());
+				record.setString(2, migration.getDescription());
+				record.executeUpdate();
+				jdbc.commit();
+				count++;
+			}
+			
+			if(!migrations.isEmpty()){
+				int latest = migrations.get(migrations.size() - 1).getVersion();
+				for(int version : applied){
+					if(version > latest){
+						logger.warn("EnderAuth's database schema was updated by a newer version of EnderAuth (schema version {}).", version);
+						break;
+					}
+				}
+			}
+			return count;
+		} catch (SQLException | DatabaseException | RuntimeException e) {
+			jdbc.rollback();
+			throw e;
+		} finally {
+			unlock(connection);
+		}
+	}
+	
+	private Set<Integer> getAppliedVersions(PooledConnection connection) throws SQLException{
+		Set<Integer> applied = new HashSet<Integer>();
+		try(ResultSet selection = connection.prepare(appliedVersionsQuery).executeQuery()){
+			while(selection.next()){
+				applied.add(selection.getInt(1));
+			}
+		}
+		return applied;
+	}
+	
+	private boolean lock(PooledConnection connection) throws SQLException{
+		PreparedStatement statement = connection.prepare(getLockQuery);
+		statement.setString(1, lockName);
+		statement.setInt(2, lockWaitSeconds);
+		try(ResultSet result = statement.executeQuery()){
+			return result.next() && result.getInt(1) == 1;
+		}
+	}
+	
+	private void unlock(PooledConnection connection){
+		try {
+			PreparedStatement statement = connection.prepare(releaseLockQuery);
+			statement.setString(1, lockName);
+			statement.executeQuery().close();
+		} catch (SQLException e) {
+			//The lock goes with the session anyway, so the connection is thrown away rather than returned holding it.
+			connection.invalidate();
+		}
+	}
+}
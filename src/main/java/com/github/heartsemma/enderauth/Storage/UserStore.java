@@ -0,0 +1,121 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseExceptions.UUIDNotFoundException;
+
+/**
+ * Where EnderAuth keeps its registered players and their pre-shared keys.
+ * <br><br>{@link com.github.heartsemma.enderauth.Database} stores them in MySQL; {@link LocalUserStore} stores them in files next to the plugin's configuration,
+ * for servers that don't run a database. Implementations must be safe to use from several threads at once.
+ */
+public interface UserStore extends AutoCloseable {
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @param PSK (Pre-Shared Key for use in generating authentication codes, may be null)
+	 * 
+	 * <br><br>Adds a user to the store.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the insert.
+	 * @throws DatabaseException If the user could not be stored.
+	 */
+	void addUser(UUID uuid, String PSK) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @return True if the user was in the store.
+	 * 
+	 * <br><br>Removes a user from the store, unregistering them.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the delete.
+	 * @throws DatabaseException If the user could not be removed.
+	 */
+	boolean removeUser(UUID uuid) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuids (The users to remove)
+	 * @return The users that were in the store, and now aren't.
+	 * 
+	 * <br><br>Removes every passed user from the store at once; in one transaction, if the store has them.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the deletes.
+	 * @throws DatabaseException If the users could not be removed.
+	 */
+	List<UUID> removeUsers(Collection<UUID> uuids) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuids (The users whose keys to reset)
+	 * @return The users that were in the store, whose keys are now gone.
+	 * 
+	 * <br><br>Throws away the Pre-Shared Keys of every passed user at once, leaving them registered without a key until they set up a new one
+	 * through {@link #setTotpKey(UUID, String)}. Users who aren't in the store are skipped.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the updates.
+	 * @throws DatabaseException If the keys could not be reset.
+	 */
+	List<UUID> resetUsers(Collection<UUID> uuids) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @param PSK (The user's new Pre-Shared Key)
+	 * @return True if the key was set; false if the user isn't in the store, or already has a key.
+	 * 
+	 * <br><br>Gives a user who is registered without a key, such as one whose key was reset, a new one.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the update.
+	 * @throws DatabaseException If the key could not be stored.
+	 */
+	boolean setTotpKey(UUID uuid, String PSK) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @return True if there is an entry for the user, false if not.
+	 * 
+	 * @throws SQLException If a database backed store failed to run the query.
+	 * @throws DatabaseException If the store could not be read.
+	 */
+	boolean isInDatabase(UUID uuid) throws SQLException, DatabaseException;
+	
+	/**
+	 * @param uuid (Universally Unique Identifier)
+	 * @return The Pre-Shared Key of the user for their TOTP authentication.
+	 * 
+	 * @throws UUIDNotFoundException If there is no entry for the user.
+	 * @throws SQLException If a database backed store failed to run the query.
+	 * @throws DatabaseException If the store could not be read or contained erroneous data.
+	 */
+	String getTotpKey(UUID uuid) throws SQLException, DatabaseException;
+	
+	/** Releases whatever the store holds open. Called when the plugin shuts down.*/
+	@Override
+	void close();
+}
@@ -0,0 +1,385 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import java.sql.SQLException;
+import java.sql.SQLIntegrityConstraintViolationException;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLRecoverableException;
+import java.sql.SQLTimeoutException;
+import java.sql.SQLTransientConnectionException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.UserCache;
+import com.github.heartsemma.enderauth.Authentication.TotpVerifier;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.google.common.base.Preconditions;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+
+/**
+ * Queues registrations in memory and writes them to the {@link Database} in batches, instead of one insert and commit per player.
+ * <br><br>A batch is flushed once {@code batchSize} registrations are waiting, or every {@code flushIntervalMillis}, whichever comes first.
+ * Registrations that are still queued are visible to {@link #isInDatabase(UUID)} and {@link #getTotpKey(UUID)}, so a player always sees their own registration.
+ * {@link #close()} flushes whatever is left before the database is closed.
+ * <br><br>Only a lost connection keeps a batch queued for the next flush. If the database rejects a batch for any other reason, the players
+ * are inserted one by one, and a player the database rejects on their own is dropped and logged, so one bad row can't hold up everybody 
+ * queued behind it. At most {@code maximumPending} registrations wait at once; past that, {@link #addUser(UUID, String)} refuses more.
+ */
+public class WriteBehindUserStore implements UserStore {
+	
+	private final Database database;
+	private final Logger logger;
+	private final int batchSize;
+	private final int maximumPending;
+	
+	private final Object pendingLock = new Object();
+	private final LinkedHashMap<UUID, String> pending = new LinkedHashMap<UUID, String>(); //Guarded by pendingLock. Insertion ordered.
+	private final Object flushLock = new Object(); //Held for the whole of a flush, so batches are written one at a time and in order.
+	private final ScheduledExecutorService flusher;
+	private volatile boolean closed;
+	
+	//Metrics
+	private final LongAdder flushes = new LongAdder();
+	private final LongAdder flushedUsers = new LongAdder();
+	private final LongAdder flushNanos = new LongAdder();
+	private final AtomicLong maxFlushNanos = new AtomicLong();
+	private volatile int lastBatchSize;
+	
+	/**
+	 * @param database (Where registrations end up)
+	 * @param logger (Where failed flushes are reported)
+	 * @param batchSize (Amount of queued registrations that triggers a flush straight away)
+	 * @param flushIntervalMillis (How often queued registrations are flushed regardless of how many there are)
+	 * @param maximumPending (Amount of queued registrations past which new ones are refused)
+	 */
+	public WriteBehindUserStore(Database database, Logger logger, int batchSize, long flushIntervalMillis, int maximumPending){
+		Preconditions.checkNotNull(database);
+		Preconditions.checkArgument(batchSize > 0);
+		Preconditions.checkArgument(flushIntervalMillis > 0);
+		Preconditions.checkArgument(maximumPending >= batchSize);
+		
+		this.database = database;
+		this.logger = logger;
+		this.batchSize = batchSize;
+		this.maximumPending = maximumPending;
+		
+		flusher = Executors.newSingleThreadScheduledExecutor(new ThreadFactoryBuilder()
+				.setNameFormat("EnderAuth-WriteBehind")
+				.setDaemon(true)
+				.build());
+		flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+	
+	/**
+	 * Queues the registration. It is written to the database with the next batch.
+	 * 
+	 * @throws DatabaseException If the user is already waiting to be registered, too many registrations are waiting, or the store has been closed.
+	 */
+	@Override
+	public void addUser(UUID uuid, String PSK) throws DatabaseException{
+		Preconditions.checkNotNull(uuid);
+		int queued;
+		
+		synchronized(pendingLock){
+			if(closed){
+				throw new DatabaseException("Registrations can no longer be queued because EnderAuth is shutting down.");
+			}
+			if(pending.containsKey(uuid)){
+				throw new DatabaseException("The specified UUID is already waiting to be registered.");
+			}
+			if(pending.size() >= maximumPending){
+				throw new DatabaseException(pending.size() + " registrations are already waiting to be written to the database.");
+			}
+			pending.put(uuid, PSK);
+			queued = pending.size();
+		}
+		
+		if(queued == batchSize){
+			flusher.execute(this::flushQuietly);
+		}
+	}
+	
+	/** Flushes queued registrations first, so the delete can't be overtaken by a late insert.*/
+	@Override
+	public boolean removeUser(UUID uuid) throws SQLException, DatabaseException{
+		synchronized(flushLock){
+			flush();
+			return database.removeUser(uuid);
+		}
+	}
+	
+	/** Flushes queued registrations first, like {@link #removeUser(UUID)}.*/
+	@Override
+	public List<UUID> removeUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		synchronized(flushLock){
+			flush();
+			return database.removeUsers(uuids);
+		}
+	}
+	
+	/** Flushes queued registrations first, so that a player who just registered has their key reset too.*/
+	@Override
+	public List<UUID> resetUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		synchronized(flushLock){
+			flush();
+			return database.resetUsers(uuids);
+		}
+	}
+	
+	/** Written straight to the database; a player waiting to be registered already has a key.*/
+	@Override
+	public boolean setTotpKey(UUID uuid, String PSK) throws SQLException, DatabaseException{
+		synchronized(pendingLock){
+			if(pending.containsKey(uuid)){
+				return false;
+			}
+		}
+		return database.setTotpKey(uuid, PSK);
+	}
+	
+	@Override
+	public boolean isInDatabase(UUID uuid) throws SQLException, DatabaseException{
+		synchronized(pendingLock){
+			if(pending.containsKey(uuid)){
+				return true;
+			}
+		}
+		return database.isInDatabase(uuid);
+	}
+	
+	@Override
+	public String getTotpKey(UUID uuid) throws SQLException, DatabaseException{
+		synchronized(pendingLock){
+			if(pending.containsKey(uuid)){
+				return pending.get(uuid);
+			}
+		}
+		return database.getTotpKey(uuid);
+	}
+	
+	/**
+	 * Writes every queued registration to the database now.
+	 * <br><br>The batch is written in one transaction. If the database rejects it, e.g. because some player is already registered, 
+	 * the players are inserted one by one instead, and those rejected again are dropped.
+	 * 
+	 * @throws SQLException If the database could not be reached. The registrations not written yet stay queued and are retried with the next flush.
+	 */
+	public void flush() throws SQLException, DatabaseException{
+		synchronized(flushLock){
+			LinkedHashMap<UUID, String> batch;
+			synchronized(pendingLock){
+				if(pending.isEmpty()){
+					return;
+				}
+				batch = new LinkedHashMap<UUID, String>(pending);
+			}
+			
+			long start = System.nanoTime();
+			
+			try {
+				database.addUsers(batch);
+			} catch (SQLException e) {
+				if(isConnectionFailure(e)){
+					throw e;
+				}
+				logger.warn("The database rejected a batch of {} registrations; inserting them one by one.", batch.size());
+				insertIndividually(batch);
+			}
+			
+			dequeue(batch.keySet());
+			
+			recordFlush(batch.size(), System.nanoTime() - start);
+		}
+	}
+	
+	/** Stops the background flushes, writes whatever is still queued, and closes the database.*/
+	@Override
+	public void close(){
+		synchronized(pendingLock){
+			closed = true;
+		}
+		
+		flusher.shutdown();
+		try {
+			flusher.awaitTermination(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		
+		try {
+			flush();
+		} catch (SQLException | DatabaseException e) {
+			synchronized(pendingLock){
+				logger.error("EnderAuth was unable to save {} registrations before shutting down; those players will have to register again.", pending.size());
+			}
+			e.printStackTrace();
+		}
+		
+		database.close();
+	}
+	
+	/*
+	 * Players written or dropped are taken off the queue as it goes, so that a lost connection part way only leaves the rest queued.
+	 */
+	private void insertIndividually(Map<UUID, String> batch) throws SQLException, DatabaseException{
+		for(Map.Entry<UUID, String> user : batch.entrySet()){
+			UUID uuid = user.getKey();
+			try {
+				database.addUser(uuid, user.getValue());
+			} catch (SQLException e) {
+				if(isConnectionFailure(e)){
+					throw e;
+				}
+				if(isDuplicateEntry(e)){
+					logger.warn("Dropped a queued registration for {}, who was already registered; they keep the key they had.", uuid);
+				} else {
+					logger.error("The database rejected the registration of {}; it was dropped, and they will have to register again.", uuid);
+					e.printStackTrace();
+				}
+				//Whatever was cached from the queued registration, its key included, is wrong now.
+				UserCache.getInstance().invalidate(uuid);
+				TotpVerifier.getInstance().forget(uuid);
+			}
+			dequeue(Collections.singleton(uuid));
+		}
+	}
+	
+	private void dequeue(Collection<UUID> uuids){
+		synchronized(pendingLock){
+			for(UUID uuid : uuids){
+				pending.remove(uuid);
+			}
+		}
+	}
+	
+	/*
+	 * A registration that failed this way may well succeed later, so it stays queued. 
+	 * SQLState class 08 is "connection exception"; a timeout is the pool having no connection to give.
+	 */
+	private static boolean isConnectionFailure(SQLException e){
+		for(Throwable cause = e; cause != null; cause = cause.getCause()){
+			if(cause instanceof SQLTransientConnectionException || cause instanceof SQLNonTransientConnectionException 
+					|| cause instanceof SQLRecoverableException || cause instanceof SQLTimeoutException){
+				return true;
+			}
+			if(cause instanceof SQLException){
+				String state = ((SQLException) cause).getSQLState();
+				if(state != null && state.startsWith("08")){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	/*
+	 * Drivers report a rejected row in a batch as a BatchUpdateException, with the constraint violation chained behind it.
+	 * SQLState class 23 is "integrity constraint violation".
+	 */
+	private static boolean isDuplicateEntry(SQLException e){
+		for(Throwable cause = e; cause != null; cause = cause.getCause()){
+			if(cause instanceof SQLIntegrityConstraintViolationException){
+				return true;
+			}
+			if(cause instanceof SQLException){
+				String state = ((SQLException) cause).getSQLState();
+				if(state != null && state.startsWith("23")){
+					return true;
+				}
+				SQLException next = ((SQLException) cause).getNextException();
+				if(next != null && next != cause && isDuplicateEntry(next)){
+					return true;
+				}
+			}
+		}
+		return false;
+	}
+	
+	private void flushQuietly(){
+		try {
+			flush();
+		} catch (SQLException | DatabaseException e) {
+			logger.error("EnderAuth was unable to write queued registrations to the database; they will be retried.");
+			e.printStackTrace();
+		}
+	}
+	
+	private void recordFlush(int size, long nanos){
+		lastBatchSize = size;
+		flushes.increment();
+		flushedUsers.add(size);
+		flushNanos.add(nanos);
+		
+		long max;
+		while(nanos > (max = maxFlushNanos.get())){
+			if(maxFlushNanos.compareAndSet(max, nanos)){
+				break;
+			}
+		}
+		
+		logger.debug("Flushed {} registrations to the database in {} microseconds.", size, TimeUnit.NANOSECONDS.toMicros(nanos));
+	}
+	
+	/** @return The amount of registrations waiting to be written.*/
+	public int getPendingCount(){
+		synchronized(pendingLock){
+			return pending.size();
+		}
+	}
+	
+	/** @return The amount of batches written since startup.*/
+	public long getFlushCount(){ return flushes.sum(); }
+	
+	/** @return The amount of registrations in the most recently written batch.*/
+	public int getLastBatchSize(){ return lastBatchSize; }
+	
+	/** @return The average amount of registrations per batch.*/
+	public double getAverageBatchSize(){
+		long count = flushes.sum();
+		return count == 0 ? 0 : (double) flushedUsers.sum() / count;
+	}
+	
+	/** @return The average time, in nanoseconds, a batch took to write.*/
+	public long getAverageFlushNanos(){
+		long count = flushes.sum();
+		return count == 0 ? 0 : flushNanos.sum() / count;
+	}
+	
+	/** @return The longest time, in nanoseconds, a batch took to write.*/
+	public long getMaxFlushNanos(){ return maxFlushNanos.get(); }
+}
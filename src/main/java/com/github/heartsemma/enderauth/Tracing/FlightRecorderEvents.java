@@ -0,0 +1,112 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Tracing;
+
+import java.util.UUID;
+
+import jdk.jfr.EventType;
+
+/**
+ * Commits EnderAuth's Flight Recorder events. Only {@link Trace} touches this class, and only once it knows the JVM has Flight Recorder,
+ * so it never gets loaded on JVMs without it.
+ * <br><br>Each method first asks whether its event type is enabled in a running recording, which is a field read;
+ * nothing is allocated or converted to a string unless it is.
+ */
+final class FlightRecorderEvents {
+	
+	private static final EventType joinLookupType = EventType.getEventType(JoinLookupEvent.class);
+	private static final EventType cacheLookupType = EventType.getEventType(CacheLookupEvent.class);
+	private static final EventType databaseQueryType = EventType.getEventType(DatabaseQueryEvent.class);
+	private static final EventType codeVerificationType = EventType.getEventType(CodeVerificationEvent.class);
+	private static final EventType kickType = EventType.getEventType(KickEvent.class);
+	
+	private FlightRecorderEvents(){}
+	
+	static void joinLookup(UUID uuid, long durationNanos, boolean registered, boolean cached, boolean failed){
+		if(!joinLookupType.isEnabled()){
+			return;
+		}
+		JoinLookupEvent event = new JoinLookupEvent();
+		if(event.shouldCommit()){
+			event.player = uuid.toString();
+			event.lookupDuration = durationNanos;
+			event.registered = registered;
+			event.cached = cached;
+			event.failed = failed;
+			event.commit();
+		}
+	}
+	
+	static void cacheLookup(UUID uuid, boolean hit){
+		if(!cacheLookupType.isEnabled()){
+			return;
+		}
+		CacheLookupEvent event = new CacheLookupEvent();
+		if(event.shouldCommit()){
+			event.player = uuid.toString();
+			event.hit = hit;
+			event.commit();
+		}
+	}
+	
+	static void databaseQuery(UUID uuid, String operation, long durationNanos, boolean failed){
+		if(!databaseQueryType.isEnabled()){
+			return;
+		}
+		DatabaseQueryEvent event = new DatabaseQueryEvent();
+		if(event.shouldCommit()){
+			event.player = uuid.toString();
+			event.operation = operation;
+			event.queryDuration = durationNanos;
+			event.failed = failed;
+			event.commit();
+		}
+	}
+	
+	static void codeVerification(UUID uuid, long durationNanos, String outcome){
+		if(!codeVerificationType.isEnabled()){
+			return;
+		}
+		CodeVerificationEvent event = new CodeVerificationEvent();
+		if(event.shouldCommit()){
+			event.player = uuid.toString();
+			event.verificationDuration = durationNanos;
+			event.outcome = outcome;
+			event.commit();
+		}
+	}
+	
+	static void kick(UUID uuid, String reason){
+		if(!kickType.isEnabled()){
+			return;
+		}
+		KickEvent event = new KickEvent();
+		if(event.shouldCommit()){
+			event.player = uuid.toString();
+			event.reason = reason;
+			event.commit();
+		}
+	}
+}
@@ -0,0 +1,153 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Tracing;
+
+import java.util.UUID;
+
+import com.github.heartsemma.enderauth.Authentication.LoginThrottle;
+import com.github.heartsemma.enderauth.Metrics.Operation;
+
+/**
+ * The steps of a player's way through EnderAuth, as seen by Java Flight Recorder and by a sampled in-memory {@link TraceBuffer}.
+ * <br><br>Flight Recorder events cost a field read unless a recording has them enabled. The trace buffer keeps every step of one in
+ * {@value #sampleOneIn} players (chosen by UUID, so a sampled player's whole join and login can be followed), and costs a hash
+ * for everyone else. Neither allocates on the hot path, which is why these replace the debug logging that used to be there.
+ * <br><br>On JVMs without Flight Recorder (Java 8 before update 262) only the trace buffer is used.
+ */
+public final class Trace {
+	
+	//Some of these may be pulled from configuration in the future.
+	private static final int sampleOneIn = 8; //Must be a power of two.
+	private static final int bufferCapacity = 4096;
+	
+	//What the trace buffer calls each step. Constants, so recording them doesn't allocate.
+	private static final String joinLookup = "join lookup";
+	private static final String cacheLookup = "cache lookup";
+	private static final String databaseQuery = "database query";
+	private static final String codeVerification = "code verification";
+	private static final String kick = "kick";
+	
+	private static final boolean flightRecorderAvailable = detectFlightRecorder();
+	private static final TraceBuffer buffer = new TraceBuffer(bufferCapacity);
+	
+	private Trace(){}
+	
+	/**
+	 * @param uuid (The joining player)
+	 * @param startNanos (When the lookup started, from {@link System#nanoTime()})
+	 * @param registered (What the lookup found; ignored if it failed)
+	 * @param cached (True if the lookup was answered without going to the I/O threads)
+	 * @param failed (True if the lookup threw)
+	 */
+	public static void joinLookup(UUID uuid, long startNanos, boolean registered, boolean cached, boolean failed){
+		long duration = System.nanoTime() - startNanos;
+		if(flightRecorderAvailable){
+			FlightRecorderEvents.joinLookup(uuid, duration, registered, cached, failed);
+		}
+		if(isSampled(uuid)){
+			String detail = failed ? "failed" : registered ? (cached ? "registered (cached)" : "registered") : (cached ? "unregistered (cached)" : "unregistered");
+			buffer.record(joinLookup, uuid, duration, detail);
+		}
+	}
+	
+	/**
+	 * @param uuid (The player that was looked up)
+	 * @param hit (True if the cache knew the player)
+	 */
+	public static void cacheLookup(UUID uuid, boolean hit){
+		if(flightRecorderAvailable){
+			FlightRecorderEvents.cacheLookup(uuid, hit);
+		}
+		if(isSampled(uuid)){
+			buffer.record(cacheLookup, uuid, 0, hit ? "hit" : "miss");
+		}
+	}
+	
+	/**
+	 * @param uuid (The player the query was about)
+	 * @param operation (What the query did)
+	 * @param startNanos (When the query started, from {@link System#nanoTime()})
+	 * @param failed (True if the query threw)
+	 */
+	public static void databaseQuery(UUID uuid, Operation operation, long startNanos, boolean failed){
+		long duration = System.nanoTime() - startNanos;
+		if(flightRecorderAvailable){
+			FlightRecorderEvents.databaseQuery(uuid, operation.getDisplayName(), duration, failed);
+		}
+		if(isSampled(uuid)){
+			buffer.record(databaseQuery, uuid, duration, failed ? "failed" : operation.getDisplayName());
+		}
+	}
+	
+	/**
+	 * @param uuid (The player logging in)
+	 * @param startNanos (When the attempt started, from {@link System#nanoTime()})
+	 * @param outcome (What became of it, or null if it threw)
+	 */
+	public static void codeVerification(UUID uuid, long startNanos, LoginThrottle.Outcome outcome){
+		long duration = System.nanoTime() - startNanos;
+		String detail = outcome == null ? "failed" : outcome.name();
+		if(flightRecorderAvailable){
+			FlightRecorderEvents.codeVerification(uuid, duration, detail);
+		}
+		if(isSampled(uuid)){
+			buffer.record(codeVerification, uuid, duration, detail);
+		}
+	}
+	
+	/**
+	 * @param uuid (The player that was kicked)
+	 * @param reason (Why; should be a constant)
+	 * 
+	 * <br><br>Kicks are rare and always worth seeing, so they are kept for every player.
+	 */
+	public static void kick(UUID uuid, String reason){
+		if(flightRecorderAvailable){
+			FlightRecorderEvents.kick(uuid, reason);
+		}
+		buffer.record(kick, uuid, 0, reason);
+	}
+	
+	/** @return The in-memory trace, for {@code /ea trace}.*/
+	public static TraceBuffer getBuffer(){ return buffer; }
+	
+	/** @return True if Flight Recorder events are being emitted (if a recording asks for them).*/
+	public static boolean isFlightRecorderAvailable(){ return flightRecorderAvailable; }
+	
+	private static boolean detectFlightRecorder(){
+		try {
+			Class.forName("jdk.jfr.Event", false, Trace.class.getClassLoader());
+			return true;
+		} catch (ClassNotFoundException | LinkageError e) {
+			return false;
+		}
+	}
+	
+	private static boolean isSampled(UUID uuid){
+		long hash = uuid.getMostSignificantBits() ^ uuid.getLeastSignificantBits();
+		hash *= 0x9E3779B97F4A7C15L;
+		return ((int) (hash >>> 40) & (sampleOneIn - 1)) == 0;
+	}
+}
@@ -0,0 +1,132 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Tracing;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.google.common.base.Preconditions;
+
+/**
+ * A fixed size ring of the most recent trace entries, overwritten oldest first.
+ * <br><br>Recording claims a slot with one atomic increment and fills in preallocated arrays, so it takes no lock and doesn't allocate.
+ * Every slot carries the number of the entry in it, which is cleared while the entry is being written; {@link #dump()} skips entries
+ * that were overwritten or half written while it read them.
+ */
+public class TraceBuffer {
+	
+	private static final long writing = -1;
+	
+	private final int mask;
+	private final AtomicLong nextEntry = new AtomicLong();
+	private final AtomicLongArray entryNumbers;
+	private final AtomicLongArray times;
+	private final AtomicLongArray durations;
+	private final AtomicLongArray mostSignificantBits;
+	private final AtomicLongArray leastSignificantBits;
+	private final AtomicReferenceArray<String> kinds;
+	private final AtomicReferenceArray<String> details;
+	
+	/** @param capacity (How many entries are kept, rounded up to a power of two)*/
+	public TraceBuffer(int capacity){
+		Preconditions.checkArgument(capacity > 0 && capacity <= 1 << 20, "capacity must be between 1 and 2^20");
+		
+		int size = Integer.highestOneBit(capacity - 1 | 1) << 1;
+		mask = size - 1;
+		entryNumbers = new AtomicLongArray(size);
+		for(int i = 0; i < size; i++){
+			entryNumbers.set(i, writing); //Nothing has been written yet.
+		}
+		times = new AtomicLongArray(size);
+		durations = new AtomicLongArray(size);
+		mostSignificantBits = new AtomicLongArray(size);
+		leastSignificantBits = new AtomicLongArray(size);
+		kinds = new AtomicReferenceArray<String>(size);
+		details = new AtomicReferenceArray<String>(size);
+	}
+	
+	/**
+	 * @param kind (What happened; should be a constant)
+	 * @param uuid (Who it happened to)
+	 * @param durationNanos (How long it took, or zero)
+	 * @param detail (How it went; should be a constant)
+	 */
+	public void record(String kind, UUID uuid, long durationNanos, String detail){
+		long entry = nextEntry.getAndIncrement();
+		int slot = (int) entry & mask;
+		
+		entryNumbers.set(slot, writing);
+		times.lazySet(slot, System.currentTimeMillis());
+		durations.lazySet(slot, durationNanos);
+		mostSignificantBits.lazySet(slot, uuid.getMostSignificantBits());
+		leastSignificantBits.lazySet(slot, uuid.getLeastSignificantBits());
+		kinds.lazySet(slot, kind);
+		details.lazySet(slot, detail);
+		entryNumbers.set(slot, entry);
+	}
+	
+	/** @return Every entry still in the ring, oldest first, one line each.*/
+	public List<String> dump(){
+		long end = nextEntry.get();
+		long start = Math.max(0, end - (mask + 1));
+		
+		List<String> lines = new ArrayList<String>((int) (end - start));
+		SimpleDateFormat timeFormat = new SimpleDateFormat("HH:mm:ss.SSS");
+		
+		for(long entry = start; entry < end; entry++){
+			int slot = (int) entry & mask;
+			if(entryNumbers.get(slot) != entry){
+				continue;
+			}
+			
+			long time = times.get(slot);
+			long duration = durations.get(slot);
+			UUID uuid = new UUID(mostSignificantBits.get(slot), leastSignificantBits.get(slot));
+			String kind = kinds.get(slot);
+			String detail = details.get(slot);
+			
+			if(entryNumbers.get(slot) != entry){
+				continue; //Overwritten while we were reading it.
+			}
+			
+			lines.add(String.format("%s %-17s %s %-24s %9.3fms", 
+					timeFormat.format(new Date(time)), kind, uuid, detail, duration / 1e6));
+		}
+		
+		return lines;
+	}
+	
+	/** @return The amount of entries ever recorded, including those that have since been overwritten.*/
+	public long getRecordedCount(){ return nextEntry.get(); }
+	
+	/** @return The amount of entries the ring holds.*/
+	public int getCapacity(){ return mask + 1; }
+}
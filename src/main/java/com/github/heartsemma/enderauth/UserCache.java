@@ -0,0 +1,355 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth;
+
+import java.sql.SQLException;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseExceptions.UUIDNotFoundException;
+import com.github.heartsemma.enderauth.Storage.RegistrationFilter;
+import com.github.heartsemma.enderauth.Storage.RegistrySnapshot;
+import com.github.heartsemma.enderauth.Storage.UserStore;
+import com.github.heartsemma.enderauth.Tracing.Trace;
+import com.google.common.base.Preconditions;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Keeps recently seen players' registration state and pre-shared keys in memory, in front of the plugin's {@link UserStore}.
+ * <br><br>Players that were found to be unregistered are cached too (for a shorter time), so repeated joins of new players don't query the database either.
+ * Registering a player through {@link #addUser(UUID, String)} writes to the database first and then replaces whatever was cached for them.
+ * <br>Before going to the database, lookups consult the {@link RegistrySnapshot} (if there is one), which knows every player that was 
+ * registered when the server started, and the {@link RegistrationFilter}, which can rule out players that never registered.
+ */
+public class UserCache {
+	
+	//Final variables for interacting with other parts of the plugin
+	private final Main main = Main.getInstance();
+	private final Logger logger = main.getLogger();
+	private final UserStore database = main.getUserStore();
+	private final RegistrySnapshot snapshot = main.getRegistrySnapshot(); //May be null if the store doesn't need one.
+	private final RegistrationFilter filter = main.getRegistrationFilter(); //May be null if the store doesn't need one.
+	
+	//Constants about the cache. Some of these may be pulled from configuration in the future.
+	private static final long maximumSize = 10000; //Least recently used players are evicted past this many entries.
+	private static final long timeToLiveMinutes = 30; //Entries are reloaded from the database after this long.
+	private static final long negativeTimeToLiveSeconds = 60; //Unregistered players are re-checked after this long, in case they registered elsewhere.
+	
+	private final Cache<UUID, CachedUser> cache;
+	
+	private final LongAdder hits = new LongAdder();
+	private final LongAdder misses = new LongAdder();
+	
+	private static UserCache INSTANCE = null;
+	
+	public static synchronized UserCache getInstance(){
+		if(INSTANCE==null){
+			INSTANCE = new UserCache();
+		}
+		return INSTANCE;
+	}
+	
+	private UserCache(){
+		cache = CacheBuilder.newBuilder()
+				.maximumSize(maximumSize)
+				.expireAfterWrite(timeToLiveMinutes, TimeUnit.MINUTES)
+				.recordStats()
+				.build();
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return True if the player is registered, false if not.
+	 * 
+	 * <br><br>Answers from the cache if possible and asks the database otherwise.
+	 * 
+	 * @throws SQLException If the database had to be asked and the query failed.
+	 * @throws DatabaseException If the database had to be asked and returned erroneous data.
+	 */
+	public boolean isInDatabase(UUID uuid) throws SQLException, DatabaseException{
+		CachedUser cached = lookup(uuid, true);
+		if(cached != null){
+			return cached.registered;
+		}
+		
+		if(snapshot != null && snapshot.isRegistered(uuid)){
+			cache.put(uuid, CachedUser.registeredWithoutKey());
+			return true;
+		}
+		
+		if(filter != null && filter.isDefinitelyUnregistered(uuid)){
+			cache.put(uuid, CachedUser.unregistered());
+			return false;
+		}
+		
+		boolean registered = database.isInDatabase(uuid);
+		cache.put(uuid, registered ? CachedUser.registeredWithoutKey() : CachedUser.unregistered());
+		
+		if(!registered && filter != null){
+			filter.recordFalsePositive(uuid);
+		}
+		
+		return registered;
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return A boolean, or null if the cache doesn't know.
+	 * 
+	 * <br><br>Answers from the cache only; never touches the database, so it is safe to call from the main thread.
+	 * A miss here is not counted, since the caller is expected to follow up with {@link #isInDatabase(UUID)}.
+	 */
+	public Boolean isInDatabaseIfCached(UUID uuid){
+		CachedUser cached = lookup(uuid, false);
+		if(cached != null){
+			return cached.registered;
+		}
+		
+		if(snapshot != null && snapshot.isRegistered(uuid)){
+			cache.put(uuid, CachedUser.registeredWithoutKey());
+			return true;
+		}
+		
+		if(filter != null && filter.isDefinitelyUnregistered(uuid)){
+			cache.put(uuid, CachedUser.unregistered());
+			return false;
+		}
+		return null;
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return The player's pre-shared key.
+	 * 
+	 * <br><br>Answers from the cache if the key was loaded before and asks the database otherwise.
+	 * 
+	 * @throws UUIDNotFoundException If the player is not registered.
+	 * @throws SQLException If the database had to be asked and the query failed.
+	 * @throws DatabaseException If the database had to be asked and returned erroneous data.
+	 */
+	public String getTotpKey(UUID uuid) throws SQLException, DatabaseException{
+		CachedUser cached = lookup(uuid, true);
+		if(cached != null){
+			if(!cached.registered){
+				throw new UUIDNotFoundException();
+			}
+			if(cached.keyLoaded){
+				return cached.preSharedKey;
+			}
+		}
+		
+		try {
+			String preSharedKey = database.getTotpKey(uuid);
+			cache.put(uuid, CachedUser.registered(preSharedKey));
+			return preSharedKey;
+		} catch (UUIDNotFoundException e) {
+			cache.put(uuid, CachedUser.unregistered());
+			throw e;
+		}
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @param preSharedKey (The player's pre-shared key, may be null)
+	 * 
+	 * <br><br>Adds the player to the database, then caches them as registered. If the insert fails, whatever was cached for them is dropped.
+	 * 
+	 * @throws SQLException If the insert failed.
+	 * @throws DatabaseException If the insert failed.
+	 */
+	public void addUser(UUID uuid, String preSharedKey) throws SQLException, DatabaseException{
+		cache.invalidate(uuid);
+		database.addUser(uuid, preSharedKey);
+		cache.put(uuid, CachedUser.registered(preSharedKey));
+		if(snapshot != null){
+			snapshot.markRegistered(uuid);
+		}
+		if(filter != null){
+			filter.add(uuid);
+		}
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @return True if the player was registered.
+	 * 
+	 * <br><br>Removes the player from the database, unregistering them, and forgets whatever was cached for them.
+	 * 
+	 * @throws SQLException If the delete failed.
+	 * @throws DatabaseException If the delete failed.
+	 */
+	public boolean removeUser(UUID uuid) throws SQLException, DatabaseException{
+		if(snapshot != null){
+			snapshot.markRemoved(uuid);
+		}
+		cache.invalidate(uuid);
+		
+		//The filter keeps the player until its next rebuild; see RegistrationFilter.
+		try {
+			return database.removeUser(uuid);
+		} finally {
+			cache.invalidate(uuid);
+		}
+	}
+	
+	/**
+	 * @param uuids (The players to unregister)
+	 * @return The players that were registered.
+	 * 
+	 * <br><br>Removes the players from the database in one batch, like {@link #removeUser(UUID)} does for one.
+	 * 
+	 * @throws SQLException If the deletes failed.
+	 * @throws DatabaseException If the deletes failed.
+	 */
+	public List<UUID> removeUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		for(UUID uuid : uuids){
+			if(snapshot != null){
+				snapshot.markRemoved(uuid);
+			}
+			cache.invalidate(uuid);
+		}
+		
+		try {
+			return database.removeUsers(uuids);
+		} finally {
+			cache.invalidateAll(uuids);
+		}
+	}
+	
+	/**
+	 * @param uuids (The players whose keys to reset)
+	 * @return The players that were registered, whose keys are now gone.
+	 * 
+	 * <br><br>Throws away the players' keys in one batch. They stay registered, and have to set up a new key before they can log in again.
+	 * 
+	 * @throws SQLException If the updates failed.
+	 * @throws DatabaseException If the updates failed.
+	 */
+	public List<UUID> resetUsers(Collection<UUID> uuids) throws SQLException, DatabaseException{
+		cache.invalidateAll(uuids);
+		try {
+			return database.resetUsers(uuids);
+		} finally {
+			cache.invalidateAll(uuids);
+		}
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * @param preSharedKey (The player's new pre-shared key)
+	 * @return True if the key was set; false if the player isn't registered, or already has a key.
+	 * 
+	 * <br><br>Gives a player who is registered without a key a new one, then caches it.
+	 * 
+	 * @throws SQLException If the update failed.
+	 * @throws DatabaseException If the update failed.
+	 */
+	public boolean setTotpKey(UUID uuid, String preSharedKey) throws SQLException, DatabaseException{
+		cache.invalidate(uuid);
+		boolean set = database.setTotpKey(uuid, preSharedKey);
+		if(set){
+			cache.put(uuid, CachedUser.registered(preSharedKey));
+		}
+		return set;
+	}
+	
+	/**
+	 * @param uuid (The player's UUID)
+	 * 
+	 * <br><br>Forgets whatever is cached for the player, so the next lookup goes to the database.
+	 */
+	public void invalidate(UUID uuid){
+		cache.invalidate(uuid);
+	}
+	
+	/** Forgets every cached player.*/
+	public void invalidateAll(){
+		cache.invalidateAll();
+	}
+	
+	/** @return The amount of lookups answered from the cache.*/
+	public long getHitCount(){ return hits.sum(); }
+	
+	/** @return The amount of lookups that had to go to the database.*/
+	public long getMissCount(){ return misses.sum(); }
+	
+	/** @return The amount of entries thrown out because the cache was full or they expired.*/
+	public long getEvictionCount(){ return cache.stats().evictionCount(); }
+	
+	/** @return The approximate amount of players currently cached.*/
+	public long getSize(){ return cache.size(); }
+	
+	private CachedUser lookup(UUID uuid, boolean countMiss){
+		Preconditions.checkNotNull(uuid);
+		CachedUser cached = cache.getIfPresent(uuid);
+		
+		if(cached != null && !cached.registered 
+				&& System.nanoTime() - cached.cachedAt > TimeUnit.SECONDS.toNanos(negativeTimeToLiveSeconds)){
+			cache.invalidate(uuid);
+			cached = null;
+		}
+		
+		if(cached != null){
+			hits.increment();
+			Trace.cacheLookup(uuid, true);
+		} else if(countMiss){
+			misses.increment();
+			Trace.cacheLookup(uuid, false);
+		}
+		
+		return cached;
+	}
+	
+	/*
+	 * What we know about a player. Immutable, so it can be handed between threads freely.
+	 */
+	private static final class CachedUser {
+		
+		private final boolean registered;
+		private final boolean keyLoaded; //False if we only know the player is registered, not what their key is.
+		private final String preSharedKey;
+		private final long cachedAt; //System.nanoTime() at which the entry was created.
+		
+		private CachedUser(boolean registered, boolean keyLoaded, String preSharedKey){
+			this.registered = registered;
+			this.keyLoaded = keyLoaded;
+			this.preSharedKey = preSharedKey;
+			this.cachedAt = System.nanoTime();
+		}
+		
+		static CachedUser registered(String preSharedKey){ return new CachedUser(true, true, preSharedKey); }
+		
+		static CachedUser registeredWithoutKey(){ return new CachedUser(true, false, null); }
+		
+		static CachedUser unregistered(){ return new CachedUser(false, false, null); }
+	}
+}
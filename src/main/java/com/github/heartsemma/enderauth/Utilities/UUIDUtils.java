@@ -1,17 +1,27 @@
 package com.github.heartsemma.enderauth.Utilities;
 
 import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.UUID;
 
-import org.apache.commons.lang3.ArrayUtils;
 import org.spongepowered.api.entity.living.player.Player;
 
+import com.google.common.base.Preconditions;
+
 /**
  * <B>UUIDUtils</b> is a class with mostly static methods that perform operations related to UUID's. 
- *
+ * 
+ * <br><br>EnderAuth keys players by {@link UUID} everywhere. A UUID is already a compact pair of longs, and Sponge hands out the same 
+ * instance for a player every time, so using it as a map key costs nothing. The methods here convert it to and from its 16 byte, 
+ * big-endian form (the layout of a {@code BINARY(16)} column) without any intermediate buffers.
  */
 public class UUIDUtils {
 	
+	/** The length of a UUID in bytes.*/
+	public static final int BYTES = 2 * Long.BYTES;
+	
 	/**
 	 * @param player The player to get the UUID from.
 	 * @return The UUID as a byte array 
@@ -19,18 +29,7 @@ public class UUIDUtils {
 	 * <br><br> This static function returns the UUID of the given player as a byte array with a length of 16 (equalling 128 bits of data).
 	 */
 	public static byte[] getUUID(Player player){
-		
-		UUID uuid = player.getUniqueId();
-		
-		long frontLong = uuid.getMostSignificantBits();
-		long backLong = uuid.getLeastSignificantBits();
-		
-		byte[] frontOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(frontLong).array();
-		byte[] backOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(backLong).array();
-		
-		byte[] uuidBytes = ArrayUtils.addAll(frontOfID,backOfID);
-		
-		return uuidBytes;
+		return getBytes(player.getUniqueId());
 	}
 	
 	/**
@@ -38,17 +37,150 @@ public class UUIDUtils {
 	 * @return The UUID as a byte array 
 	 * 
 	 * <br><br> This static function converts a UUID into the form of a byte array with a length of 16 (equalling 128 bits of data).
+	 * The returned array is the only allocation.
 	 */
 	public static byte[] getBytes(UUID uuid){
+		byte[] uuidBytes = new byte[BYTES];
+		write(uuid, uuidBytes, 0);
+		return uuidBytes;
+	}
+	
+	/**
+	 * @param uuid (The UUID to write)
+	 * @param destination (The array to write into)
+	 * @param offset (Where in the array to start writing)
+	 * 
+	 * <br><br> Writes the 16 bytes of the UUID into the array, most significant byte first. Does not allocate.
+	 */
+	public static void write(UUID uuid, byte[] destination, int offset){
+		Preconditions.checkPositionIndexes(offset, offset + BYTES, destination.length);
+		putLong(uuid.getMostSignificantBits(), destination, offset);
+		putLong(uuid.getLeastSignificantBits(), destination, offset + Long.BYTES);
+	}
+	
+	/**
+	 * @param uuid (The UUID to write)
+	 * @param destination (The buffer to write into, at its current position)
+	 * 
+	 * <br><br> Writes the 16 bytes of the UUID into the buffer and advances its position. Does not allocate.
+	 */
+	public static void write(UUID uuid, ByteBuffer destination){
+		destination.putLong(uuid.getMostSignificantBits());
+		destination.putLong(uuid.getLeastSignificantBits());
+	}
+	
+	/**
+	 * @param source (The array to read from)
+	 * @param offset (Where in the array the UUID starts)
+	 * @return The UUID stored at that position.
+	 */
+	public static UUID read(byte[] source, int offset){
+		Preconditions.checkPositionIndexes(offset, offset + BYTES, source.length);
+		return new UUID(getLong(source, offset), getLong(source, offset + Long.BYTES));
+	}
+	
+	/**
+	 * @param source (The buffer to read from, at its current position)
+	 * @return The UUID stored at that position. The buffer's position is advanced past it.
+	 */
+	public static UUID read(ByteBuffer source){
+		long mostSignificantBits = source.getLong();
+		return new UUID(mostSignificantBits, source.getLong());
+	}
+	
+	/**
+	 * @param uuidBytes (A UUID in its 16 byte form)
+	 * @return The UUID.
+	 */
+	public static UUID fromBytes(byte[] uuidBytes){
+		Preconditions.checkArgument(uuidBytes.length == BYTES, "A UUID is %s bytes long, not %s.", BYTES, uuidBytes.length);
+		return read(uuidBytes, 0);
+	}
+	
+	/**
+	 * @param text (A UUID as text: with or without dashes, or as a 0x hex literal, in either case. Surrounding whitespace is ignored)
+	 * @return The UUID, or null if the text isn't one.
+	 * 
+	 * <br><br> Unlike {@link UUID#fromString(String)}, this accepts the forms other plugins and SQL dumps store UUIDs in, and never throws.
+	 * Only the returned UUID is allocated.
+	 */
+	public static UUID parse(CharSequence text){
+		int start = 0;
+		int end = text.length();
+		while(start < end && Character.isWhitespace(text.charAt(start))){
+			start++;
+		}
+		while(end > start && Character.isWhitespace(text.charAt(end - 1))){
+			end--;
+		}
+		if(end - start > 2 && text.charAt(start) == '0' && (text.charAt(start + 1) == 'x' || text.charAt(start + 1) == 'X')){
+			start += 2;
+		}
 		
-		long frontLong = uuid.getMostSignificantBits();
-		long backLong = uuid.getLeastSignificantBits();
-		
-		byte[] frontOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(frontLong).array();
-		byte[] backOfID = ByteBuffer.allocate(Long.SIZE / Byte.SIZE).putLong(backLong).array();
-		
-		byte[] uuidBytes = ArrayUtils.addAll(frontOfID,backOfID);
+		boolean dashed = end - start == 36;
+		if(!dashed && end - start != 32){
+			return null;
+		}
 		
-		return uuidBytes;
+		long mostSignificantBits = 0;
+		long leastSignificantBits = 0;
+		int digits = 0;
+		for(int i=start; i<end; i++){
+			char c = text.charAt(i);
+			if(dashed && (i - start == 8 || i - start == 13 || i - start == 18 || i - start == 23)){
+				if(c != '-'){
+					return null;
+				}
+				continue;
+			}
+			
+			int digit = c < 128 ? Character.digit(c, 16) : -1; //Character.digit also takes non-ASCII digits.
+			if(digit < 0){
+				return null;
+			}
+			if(digits < 16){
+				mostSignificantBits = (mostSignificantBits << 4) | digit;
+			} else {
+				leastSignificantBits = (leastSignificantBits << 4) | digit;
+			}
+			digits++;
+		}
+		return new UUID(mostSignificantBits, leastSignificantBits);
+	}
+	
+	/**
+	 * @param statement (The statement to bind the UUID to)
+	 * @param parameterIndex (The index of the ? to bind, starting at 1)
+	 * @param uuid (The UUID to bind)
+	 * 
+	 * <br><br> Binds the UUID as a {@code BINARY(16)} value. The driver keeps the array it is given, so one 16 byte array is allocated per bind.
+	 */
+	public static void bind(PreparedStatement statement, int parameterIndex, UUID uuid) throws SQLException{
+		statement.setBytes(parameterIndex, getBytes(uuid));
+	}
+	
+	/**
+	 * @param resultSet (The row to read from)
+	 * @param columnIndex (The index of a {@code BINARY(16)} column, starting at 1)
+	 * @return The UUID stored in the column, or null if it was NULL.
+	 */
+	public static UUID read(ResultSet resultSet, int columnIndex) throws SQLException{
+		byte[] uuidBytes = resultSet.getBytes(columnIndex);
+		return uuidBytes == null ? null : fromBytes(uuidBytes);
+	}
+	
+	private static void putLong(long value, byte[] destination, int offset){
+		for(int i=Long.BYTES-1; i>=0; i--){
+			destination[offset + i] = (byte) value;
+			value >>>= Byte.SIZE;
+		}
+	}
+	
+	private static long getLong(byte[] source, int offset){
+		long value = 0;
+		for(int i=0; i<Long.BYTES; i++){
+			value = (value << Byte.SIZE) | (source[offset + i] & 0xFF);
+		}
+		return value;
 	}
 }
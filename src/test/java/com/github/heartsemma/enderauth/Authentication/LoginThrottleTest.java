@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.InetAddress;
+import java.util.UUID;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.Authentication.LoginThrottle.Outcome;
+import com.warrenstrange.googleauth.GoogleAuthenticator;
+
+/**
+ * Codes are made with the same library that generates players' keys, so this also checks that the two agree.
+ */
+public class LoginThrottleTest {
+	
+	private static final String secret = "JBSWY3DPEHPK3PXP";
+	private static final long stepMillis = 30000;
+	
+	private static LoginThrottle throttle;
+	
+	private final GoogleAuthenticator authenticator = new GoogleAuthenticator();
+	private final SecretKeySpec key = TotpVerifier.decode(secret);
+	
+	@BeforeClass
+	public static void startThrottle(){
+		new Main(NOPLogger.NOP_LOGGER, null, null, null);
+		throttle = LoginThrottle.getInstance();
+	}
+	
+	@Test
+	public void acceptsACodeOnlyOnce() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		int code = codeAt(System.currentTimeMillis());
+		
+		assertEquals(Outcome.ACCEPTED, throttle.attempt(uuid, null, code, key));
+		assertEquals(Outcome.REPLAYED, throttle.attempt(uuid, null, code, key));
+	}
+	
+	@Test
+	public void refusesEarlierCodesOnceALaterOneWorked() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		long now = System.currentTimeMillis();
+		
+		assertEquals(Outcome.ACCEPTED, throttle.attempt(uuid, null, codeAt(now + stepMillis), key));
+		assertEquals(Outcome.REPLAYED, throttle.attempt(uuid, null, codeAt(now), key));
+	}
+	
+	@Test
+	public void codesAreUsedUpPerPlayer() throws Exception{
+		int code = codeAt(System.currentTimeMillis());
+		
+		assertEquals(Outcome.ACCEPTED, throttle.attempt(UUID.randomUUID(), null, code, key));
+		assertEquals(Outcome.ACCEPTED, throttle.attempt(UUID.randomUUID(), null, code, key));
+	}
+	
+	@Test
+	public void throttlesAPlayerAfterAFewWrongCodes() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		int wrong = (codeAt(System.currentTimeMillis()) + 500000) % 1000000;
+		
+		for(int i=0; i<5; i++){
+			assertEquals(Outcome.REJECTED, throttle.attempt(uuid, null, wrong, key));
+		}
+		//Even the right code isn't looked at any more.
+		assertEquals(Outcome.THROTTLED, throttle.attempt(uuid, null, codeAt(System.currentTimeMillis()), key));
+	}
+	
+	@Test
+	public void throttlesAnAddressAcrossPlayers() throws Exception{
+		InetAddress address = InetAddress.getByName("192.0.2.1");
+		int wrong = (codeAt(System.currentTimeMillis()) + 500000) % 1000000;
+		
+		for(int i=0; i<20; i++){
+			assertEquals(Outcome.REJECTED, throttle.attempt(UUID.randomUUID(), address, wrong, key));
+		}
+		assertEquals(Outcome.THROTTLED, throttle.attempt(UUID.randomUUID(), address, wrong, key));
+	}
+	
+	private int codeAt(long timeMillis){
+		return authenticator.getTotpPassword(secret, timeMillis);
+	}
+}
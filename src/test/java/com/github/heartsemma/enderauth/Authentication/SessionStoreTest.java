@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+public class SessionStoreTest {
+	
+	private static final long lifetimeMillis = TimeUnit.MINUTES.toMillis(10);
+	//SessionStore's layout.
+	private static final int headerSize = 16;
+	private static final int slotSize = 48;
+	private static final int lastExpiryByte = 39;
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private Path directory;
+	private SessionStore store;
+	private InetAddress address;
+	
+	@Before
+	public void openStore() throws Exception{
+		directory = folder.getRoot().toPath();
+		store = new SessionStore(directory, NOPLogger.NOP_LOGGER, lifetimeMillis);
+		address = InetAddress.getByName("192.0.2.1");
+	}
+	
+	@After
+	public void closeStore(){
+		store.close();
+	}
+	
+	@Test
+	public void resumesASessionOnlyOnce(){
+		UUID uuid = UUID.randomUUID();
+		store.issue(uuid, address);
+		
+		assertTrue(store.isResumable(uuid, address));
+		assertTrue(store.resume(uuid, address));
+		assertFalse(store.resume(uuid, address));
+		assertEquals(1, store.getIssuedCount());
+		assertEquals(1, store.getResumedCount());
+	}
+	
+	@Test
+	public void bindsASessionToItsAddress() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		store.issue(uuid, address);
+		
+		assertFalse(store.isResumable(uuid, InetAddress.getByName("192.0.2.2")));
+		assertFalse(store.isResumable(uuid, InetAddress.getByName("2001:db8::c000:201")));
+		assertFalse(store.isResumable(UUID.randomUUID(), address));
+		
+		InetAddress v6 = InetAddress.getByName("2001:db8::1");
+		store.issue(uuid, v6);
+		assertTrue(store.isResumable(uuid, v6));
+		assertFalse(store.isResumable(uuid, address)); //The new session replaced the old one.
+	}
+	
+	@Test
+	public void sessionsExpire() throws Exception{
+		SessionStore shortLived = new SessionStore(folder.newFolder().toPath(), NOPLogger.NOP_LOGGER, 50);
+		try {
+			UUID uuid = UUID.randomUUID();
+			shortLived.issue(uuid, address);
+			assertTrue(shortLived.isResumable(uuid, address));
+			
+			Thread.sleep(80);
+			assertFalse(shortLived.resume(uuid, address));
+		} finally {
+			shortLived.close();
+		}
+	}
+	
+	@Test
+	public void revokedSessionsCantBeResumed(){
+		UUID uuid = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		store.issue(uuid, address);
+		store.issue(other, address);
+		
+		store.revoke(uuid);
+		assertFalse(store.resume(uuid, address));
+		assertTrue(store.resume(other, address));
+	}
+	
+	@Test
+	public void revokeAllForgetsEverySession() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		store.issue(uuid, address);
+		store.issue(other, address);
+		
+		store.revokeAll();
+		assertFalse(store.resume(uuid, address));
+		assertFalse(store.resume(other, address));
+		
+		store.issue(uuid, address);
+		assertTrue(store.resume(uuid, address));
+	}
+	
+	@Test
+	public void sessionsSurviveARestart() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		store.issue(uuid, address);
+		store.close();
+		
+		store = new SessionStore(directory, NOPLogger.NOP_LOGGER, lifetimeMillis);
+		assertTrue(store.resume(uuid, address));
+	}
+	
+	@Test
+	public void aTornSlotReadsAsEmpty() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		store.issue(uuid, address);
+		store.close();
+		
+		//The slot is the only thing past the header that isn't zero. Its expiry, one millisecond off, would still be in the future,
+		//so only the checksum can tell the slot was torn.
+		Path file = directory.resolve("sessions.dat");
+		byte[] bytes = Files.readAllBytes(file);
+		int position = headerSize;
+		while(bytes[position] == 0){
+			position++;
+		}
+		int slot = headerSize + (position - headerSize) / slotSize * slotSize;
+		bytes[slot + lastExpiryByte] ^= 1;
+		Files.write(file, bytes);
+		
+		store = new SessionStore(directory, NOPLogger.NOP_LOGGER, lifetimeMillis);
+		assertFalse(store.isResumable(uuid, address));
+		
+		//The slot is usable again.
+		store.issue(uuid, address);
+		assertTrue(store.resume(uuid, address));
+	}
+	
+	@Test
+	public void startsOverWhenTheFileIsntASessionFile() throws Exception{
+		store.close();
+		Files.write(directory.resolve("sessions.dat"), new byte[]{1, 2, 3});
+		
+		store = new SessionStore(directory, NOPLogger.NOP_LOGGER, lifetimeMillis);
+		UUID uuid = UUID.randomUUID();
+		store.issue(uuid, address);
+		assertTrue(store.resume(uuid, address));
+	}
+	
+	@Test
+	public void ignoresEverythingOnceClosed(){
+		UUID uuid = UUID.randomUUID();
+		store.close();
+		
+		store.issue(uuid, address);
+		assertFalse(store.resume(uuid, address));
+	}
+}
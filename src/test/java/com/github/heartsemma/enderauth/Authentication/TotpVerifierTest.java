@@ -0,0 +1,116 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Authentication;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import javax.crypto.spec.SecretKeySpec;
+
+import org.junit.Test;
+
+public class TotpVerifierTest {
+	
+	//The secret of the RFC 4226 and RFC 6238 test vectors, "12345678901234567890", and the same in Base32.
+	private static final SecretKeySpec rfcKey = new SecretKeySpec("12345678901234567890".getBytes(StandardCharsets.US_ASCII), "HmacSHA1");
+	private static final String rfcKeyBase32 = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+	
+	private static final long timeStepMillis = 30000;
+	
+	@Test
+	public void matchesTheHotpVectorsOfRfc4226AppendixD(){
+		int[] codes = {755224, 287082, 359152, 969429, 338314, 254676, 287922, 162583, 399871, 520489};
+		
+		for(int counter = 0; counter < codes.length; counter++){
+			//The counter is the time step; checking at the start of the step puts it in the middle of the window.
+			assertEquals("counter " + counter, counter, TotpVerifier.match(rfcKey, codes[counter], counter * timeStepMillis));
+		}
+	}
+	
+	@Test
+	public void matchesTheSha1VectorsOfRfc6238AppendixB(){
+		//Appendix B lists 8 digit codes; 6 digit codes are their last 6 digits.
+		long[] seconds = {59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L};
+		int[] codes = {287082, 81804, 50471, 5924, 279037, 353130};
+		
+		for(int i = 0; i < seconds.length; i++){
+			long millis = seconds[i] * 1000;
+			assertEquals("T = " + seconds[i], millis / timeStepMillis, TotpVerifier.match(rfcKey, codes[i], millis));
+		}
+	}
+	
+	@Test
+	public void decodesBase32Keys(){
+		SecretKeySpec key = TotpVerifier.decode(rfcKeyBase32);
+		assertTrue(TotpVerifier.verify(key, 287082, 59000));
+		assertEquals("HmacSHA1", key.getAlgorithm());
+	}
+	
+	@Test
+	public void acceptsCodesWithinTheSkewWindowOnly(){
+		int window = TotpVerifier.getWindowSize();
+		long step = 1234567890L / 30; //Code 005924, from RFC 6238.
+		int code = 5924;
+		
+		for(long offset = -window; offset <= window; offset++){
+			assertEquals("offset " + offset, step, TotpVerifier.match(rfcKey, code, (step + offset) * timeStepMillis));
+		}
+		assertEquals(-1, TotpVerifier.match(rfcKey, code, (step + window + 1) * timeStepMillis));
+		assertEquals(-1, TotpVerifier.match(rfcKey, code, (step - window - 1) * timeStepMillis + timeStepMillis - 1));
+		
+		assertTrue(TotpVerifier.verify(rfcKey, code, TotpVerifier.getExpiryMillis(step) - 1));
+		assertFalse(TotpVerifier.verify(rfcKey, code, TotpVerifier.getExpiryMillis(step)));
+	}
+	
+	@Test
+	public void rejectsWrongCodes(){
+		assertEquals(-1, TotpVerifier.match(rfcKey, 287083, 59000));
+		assertEquals(-1, TotpVerifier.match(rfcKey, -1, 59000));
+	}
+	
+	@Test
+	public void parsesSixDigitCodesIgnoringWhitespace(){
+		assertEquals(287082, TotpVerifier.parseCode("287082"));
+		assertEquals(287082, TotpVerifier.parseCode("287 082"));
+		assertEquals(287082, TotpVerifier.parseCode(" 287082\t"));
+		assertEquals(5924, TotpVerifier.parseCode("005924"));
+	}
+	
+	@Test
+	public void rejectsAnythingButSixDigits(){
+		assertEquals(-1, TotpVerifier.parseCode(null));
+		assertEquals(-1, TotpVerifier.parseCode(""));
+		assertEquals(-1, TotpVerifier.parseCode("   "));
+		assertEquals(-1, TotpVerifier.parseCode("28708"));
+		assertEquals(-1, TotpVerifier.parseCode("2870822"));
+		assertEquals(-1, TotpVerifier.parseCode("28a082"));
+		assertEquals(-1, TotpVerifier.parseCode("-28708"));
+		assertEquals(-1, TotpVerifier.parseCode("\uFF12\uFF18\uFF17\uFF10\uFF18\uFF12")); //Fullwidth digits.
+		assertEquals(-1, TotpVerifier.parseCode("99999999999999999999"));
+	}
+}
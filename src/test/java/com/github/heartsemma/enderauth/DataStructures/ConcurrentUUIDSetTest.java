@@ -0,0 +1,232 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class ConcurrentUUIDSetTest {
+	
+	private final ConcurrentUUIDSet set = new ConcurrentUUIDSet();
+	
+	@Test
+	public void addsContainsAndRemoves(){
+		UUID uuid = UUID.randomUUID();
+		
+		assertFalse(set.contains(uuid));
+		assertTrue(set.add(uuid));
+		assertFalse(set.add(uuid));
+		assertTrue(set.contains(uuid));
+		assertTrue(set.contains(new UUID(uuid.getMostSignificantBits(), uuid.getLeastSignificantBits())));
+		assertEquals(1, set.size());
+		
+		assertTrue(set.remove(uuid));
+		assertFalse(set.remove(uuid));
+		assertFalse(set.contains(uuid));
+		assertEquals(0, set.size());
+	}
+	
+	@Test
+	public void probesWrapAroundTheEndOfTheTable(){
+		//Three UUIDs in the same stripe that all hash to its last slot, so two of them wrap around to the start.
+		List<UUID> colliding = colliding(3, 15, 15);
+		for(UUID uuid : colliding){
+			assertTrue(set.add(uuid));
+		}
+		for(UUID uuid : colliding){
+			assertTrue(set.contains(uuid));
+		}
+		
+		//The first one leaves a tombstone the others have to be found past.
+		assertTrue(set.remove(colliding.get(0)));
+		assertFalse(set.contains(colliding.get(0)));
+		assertTrue(set.contains(colliding.get(1)));
+		assertTrue(set.contains(colliding.get(2)));
+		
+		//Re-adding takes the tombstone's slot without leaving a second copy behind.
+		assertTrue(set.remove(colliding.get(1)));
+		assertFalse(set.add(colliding.get(2)));
+		assertTrue(set.add(colliding.get(1)));
+		assertFalse(set.add(colliding.get(1)));
+		assertTrue(set.remove(colliding.get(1)));
+		assertFalse(set.contains(colliding.get(1)));
+		assertTrue(set.contains(colliding.get(2)));
+		assertEquals(1, set.size());
+	}
+	
+	@Test
+	public void tombstonesAreReusedAndCleanedUp(){
+		//Far more adds and removes in one stripe than it has slots; tombstones must not fill it up or hide anything.
+		List<UUID> colliding = colliding(4, 3, 7);
+		UUID resident = colliding.get(0);
+		set.add(resident);
+		
+		Random random = new Random(1);
+		for(int i = 0; i < 20000; i++){
+			UUID passing = i % 2 == 0 ? colliding.get(1 + random.nextInt(3)) : new UUID(random.nextLong(), random.nextLong());
+			assertTrue(set.add(passing));
+			assertTrue(set.contains(resident));
+			assertTrue(set.contains(passing));
+			assertTrue(set.remove(passing));
+			assertFalse(set.contains(passing));
+		}
+		
+		assertTrue(set.contains(resident));
+		assertEquals(1, set.size());
+	}
+	
+	@Test
+	public void growsWithoutLosingAnything(){
+		List<UUID> uuids = new ArrayList<UUID>();
+		for(int i = 0; i < 100000; i++){
+			UUID uuid = i % 2 == 0 ? UUID.randomUUID() : UUID.nameUUIDFromBytes(("OfflinePlayer:player" + i).getBytes());
+			uuids.add(uuid);
+			assertTrue(set.add(uuid));
+		}
+		assertEquals(uuids.size(), set.size());
+		
+		for(int i = 0; i < uuids.size(); i++){
+			if(i % 3 == 0){
+				assertTrue(set.remove(uuids.get(i)));
+			}
+		}
+		for(int i = 0; i < uuids.size(); i++){
+			assertEquals(i % 3 != 0, set.contains(uuids.get(i)));
+		}
+		
+		set.clear();
+		assertEquals(0, set.size());
+		assertFalse(set.contains(uuids.get(1)));
+		assertTrue(set.add(uuids.get(1)));
+	}
+	
+	@Test
+	public void staysConsistentUnderConcurrentWriters() throws Exception{
+		//UUIDs that are never removed must be found throughout, while other threads add and remove around them and the stripes grow.
+		List<UUID> residents = new ArrayList<UUID>();
+		for(int i = 0; i < 1000; i++){
+			UUID uuid = UUID.randomUUID();
+			residents.add(uuid);
+			set.add(uuid);
+		}
+		
+		int writers = 4;
+		AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+		AtomicBoolean writing = new AtomicBoolean(true);
+		CountDownLatch done = new CountDownLatch(writers + 2);
+		List<Thread> threads = new ArrayList<Thread>();
+		
+		for(int writer = 0; writer < writers; writer++){
+			long seed = writer;
+			threads.add(new Thread(() -> {
+				try {
+					Random random = new Random(seed);
+					List<UUID> own = new ArrayList<UUID>();
+					for(int round = 0; round < 20; round++){
+						for(int i = 0; i < 2000; i++){
+							UUID uuid = new UUID(random.nextLong(), random.nextLong());
+							own.add(uuid);
+							check(set.add(uuid), "a new UUID was already there");
+							check(set.contains(uuid), "a UUID just added is missing");
+						}
+						for(UUID uuid : own){
+							check(set.remove(uuid), "a UUID this thread added was gone");
+							check(!set.contains(uuid), "a removed UUID is still there");
+						}
+						own.clear();
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}));
+		}
+		for(int reader = 0; reader < 2; reader++){
+			threads.add(new Thread(() -> {
+				try {
+					while(writing.get()){
+						for(UUID uuid : residents){
+							check(set.contains(uuid), "a UUID that was never removed went missing");
+						}
+					}
+				} catch (Throwable e) {
+					failure.compareAndSet(null, e);
+				} finally {
+					done.countDown();
+				}
+			}));
+		}
+		
+		for(Thread thread : threads){
+			thread.start();
+		}
+		for(int i = 0; i < writers; i++){
+			threads.get(i).join(TimeUnit.MINUTES.toMillis(1));
+		}
+		writing.set(false);
+		assertTrue(done.await(1, TimeUnit.MINUTES));
+		
+		assertNull(failure.get());
+		assertEquals(residents.size(), set.size());
+		for(UUID uuid : residents){
+			assertTrue(set.contains(uuid));
+		}
+	}
+	
+	private static void check(boolean condition, String message){
+		if(!condition){
+			throw new AssertionError(message);
+		}
+	}
+	
+	/** @return UUIDs whose hashes pick the same stripe and the same slot in a stripe of the initial size, 16.*/
+	private static List<UUID> colliding(int count, int stripe, int slot){
+		Random random = new Random(42);
+		List<UUID> found = new ArrayList<UUID>();
+		while(found.size() < count){
+			long mostSignificantBits = random.nextLong();
+			long leastSignificantBits = random.nextLong();
+			int hash = ConcurrentUUIDSet.hash(mostSignificantBits, leastSignificantBits);
+			if((hash >>> 28 & 15) == stripe && (hash & 15) == slot){
+				found.add(new UUID(mostSignificantBits, leastSignificantBits));
+			}
+		}
+		return found;
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class CuckooFilterTest {
+	
+	private static final double targetLoad = 0.85; //CuckooFilter's own.
+	
+	@Test
+	public void neverForgetsAnAddedUUIDUpToItsTargetLoad(){
+		for(int seed=0; seed<3; seed++){
+			CuckooFilter filter = new CuckooFilter(1 << 21);
+			int slots = (int) (filter.getMemoryBytes() / Long.BYTES * 4);
+			int entries = (int) (slots * targetLoad);
+			
+			Random random = new Random(seed);
+			for(int i=0; i<entries; i++){
+				assertTrue("Insert " + i + " failed below the target load.", filter.add(random.nextLong(), random.nextLong()));
+			}
+			assertFalse(filter.isSaturated());
+			assertEquals(entries, filter.size());
+			
+			random = new Random(seed);
+			int falseNegatives = 0;
+			for(int i=0; i<entries; i++){
+				if(!filter.mightContain(random.nextLong(), random.nextLong())){
+					falseNegatives++;
+				}
+			}
+			assertEquals("False negatives with seed " + seed, 0, falseNegatives);
+		}
+	}
+	
+	@Test
+	public void aFailedInsertKeepsEveryEarlierFingerprint(){
+		CuckooFilter filter = new CuckooFilter(64);
+		Random random = new Random(7);
+		long[] added = new long[(int) (filter.getMemoryBytes() / Long.BYTES * 4) * 2];
+		int count = 0;
+		
+		while(true){
+			long mostSignificantBits = random.nextLong();
+			long leastSignificantBits = random.nextLong();
+			if(!filter.add(mostSignificantBits, leastSignificantBits)){
+				break;
+			}
+			added[count++] = mostSignificantBits;
+			added[count++] = leastSignificantBits;
+		}
+		
+		//A saturated filter answers "maybe" for everything, so removal is what shows each fingerprint is still there.
+		assertTrue(filter.isSaturated());
+		assertEquals(count / 2, filter.size());
+		for(int i=0; i<count; i+=2){
+			assertTrue("Lost the fingerprint of entry " + i / 2, filter.remove(added[i], added[i + 1]));
+		}
+		assertEquals(0, filter.size());
+	}
+	
+	@Test
+	public void removesWhatWasAdded(){
+		CuckooFilter filter = new CuckooFilter(1000);
+		filter.add(1, 2);
+		filter.add(3, 4);
+		
+		assertTrue(filter.remove(1, 2));
+		assertFalse(filter.mightContain(1, 2));
+		assertTrue(filter.mightContain(3, 4));
+		assertFalse(filter.remove(1, 2));
+	}
+	
+	@Test
+	public void falsePositiveRateMatchesTheExpectedOne(){
+		CuckooFilter filter = new CuckooFilter(1 << 16);
+		Random random = new Random(11);
+		int slots = (int) (filter.getMemoryBytes() / Long.BYTES * 4);
+		for(int i=0; i<slots * targetLoad; i++){
+			filter.add(random.nextLong(), random.nextLong());
+		}
+		
+		int lookups = 2000000;
+		int falsePositives = 0;
+		for(int i=0; i<lookups; i++){
+			if(filter.mightContain(random.nextLong(), random.nextLong())){
+				falsePositives++;
+			}
+		}
+		
+		double expected = filter.getExpectedFalsePositiveRate();
+		double observed = (double) falsePositives / lookups;
+		assertTrue("Observed " + observed + ", expected " + expected, observed > expected / 2 && observed < expected * 2);
+	}
+}
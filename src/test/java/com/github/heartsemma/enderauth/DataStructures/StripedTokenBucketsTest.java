@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class StripedTokenBucketsTest {
+	
+	private static final long second = TimeUnit.SECONDS.toNanos(1);
+	
+	private final StripedTokenBuckets<String> buckets = new StripedTokenBuckets<String>(3, 0.5, 4);
+	
+	@Test
+	public void allowsABurstAndThenRefuses(){
+		for(int i=0; i<3; i++){
+			assertTrue(buckets.tryAcquire("a", 0));
+		}
+		assertFalse(buckets.tryAcquire("a", 0));
+	}
+	
+	@Test
+	public void refillsAtTheConfiguredRate(){
+		for(int i=0; i<3; i++){
+			buckets.tryAcquire("a", 0);
+		}
+		
+		assertFalse(buckets.tryAcquire("a", second)); //Half a token.
+		assertTrue(buckets.tryAcquire("a", 2 * second));
+		assertFalse(buckets.tryAcquire("a", 2 * second));
+	}
+	
+	@Test
+	public void neverHoldsMoreThanItsCapacity(){
+		buckets.tryAcquire("a", 0);
+		
+		long later = 1000 * second;
+		for(int i=0; i<3; i++){
+			assertTrue(buckets.tryAcquire("a", later));
+		}
+		assertFalse(buckets.tryAcquire("a", later));
+	}
+	
+	@Test
+	public void keysHaveTheirOwnBuckets(){
+		for(int i=0; i<3; i++){
+			buckets.tryAcquire("a", 0);
+		}
+		
+		assertTrue(buckets.tryAcquire("b", 0));
+		assertEquals(2, buckets.size());
+	}
+	
+	@Test
+	public void removingABucketFillsItUp(){
+		for(int i=0; i<3; i++){
+			buckets.tryAcquire("a", 0);
+		}
+		buckets.remove("a");
+		
+		assertEquals(0, buckets.size());
+		assertTrue(buckets.tryAcquire("a", 0));
+	}
+	
+	@Test
+	public void reportsHowLongAnEmptyBucketTakesToRefill(){
+		assertEquals(6000, buckets.getRefillMillis());
+	}
+}
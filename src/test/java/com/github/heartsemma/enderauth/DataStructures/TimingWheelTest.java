@@ -0,0 +1,119 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.DataStructures;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+	
+	private final List<String> expired = new ArrayList<String>();
+	private final TimingWheel<String> wheel = new TimingWheel<String>(100, 8, expired::add, 0);
+	
+	@Test
+	public void expiresKeysAtMostOneTickLate(){
+		wheel.touch("a", 250, 0);
+		
+		assertEquals(0, wheel.advance(200));
+		assertTrue(wheel.contains("a", 200));
+		assertEquals(1, wheel.advance(300));
+		assertEquals(1, expired.size());
+		assertEquals(0, wheel.size());
+	}
+	
+	@Test
+	public void neverReportsAKeyWhoseDeadlinePassed(){
+		wheel.touch("a", 250, 0);
+		
+		assertTrue(wheel.contains("a", 249));
+		assertFalse(wheel.contains("a", 250)); //Not swept yet, but gone all the same.
+		assertEquals(1, wheel.size());
+	}
+	
+	@Test
+	public void addsOnlyKeysThatAreAbsentOrExpired(){
+		assertTrue(wheel.addIfAbsent("a", 250, 0));
+		assertFalse(wheel.addIfAbsent("a", 1000, 100));
+		assertFalse(wheel.contains("a", 300)); //The refused add left the deadline alone.
+		assertTrue(wheel.addIfAbsent("a", 250, 300)); //Expired, though not swept yet.
+		assertTrue(wheel.contains("a", 500));
+	}
+	
+	@Test
+	public void touchingPushesTheDeadlineBack(){
+		wheel.touch("a", 250, 0);
+		wheel.touch("a", 250, 200);
+		
+		assertEquals(0, wheel.advance(300));
+		assertTrue(wheel.contains("a", 400));
+		assertEquals(1, wheel.advance(500));
+		assertEquals(1, expired.size()); //Once, although it was queued twice.
+	}
+	
+	@Test
+	public void touchingCanBringTheDeadlineForward(){
+		wheel.touch("a", 700, 0);
+		wheel.touch("a", 150, 0);
+		
+		assertEquals(1, wheel.advance(200));
+		assertEquals(0, wheel.advance(700));
+	}
+	
+	@Test
+	public void keepsKeysThatLiveLongerThanOneTurn(){
+		wheel.touch("a", 2050, 0); //The wheel turns every 800ms.
+		
+		for(long now=100; now<=2000; now+=100){
+			assertEquals("Expired at " + now, 0, wheel.advance(now));
+		}
+		assertEquals(1, wheel.advance(2100));
+	}
+	
+	@Test
+	public void removedKeysDontExpire(){
+		wheel.touch("a", 250, 0);
+		wheel.remove("a");
+		
+		assertEquals(0, wheel.advance(1000));
+		assertTrue(expired.isEmpty());
+	}
+	
+	@Test
+	public void sweepsEverythingDueAfterALongPause(){
+		for(int i=0; i<100; i++){
+			wheel.touch("key" + i, 100 + i * 37, 0);
+		}
+		
+		assertEquals(100, wheel.advance(100000));
+		assertEquals(0, wheel.size());
+		assertEquals(0, wheel.advance(200000));
+	}
+}
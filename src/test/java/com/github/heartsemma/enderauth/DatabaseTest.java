@@ -0,0 +1,102 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Storage.ConnectionPool;
+import com.github.heartsemma.enderauth.Storage.PooledConnection;
+
+public class DatabaseTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private ConnectionPool pool;
+	private Database database;
+	
+	@Before
+	public void createDatabase() throws Exception{
+		new Main(NOPLogger.NOP_LOGGER, null, null, folder.getRoot().toPath());
+		
+		//One connection, trusted for an hour after use, so that a dropped one is only noticed by the query using it.
+		pool = new ConnectionPool(H2Databases.create(folder.getRoot().toPath()), "sa", "", 1, 3600000, 3600000, 1000);
+		database = new Database(pool);
+	}
+	
+	@After
+	public void closeDatabase(){
+		database.close();
+	}
+	
+	@Test
+	public void retriesOnAFreshConnectionWhenTheConnectionWasDropped() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		database.addUser(uuid, "JBSWY3DPEHPK3PXP");
+		
+		try(PooledConnection connection = pool.acquire()){
+			connection.getConnection().close(); //Dropped by the database, without the pool knowing.
+		}
+		
+		assertEquals("JBSWY3DPEHPK3PXP", database.getTotpKey(uuid));
+		assertEquals(1, pool.getConnectionsRetired());
+		assertEquals(2, pool.getConnectionsOpened());
+		
+		//The fresh connection is kept for the next query.
+		assertTrue(database.isInDatabase(uuid));
+		assertEquals(2, pool.getConnectionsOpened());
+	}
+	
+	@Test
+	public void batchOperationsReportOnlyTheUsersTheyChanged() throws Exception{
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		UUID unregistered = UUID.randomUUID();
+		database.addUser(first, "JBSWY3DPEHPK3PXP");
+		database.addUser(second, "JBSWY3DPEHPK3PXQ");
+		
+		assertEquals(Collections.singletonList(first), database.resetUsers(Arrays.asList(first, unregistered)));
+		assertTrue(database.isInDatabase(first));
+		assertFalse(database.setTotpKey(second, "KRSXG5CTMVRXEZLU")); //Only a reset key may be set again.
+		assertTrue(database.setTotpKey(first, "KRSXG5CTMVRXEZLU"));
+		assertEquals("KRSXG5CTMVRXEZLU", database.getTotpKey(first));
+		
+		assertEquals(Collections.singletonList(second), database.removeUsers(Arrays.asList(second, unregistered)));
+		assertFalse(database.isInDatabase(second));
+	}
+}
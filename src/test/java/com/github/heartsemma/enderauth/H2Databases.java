@@ -0,0 +1,57 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth;
+
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Embedded H2 databases, in MySQL mode, laid out the way {@link Database} lays out MySQL. For tests only.
+ */
+public final class H2Databases {
+	
+	private H2Databases(){}
+	
+	/**
+	 * @param dir (The directory to keep the database's files in)
+	 * @return The JDBC url of a new database with EnderAuth's tables in it.
+	 */
+	public static String create(Path dir) throws SQLException{
+		String url = "jdbc:h2:" + dir.resolve("h2").toAbsolutePath() + ";MODE=MySQL";
+		
+		try(Connection connection = DriverManager.getConnection(url, "sa", ""); Statement statement = connection.createStatement()){
+			statement.execute("CREATE SCHEMA `enderAuthDB`");
+			statement.execute("CREATE TABLE `enderAuthDB`.`ea_users` (`uuid` BINARY(16) NOT NULL PRIMARY KEY, `pre_shared_key` CHAR(32))");
+			statement.execute("CREATE TABLE `enderAuthDB`.`ea_changes` (`version` BIGINT NOT NULL AUTO_INCREMENT PRIMARY KEY, "
+					+ "`uuid` BINARY(16) NOT NULL, `kind` TINYINT NOT NULL, `origin` BIGINT NOT NULL, "
+					+ "`changed_at` TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP)");
+		}
+		
+		return url;
+	}
+}
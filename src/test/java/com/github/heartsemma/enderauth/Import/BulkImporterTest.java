@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.H2Databases;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.Storage.ConnectionPool;
+
+public class BulkImporterTest {
+	
+	private static final int players = 2500; //Three batches, the last one partial.
+	private static final String base32 = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private Database database;
+	private Path file;
+	private Path checkpointFile;
+	private final List<UUID> uuids = new ArrayList<UUID>();
+	
+	@Before
+	public void writeFile() throws Exception{
+		new Main(NOPLogger.NOP_LOGGER, null, null, folder.getRoot().toPath());
+		database = new Database(new ConnectionPool(H2Databases.create(folder.getRoot().toPath()), "sa", "", 2, 60000, 60000, 1000));
+		
+		StringBuilder csv = new StringBuilder("uuid,key\n");
+		for(int i=0; i<players; i++){
+			UUID uuid = UUID.randomUUID();
+			uuids.add(uuid);
+			csv.append(i % 2 == 0 ? uuid.toString() : uuid.toString().replace("-", "")).append(',').append(keyOf(i)).append('\n');
+			if(i % 500 == 0){
+				csv.append("not a uuid,").append(keyOf(i)).append('\n');
+				csv.append(UUID.randomUUID()).append(",not base32!\n");
+			}
+		}
+		file = folder.getRoot().toPath().resolve("players.csv");
+		checkpointFile = file.resolveSibling("players.csv.checkpoint");
+		Files.write(file, csv.toString().getBytes(StandardCharsets.US_ASCII));
+	}
+	
+	@After
+	public void closeDatabase(){
+		database.close();
+	}
+	
+	@Test
+	public void importsValidRowsAndRejectsTheRest() throws Exception{
+		ImportProgress progress = importer(database::importUsers).run();
+		
+		assertTrue(progress.isFinished());
+		assertEquals(players + 10, progress.getRows());
+		assertEquals(players, progress.getImported());
+		assertEquals(10, progress.getRejected());
+		assertEquals(100, progress.getPercent());
+		assertFalse(Files.exists(checkpointFile));
+		
+		for(int i=0; i<players; i++){
+			assertEquals(keyOf(i), database.getTotpKey(uuids.get(i)));
+		}
+	}
+	
+	@Test
+	public void resumesFromTheLastCheckpointAfterAFailure() throws Exception{
+		//The second batch fails to be written, as it would if the database went away.
+		try {
+			importer(users -> {
+				if(users.containsKey(uuids.get(1500))){
+					throw new SQLException("Connection lost.", "08S01");
+				}
+				database.importUsers(users);
+			}).run();
+			fail("The import should have stopped.");
+		} catch (SQLException e) {
+			assertEquals("08S01", e.getSQLState());
+		}
+		assertTrue(Files.exists(checkpointFile));
+		assertTrue(database.isInDatabase(uuids.get(0)));
+		assertFalse(database.isInDatabase(uuids.get(1500)));
+		
+		//Resumed, the first batch isn't written again.
+		Set<UUID> written = new HashSet<UUID>();
+		ImportProgress progress = importer(users -> {
+			written.addAll(users.keySet());
+			database.importUsers(users);
+		}).run();
+		
+		assertTrue(progress.isFinished());
+		assertEquals(players + 10, progress.getRows());
+		assertEquals(players, progress.getImported());
+		assertEquals(10, progress.getRejected());
+		assertFalse(written.contains(uuids.get(0)));
+		assertTrue(written.contains(uuids.get(1500)));
+		assertFalse(Files.exists(checkpointFile));
+		
+		for(int i=0; i<players; i++){
+			assertEquals(keyOf(i), database.getTotpKey(uuids.get(i)));
+		}
+	}
+	
+	@Test
+	public void leavesPlayersWhoAreAlreadyRegisteredAsTheyAre() throws Exception{
+		database.addUser(uuids.get(7), "KRSXG5CTMVRXEZLU");
+		
+		importer(database::importUsers).run();
+		
+		assertEquals("KRSXG5CTMVRXEZLU", database.getTotpKey(uuids.get(7)));
+		assertEquals(keyOf(8), database.getTotpKey(uuids.get(8)));
+	}
+	
+	private BulkImporter importer(BulkImporter.Sink sink){
+		return new BulkImporter(file, checkpointFile, ImportOptions.parse(Arrays.asList(file.toString())), sink, NOPLogger.NOP_LOGGER, progress -> {});
+	}
+	
+	//A distinct 16 character Base32 key per player.
+	private static String keyOf(int player){
+		StringBuilder key = new StringBuilder("JBSWY3DPEHPK");
+		for(int i=0; i<4; i++){
+			key.append(base32.charAt(player >> (5 * i) & 31));
+		}
+		return key.toString();
+	}
+}
@@ -0,0 +1,136 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class CsvSourceTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	@Test
+	public void readsQuotedFieldsAndSkipsTheHeader() throws Exception{
+		Path file = write("players.csv", 
+				"uuid,key\r\n"
+				+ "\"069a79f4-44e9-4726-a5be-fca90e38aaf5\",\"JBSWY3DPEHPK3PXP\"\r\n"
+				+ "\r\n"
+				+ "853c80ef3c3749fdaa49938b674adae6,\"KEY \"\"WITH\"\" QUOTES\"\n"
+				+ "\"61699b2e-d327-4a01-9f1e-0ea8c3f06bc6\",\"A,B\nC\",ignored\n"
+				+ "0x069A79F444E94726A5BEFCA90E38AAF5\n"
+				+ "\"\"\"\",\"\"");
+		List<ImportSource.Row> rows = readAll(file, null, "players.csv");
+		
+		assertEquals(5, rows.size());
+		assertRow(rows.get(0), 1, "069a79f4-44e9-4726-a5be-fca90e38aaf5", "JBSWY3DPEHPK3PXP");
+		assertRow(rows.get(1), 2, "853c80ef3c3749fdaa49938b674adae6", "KEY \"WITH\" QUOTES");
+		assertRow(rows.get(2), 3, "61699b2e-d327-4a01-9f1e-0ea8c3f06bc6", "A,B\nC");
+		assertRow(rows.get(3), 4, "0x069A79F444E94726A5BEFCA90E38AAF5", null); //No key column at all.
+		assertRow(rows.get(4), 5, "\"", "");
+	}
+	
+	@Test
+	public void onlyTakesTheFirstLineForAHeaderWhenItHoldsNoUUID() throws Exception{
+		Path file = write("players.csv", 
+				"069a79f4-44e9-4726-a5be-fca90e38aaf5,JBSWY3DPEHPK3PXP\n"
+				+ "not a uuid,KRSXG5CTMVRXEZLU\n");
+		List<ImportSource.Row> rows = readAll(file, null, "players.csv");
+		
+		assertEquals(2, rows.size());
+		assertRow(rows.get(0), 1, "069a79f4-44e9-4726-a5be-fca90e38aaf5", "JBSWY3DPEHPK3PXP");
+		assertRow(rows.get(1), 2, "not a uuid", "KRSXG5CTMVRXEZLU"); //Left for the importer to reject.
+	}
+	
+	@Test
+	public void picksTheConfiguredColumnsAndDelimiter() throws Exception{
+		Path file = write("players.tsv", 
+				"key\tname\tuuid\n"
+				+ "JBSWY3DPEHPK3PXP\tNotch\t069a79f4-44e9-4726-a5be-fca90e38aaf5\n"
+				+ "KRSXG5CTMVRXEZLU\t\"jeb,\t_\"\t853c80ef3c3749fdaa49938b674adae6\n");
+		List<ImportSource.Row> rows = readAll(file, null, "players.tsv", "--delimiter", "tab", "--uuid-column", "3", "--key-column", "1");
+		
+		assertEquals(2, rows.size());
+		assertRow(rows.get(0), 1, "069a79f4-44e9-4726-a5be-fca90e38aaf5", "JBSWY3DPEHPK3PXP");
+		assertRow(rows.get(1), 2, "853c80ef3c3749fdaa49938b674adae6", "KRSXG5CTMVRXEZLU");
+	}
+	
+	@Test
+	public void continuesFromWhereACheckpointWasTaken() throws Exception{
+		Path file = write("players.csv", 
+				"uuid,key\n"
+				+ "069a79f4-44e9-4726-a5be-fca90e38aaf5,JBSWY3DPEHPK3PXP\n"
+				+ "853c80ef3c3749fdaa49938b674adae6,\"KRSX\nG5CT\"\n"
+				+ "61699b2e-d327-4a01-9f1e-0ea8c3f06bc6,MVRXEZLUJBSWY3DP\n");
+		ImportOptions options = ImportOptions.parse(Arrays.asList("players.csv"));
+		
+		ImportCheckpoint checkpoint;
+		try(ImportSource source = ImportSource.open(file, options, null)){
+			source.next();
+			source.next();
+			checkpoint = new ImportCheckpoint(options.toString(), source.getSize(), 0, source.getPosition(), source.getState(), source.getRows(), 2, 0);
+		}
+		
+		List<ImportSource.Row> rows = readAll(file, checkpoint, "players.csv");
+		assertEquals(1, rows.size());
+		assertRow(rows.get(0), 3, "61699b2e-d327-4a01-9f1e-0ea8c3f06bc6", "MVRXEZLUJBSWY3DP");
+	}
+	
+	private Path write(String name, String content) throws Exception{
+		Path file = folder.getRoot().toPath().resolve(name);
+		Files.write(file, content.getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+	
+	static List<ImportSource.Row> readAll(Path file, ImportCheckpoint checkpoint, String... arguments) throws Exception{
+		List<ImportSource.Row> rows = new ArrayList<ImportSource.Row>();
+		try(ImportSource source = ImportSource.open(file, ImportOptions.parse(Arrays.asList(arguments)), checkpoint)){
+			ImportSource.Row row;
+			while((row = source.next()) != null){
+				rows.add(row);
+			}
+			assertNull(source.next());
+			assertEquals(source.getSize(), source.getPosition());
+		}
+		return rows;
+	}
+	
+	static void assertRow(ImportSource.Row row, long number, String uuid, String key){
+		assertEquals(number, row.getNumber());
+		assertEquals(uuid, row.getUUID());
+		assertEquals(key, row.getKey());
+	}
+}
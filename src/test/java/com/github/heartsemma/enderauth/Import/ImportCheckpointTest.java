@@ -0,0 +1,98 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ImportCheckpointTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private Path source;
+	private Path checkpointFile;
+	private ImportOptions options;
+	
+	@Before
+	public void writeSource() throws Exception{
+		source = folder.getRoot().toPath().resolve("players.csv");
+		checkpointFile = folder.getRoot().toPath().resolve("players.csv.checkpoint");
+		Files.write(source, "069a79f4-44e9-4726-a5be-fca90e38aaf5,JBSWY3DPEHPK3PXP\n".getBytes(StandardCharsets.US_ASCII));
+		options = ImportOptions.parse(Arrays.asList("players.csv"));
+	}
+	
+	@Test
+	public void loadsWhatWasSaved() throws Exception{
+		assertNull(ImportCheckpoint.load(checkpointFile, source, options));
+		
+		save(20, 1);
+		ImportCheckpoint loaded = ImportCheckpoint.load(checkpointFile, source, options);
+		assertNotNull(loaded);
+		assertEquals(20, loaded.getPosition());
+		assertEquals(1, loaded.getState());
+		assertEquals(7, loaded.getRows());
+		assertEquals(5, loaded.getImported());
+		assertEquals(2, loaded.getRejected());
+		assertFalse(Files.exists(checkpointFile.resolveSibling("players.csv.checkpoint.tmp")));
+	}
+	
+	@Test
+	public void doesNotApplyToOtherOptions() throws Exception{
+		save(20, 0);
+		assertNull(ImportCheckpoint.load(checkpointFile, source, ImportOptions.parse(Arrays.asList("players.csv", "--key-column", "3"))));
+	}
+	
+	@Test
+	public void doesNotApplyOnceTheFileHasChanged() throws Exception{
+		save(20, 0);
+		Files.write(source, "853c80ef3c3749fdaa49938b674adae6,KRSXG5CTMVRXEZLU\n".getBytes(StandardCharsets.US_ASCII), StandardOpenOption.APPEND);
+		assertNull(ImportCheckpoint.load(checkpointFile, source, options));
+	}
+	
+	@Test
+	public void ignoresAFileItDidNotWrite() throws Exception{
+		Files.write(checkpointFile, "position=twenty\n".getBytes(StandardCharsets.US_ASCII));
+		assertNull(ImportCheckpoint.load(checkpointFile, source, options));
+	}
+	
+	private void save(long position, int state) throws Exception{
+		new ImportCheckpoint(options.toString(), Files.size(source), Files.getLastModifiedTime(source).toMillis(), position, state, 7, 5, 2)
+				.save(checkpointFile);
+	}
+}
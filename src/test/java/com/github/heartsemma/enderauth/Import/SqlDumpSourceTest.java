@@ -0,0 +1,133 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Import;
+
+import static com.github.heartsemma.enderauth.Import.CsvSourceTest.assertRow;
+import static com.github.heartsemma.enderauth.Import.CsvSourceTest.readAll;
+import static org.junit.Assert.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.heartsemma.enderauth.Utilities.UUIDUtils;
+
+public class SqlDumpSourceTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	//Holds a NUL, a quote, a backslash and a line break, all of which mysqldump escapes, and bytes past ASCII.
+	private static final byte[] binaryUUID = {0, '\'', '\\', '\n', 0x11, 0x22, 0x33, 0x44, (byte) 0x80, (byte) 0x99, (byte) 0xAA, (byte) 0xBB, (byte) 0xCC, (byte) 0xDD, (byte) 0xEE, (byte) 0xFF};
+	
+	private static final String dump = 
+			"-- MySQL dump 10.13  Distrib 5.7.18, for Linux (x86_64)\n"
+			+ "/*!40101 SET @OLD_CHARACTER_SET_CLIENT=@@CHARACTER_SET_CLIENT */;\n"
+			+ "/*!40101 SET NAMES utf8 */;\n"
+			+ "\n"
+			+ "DROP TABLE IF EXISTS `users`;\n"
+			+ "CREATE TABLE `users` (\n"
+			+ "  `id` int(11) NOT NULL,\n"
+			+ "  `uuid` binary(16) NOT NULL,\n"
+			+ "  `secret` varchar(64) DEFAULT NULL COMMENT 'Don''t; VALUES (0,''x'',''y'')'\n"
+			+ ") ENGINE=InnoDB DEFAULT CHARSET=utf8;\n"
+			+ "\n"
+			+ "LOCK TABLES `users` WRITE;\n"
+			+ "INSERT INTO `users_old` VALUES (9,'069a79f444e94726a5befca90e38aaf5','NOTTHISONE');\n"
+			+ "INSERT INTO `users` VALUES (1,X'069a79f444e94726a5befca90e38aaf5','JBSWY3DPEHPK3PXP'),"
+			+ "(2,0x853C80EF3C3749FDAA49938B674ADAE6,'it\\'s; a \\\"key\\\"\\\\'),"
+			+ "(3,_binary '\\0\\'\\\\\\n\u0011\"3D\u0080\u0099\u00AA\u00BB\u00CC\u00DD\u00EE\u00FF',NULL);\n"
+			+ "# Written by hand.\n"
+			+ "INSERT IGNORE INTO `enderauth`.`users` (`id`, `uuid`, `secret`) VALUES\n"
+			+ "  (4, '61699b2e-d327-4a01-9f1e-0ea8c3f06bc6', 'KRSX''G5CT' /* inline */),\n"
+			+ "  (5, NULL, 42);\n"
+			+ "UNLOCK TABLES;\n";
+	
+	@Test
+	public void readsTheRowsOfOneTable() throws Exception{
+		List<ImportSource.Row> rows = readAll(write(), null, "dump.sql", "--table", "users", "--uuid-column", "2", "--key-column", "3");
+		
+		assertEquals(5, rows.size());
+		assertRow(rows.get(0), 1, "0x069a79f444e94726a5befca90e38aaf5", "JBSWY3DPEHPK3PXP");
+		assertRow(rows.get(1), 2, "0x853C80EF3C3749FDAA49938B674ADAE6", "it's; a \"key\"\\");
+		assertRow(rows.get(2), 3, new String(binaryUUID, StandardCharsets.ISO_8859_1), null);
+		assertRow(rows.get(3), 4, "61699b2e-d327-4a01-9f1e-0ea8c3f06bc6", "KRSX'G5CT");
+		assertRow(rows.get(4), 5, null, "42");
+		
+		assertEquals(new UUID(0x069a79f444e94726L, 0xa5befca90e38aaf5L), UUIDUtils.parse(rows.get(0).getUUID()));
+		assertEquals(UUIDUtils.fromBytes(binaryUUID), UUIDUtils.fromBytes(rows.get(2).getUUID().getBytes(StandardCharsets.ISO_8859_1)));
+	}
+	
+	@Test
+	public void takesTheTableNameWithOrWithoutItsDatabase() throws Exception{
+		Path file = write();
+		assertEquals(5, readAll(file, null, "dump.sql", "--table", "`enderauth`.`users`").size());
+		assertEquals(1, readAll(file, null, "dump.sql", "--table", "users_old").size());
+		assertEquals(0, readAll(file, null, "dump.sql", "--table", "players").size());
+	}
+	
+	@Test
+	public void continuesFromACheckpointInsideAStatement() throws Exception{
+		Path file = write();
+		ImportOptions options = ImportOptions.parse(Arrays.asList("dump.sql", "--table", "users", "--uuid-column", "2", "--key-column", "3"));
+		
+		ImportCheckpoint insideInsert;
+		ImportCheckpoint betweenInserts;
+		try(ImportSource source = ImportSource.open(file, options, null)){
+			source.next();
+			insideInsert = checkpoint(options, source);
+			assertEquals(1, insideInsert.getState());
+			source.next();
+			source.next();
+			betweenInserts = checkpoint(options, source);
+			assertEquals(0, betweenInserts.getState());
+		}
+		
+		List<ImportSource.Row> rows = readAll(file, insideInsert, "dump.sql", "--table", "users", "--uuid-column", "2", "--key-column", "3");
+		assertEquals(4, rows.size());
+		assertRow(rows.get(0), 2, "0x853C80EF3C3749FDAA49938B674ADAE6", "it's; a \"key\"\\");
+		
+		rows = readAll(file, betweenInserts, "dump.sql", "--table", "users", "--uuid-column", "2", "--key-column", "3");
+		assertEquals(2, rows.size());
+		assertRow(rows.get(0), 4, "61699b2e-d327-4a01-9f1e-0ea8c3f06bc6", "KRSX'G5CT");
+	}
+	
+	private static ImportCheckpoint checkpoint(ImportOptions options, ImportSource source){
+		return new ImportCheckpoint(options.toString(), source.getSize(), 0, source.getPosition(), source.getState(), source.getRows(), source.getRows(), 0);
+	}
+	
+	private Path write() throws Exception{
+		Path file = folder.getRoot().toPath().resolve("dump.sql");
+		Files.write(file, dump.getBytes(StandardCharsets.ISO_8859_1));
+		return file;
+	}
+}
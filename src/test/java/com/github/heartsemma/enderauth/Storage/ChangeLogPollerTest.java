@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import static org.junit.Assert.assertEquals;
+
+import java.nio.ByteBuffer;
+import java.sql.PreparedStatement;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.H2Databases;
+import com.github.heartsemma.enderauth.Main;
+
+public class ChangeLogPollerTest {
+	
+	private static final long otherNode = 42;
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private ConnectionPool pool;
+	private Database database;
+	private ChangeLogPoller poller;
+	private long now;
+	
+	@Before
+	public void createDatabase() throws Exception{
+		new Main(NOPLogger.NOP_LOGGER, null, null, folder.getRoot().toPath());
+		pool = new ConnectionPool(H2Databases.create(folder.getRoot().toPath()), "sa", "", 2, 60000, 60000, 1000);
+		database = new Database(pool);
+		poller = new ChangeLogPoller(database, NOPLogger.NOP_LOGGER);
+		now = System.currentTimeMillis();
+	}
+	
+	@After
+	public void closeDatabase(){
+		poller.close();
+		database.close();
+	}
+	
+	@Test
+	public void firstPollOnlyFindsWhereTheLogEnds() throws Exception{
+		log(1, otherNode);
+		log(2, otherNode);
+		
+		poller.poll(now);
+		assertEquals(2, poller.getVersion());
+		assertEquals(0, poller.getAppliedCount());
+		
+		log(3, otherNode);
+		poller.poll(now + 1000);
+		assertEquals(3, poller.getVersion());
+		assertEquals(1, poller.getAppliedCount());
+	}
+	
+	@Test
+	public void changeCommittedIntoAGapIsAppliedOnce() throws Exception{
+		poller.poll(now);
+		log(1, otherNode);
+		log(3, otherNode); //Version 2 was taken by a transaction that hasn't committed yet.
+		
+		poller.poll(now + 1000);
+		assertEquals(3, poller.getVersion());
+		assertEquals(2, poller.getAppliedCount());
+		
+		log(2, otherNode);
+		poller.poll(now + 2000);
+		assertEquals(3, poller.getAppliedCount());
+		
+		poller.poll(now + 3000);
+		assertEquals(3, poller.getAppliedCount());
+		assertEquals(0, poller.getExpiredGapCount());
+	}
+	
+	@Test
+	public void gapThatNeverFillsExpires() throws Exception{
+		poller.poll(now);
+		log(1, otherNode);
+		log(4, otherNode);
+		
+		poller.poll(now + 1000);
+		assertEquals(2, poller.getAppliedCount());
+		
+		poller.poll(now + 62000);
+		assertEquals(2, poller.getExpiredGapCount());
+		
+		//Too late; by now the server has given up on it.
+		log(2, otherNode);
+		poller.poll(now + 63000);
+		assertEquals(2, poller.getAppliedCount());
+		assertEquals(4, poller.getVersion());
+	}
+	
+	@Test
+	public void ownChangesAreSkipped() throws Exception{
+		poller.poll(now);
+		log(1, database.getNodeId());
+		log(2, otherNode);
+		
+		poller.poll(now + 1000);
+		assertEquals(2, poller.getVersion());
+		assertEquals(1, poller.getAppliedCount());
+	}
+	
+	@Test
+	public void serverThatMissedTheLogForTooLongStartsOver() throws Exception{
+		poller.poll(now);
+		log(1, otherNode);
+		log(3, otherNode);
+		
+		//Longer than half the log's retention without a successful poll.
+		long later = now + TimeUnit.HOURS.toMillis(13);
+		poller.poll(later);
+		assertEquals(3, poller.getVersion());
+		assertEquals(0, poller.getAppliedCount());
+		
+		//Nothing before the restart point is waited for.
+		log(2, otherNode);
+		poller.poll(later + 1000);
+		assertEquals(0, poller.getAppliedCount());
+	}
+	
+	private void log(long version, long origin) throws Exception{
+		UUID uuid = UUID.randomUUID();
+		byte[] bytes = ByteBuffer.allocate(16).putLong(uuid.getMostSignificantBits()).putLong(uuid.getLeastSignificantBits()).array();
+		
+		try(PooledConnection connection = pool.acquire(); PreparedStatement statement = connection.getConnection().prepareStatement(
+				"INSERT INTO `enderAuthDB`.`ea_changes` (`version`, `uuid`, `kind`, `origin`) VALUES (?, ?, ?, ?)")){
+			statement.setLong(1, version);
+			statement.setBytes(2, bytes);
+			statement.setInt(3, Change.Kind.ADDED.getCode());
+			statement.setLong(4, origin);
+			statement.executeUpdate();
+			connection.getConnection().commit();
+		}
+	}
+}
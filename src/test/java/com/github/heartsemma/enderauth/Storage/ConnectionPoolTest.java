@@ -0,0 +1,169 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.sql.SQLTimeoutException;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import com.github.heartsemma.enderauth.H2Databases;
+
+public class ConnectionPoolTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private String url;
+	private ConnectionPool pool;
+	
+	@Before
+	public void createDatabase() throws Exception{
+		url = H2Databases.create(folder.getRoot().toPath());
+	}
+	
+	@After
+	public void closePool(){
+		if(pool != null){
+			pool.close();
+		}
+	}
+	
+	@Test
+	public void acquireTimesOutWhenEveryConnectionIsBorrowed() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 1, 60000, 60000, 50);
+		
+		PooledConnection borrowed = pool.acquire();
+		long start = System.nanoTime();
+		try {
+			pool.acquire();
+			fail("A second connection was handed out by a pool of one.");
+		} catch (SQLTimeoutException e) {
+			assertTrue((System.nanoTime() - start) / 1000000 >= 40);
+		}
+		assertEquals(1, pool.getAcquisitionTimeoutCount());
+		assertEquals(1, pool.getActiveCount());
+		borrowed.close();
+		
+		pool.acquire().close();
+		assertEquals(2, pool.getAcquisitionCount());
+		assertEquals(1, pool.getAcquisitionTimeoutCount());
+	}
+	
+	@Test
+	public void reusesIdleConnections() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 2, 60000, 60000, 1000);
+		
+		PooledConnection first = pool.acquire();
+		first.close();
+		PooledConnection second = pool.acquire();
+		second.close();
+		
+		assertSame(first, second);
+		assertEquals(1, pool.getConnectionsOpened());
+		assertEquals(1, pool.getIdleCount());
+		assertEquals(0, pool.getActiveCount());
+	}
+	
+	@Test
+	public void retiresConnectionsAfterTheirMaximumLifetime() throws Exception{
+		pool = new ConnectionPool(url, "sa", "", 1, 20, 60000, 1000);
+		
+		PooledConnection first = pool.acquire();
+		Thread.sleep(30);
+		first.close();
+		
+		assertEquals(1, pool.getConnectionsRetired());
+		assertEquals(0, pool.getIdleCount());
+		assertTrue(first.getConnection().isClosed());
+		
+		try(PooledConnection second = pool.acquire()){
+			assertNotSame(first, second);
+			assertEquals(2, pool.getConnectionsOpened());
+		}
+	}
+	
+	@Test
+	public void validatesConnectionsThatSatIdle() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 1, 60000, 0, 1000);
+		
+		PooledConnection first = pool.acquire();
+		first.getConnection().close(); //As if the database had dropped it while it sat in the pool.
+		first.close();
+		
+		try(PooledConnection second = pool.acquire()){
+			assertNotSame(first, second);
+			assertFalse(second.getConnection().isClosed());
+			assertEquals(1, pool.getConnectionsRetired());
+			assertEquals(2, pool.getConnectionsOpened());
+		}
+	}
+	
+	@Test
+	public void skipsValidationOfRecentlyUsedConnections() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 1, 60000, 60000, 1000);
+		
+		PooledConnection first = pool.acquire();
+		first.getConnection().close();
+		first.close();
+		
+		//Checking every connection before reuse would cost a round trip per query; a recently used one is trusted.
+		try(PooledConnection second = pool.acquire()){
+			assertSame(first, second);
+		}
+	}
+	
+	@Test
+	public void replacesInvalidatedConnections() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 1, 60000, 60000, 1000);
+		
+		PooledConnection first = pool.acquire();
+		first.invalidate();
+		first.close();
+		
+		assertTrue(first.getConnection().isClosed());
+		try(PooledConnection second = pool.acquire()){
+			assertNotSame(first, second);
+		}
+	}
+	
+	@Test(expected = SQLException.class)
+	public void refusesAcquisitionsOnceClosed() throws SQLException{
+		pool = new ConnectionPool(url, "sa", "", 1, 60000, 60000, 1000);
+		pool.close();
+		pool.acquire();
+	}
+}
@@ -0,0 +1,237 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+/**
+ * A crash is simulated by copying the store's files while it is open: every change is forced to disk before it returns, 
+ * so the copy holds exactly what a crash at that point would have left behind.
+ */
+public class LocalUserStoreTest {
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private Path directory;
+	private LocalUserStore store;
+	private final List<LocalUserStore> opened = new ArrayList<LocalUserStore>();
+	
+	@Before
+	public void openStore() throws Exception{
+		directory = folder.newFolder("storage").toPath();
+		store = open(directory);
+	}
+	
+	@After
+	public void closeStores(){
+		for(LocalUserStore store : opened){
+			store.close();
+		}
+	}
+	
+	@Test
+	public void keepsUsersAcrossACleanRestart() throws Exception{
+		List<UUID> uuids = addUsers(600); //Enough to grow the index past its initial capacity.
+		store.removeUser(uuids.get(0));
+		store.close();
+		
+		LocalUserStore reopened = open(directory);
+		assertEquals(599, reopened.size());
+		assertFalse(reopened.isInDatabase(uuids.get(0)));
+		for(UUID uuid : uuids.subList(1, uuids.size())){
+			assertEquals(keyOf(uuid), reopened.getTotpKey(uuid));
+		}
+	}
+	
+	@Test
+	public void rebuildsTheIndexAfterACrash() throws Exception{
+		List<UUID> uuids = addUsers(600);
+		store.removeUser(uuids.get(1));
+		store.resetUsers(Collections.singletonList(uuids.get(2)));
+		
+		LocalUserStore recovered = open(crash());
+		assertEquals(599, recovered.size());
+		assertFalse(recovered.isInDatabase(uuids.get(1)));
+		assertNull(recovered.getTotpKey(uuids.get(2)));
+		assertEquals(keyOf(uuids.get(3)), recovered.getTotpKey(uuids.get(3)));
+	}
+	
+	@Test
+	public void rebuildsAGarbledIndex() throws Exception{
+		List<UUID> uuids = addUsers(10);
+		store.close();
+		
+		Files.write(directory.resolve("users.idx"), new byte[]{1, 2, 3, 4, 5, 6, 7, 8}, StandardOpenOption.TRUNCATE_EXISTING);
+		
+		LocalUserStore reopened = open(directory);
+		assertEquals(10, reopened.size());
+		assertEquals(keyOf(uuids.get(9)), reopened.getTotpKey(uuids.get(9)));
+	}
+	
+	@Test
+	public void cutsOffATornRecordAtTheEndOfTheLog() throws Exception{
+		List<UUID> uuids = addUsers(5);
+		Path crashed = crash();
+		
+		Path log = crashed.resolve("users.log");
+		long length = Files.size(log);
+		Files.write(log, new byte[]{1, 0x12, 0x34, 0x56}, StandardOpenOption.APPEND); //The start of a record that never finished.
+		
+		LocalUserStore recovered = open(crashed);
+		assertEquals(5, recovered.size());
+		assertEquals(length, Files.size(log));
+		
+		UUID added = UUID.randomUUID();
+		recovered.addUser(added, keyOf(added));
+		recovered.close();
+		
+		LocalUserStore reopened = open(crashed);
+		assertEquals(keyOf(added), reopened.getTotpKey(added));
+		assertEquals(keyOf(uuids.get(4)), reopened.getTotpKey(uuids.get(4)));
+	}
+	
+	@Test
+	public void cutsOffACorruptRecordAtTheEndOfTheLog() throws Exception{
+		List<UUID> uuids = addUsers(5);
+		Path crashed = crash();
+		
+		Path log = crashed.resolve("users.log");
+		byte[] bytes = Files.readAllBytes(log);
+		bytes[bytes.length - 6] ^= 0x40; //A flipped bit in the last record's key.
+		Files.write(log, bytes);
+		
+		LocalUserStore recovered = open(crashed);
+		assertEquals(4, recovered.size());
+		assertFalse(recovered.isInDatabase(uuids.get(4)));
+		assertEquals(keyOf(uuids.get(3)), recovered.getTotpKey(uuids.get(3)));
+	}
+	
+	@Test
+	public void compactsAwayRemovedUsers() throws Exception{
+		List<UUID> uuids = addUsers(100);
+		for(UUID uuid : uuids.subList(0, 90)){
+			store.removeUser(uuid);
+		}
+		long before = Files.size(directory.resolve("users.log"));
+		
+		store.compactNow();
+		
+		assertTrue(Files.size(directory.resolve("users.log")) < before / 5);
+		assertEquals(10, store.size());
+		for(UUID uuid : uuids.subList(90, 100)){
+			assertEquals(keyOf(uuid), store.getTotpKey(uuid));
+		}
+		
+		//Changes after compaction go to the new log.
+		UUID added = UUID.randomUUID();
+		store.addUser(added, keyOf(added));
+		store.close();
+		
+		LocalUserStore reopened = open(directory);
+		assertEquals(11, reopened.size());
+		assertEquals(keyOf(added), reopened.getTotpKey(added));
+	}
+	
+	@Test
+	public void ignoresACompactionCutShortByACrash() throws Exception{
+		List<UUID> uuids = addUsers(20);
+		store.removeUser(uuids.get(0));
+		Path crashed = crash();
+		Files.write(crashed.resolve("users.log.compact"), new byte[]{0x45, 0x41, 0x4C}); //Half a header; the crash came while it was written.
+		
+		LocalUserStore recovered = open(crashed);
+		assertFalse(Files.exists(crashed.resolve("users.log.compact")));
+		assertEquals(19, recovered.size());
+		assertEquals(keyOf(uuids.get(19)), recovered.getTotpKey(uuids.get(19)));
+	}
+	
+	@Test
+	public void recoversFromACrashRightAfterTheCompactedLogReplacedTheOldOne() throws Exception{
+		List<UUID> uuids = addUsers(20);
+		for(UUID uuid : uuids.subList(0, 10)){
+			store.removeUser(uuid);
+		}
+		Path crashed = crash(); //The index of this copy still points into the old log...
+		
+		store.compactNow();
+		Files.copy(directory.resolve("users.log"), crashed.resolve("users.log"), StandardCopyOption.REPLACE_EXISTING); //...which was then replaced.
+		
+		LocalUserStore recovered = open(crashed);
+		assertEquals(10, recovered.size());
+		for(UUID uuid : uuids.subList(10, 20)){
+			assertEquals(keyOf(uuid), recovered.getTotpKey(uuid));
+		}
+	}
+	
+	private LocalUserStore open(Path directory) throws Exception{
+		LocalUserStore store = new LocalUserStore(directory, NOPLogger.NOP_LOGGER);
+		opened.add(store);
+		return store;
+	}
+	
+	private List<UUID> addUsers(int count) throws Exception{
+		List<UUID> uuids = new ArrayList<UUID>(count);
+		for(int i=0; i<count; i++){
+			UUID uuid = UUID.randomUUID();
+			store.addUser(uuid, keyOf(uuid));
+			uuids.add(uuid);
+		}
+		return uuids;
+	}
+	
+	/** @return A directory holding the files the open store would leave behind if the server crashed now.*/
+	private Path crash() throws IOException{
+		Path copy = folder.newFolder().toPath();
+		for(String file : new String[]{"users.log", "users.idx"}){
+			Files.copy(directory.resolve(file), copy.resolve(file));
+		}
+		return copy;
+	}
+	
+	private static String keyOf(UUID uuid){
+		return uuid.toString().replace("-", "").substring(0, 16).toUpperCase();
+	}
+}
@@ -0,0 +1,163 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.H2Databases;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+
+public class SchemaMigratorTest {
+	
+	private static final String versionTable = "enderAuthDB.ea_schema";
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private ConnectionPool pool;
+	
+	@Before
+	public void createDatabase() throws Exception{
+		pool = new ConnectionPool(H2Databases.create(folder.getRoot().toPath()), "sa", "", 1, 60000, 60000, 1000);
+		
+		//H2 has no named locks; every lock is granted, as it would be to the only server.
+		try(PooledConnection connection = pool.acquire(); Statement statement = connection.getConnection().createStatement()){
+			statement.execute("CREATE ALIAS GET_LOCK FOR \"" + SchemaMigratorTest.class.getName() + ".getLock\"");
+			statement.execute("CREATE ALIAS RELEASE_LOCK FOR \"" + SchemaMigratorTest.class.getName() + ".releaseLock\"");
+			connection.getConnection().commit();
+		}
+	}
+	
+	@After
+	public void closePool(){
+		pool.close();
+	}
+	
+	public static int getLock(String name, int timeoutSeconds){ return 1; }
+	
+	public static int releaseLock(String name){ return 1; }
+	
+	@Test
+	public void deferrableMigrationsWaitUntilAskedFor() throws Exception{
+		SchemaMigrator migrator = new SchemaMigrator(versionTable, NOPLogger.NOP_LOGGER, Arrays.asList(
+				Migration.of(1, "first", connection -> null), 
+				deferrable(2, "rebuild", false), 
+				Migration.of(3, "after the rebuild", connection -> null)));
+		
+		assertEquals(1, migrate(migrator, false));
+		assertEquals(versions(1), appliedVersions());
+		
+		assertEquals(2, migrate(migrator, true));
+		assertEquals(versions(1, 2, 3), appliedVersions());
+		assertEquals(0, migrate(migrator, true));
+	}
+	
+	@Test
+	public void failedDeferrableMigrationIsLeftForLater() throws Exception{
+		assertEquals(1, migrate(new SchemaMigrator(versionTable, NOPLogger.NOP_LOGGER, Arrays.asList(
+				Migration.of(1, "first", connection -> null), 
+				deferrable(2, "rebuild", true), 
+				Migration.of(3, "after the rebuild", connection -> null))), true));
+		assertEquals(versions(1), appliedVersions());
+		
+		//The next start, with whatever was in the way fixed.
+		assertEquals(2, migrate(new SchemaMigrator(versionTable, NOPLogger.NOP_LOGGER, Arrays.asList(
+				Migration.of(1, "first", connection -> null), 
+				deferrable(2, "rebuild", false), 
+				Migration.of(3, "after the rebuild", connection -> null))), true));
+		assertEquals(versions(1, 2, 3), appliedVersions());
+	}
+	
+	@Test
+	public void failedRequiredMigrationIsThrown() throws Exception{
+		SchemaMigrator migrator = new SchemaMigrator(versionTable, NOPLogger.NOP_LOGGER, Arrays.asList(
+				Migration.of(1, "first", connection -> null), 
+				Migration.of(2, "broken", connection -> { throw new SQLException("Access denied"); })));
+		
+		try {
+			migrate(migrator, true);
+			fail("A migration EnderAuth can't work without failed quietly.");
+		} catch (SQLException e) {
+			assertEquals("Access denied", e.getMessage());
+		}
+		assertEquals(versions(1), appliedVersions());
+	}
+	
+	private static Migration deferrable(int version, String description, boolean fails){
+		return new Migration(){
+			@Override
+			public int getVersion(){ return version; }
+			
+			@Override
+			public String getDescription(){ return description; }
+			
+			@Override
+			public boolean isDeferrable(){ return true; }
+			
+			@Override
+			public void apply(PooledConnection connection) throws SQLException{
+				if(fails){
+					throw new SQLException("TRIGGER command denied");
+				}
+			}
+		};
+	}
+	
+	private int migrate(SchemaMigrator migrator, boolean applyDeferrable) throws SQLException, DatabaseException{
+		try(PooledConnection connection = pool.acquire()){
+			return migrator.migrate(connection, applyDeferrable);
+		}
+	}
+	
+	private Set<Integer> appliedVersions() throws SQLException{
+		Set<Integer> applied = new HashSet<Integer>();
+		try(PooledConnection connection = pool.acquire(); Statement statement = connection.getConnection().createStatement(); 
+				ResultSet versions = statement.executeQuery("SELECT version FROM " + versionTable)){
+			while(versions.next()){
+				applied.add(versions.getInt(1));
+			}
+		}
+		return applied;
+	}
+	
+	private static Set<Integer> versions(Integer... versions){
+		return new HashSet<Integer>(Arrays.asList(versions));
+	}
+}
@@ -0,0 +1,141 @@
+/*
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2017 heartsemma and contributors
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+package com.github.heartsemma.enderauth.Storage;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.SQLException;
+import java.util.UUID;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.slf4j.helpers.NOPLogger;
+
+import com.github.heartsemma.enderauth.Database;
+import com.github.heartsemma.enderauth.H2Databases;
+import com.github.heartsemma.enderauth.Main;
+import com.github.heartsemma.enderauth.DataStructures.DatabaseException;
+
+public class WriteBehindUserStoreTest {
+	
+	private static final String key = "JBSWY3DPEHPK3PXP";
+	
+	@Rule
+	public final TemporaryFolder folder = new TemporaryFolder();
+	
+	private Database database;
+	private WriteBehindUserStore store;
+	
+	@Before
+	public void createStore() throws Exception{
+		new Main(NOPLogger.NOP_LOGGER, null, null, folder.getRoot().toPath());
+		database = new Database(new ConnectionPool(H2Databases.create(folder.getRoot().toPath()), "sa", "", 2, 60000, 60000, 1000));
+		//Flushed by hand; the background flush only runs once an hour.
+		store = new WriteBehindUserStore(database, NOPLogger.NOP_LOGGER, 100, 3600000, 100);
+	}
+	
+	@After
+	public void closeStore(){
+		store.close();
+	}
+	
+	@Test
+	public void queuedRegistrationsAreVisibleAndFlushedTogether() throws Exception{
+		UUID first = UUID.randomUUID();
+		UUID second = UUID.randomUUID();
+		store.addUser(first, key);
+		store.addUser(second, key);
+		
+		assertTrue(store.isInDatabase(first));
+		assertEquals(key, store.getTotpKey(second));
+		assertFalse(database.isInDatabase(first));
+		
+		store.flush();
+		assertEquals(0, store.getPendingCount());
+		assertEquals(1, store.getFlushCount());
+		assertTrue(database.isInDatabase(first));
+		assertTrue(database.isInDatabase(second));
+	}
+	
+	@Test
+	public void rowTheDatabaseRejectsDoesNotHoldUpTheRest() throws Exception{
+		UUID before = UUID.randomUUID();
+		UUID rejected = UUID.randomUUID();
+		UUID after = UUID.randomUUID();
+		store.addUser(before, key);
+		store.addUser(rejected, "THIS KEY IS FAR TOO LONG FOR THE COLUMN IT GOES IN");
+		store.addUser(after, key);
+		
+		store.flush();
+		assertEquals(0, store.getPendingCount());
+		assertTrue(database.isInDatabase(before));
+		assertFalse(database.isInDatabase(rejected));
+		assertTrue(database.isInDatabase(after));
+	}
+	
+	@Test
+	public void playerWhoWasAlreadyRegisteredKeepsTheirKey() throws Exception{
+		UUID uuid = UUID.randomUUID();
+		UUID other = UUID.randomUUID();
+		database.addUser(uuid, key);
+		store.addUser(uuid, "GEZDGNBVGY3TQOJQ");
+		store.addUser(other, key);
+		
+		store.flush();
+		assertEquals(0, store.getPendingCount());
+		assertEquals(key, database.getTotpKey(uuid));
+		assertTrue(database.isInDatabase(other));
+	}
+	
+	@Test
+	public void keepsRegistrationsQueuedWhileTheDatabaseIsUnreachable() throws Exception{
+		store.close();
+		ConnectionPool pool = new ConnectionPool(H2Databases.create(folder.newFolder().toPath()), "sa", "", 1, 60000, 60000, 1000);
+		store = new WriteBehindUserStore(new Database(pool), NOPLogger.NOP_LOGGER, 2, 3600000, 2);
+		pool.close();
+		
+		store.addUser(UUID.randomUUID(), key);
+		store.addUser(UUID.randomUUID(), key);
+		try {
+			store.flush();
+			fail("A flush without a database succeeded.");
+		} catch (SQLException e) {
+			assertEquals(2, store.getPendingCount());
+		}
+		
+		try {
+			store.addUser(UUID.randomUUID(), key);
+			fail("A full queue took another registration.");
+		} catch (DatabaseException e) {
+			assertEquals(2, store.getPendingCount());
+		}
+	}
+}